@@ -30,10 +30,12 @@ import com.mousebirdconsulting.autotester.TestCases.CartoDBMapTestCase;
 import com.mousebirdconsulting.autotester.TestCases.ClusteredMarkersTestCase;
 import com.mousebirdconsulting.autotester.TestCases.ComplexParticleSystemTestCase;
 import com.mousebirdconsulting.autotester.TestCases.ComponentObjectLeakTestCase;
+import com.mousebirdconsulting.autotester.TestCases.ComponentObjectOrderTestCase;
 import com.mousebirdconsulting.autotester.TestCases.CoordConversionTestCase;
 import com.mousebirdconsulting.autotester.TestCases.CustomBNGCoordAdapter;
 import com.mousebirdconsulting.autotester.TestCases.CustomBNGTileSource;
 import com.mousebirdconsulting.autotester.TestCases.GeomPointsTestCase;
+import com.mousebirdconsulting.autotester.TestCases.GeometryAllocBenchmarkTestCase;
 import com.mousebirdconsulting.autotester.TestCases.GestureFeedbackTestCase;
 //import com.mousebirdconsulting.autotester.TestCases.GreatCircleTestCase;
 import com.mousebirdconsulting.autotester.TestCases.HeadingTestCase;
@@ -42,6 +44,7 @@ import com.mousebirdconsulting.autotester.TestCases.LIDARTestCase;
 import com.mousebirdconsulting.autotester.TestCases.LayerShutdownTestCase;
 import com.mousebirdconsulting.autotester.TestCases.LightingTestCase;
 import com.mousebirdconsulting.autotester.TestCases.LocalVectorTileTestCase;
+import com.mousebirdconsulting.autotester.TestCases.MBTilesFetchBenchmarkTestCase;
 import com.mousebirdconsulting.autotester.TestCases.MBTilesImageTestCase;
 import com.mousebirdconsulting.autotester.TestCases.MaplyStarModelTestCase;
 import com.mousebirdconsulting.autotester.TestCases.MapzenTestCase;
@@ -55,6 +58,7 @@ import com.mousebirdconsulting.autotester.TestCases.ShapefileTestCase;
 import com.mousebirdconsulting.autotester.TestCases.ShapesTestCase;
 import com.mousebirdconsulting.autotester.TestCases.SimpleParticleSystemTestCase;
 import com.mousebirdconsulting.autotester.TestCases.SLDTestCase;
+import com.mousebirdconsulting.autotester.TestCases.SLDFilterBenchmarkTestCase;
 import com.mousebirdconsulting.autotester.TestCases.StamenRemoteTestCase;
 import com.mousebirdconsulting.autotester.TestCases.StartupShutdownTestCase;
 import com.mousebirdconsulting.autotester.TestCases.StickersTestCase;
@@ -141,14 +145,17 @@ public class TestListFragment extends Fragment {
 			testCases.add(new CustomBNGCoordAdapter(getActivity()));
 			testCases.add(new MaplyStarModelTestCase(getActivity()));
 			testCases.add(new ComponentObjectLeakTestCase(getActivity()));
+			testCases.add(new ComponentObjectOrderTestCase(getActivity()));
 			testCases.add(new ShapesTestCase(getActivity()));
 			testCases.add(new AtmosphereTestCase(getActivity()));
 			testCases.add(new LightingTestCase(getActivity()));
 			testCases.add(new MBTilesImageTestCase(getActivity()));
+			testCases.add(new MBTilesFetchBenchmarkTestCase(getActivity()));
 			testCases.add(new BillboardTestCase(getActivity()));
 			testCases.add(new LocalVectorTileTestCase(getActivity()));
 			testCases.add(new PagingLayerTestCase(getActivity()));
 			testCases.add(new CoordConversionTestCase(getActivity()));
+			testCases.add(new GeometryAllocBenchmarkTestCase(getActivity()));
 			testCases.add(new StartupShutdownTestCase(getActivity()));
 			testCases.add(new MarkersAndLinesTestCase(getActivity()));
 			testCases.add(new BoundsTestCase(getActivity()));
@@ -159,6 +166,7 @@ public class TestListFragment extends Fragment {
 			testCases.add(new LIDARTestCase(getActivity()));
 			testCases.add(new WideVectorsTestCase(getActivity()));
 			testCases.add(new SLDTestCase(getActivity()));
+			testCases.add(new SLDFilterBenchmarkTestCase(getActivity()));
 //			testCases.add(new ArealTestCase(getActivity()));
 		}
 
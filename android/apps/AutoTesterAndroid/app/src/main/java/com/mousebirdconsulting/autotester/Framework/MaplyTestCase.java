@@ -47,8 +47,9 @@ public class MaplyTestCase extends AsyncTask<Void, View, Void> implements GlobeC
 	protected GlobeController globeController;
 	protected MapController mapController;
 	protected Integer delay = 3;
-	protected MaplyTestResult globeResult;
-	protected MaplyTestResult mapResult;
+	// These can be set from other threads by tests that finish in the background
+	protected volatile MaplyTestResult globeResult;
+	protected volatile MaplyTestResult mapResult;
 	protected MaplyTestCaseListener listener;
 	protected TestExecutionImplementation implementation = TestExecutionImplementation.None;
 	protected ArrayList<String> remoteResources = new ArrayList<>();
@@ -239,6 +240,16 @@ public class MaplyTestCase extends AsyncTask<Void, View, Void> implements GlobeC
 			execute();
 	}
 
+	// Report a map test failure found after setUpWithMap() returned
+	protected void mapTestFailed(Throwable ex) {
+		mapResult = new MaplyTestResult(testName + " Map Test", ex);
+	}
+
+	// Report a globe test failure found after setUpWithGlobe() returned
+	protected void globeTestFailed(Throwable ex) {
+		globeResult = new MaplyTestResult(testName + " Globe Test", ex);
+	}
+
 	@Override
 	protected void onPreExecute() {
 	}
@@ -0,0 +1,76 @@
+/*
+ *  ComponentObjectCheck.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebirdconsulting.autotester.TestCases;
+
+import com.mousebird.maply.ComponentObject;
+import com.mousebird.maply.LayerThread;
+import com.mousebird.maply.MaplyBaseController;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a set of removed component objects to actually go away.
+ * <p>
+ * This blocks, so don't call it on the main thread.  It looks at the objects from the layer
+ * thread with a plain task, so it doesn't lean on any ordering the controller does itself.
+ */
+class ComponentObjectCheck {
+
+    // How long we'll wait between looks, in milliseconds
+    private static final int POLL_INTERVAL = 100;
+
+    /**
+     * Wait for all the given objects to be emptied out and dropped by the controller.
+     *
+     * @param viewC Controller the objects were added to.
+     * @param compObjs Objects that have been removed.
+     * @param timeout How long to wait, in seconds.
+     * @return Number of objects still hanging around when we gave up.  Zero if they all went.
+     */
+    static int waitForRemoval(final MaplyBaseController viewC, final List<ComponentObject> compObjs, int timeout) throws InterruptedException {
+        final LayerThread layerThread = viewC.getLayerThread();
+        final int[] numLeft = new int[1];
+        long endTime = System.currentTimeMillis() + timeout * 1000L;
+
+        while (true) {
+            final CountDownLatch done = new CountDownLatch(1);
+            layerThread.addTask(new Runnable() {
+                @Override
+                public void run() {
+                    int count = 0;
+                    for (ComponentObject compObj : compObjs)
+                        if (!compObj.isEmpty() || viewC.hasComponentObject(compObj))
+                            count++;
+                    numLeft[0] = count;
+                    done.countDown();
+                }
+            }, true);
+
+            long waitTime = endTime - System.currentTimeMillis();
+            if (waitTime <= 0 || !done.await(waitTime, TimeUnit.MILLISECONDS))
+                return numLeft[0] > 0 ? numLeft[0] : compObjs.size();
+            if (numLeft[0] == 0)
+                return 0;
+
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+}
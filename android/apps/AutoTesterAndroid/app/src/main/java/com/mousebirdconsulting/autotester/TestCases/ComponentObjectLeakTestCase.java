@@ -22,9 +22,11 @@ package com.mousebirdconsulting.autotester.TestCases;
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.util.Log;
 
 import com.mousebird.maply.ComponentObject;
 import com.mousebird.maply.GlobeController;
+import com.mousebird.maply.LayerThread;
 import com.mousebird.maply.MapController;
 import com.mousebird.maply.MaplyBaseController;
 import com.mousebird.maply.MarkerInfo;
@@ -39,6 +41,8 @@ import java.util.ArrayList;
 public class ComponentObjectLeakTestCase extends MaplyTestCase {
 
     private static final int COUNT = 100;
+    // How long we'll wait for the removes to go through, in seconds
+    private static final int CHECK_TIMEOUT = 30;
 
     public ComponentObjectLeakTestCase(Activity activity) {
         super(activity);
@@ -48,33 +52,70 @@ public class ComponentObjectLeakTestCase extends MaplyTestCase {
     }
 
     @Override
-    public boolean setUpWithGlobe(GlobeController globeVC) throws Exception {
+    public boolean setUpWithGlobe(final GlobeController globeVC) throws Exception {
         StamenRemoteTestCase baseView = new StamenRemoteTestCase(getActivity());
         baseView.setUpWithGlobe(globeVC);
 
         Bitmap icon = BitmapFactory.decodeResource(getActivity().getResources(), R.drawable.sticker);
 
+        final ArrayList<ComponentObject> compObjs = new ArrayList<>();
         for (int i = 0; i < COUNT; i++) {
-            addAndRemove(globeVC, COUNT, icon);
+            addAndRemove(globeVC, COUNT, icon, compObjs);
         }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkRemoved(globeVC, compObjs);
+                } catch (Exception ex) {
+                    globeTestFailed(ex);
+                }
+            }
+        }).start();
 
         return true;
     }
 
     @Override
-    public boolean setUpWithMap(MapController mapVC) throws Exception {
+    public boolean setUpWithMap(final MapController mapVC) throws Exception {
         StamenRemoteTestCase baseView = new StamenRemoteTestCase(getActivity());
         baseView.setUpWithMap(mapVC);
 
         Bitmap icon = BitmapFactory.decodeResource(getActivity().getResources(), R.drawable.sticker);
+
+        final ArrayList<ComponentObject> compObjs = new ArrayList<>();
         for (int i = 0; i < COUNT; i++) {
-            addAndRemove(mapVC, COUNT, icon);
+            addAndRemove(mapVC, COUNT, icon, compObjs);
         }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkRemoved(mapVC, compObjs);
+                } catch (Exception ex) {
+                    mapTestFailed(ex);
+                }
+            }
+        }).start();
 
         return true;
     }
 
-    private void addAndRemove(MaplyBaseController viewC, int count,Bitmap image) {
+    // Everything we added should go away once the removes have gone through.
+    // This waits, so it runs off the main thread.
+    private void checkRemoved(MaplyBaseController viewC, ArrayList<ComponentObject> compObjs) throws Exception {
+        int numLeft = ComponentObjectCheck.waitForRemoval(viewC, compObjs, CHECK_TIMEOUT);
+
+        Log.i("AutoTester", "ComponentObject stats after leak test: " + viewC.getComponentObjectStats());
+        Log.i("AutoTester", "Texture stats after leak test: " + viewC.getTextureStats());
+        for (LayerThread.QueueStats stats : viewC.getLayerThread().getQueueStats())
+            Log.i("AutoTester", "Layer thread queue " + stats);
+
+        if (numLeft > 0)
+            throw new Exception(numLeft + " of " + compObjs.size() + " component objects weren't removed");
+    }
+
+    private void addAndRemove(MaplyBaseController viewC, int count,Bitmap image,ArrayList<ComponentObject> allObjs) {
         MarkerInfo markerInfo = new MarkerInfo();
 //        markerInfo.setMinVis(0.f);
 //        markerInfo.setMaxVis(1.f);
@@ -95,6 +136,7 @@ public class ComponentObjectLeakTestCase extends MaplyTestCase {
             viewC.removeObject(markers.get(i), MaplyBaseController.ThreadMode.ThreadAny);
         }
 
+        allObjs.addAll(markers);
         markers.clear();
     }
 }
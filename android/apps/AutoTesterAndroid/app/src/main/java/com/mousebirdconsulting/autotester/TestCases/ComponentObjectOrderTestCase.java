@@ -0,0 +1,116 @@
+/*
+ *  ComponentObjectOrderTestCase.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebirdconsulting.autotester.TestCases;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.mousebird.maply.ComponentObject;
+import com.mousebird.maply.GlobeController;
+import com.mousebird.maply.MapController;
+import com.mousebird.maply.MaplyBaseController;
+import com.mousebird.maply.MarkerInfo;
+import com.mousebird.maply.Point2d;
+import com.mousebird.maply.ScreenMarker;
+import com.mousebirdconsulting.autotester.Framework.MaplyTestCase;
+import com.mousebirdconsulting.autotester.R;
+
+import java.util.ArrayList;
+
+/**
+ * Adds a marker and removes it right away, over and over, from one thread.
+ * Every remove has to land after its add or the object sticks around.
+ */
+public class ComponentObjectOrderTestCase extends MaplyTestCase {
+
+    private static final int COUNT = 1000;
+    // How long we'll wait for the removes to go through, in seconds
+    private static final int CHECK_TIMEOUT = 30;
+
+    public ComponentObjectOrderTestCase(Activity activity) {
+        super(activity);
+        setTestName("ComponentObject Order Test");
+        setDelay(CHECK_TIMEOUT + 10);
+        this.implementation = TestExecutionImplementation.Both;
+    }
+
+    @Override
+    public boolean setUpWithGlobe(final GlobeController globeVC) throws Exception {
+        StamenRemoteTestCase baseView = new StamenRemoteTestCase(getActivity());
+        baseView.setUpWithGlobe(globeVC);
+
+        final Bitmap icon = BitmapFactory.decodeResource(getActivity().getResources(), R.drawable.sticker);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    addAndRemove(globeVC, icon);
+                } catch (Exception ex) {
+                    globeTestFailed(ex);
+                }
+            }
+        }).start();
+
+        return true;
+    }
+
+    @Override
+    public boolean setUpWithMap(final MapController mapVC) throws Exception {
+        StamenRemoteTestCase baseView = new StamenRemoteTestCase(getActivity());
+        baseView.setUpWithMap(mapVC);
+
+        final Bitmap icon = BitmapFactory.decodeResource(getActivity().getResources(), R.drawable.sticker);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    addAndRemove(mapVC, icon);
+                } catch (Exception ex) {
+                    mapTestFailed(ex);
+                }
+            }
+        }).start();
+
+        return true;
+    }
+
+    // Runs off the main thread
+    private void addAndRemove(MaplyBaseController viewC, Bitmap image) throws Exception {
+        MarkerInfo markerInfo = new MarkerInfo();
+        markerInfo.setDrawPriority(100100);
+
+        ArrayList<ComponentObject> compObjs = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            ScreenMarker marker = new ScreenMarker();
+            marker.image = image;
+            marker.loc = new Point2d(Math.random(), Math.random());
+            marker.size = new Point2d(64,64);
+            ComponentObject compObj = viewC.addScreenMarker(marker, markerInfo, MaplyBaseController.ThreadMode.ThreadAny);
+            viewC.removeObject(compObj, MaplyBaseController.ThreadMode.ThreadAny);
+            compObjs.add(compObj);
+        }
+
+        int numLeft = ComponentObjectCheck.waitForRemoval(viewC, compObjs, CHECK_TIMEOUT);
+        Log.i("AutoTester", "ComponentObject stats after order test: " + viewC.getComponentObjectStats());
+        if (numLeft > 0)
+            throw new Exception(numLeft + " of " + COUNT + " component objects were still around after being removed");
+    }
+}
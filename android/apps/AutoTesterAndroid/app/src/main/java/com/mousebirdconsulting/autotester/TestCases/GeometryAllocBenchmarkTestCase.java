@@ -0,0 +1,197 @@
+/*
+ *  GeometryAllocBenchmarkTestCase.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebirdconsulting.autotester.TestCases;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import com.mousebird.maply.GlobeController;
+import com.mousebird.maply.MapController;
+import com.mousebird.maply.MaplyBaseController;
+import com.mousebird.maply.MaplyTileID;
+import com.mousebird.maply.Mbr;
+import com.mousebird.maply.QuadPagingLayer;
+import com.mousebird.maply.SphericalMercatorCoordSystem;
+import com.mousebirdconsulting.autotester.Framework.MaplyTestCase;
+
+/**
+ * Compares the two ways QuadPagingLayer hands back tile bounds: the Mbr
+ * version, which makes an Mbr and two native Point2d objects per call, and
+ * the double[] version the vector tile path now uses.  Each pass looks up
+ * the geographic bounds of a run of tiles and tests them against a region,
+ * the way a pager decides what to load.  We report the time, the number of
+ * GCs and how long the finalizer queue takes to drain.
+ * Results go to the log under the AutoTester tag.
+ */
+public class GeometryAllocBenchmarkTestCase extends MaplyTestCase {
+
+    private static String TAG = "AutoTester";
+
+    // Roughly the number of tiles in a busy vector tile session
+    private static final int NUM_ITERATIONS = 50000;
+    // Level we pull tile bounds from
+    private static final int TILE_LEVEL = 10;
+
+    private QuadPagingLayer layer = null;
+    private boolean started = false;
+
+    public GeometryAllocBenchmarkTestCase(Activity activity) {
+        super(activity);
+        setTestName("Geometry Allocation Benchmark");
+        setDelay(20);
+        this.implementation = TestExecutionImplementation.Map;
+    }
+
+    private static long gcCount() {
+        if (Build.VERSION.SDK_INT >= 23) {
+            try {
+                return Long.parseLong(Debug.getRuntimeStat("art.gc.gc-count"));
+            } catch (Exception e) {
+            }
+        }
+        return -1;
+    }
+
+    // Tile bounds as an Mbr, then an overlap test
+    private double runMbrPath(Mbr testMbr) {
+        double sum = 0.0;
+        MaplyTileID tileID = new MaplyTileID(0, 0, TILE_LEVEL);
+        int numTiles = 1 << TILE_LEVEL;
+        for (int ii = 0; ii < NUM_ITERATIONS; ii++) {
+            tileID.x = ii % numTiles;
+            tileID.y = (ii / numTiles) % numTiles;
+            Mbr mbr = layer.geoBoundsForTile(tileID);
+            if (testMbr.overlaps(mbr))
+                sum += 1.0;
+            sum += mbr.ll.getX();
+        }
+        return sum;
+    }
+
+    // The same work filling a double[]
+    private double runDoublePath(Mbr testMbr) {
+        double sum = 0.0;
+        MaplyTileID tileID = new MaplyTileID(0, 0, TILE_LEVEL);
+        int numTiles = 1 << TILE_LEVEL;
+        double[] bounds = new double[4];
+        for (int ii = 0; ii < NUM_ITERATIONS; ii++) {
+            tileID.x = ii % numTiles;
+            tileID.y = (ii / numTiles) % numTiles;
+            layer.geoBoundsForTile(tileID, bounds);
+            if (testMbr.overlaps(bounds[0], bounds[1], bounds[2], bounds[3]))
+                sum += 1.0;
+            sum += bounds[0];
+        }
+        return sum;
+    }
+
+    private void report(String name, long startTime, long startGC, long startMem, double result) {
+        long runTime = System.nanoTime() - startTime;
+        long endGC = gcCount();
+        Runtime runtime = Runtime.getRuntime();
+        long endMem = runtime.totalMemory() - runtime.freeMemory();
+
+        // Time how long the finalizers take to catch up
+        long finalizeStart = System.nanoTime();
+        System.gc();
+        System.runFinalization();
+        long finalizeTime = System.nanoTime() - finalizeStart;
+
+        Log.i(TAG, String.format("%s: %d iterations in %.1fms (%.2fus each), %s GCs, heap grew %dKB, finalizer drain %.1fms (result %.1f)",
+                name, NUM_ITERATIONS, runTime / 1e6, runTime / 1e3 / NUM_ITERATIONS,
+                (startGC >= 0 && endGC >= 0) ? Long.toString(endGC - startGC) : "?",
+                (endMem - startMem) / 1024, finalizeTime / 1e6, result));
+    }
+
+    private void runBenchmark() {
+        final Mbr testMbr = new Mbr(-0.5, -0.5, 0.5, 0.5);
+        Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+        System.runFinalization();
+        long startGC = gcCount(), startMem = runtime.totalMemory() - runtime.freeMemory();
+        long startTime = System.nanoTime();
+        double result = runMbrPath(testMbr);
+        report("Mbr bounds", startTime, startGC, startMem, result);
+
+        startGC = gcCount();
+        startMem = runtime.totalMemory() - runtime.freeMemory();
+        startTime = System.nanoTime();
+        result = runDoublePath(testMbr);
+        report("double[] bounds", startTime, startGC, startMem, result);
+    }
+
+    // The layer's native side is only ready once it starts asking for tiles
+    private class BenchmarkPager implements QuadPagingLayer.PagingInterface {
+        @Override
+        public int minZoom() {
+            return 0;
+        }
+
+        @Override
+        public int maxZoom() {
+            return 0;
+        }
+
+        @Override
+        public void startFetchForTile(QuadPagingLayer pagingLayer, MaplyTileID tileID) {
+            pagingLayer.tileFailedToLoad(tileID);
+
+            synchronized (GeometryAllocBenchmarkTestCase.this) {
+                if (started)
+                    return;
+                started = true;
+            }
+            Thread benchThread = new Thread() {
+                @Override
+                public void run() {
+                    runBenchmark();
+                }
+            };
+            benchThread.start();
+        }
+
+        @Override
+        public void tileDidUnload(MaplyTileID tileID) {
+        }
+
+        @Override
+        public void clear() {
+        }
+    }
+
+    private void startBenchmark(MaplyBaseController control) {
+        layer = new QuadPagingLayer(control, new SphericalMercatorCoordSystem(), new BenchmarkPager());
+        control.addLayer(layer);
+    }
+
+    @Override
+    public boolean setUpWithGlobe(GlobeController globeVC) throws Exception {
+        startBenchmark(globeVC);
+        return true;
+    }
+
+    @Override
+    public boolean setUpWithMap(MapController mapVC) throws Exception {
+        startBenchmark(mapVC);
+        return true;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  MBTilesFetchBenchmarkTestCase.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebirdconsulting.autotester.TestCases;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.util.Log;
+
+import com.mousebird.maply.GlobeController;
+import com.mousebird.maply.LayerThread;
+import com.mousebird.maply.MBTiles;
+import com.mousebird.maply.MBTilesImageSource;
+import com.mousebird.maply.MapController;
+import com.mousebird.maply.MaplyBaseController;
+import com.mousebird.maply.MaplyImageTile;
+import com.mousebird.maply.MaplyTileID;
+import com.mousebird.maply.QuadImageTileLayer;
+import com.mousebird.maply.QuadImageTileLayerInterface;
+import com.mousebirdconsulting.autotester.Framework.MaplyTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many MBTiles tiles per second the layer thread can absorb
+ * when tiles are read inline (the old behavior) versus on the reader pool.
+ * Results go to the log under the AutoTester tag.
+ */
+public class MBTilesFetchBenchmarkTestCase extends MaplyTestCase {
+
+    private static String TAG = "AutoTester";
+    private static String MBTILES_DIR = "mbtiles";
+
+    // Levels 0 through this one get fetched for each run
+    private static final int MAX_LEVEL = 4;
+
+    public MBTilesFetchBenchmarkTestCase(Activity activity) {
+        super(activity);
+        setTestName("MBTiles Fetch Benchmark");
+        setDelay(20);
+        this.implementation = TestExecutionImplementation.Map;
+    }
+
+    // Stands in for a quad image layer and counts what comes back
+    private class CountingLayer implements QuadImageTileLayerInterface {
+        LayerThread layerThread;
+        CountDownLatch latch;
+        int numLoaded = 0;
+
+        CountingLayer(LayerThread inLayerThread, int numTiles) {
+            layerThread = inLayerThread;
+            latch = new CountDownLatch(numTiles);
+        }
+
+        @Override
+        public void loadedTile(MaplyTileID tileID, int frame, MaplyImageTile imageTile) {
+            if (imageTile != null) {
+                numLoaded++;
+                if (imageTile.bitmap != null)
+                    imageTile.bitmap.recycle();
+            }
+            latch.countDown();
+        }
+
+        @Override
+        public LayerThread getLayerThread() {
+            return layerThread;
+        }
+    }
+
+    // Fetch every tile down to MAX_LEVEL and report the layer thread's throughput
+    private void runBenchmark(final LayerThread layerThread, final MBTilesImageSource tileSource, String name) throws InterruptedException {
+        int maxLevel = Math.min(MAX_LEVEL, tileSource.maxZoom());
+        int numTiles = 0;
+        for (int level = tileSource.minZoom(); level <= maxLevel; level++)
+            numTiles += (1 << level) * (1 << level);
+        final int minLevel = tileSource.minZoom();
+        final int lastLevel = maxLevel;
+
+        final CountingLayer layer = new CountingLayer(layerThread, numTiles);
+        final long[] issueTime = new long[1];
+        final long startTime = System.nanoTime();
+        layerThread.addTask(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                for (int level = minLevel; level <= lastLevel; level++)
+                    for (int y = 0; y < (1 << level); y++)
+                        for (int x = 0; x < (1 << level); x++)
+                            tileSource.startFetchForTile(layer, new MaplyTileID(x, y, level), -1);
+                issueTime[0] = System.nanoTime() - start;
+            }
+        }, true);
+
+        layer.latch.await(60, TimeUnit.SECONDS);
+        double totalSecs = (System.nanoTime() - startTime) / 1e9;
+        double issueSecs = issueTime[0] / 1e9;
+        tileSource.clear(layer);
+
+        Log.i(TAG, String.format("%s: %d tiles (%d loaded), layer thread busy %.3fs (%.1f tiles/s absorbed), all delivered in %.3fs (%.1f tiles/s)",
+                name, numTiles, layer.numLoaded, issueSecs, numTiles / Math.max(issueSecs, 1e-6), totalSecs, numTiles / totalSecs));
+    }
+
+    private QuadImageTileLayer setupBenchmark(final MaplyBaseController baseController) throws Exception {
+        File mbTiles = getMbTileFile("mbtiles/geography-class.mbtiles", "geography-class.mbtiles");
+        final MBTiles mbTilesFile = new MBTiles(mbTiles);
+        final LayerThread layerThread = baseController.getLayerThread();
+
+        // Run off the main thread so we can wait for results
+        Thread benchThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    runBenchmark(layerThread, new MBTilesImageSource(mbTilesFile, 0), "MBTiles inline fetch");
+                    runBenchmark(layerThread, new MBTilesImageSource(mbTilesFile), "MBTiles pooled fetch");
+                } catch (InterruptedException e) {
+                    Log.w(TAG, "MBTiles benchmark interrupted");
+                }
+            }
+        };
+        benchThread.start();
+
+        MBTilesImageSource tileSource = new MBTilesImageSource(mbTilesFile);
+        return new QuadImageTileLayer(baseController, tileSource.coordSys, tileSource);
+    }
+
+    @Override
+    public boolean setUpWithGlobe(GlobeController globeVC) throws Exception {
+        globeVC.addLayer(setupBenchmark(globeVC));
+        return true;
+    }
+
+    @Override
+    public boolean setUpWithMap(MapController mapVC) throws Exception {
+        mapVC.addLayer(setupBenchmark(mapVC));
+        return true;
+    }
+
+    private File getMbTileFile(String assetMbTile, String mbTileFilename) throws IOException {
+        ContextWrapper wrapper = new ContextWrapper(getActivity());
+        File mbTilesDirectory = wrapper.getDir(MBTILES_DIR, Context.MODE_PRIVATE);
+        File of = new File(mbTilesDirectory, mbTileFilename);
+        if (of.exists())
+            return of;
+
+        InputStream is = getActivity().getAssets().open(assetMbTile);
+        OutputStream os = new FileOutputStream(of);
+        byte[] mBuffer = new byte[1024];
+        int length;
+        while ((length = is.read(mBuffer)) > 0) {
+            os.write(mBuffer, 0, length);
+        }
+        os.flush();
+        os.close();
+        is.close();
+
+        return of;
+    }
+}
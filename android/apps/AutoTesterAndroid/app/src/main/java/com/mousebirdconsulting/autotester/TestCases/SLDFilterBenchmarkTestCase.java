@@ -0,0 +1,181 @@
+/*
+ *  SLDFilterBenchmarkTestCase.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebirdconsulting.autotester.TestCases;
+
+import android.app.Activity;
+import android.util.Log;
+
+import com.mousebird.maply.AttrDictionary;
+import com.mousebird.maply.GlobeController;
+import com.mousebird.maply.MapController;
+import com.mousebird.maply.MaplyTileID;
+import com.mousebird.maply.VectorObject;
+import com.mousebird.maply.VectorStyle;
+import com.mousebird.maply.sld.sldstyleset.AssetWrapper;
+import com.mousebird.maply.sld.sldstyleset.SLDStyleSet;
+import com.mousebirdconsulting.autotester.Framework.MaplyTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Runs the Belfast SLDs against the attributes from their GeoJSON files,
+ * once walking the parsed filters and once with the compiled filters.
+ * The attributes are pulled out ahead of time so we're only timing the
+ * style matching.  We also check that both ways pick the same styles.
+ * Results go to the log under the AutoTester tag.
+ */
+public class SLDFilterBenchmarkTestCase extends MaplyTestCase {
+
+    private static String TAG = "AutoTester";
+
+    // Passes over each attribute stream, after one to warm up
+    private static final int NUM_PASSES = 5;
+
+    public SLDFilterBenchmarkTestCase(Activity activity) {
+        super(activity);
+        setTestName("SLD Filter Benchmark");
+        setDelay(30);
+        this.implementation = TestExecutionImplementation.Map;
+    }
+
+    // Read all the features from a GeoJSON asset and keep their attributes
+    private ArrayList<AttrDictionary> recordAttributes(String fileName) throws Exception {
+        InputStream stream = getActivity().getAssets().open(fileName);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[16384];
+        int len;
+        while ((len = stream.read(chunk)) != -1)
+            buffer.write(chunk, 0, len);
+        stream.close();
+
+        ArrayList<AttrDictionary> attrStream = new ArrayList<AttrDictionary>();
+        VectorObject vecObj = new VectorObject();
+        if (!vecObj.fromGeoJSON(buffer.toString("UTF-8")))
+            return attrStream;
+        for (VectorObject feature : vecObj) {
+            AttrDictionary attrs = feature.getAttributes();
+            // Pull the attributes over to Java now so the timing doesn't include it
+            attrs.snapshot();
+            attrStream.add(attrs);
+        }
+        return attrStream;
+    }
+
+    // Run the style matching over the attributes a few times
+    private double runPasses(SLDStyleSet styleSet, ArrayList<AttrDictionary> attrStream, MaplyTileID tileID) {
+        // Warm up
+        for (AttrDictionary attrs : attrStream)
+            styleSet.stylesForFeature(attrs, tileID, "", controller);
+
+        long startTime = System.nanoTime();
+        for (int pass = 0; pass < NUM_PASSES; pass++)
+            for (AttrDictionary attrs : attrStream)
+                styleSet.stylesForFeature(attrs, tileID, "", controller);
+        long runTime = System.nanoTime() - startTime;
+
+        return runTime / 1e9;
+    }
+
+    // Check both evaluation paths come up with the same styles in the same order
+    private int countMismatches(SLDStyleSet styleSet, ArrayList<AttrDictionary> attrStream, MaplyTileID tileID) {
+        int numMismatches = 0;
+        for (AttrDictionary attrs : attrStream) {
+            styleSet.setUseCompiledFilters(false);
+            VectorStyle[] treeStyles = styleSet.stylesForFeature(attrs, tileID, "", controller);
+            styleSet.setUseCompiledFilters(true);
+            VectorStyle[] compiledStyles = styleSet.stylesForFeature(attrs, tileID, "", controller);
+
+            boolean same = treeStyles.length == compiledStyles.length;
+            for (int ii = 0; same && ii < treeStyles.length; ii++)
+                same = treeStyles[ii] == compiledStyles[ii];
+            if (!same)
+                numMismatches++;
+        }
+        return numMismatches;
+    }
+
+    private void runBenchmark() {
+        String[] slds = new String[]{
+                "osm_landuse.sld",
+                "osm_water.sld",
+                "water_lines.sld",
+                "osm_buildings.sld",
+                "osm_roads.sld",
+                "amenities.sld"};
+        String[] geojsons = new String[]{
+                "belfast_ireland_landusages.geojson",
+                "belfast_ireland_waterareas.geojson",
+                "belfast_ireland_waterways.geojson",
+                "belfast_ireland_buildings.geojson",
+                "belfast_ireland_roads.geojson",
+                "belfast_ireland_amenities.geojson"};
+
+        MaplyTileID tileID = new MaplyTileID(0, 0, 0);
+        AssetWrapper assetWrap = new AssetWrapper(activity.getAssets());
+
+        for (int ii = 0; ii < slds.length; ii++) {
+            try {
+                SLDStyleSet styleSet = new SLDStyleSet(controller, assetWrap, slds[ii], activity.getResources().getDisplayMetrics(), false, ii * 100000);
+                styleSet.loadSldInputStream();
+                ArrayList<AttrDictionary> attrStream = recordAttributes(geojsons[ii]);
+                if (attrStream.isEmpty()) {
+                    Log.w(TAG, "SLD filter benchmark: no features in " + geojsons[ii]);
+                    continue;
+                }
+
+                int numMismatches = countMismatches(styleSet, attrStream, tileID);
+
+                styleSet.setUseCompiledFilters(false);
+                double treeTime = runPasses(styleSet, attrStream, tileID);
+                styleSet.setUseCompiledFilters(true);
+                double compiledTime = runPasses(styleSet, attrStream, tileID);
+
+                int numEvals = attrStream.size() * NUM_PASSES;
+                Log.i(TAG, String.format("%s: %d features, tree walk %.0f features/s, compiled %.0f features/s (%.2fx), %d mismatches",
+                        slds[ii], attrStream.size(), numEvals / treeTime, numEvals / compiledTime, treeTime / compiledTime, numMismatches));
+            } catch (Exception e) {
+                Log.e(TAG, "SLD filter benchmark failed for " + slds[ii], e);
+            }
+        }
+    }
+
+    private void startBenchmark() {
+        Thread benchThread = new Thread() {
+            @Override
+            public void run() {
+                runBenchmark();
+            }
+        };
+        benchThread.start();
+    }
+
+    @Override
+    public boolean setUpWithGlobe(GlobeController globeVC) throws Exception {
+        startBenchmark();
+        return true;
+    }
+
+    @Override
+    public boolean setUpWithMap(MapController mapVC) throws Exception {
+        startBenchmark();
+        return true;
+    }
+}
@@ -73,11 +73,24 @@ public:
     
     /// Return true if the given coordinate system is the same as the one passed in
     virtual bool isSameAs(CoordSystem *coordSys) { return false; }
+
+    /// Convert a batch of lat/lon points to the local system in place.
+    /// The z values are ignored on the way in, like geographicToLocal3d().
+    /// Subclasses that can do better than a point at a time should override these.
+    virtual void geographicToLocalBatch(double *x,double *y,double *z,int numPts);
+    /// Convert a batch of local points to lat/lon in place.  The z values come back as 0.
+    virtual void localToGeographicBatch(double *x,double *y,double *z,int numPts);
+    /// Convert a batch of local points to geocentric in place
+    virtual void localToGeocentricBatch(double *x,double *y,double *z,int numPts);
+    /// Convert a batch of geocentric points to local in place
+    virtual void geocentricToLocalBatch(double *x,double *y,double *z,int numPts);
 };
     
 /// Convert a point from one coordinate system to another
 Point3f CoordSystemConvert(CoordSystem *inSystem,CoordSystem *outSystem,Point3f inCoord);
 Point3d CoordSystemConvert3d(CoordSystem *inSystem,CoordSystem *outSystem,Point3d inCoord);
+/// Convert a batch of points from one coordinate system to another, in place
+void CoordSystemConvert3dBatch(CoordSystem *inSystem,CoordSystem *outSystem,double *x,double *y,double *z,int numPts);
     
 /** The Coordinate System Display Adapter handles the task of
     converting coordinates in the native system to data values we
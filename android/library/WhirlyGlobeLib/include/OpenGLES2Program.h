@@ -137,6 +137,14 @@ public:
     bool setUniform(const std::string &name,int val);
     bool setUniform(const SingleVertexAttribute &attr);
     
+    /// Look up a uniform once and return a handle for it.  -1 if there's no such uniform.
+    /// Handles are good for the life of the program.
+    int findUniformHandle(const std::string &uniformName);
+    
+    /// Set a float, vector or int uniform by handle.  We use as many values as the uniform's type calls for (1-4).
+    /// Like the setUniform calls, this checks the type and skips the gl call if the value hasn't changed.
+    bool setUniformValues(int handle,const float *vals);
+    
     /// Tie a given texture ID to the given name.
     /// We have to set these up each time before drawing
     bool setTexture(const std::string &name,GLuint val);
@@ -172,6 +180,8 @@ protected:
     TimeInterval lightsLastUpdated;
     // Uniforms sorted for fast lookup
     std::set<OpenGLESUniform *,UniformNameSortStruct> uniforms;
+    // Same uniforms in the order we found them, addressed by handle
+    std::vector<OpenGLESUniform *> uniformHandles;
     // Attributes sorted for fast lookup
     std::set<OpenGLESAttribute *,AttributeNameSortStruct> attrs;
 };
@@ -53,6 +53,12 @@ public:
     
     /// True if the other system is Spherical Mercator with the same origin
     virtual bool isSameAs(CoordSystem *coordSys);
+
+    /// Batch versions hand the whole array to proj.4 at once
+    virtual void geographicToLocalBatch(double *x,double *y,double *z,int numPts);
+    virtual void localToGeographicBatch(double *x,double *y,double *z,int numPts);
+    virtual void localToGeocentricBatch(double *x,double *y,double *z,int numPts);
+    virtual void geocentricToLocalBatch(double *x,double *y,double *z,int numPts);
     
     /// Check that it actually created the pj structures
     bool isValid();
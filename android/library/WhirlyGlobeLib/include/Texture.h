@@ -129,6 +129,8 @@ public:
     void setSingleByteSource(WKSingleByteSource source) { byteSource = source; }
     /// If set, this is a texture we're creating for output purposes
     void setIsEmptyTexture(bool inIsEmptyTexture) { isEmptyTexture = inIsEmptyTexture; }
+    /// Set if the data is already in the texture's format and doesn't need converting
+    void setIsConverted(bool inIsConverted) { isConverted = inIsConverted; }
 
     /// Render side only.  Don't call this.  Create the openGL version
     virtual bool createInGL(OpenGLMemManager *memManager);
@@ -158,6 +160,8 @@ protected:
     bool wrapU,wrapV;
     GLenum interpType;
     bool isEmptyTexture;
+    /// Data is already in the right format
+    bool isConverted;
 };
 	
 }
@@ -51,6 +51,17 @@ Point3d CoordSystemConvert3d(CoordSystem *inSystem,CoordSystem *outSystem,Point3
     return outPt;
 }
     
+void CoordSystemConvert3dBatch(CoordSystem *inSystem,CoordSystem *outSystem,double *x,double *y,double *z,int numPts)
+{
+    // Easy if the coordinate systems are the same
+    if (inSystem->isSameAs(outSystem))
+        return;
+    
+    // Through geocentric, like the single point version
+    inSystem->localToGeocentricBatch(x,y,z,numPts);
+    outSystem->geocentricToLocalBatch(x,y,z,numPts);
+}
+    
 DelayedDeletable::~DelayedDeletable()
 {
 }
@@ -62,6 +73,42 @@ CoordSystem::CoordSystem()
 CoordSystem::~CoordSystem()
 {
 }
+
+void CoordSystem::geographicToLocalBatch(double *x,double *y,double *z,int numPts)
+{
+    for (int ii=0;ii<numPts;ii++)
+    {
+        Point3d pt = geographicToLocal3d(GeoCoord(x[ii],y[ii]));
+        x[ii] = pt.x();  y[ii] = pt.y();  z[ii] = pt.z();
+    }
+}
+
+void CoordSystem::localToGeographicBatch(double *x,double *y,double *z,int numPts)
+{
+    for (int ii=0;ii<numPts;ii++)
+    {
+        Point2d coord = localToGeographicD(Point3d(x[ii],y[ii],z[ii]));
+        x[ii] = coord.x();  y[ii] = coord.y();  z[ii] = 0.0;
+    }
+}
+
+void CoordSystem::localToGeocentricBatch(double *x,double *y,double *z,int numPts)
+{
+    for (int ii=0;ii<numPts;ii++)
+    {
+        Point3d pt = localToGeocentric(Point3d(x[ii],y[ii],z[ii]));
+        x[ii] = pt.x();  y[ii] = pt.y();  z[ii] = pt.z();
+    }
+}
+
+void CoordSystem::geocentricToLocalBatch(double *x,double *y,double *z,int numPts)
+{
+    for (int ii=0;ii<numPts;ii++)
+    {
+        Point3d pt = geocentricToLocal(Point3d(x[ii],y[ii],z[ii]));
+        x[ii] = pt.x();  y[ii] = pt.y();  z[ii] = pt.z();
+    }
+}
     
 GeneralCoordSystemDisplayAdapter::GeneralCoordSystemDisplayAdapter(CoordSystem *coordSys,const Point3d &ll,const Point3d &ur,const Point3d &inCenter,const Point3d &inScale)
     : CoordSystemDisplayAdapter(coordSys,inCenter), ll(ll), ur(ur), coordSys(coordSys)
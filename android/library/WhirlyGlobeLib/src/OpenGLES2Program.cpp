@@ -342,6 +342,7 @@ OpenGLES2Program::OpenGLES2Program(const std::string &inName,const std::string &
         uni->name = thingName;
         uni->index = glGetUniformLocation(program, thingName);
         uniforms.insert(uni);
+        uniformHandles.push_back(uni);
     }
     
     // Convert the attributes into a more useful form
@@ -383,6 +384,7 @@ void OpenGLES2Program::cleanUp()
     }
     
     uniforms.clear();
+    uniformHandles.clear();
     attrs.clear();
 }
     
@@ -402,6 +404,83 @@ OpenGLESUniform *OpenGLES2Program::findUniform(const std::string &uniformName)
         return NULL;
 }
 
+int OpenGLES2Program::findUniformHandle(const std::string &uniformName)
+{
+    OpenGLESUniform *uni = findUniform(uniformName);
+    if (!uni)
+        return -1;
+    
+    for (unsigned int ii=0;ii<uniformHandles.size();ii++)
+        if (uniformHandles[ii] == uni)
+            return ii;
+    
+    return -1;
+}
+    
+bool OpenGLES2Program::setUniformValues(int handle,const float *vals)
+{
+    if (handle < 0 || handle >= uniformHandles.size())
+        return false;
+    OpenGLESUniform *uni = uniformHandles[handle];
+    
+    switch (uni->type)
+    {
+        case GL_FLOAT:
+        case GL_FLOAT_VEC2:
+        case GL_FLOAT_VEC3:
+        case GL_FLOAT_VEC4:
+        {
+            int numVals = (uni->type == GL_FLOAT ? 1 : (uni->type == GL_FLOAT_VEC2 ? 2 : (uni->type == GL_FLOAT_VEC3 ? 3 : 4)));
+            if (uni->isSet)
+            {
+                bool same = true;
+                for (int ii=0;ii<numVals;ii++)
+                    if (uni->val.fVals[ii] != vals[ii])
+                        same = false;
+                if (same)
+                    return true;
+            }
+            switch (numVals)
+            {
+                case 1:
+                    glUniform1f(uni->index, vals[0]);
+                    break;
+                case 2:
+                    glUniform2f(uni->index, vals[0], vals[1]);
+                    break;
+                case 3:
+                    glUniform3f(uni->index, vals[0], vals[1], vals[2]);
+                    break;
+                case 4:
+                    glUniform4f(uni->index, vals[0], vals[1], vals[2], vals[3]);
+                    break;
+            }
+            CheckGLError("OpenGLES2Program::setUniformValues() glUniform");
+            uni->isSet = true;
+            for (int ii=0;ii<numVals;ii++)
+                uni->val.fVals[ii] = vals[ii];
+        }
+            break;
+        case GL_INT:
+        case GL_UNSIGNED_INT:
+        case GL_BOOL:
+        {
+            int val = (int)vals[0];
+            if (uni->isSet && uni->val.iVals[0] == val)
+                return true;
+            glUniform1i(uni->index,val);
+            CheckGLError("OpenGLES2Program::setUniformValues() glUniform1i");
+            uni->isSet = true;
+            uni->val.iVals[0] = val;
+        }
+            break;
+        default:
+            return false;
+    }
+    
+    return true;
+}
+
 const OpenGLESAttribute *OpenGLES2Program::findAttribute(const std::string &attrName)
 {
     OpenGLESAttribute attr(attrName);
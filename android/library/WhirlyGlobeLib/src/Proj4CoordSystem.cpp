@@ -155,6 +155,31 @@ Point3d Proj4CoordSystem::geocentricToLocal(Point3d geocPt)
     return coord;
 }
 
+void Proj4CoordSystem::geographicToLocalBatch(double *x,double *y,double *z,int numPts)
+{
+    for (int ii=0;ii<numPts;ii++)
+        z[ii] = 0.0;
+    if (pj_transform(pj_latlon, pj, numPts, 1, x, y, z))
+        WHIRLYKIT_LOGV("Proj4CoordSystem::geographicToLocalBatch error converting to local");
+}
+
+void Proj4CoordSystem::localToGeographicBatch(double *x,double *y,double *z,int numPts)
+{
+    pj_transform(pj, pj_latlon, numPts, 1, x, y, z);
+    for (int ii=0;ii<numPts;ii++)
+        z[ii] = 0.0;
+}
+
+void Proj4CoordSystem::localToGeocentricBatch(double *x,double *y,double *z,int numPts)
+{
+    pj_transform(pj, pj_geocentric, numPts, 1, x, y, z);
+}
+
+void Proj4CoordSystem::geocentricToLocalBatch(double *x,double *y,double *z,int numPts)
+{
+    pj_transform(pj_geocentric, pj, numPts, 1, x, y, z);
+}
+
 bool Proj4CoordSystem::isSameAs(CoordSystem *coordSys)
 {
     Proj4CoordSystem *other = dynamic_cast<Proj4CoordSystem *>(coordSys);
@@ -173,7 +173,7 @@ JNIEXPORT jobject JNICALL Java_com_mousebird_maply_AttrDictionary_getDouble
 	return NULL;
 }
 
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setString
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setStringNative
 (JNIEnv *env, jobject obj, jstring attrNameObj, jstring strValObj)
 {
     try
@@ -194,7 +194,7 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setString
     }
 }
 
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setInt
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setIntNative
 (JNIEnv *env, jobject obj, jstring attrNameObj, jint iVal)
 {
     try
@@ -214,7 +214,7 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setInt
     }
 }
 
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setDouble
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setDoubleNative
 (JNIEnv *env, jobject obj, jstring attrNameObj, jdouble dVal)
 {
     try
@@ -307,7 +307,7 @@ JNIEXPORT jobject JNICALL Java_com_mousebird_maply_AttrDictionary_get
 	return NULL;
 }
 
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_addEntries
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_addEntriesNative
 (JNIEnv *env, jobject obj, jobject other)
 {
 	try
@@ -355,5 +355,56 @@ JNIEXPORT jobjectArray JNICALL Java_com_mousebird_maply_AttrDictionary_getKeySet
     return NULL;
 }
 
+JNIEXPORT jobjectArray JNICALL Java_com_mousebird_maply_AttrDictionary_getEntries
+(JNIEnv *env, jobject obj)
+{
+    try
+    {
+        AttrDictClassInfo *classInfo = AttrDictClassInfo::getClassInfo();
+        Dictionary *dict = classInfo->getObject(env,obj);
+        if (!dict)
+            return NULL;
 
+        // Keys and values alternate so we only need the one array
+        auto keys = dict->getKeys();
+        jclass objClass = env->FindClass("java/lang/Object");
+        jobjectArray retArr = env->NewObjectArray(2*keys.size(), objClass, NULL);
+        env->DeleteLocalRef(objClass);
+        int which = 0;
+        for (const auto &key : keys) {
+            jstring keyStr = env->NewStringUTF(key.c_str());
+            env->SetObjectArrayElement(retArr,which++,keyStr);
+            env->DeleteLocalRef(keyStr);
+
+            jobject valObj = NULL;
+            switch (dict->getType(key))
+            {
+                case DictTypeString:
+                {
+                    std::string str = dict->getString(key);
+                    if (!str.empty())
+                        valObj = env->NewStringUTF(str.c_str());
+                }
+                    break;
+                case DictTypeInt:
+                    valObj = JavaIntegerClassInfo::getClassInfo(env)->makeInteger(env,dict->getInt(key));
+                    break;
+                case DictTypeDouble:
+                    valObj = JavaDoubleClassInfo::getClassInfo(env)->makeDouble(env,dict->getDouble(key));
+                    break;
+                default:
+                    break;
+            }
+            env->SetObjectArrayElement(retArr,which++,valObj);
+            if (valObj)
+                env->DeleteLocalRef(valObj);
+        }
 
+        return retArr;
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in Dictionary::getEntries()");
+    }
+    return NULL;
+}
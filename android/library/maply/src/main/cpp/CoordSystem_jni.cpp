@@ -139,3 +139,119 @@ JNIEXPORT jobject JNICALL Java_com_mousebird_maply_CoordSystem_CoordSystemConver
     
     return NULL;
 }
+
+// Copy the input arrays in.  A null z means zeros.  Returns false if the arrays don't line up.
+static bool ReadBatch(JNIEnv *env,jdoubleArray inXArray,jdoubleArray inYArray,jdoubleArray inZArray,
+                      jdoubleArray outXArray,jdoubleArray outYArray,jdoubleArray outZArray,
+                      std::vector<double> &x,std::vector<double> &y,std::vector<double> &z)
+{
+    if (!inXArray || !inYArray || !outXArray || !outYArray)
+        return false;
+    int numPts = env->GetArrayLength(inXArray);
+    if (env->GetArrayLength(inYArray) != numPts || (inZArray && env->GetArrayLength(inZArray) != numPts) ||
+        env->GetArrayLength(outXArray) < numPts || env->GetArrayLength(outYArray) < numPts ||
+        (outZArray && env->GetArrayLength(outZArray) < numPts))
+        return false;
+
+    x.resize(numPts);  y.resize(numPts);  z.resize(numPts,0.0);
+    if (numPts == 0)
+        return true;
+    env->GetDoubleArrayRegion(inXArray, 0, numPts, &x[0]);
+    env->GetDoubleArrayRegion(inYArray, 0, numPts, &y[0]);
+    if (inZArray)
+        env->GetDoubleArrayRegion(inZArray, 0, numPts, &z[0]);
+
+    return true;
+}
+
+// Copy the results back out.  A null z array means they don't want it.
+static void WriteBatch(JNIEnv *env,jdoubleArray outXArray,jdoubleArray outYArray,jdoubleArray outZArray,
+                       std::vector<double> &x,std::vector<double> &y,std::vector<double> &z)
+{
+    int numPts = x.size();
+    if (numPts == 0)
+        return;
+    env->SetDoubleArrayRegion(outXArray, 0, numPts, &x[0]);
+    env->SetDoubleArrayRegion(outYArray, 0, numPts, &y[0]);
+    if (outZArray)
+        env->SetDoubleArrayRegion(outZArray, 0, numPts, &z[0]);
+}
+
+JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_CoordSystem_geographicToLocalBatch
+  (JNIEnv *env, jobject obj, jdoubleArray inXArray, jdoubleArray inYArray, jdoubleArray inZArray, jdoubleArray outXArray, jdoubleArray outYArray, jdoubleArray outZArray)
+{
+    try
+    {
+        CoordSystem *coordSys = CoordSystemClassInfo::getClassInfo()->getObject(env,obj);
+        if (!coordSys)
+            return false;
+
+        std::vector<double> x,y,z;
+        if (!ReadBatch(env,inXArray,inYArray,inZArray,outXArray,outYArray,outZArray,x,y,z))
+            return false;
+        if (!x.empty())
+            coordSys->geographicToLocalBatch(&x[0],&y[0],&z[0],x.size());
+        WriteBatch(env,outXArray,outYArray,outZArray,x,y,z);
+
+        return true;
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in CoordSystem::geographicToLocalBatch()");
+    }
+
+    return false;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_CoordSystem_localToGeographicBatch
+  (JNIEnv *env, jobject obj, jdoubleArray inXArray, jdoubleArray inYArray, jdoubleArray inZArray, jdoubleArray outXArray, jdoubleArray outYArray, jdoubleArray outZArray)
+{
+    try
+    {
+        CoordSystem *coordSys = CoordSystemClassInfo::getClassInfo()->getObject(env,obj);
+        if (!coordSys)
+            return false;
+
+        std::vector<double> x,y,z;
+        if (!ReadBatch(env,inXArray,inYArray,inZArray,outXArray,outYArray,outZArray,x,y,z))
+            return false;
+        if (!x.empty())
+            coordSys->localToGeographicBatch(&x[0],&y[0],&z[0],x.size());
+        WriteBatch(env,outXArray,outYArray,outZArray,x,y,z);
+
+        return true;
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in CoordSystem::localToGeographicBatch()");
+    }
+
+    return false;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_CoordSystem_CoordSystemConvert3dBatch
+  (JNIEnv *env, jclass cls, jobject inSystemObj, jobject outSystemObj, jdoubleArray inXArray, jdoubleArray inYArray, jdoubleArray inZArray, jdoubleArray outXArray, jdoubleArray outYArray, jdoubleArray outZArray)
+{
+    try
+    {
+        CoordSystem *inCoordSys = CoordSystemClassInfo::getClassInfo()->getObject(env,inSystemObj);
+        CoordSystem *outCoordSys = CoordSystemClassInfo::getClassInfo()->getObject(env,outSystemObj);
+        if (!inCoordSys || !outCoordSys)
+            return false;
+
+        std::vector<double> x,y,z;
+        if (!ReadBatch(env,inXArray,inYArray,inZArray,outXArray,outYArray,outZArray,x,y,z))
+            return false;
+        if (!x.empty())
+            CoordSystemConvert3dBatch(inCoordSys,outCoordSys,&x[0],&y[0],&z[0],x.size());
+        WriteBatch(env,outXArray,outYArray,outZArray,x,y,z);
+
+        return true;
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in CoordSystem::CoordSystemConvert3dBatch()");
+    }
+
+    return false;
+}
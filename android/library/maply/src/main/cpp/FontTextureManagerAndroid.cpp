@@ -94,7 +94,7 @@ DrawableString *FontTextureManagerAndroid::addString(JNIEnv *env,const std::vect
     DrawStringRep *drawStringRep = new DrawStringRep(drawString->getId());
 
     // Look for the font manager that manages the typeface/attribute combo we need
-    FontManagerAndroid *fm = findFontManagerForFont(labelInfo->typefaceObj,*labelInfo);
+    FontManagerAndroid *fm = findFontManagerForFont(env,labelInfo->typefaceObj,*labelInfo);
 
 	JavaIntegerClassInfo *intClassInfo = JavaIntegerClassInfo::getClassInfo(env);
 
@@ -156,6 +156,8 @@ DrawableString *FontTextureManagerAndroid::addString(JNIEnv *env,const std::vect
         		// Just don't add the glyph, for now
         	}
 
+        	if (bitmapObj)
+        		env->DeleteLocalRef(bitmapObj);
         	env->DeleteLocalRef(glyphObj);
     	}
 
@@ -204,7 +206,7 @@ DrawableString *FontTextureManagerAndroid::addString(JNIEnv *env,const std::vect
     return drawString;
 }
 
-FontTextureManagerAndroid::FontManagerAndroid *FontTextureManagerAndroid::findFontManagerForFont(jobject typefaceObj,const LabelInfo &inLabelInfo)
+FontTextureManagerAndroid::FontManagerAndroid *FontTextureManagerAndroid::findFontManagerForFont(JNIEnv *env,jobject typefaceObj,const LabelInfo &inLabelInfo)
 {
 	const LabelInfoAndroid &labelInfo = (LabelInfoAndroid &)inLabelInfo;
 
@@ -213,7 +215,7 @@ FontTextureManagerAndroid::FontManagerAndroid *FontTextureManagerAndroid::findFo
 	{
 		FontManagerAndroid *fm = (FontManagerAndroid *)*it;
 
-		if (labelInfo.typefaceIsSame(fm->typefaceObj) &&
+		if (labelInfo.typefaceIsSame(env,fm->typefaceObj) &&
                 fm->pointSize == labelInfo.fontSize &&
 				fm->color == labelInfo.textColor &&
 				fm->outlineColor == labelInfo.outlineColor &&
@@ -222,7 +224,7 @@ FontTextureManagerAndroid::FontManagerAndroid *FontTextureManagerAndroid::findFo
 	}
 
 	// Didn't find it, so create it
-	FontManagerAndroid *fm = new FontManagerAndroid(labelInfo.env,typefaceObj);
+	FontManagerAndroid *fm = new FontManagerAndroid(env,typefaceObj);
 	fm->fontName = "";
 	fm->color = labelInfo.textColor;
 	fm->pointSize = labelInfo.fontSize;
@@ -58,7 +58,7 @@ protected:
     JNIEnv *savedEnv;
 
     // Find the appropriate font manager
-    FontManagerAndroid *findFontManagerForFont(jobject typefaceObj,const LabelInfo &labelInfo);
+    FontManagerAndroid *findFontManagerForFont(JNIEnv *env,jobject typefaceObj,const LabelInfo &labelInfo);
 
     // Render the glyph with the given font manager
 //    RawDataRef renderGlyph(WKGlyph glyph,FontManageriOS *fm,Point2f &size,Point2f &glyphSize,Point2f &offset,Point2f &textureOffset);
@@ -86,6 +86,7 @@ JNIEXPORT jobjectArray JNICALL Java_com_mousebird_maply_GeoJSONSource_parseData
         std::vector<VectorObject *> vecObjs;
         const char *cStr = env->GetStringUTFChars(json, 0);
         bool parsed = inst->parseData(cStr, vecObjs);
+        env->ReleaseStringUTFChars(json, cStr);
 
         if (!parsed || vecObjs.empty())
             return NULL;
@@ -23,13 +23,13 @@
 namespace WhirlyKit
 {
 
-ImageWrapper::ImageWrapper(RawDataRef rawData,int width,int height)
-	: rawData(rawData), width(width), height(height), placeholder(false)
+ImageWrapper::ImageWrapper(RawDataRef rawData,int width,int height,bool converted)
+	: rawData(rawData), width(width), height(height), placeholder(false), converted(converted)
 {
 }
     
 ImageWrapper::ImageWrapper()
-: placeholder(true), width(0), height(0)
+: placeholder(true), width(0), height(0), converted(false)
 {
     
 }
@@ -45,6 +45,7 @@ Texture *ImageWrapper::buildTexture(int borderSize,int width,int height)
 	Texture *tex = new Texture("Tile Quad Loader",rawData,false);
 	tex->setWidth(width);
 	tex->setHeight(height);
+	tex->setIsConverted(converted);
 	return tex;
 }
 
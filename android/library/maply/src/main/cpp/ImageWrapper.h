@@ -32,7 +32,7 @@ namespace WhirlyKit
 class ImageWrapper : public LoadedImage
 {
 public:
-	ImageWrapper(RawDataRef rawData,int width,int height);
+	ImageWrapper(RawDataRef rawData,int width,int height,bool converted=false);
     ImageWrapper();
 
 	// Construct the texture
@@ -52,6 +52,8 @@ public:
     virtual int getHeight();
 
     bool placeholder;
+    /// Data is already in the layer's image format
+    bool converted;
     int width,height;
     RawDataRef rawData;
 };
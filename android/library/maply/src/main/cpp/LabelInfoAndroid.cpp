@@ -37,7 +37,7 @@ void LabelInfoAndroid::clearRefs(JNIEnv *env)
 	}
 }
 
-bool LabelInfoAndroid::typefaceIsSame(const jobject inTypeface) const
+bool LabelInfoAndroid::typefaceIsSame(JNIEnv *env,const jobject inTypeface) const
 {
 	// Obviously true here
 	if (inTypeface == typefaceObj)
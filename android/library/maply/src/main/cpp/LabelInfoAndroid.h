@@ -43,7 +43,7 @@ public:
 	void setTypeface(JNIEnv *env,jobject typefacObj);
 
 	// Compare typefaces
-	bool typefaceIsSame(const jobject inTypeface) const;
+	bool typefaceIsSame(JNIEnv *env,const jobject inTypeface) const;
 
 	// Globe reference to typeface object
 	jobject typefaceObj;
@@ -51,7 +51,8 @@ public:
 	// Font size
 	float fontSize;
 
-	// Used to pass the JNI Env down into the depths
+	// Used to pass the JNI Env down into the depths.
+	// Only set on the per-call copy made in addLabels.
 	JNIEnv *env;
 	jobject labelInfoObj;
 };
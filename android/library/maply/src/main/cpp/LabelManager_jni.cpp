@@ -98,9 +98,11 @@ JNIEXPORT jlong JNICALL Java_com_mousebird_maply_LabelManager_addLabels
 
 		LabelClassInfo *labelClassInfo = LabelClassInfo::getClassInfo();
 		ShapeSet shapes;
-		// We need this in the depths of the engine
-		labelInfo->env = env;
-		labelInfo->labelInfoObj = labelInfoObj;
+		// We need these in the depths of the engine.  Other threads may be adding
+		//  labels with the same label info, so we work on our own copy.
+		LabelInfoAndroid threadLabelInfo(*labelInfo);
+		threadLabelInfo.env = env;
+		threadLabelInfo.labelInfoObj = labelInfoObj;
 		while (listClassInfo->hasNext(env,labelObjList,iterObj))
 		{
 			jobject javaLabelObj = listClassInfo->getNext(env,labelObjList,iterObj);
@@ -111,15 +113,12 @@ JNIEXPORT jlong JNICALL Java_com_mousebird_maply_LabelManager_addLabels
 		env->DeleteLocalRef(iterObj);
 
 		// Resolve a missing program
-		if (labelInfo->programID == EmptyIdentity)
+		if (threadLabelInfo.programID == EmptyIdentity)
 	        {
                   // Note: Doesn't handle motion
-                  labelInfo->programID = labelManager->getScene()->getProgramIDBySceneName(kToolkitDefaultScreenSpaceProgram);
+                  threadLabelInfo.programID = labelManager->getScene()->getProgramIDBySceneName(kToolkitDefaultScreenSpaceProgram);
                 }
-		SimpleIdentity labelId = labelManager->addLabels(labels,*labelInfo,*changeSet);
-
-		labelInfo->env = NULL;
-		labelInfo->labelInfoObj = NULL;
+		SimpleIdentity labelId = labelManager->addLabels(labels,threadLabelInfo,*changeSet);
 
 		return labelId;
 	}
@@ -143,4 +143,46 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_ParticleSystemManager_removePart
     }
 }
 
+JNIEXPORT void JNICALL Java_com_mousebird_maply_ParticleSystemManager_enableParticleSystems
+(JNIEnv *env, jobject obj, jlongArray idArrayObj, jboolean enable, jobject changeObj)
+{
+    try {
+        ParticleSystemManagerClassInfo *classInfo = ParticleSystemManagerClassInfo::getClassInfo();
+        ParticleSystemManager *particleSystemManager = classInfo->getObject(env, obj);
+        
+        ChangeSet *changes = ChangeSetClassInfo::getClassInfo()->getObject(env, changeObj);
+        if (!particleSystemManager || !changes)
+            return;
+        
+        SimpleIDSet idSet;
+        ConvertLongArrayToSet(env,idArrayObj,idSet);
+        for (SimpleIdentity sysID : idSet)
+            particleSystemManager->enableParticleSystem(sysID, enable, *changes);
+    }
+    catch(...) {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in ParticleSystemManager::enableParticleSystems");
+    }
+}
+
+JNIEXPORT void JNICALL Java_com_mousebird_maply_ParticleSystemManager_removeParticleSystems
+(JNIEnv *env, jobject obj, jlongArray idArrayObj, jobject changeObj)
+{
+    try {
+        ParticleSystemManagerClassInfo *classInfo = ParticleSystemManagerClassInfo::getClassInfo();
+        ParticleSystemManager *particleSystemManager = classInfo->getObject(env, obj);
+        
+        ChangeSet *changes = ChangeSetClassInfo::getClassInfo()->getObject(env, changeObj);
+        if (!particleSystemManager || !changes)
+            return;
+        
+        SimpleIDSet idSet;
+        ConvertLongArrayToSet(env,idArrayObj,idSet);
+        for (SimpleIdentity sysID : idSet)
+            particleSystemManager->removeParticleSystem(sysID, *changes);
+    }
+    catch(...) {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in ParticleSystemManager::removeParticleSystems");
+    }
+}
+
                                                                                               
@@ -76,7 +76,7 @@ public:
     JavaVM* jvm;
 
 	// Methods for Java quad image layer
-    jmethodID startFetchJava,scheduleEvalStepJava;
+    jmethodID startFetchJava,scheduleEvalStepJava,tileUnloadedJava;
 
 	QuadImageLayerAdapter(CoordSystem *coordSys)
 		: env(NULL), javaObj(NULL), renderer(NULL), coordSys(coordSys),
@@ -85,7 +85,7 @@ public:
 		  borderTexel(0),textureAtlasSize(2048),enable(true),fade(1.0),color(255,255,255,255),imageFormat(0), interpType(GL_LINEAR),
 		  currentImage(0.0), animationWrap(true), maxCurrentImage(-1), allowFrameLoading(true), animationPeriod(10.0),
 		  maxTiles(256), importanceScale(1.0), tileSize(256), lastViewState(NULL), shaderID(EmptyIdentity), renderTargetID(EmptyIdentity),
-		  scene(NULL), control(NULL),scheduleEvalStepJava(0)
+		  scene(NULL), control(NULL),scheduleEvalStepJava(0),tileUnloadedJava(0)
 	{
 		useTargetZoomLevel = true;
         canShortCircuitImportance = false;
@@ -107,6 +107,7 @@ public:
 		jclass theClass = env->GetObjectClass(javaObj);
 		startFetchJava = env->GetMethodID(theClass,"startFetch","(IIII)V");
 		scheduleEvalStepJava = env->GetMethodID(theClass,"scheduleEvalStep","()V");
+		tileUnloadedJava = env->GetMethodID(theClass,"tileUnloaded","(III)V");
         env->DeleteLocalRef(theClass);
 	}
 
@@ -548,11 +549,11 @@ public:
     }
 
     /// The tile loaded correctly (or didn't if it's null)
-    void tileLoaded(int level,int col,int row,int frame,RawDataRef imgData,int width,int height,ChangeSet &changes)
+    void tileLoaded(int level,int col,int row,int frame,RawDataRef imgData,int width,int height,ChangeSet &changes,bool converted=false)
     {
     	if (imgData)
     	{
-    		ImageWrapper tileWrapper(imgData,width,height);
+    		ImageWrapper tileWrapper(imgData,width,height,converted);
     		tileLoader->loadedImage(this, &tileWrapper, level, col, row, frame, changes);
     	} else {
             if (level < minZoom)
@@ -566,11 +567,11 @@ public:
     }
 
     /// The tile loaded correctly (or didn't if it's null)
-    void tileLoaded(int level,int col,int row,int frame,std::vector<RawDataRef> &imgData,int width,int height,ChangeSet &changes)
+    void tileLoaded(int level,int col,int row,int frame,std::vector<RawDataRef> &imgData,int width,int height,ChangeSet &changes,bool converted=false)
     {
         std::vector<LoadedImage *> images(imgData.size());
         for (unsigned int ii=0;ii<imgData.size();ii++)
-            images[ii] = new ImageWrapper(imgData[ii],width,height);
+            images[ii] = new ImageWrapper(imgData[ii],width,height,converted);
         tileLoader->loadedImages(this, images, level, col, row, frame, changes);
         for (auto wrap : images)
             delete wrap;
@@ -587,6 +588,9 @@ public:
     void tileWasUnloaded(int level,int col,int row)
     {
 //      __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Tile did unload: %d: (%d,%d)",level,col,row);
+        // Let the tile source cancel anything it's still fetching for this one
+        if (tileUnloadedJava)
+            env->CallVoidMethod(javaObj, tileUnloadedJava, level, col, row);
         scheduleEvalStep();
     }
 
@@ -1370,6 +1374,164 @@ JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeRef
     return false;
 }
 
+// Hand a single bitmap over to the adapter
+static void TileDidLoadBitmap(JNIEnv *env,QuadImageLayerAdapter *adapter,int x,int y,int level,int frame,jobject bitmapObj,ChangeSet &changes)
+{
+    AndroidBitmapInfo info;
+    if (AndroidBitmap_getInfo(env, bitmapObj, &info) < 0)
+    {
+        return;
+    }
+    if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Only dealing with 8888 bitmaps in QuadImageTileLayer");
+        return;
+    }
+    // Copy the raw data over to the texture
+    void* bitmapPixels;
+    if (AndroidBitmap_lockPixels(env, bitmapObj, &bitmapPixels) < 0)
+    {
+        return;
+    }
+
+    if (info.height > 0 && info.width > 0)
+    {
+        RawDataRef rawDataRef(new MutableRawData(bitmapPixels,info.height*info.width*4));
+
+        adapter->tileLoaded(level,x,y,frame,rawDataRef,info.width,info.height,changes);
+    }
+
+    AndroidBitmap_unlockPixels(env, bitmapObj);
+}
+
+// Hand all the frames for a tile over to the adapter
+static void TileDidLoadBitmaps(JNIEnv *env,QuadImageLayerAdapter *adapter,int x,int y,int level,int frame,jobjectArray bitmapsObj,ChangeSet &changes)
+{
+    int numImages = env->GetArrayLength(bitmapsObj);
+    int width,height;
+    std::vector<RawDataRef> images;
+    images.reserve(numImages);
+    for (int ii=0;ii<numImages;ii++)
+    {
+        jobject bitmapObj = env->GetObjectArrayElement(bitmapsObj,ii);
+
+        AndroidBitmapInfo info;
+        if (AndroidBitmap_getInfo(env, bitmapObj, &info) < 0)
+        {
+            return;
+        }
+        if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888)
+        {
+            __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Only dealing with 8888 bitmaps in QuadImageTileLayer");
+            return;
+        }
+        // Copy the raw data over to the texture
+        void* bitmapPixels;
+        if (AndroidBitmap_lockPixels(env, bitmapObj, &bitmapPixels) < 0)
+        {
+            return;
+        }
+
+        if (info.height > 0 && info.width > 0)
+        {
+            RawDataRef rawData(new MutableRawData(bitmapPixels,info.height*info.width*4));
+            images.push_back(rawData);
+            width = info.width;  height = info.height;
+        } else
+            __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Bad image in QuadImageTileLayer::nativeTileDidLoad2()");
+
+        AndroidBitmap_unlockPixels(env, bitmapObj);
+        env->DeleteLocalRef(bitmapObj);
+    }
+
+    adapter->tileLoaded(level,x,y,frame,images,width,height,changes);
+}
+
+// Bytes per pixel for raw data already in the given image format (ImageFormat ordinal on the Java side).
+// Zero means we can't take it directly.  ETC2 and EAC need compressed atlases, which we don't have yet.
+static int BytesPerPixelForImageFormat(int imageFormat)
+{
+    switch (imageFormat)
+    {
+        case 0:
+        case 16:
+            return 4;
+        case 1:
+        case 2:
+        case 3:
+            return 2;
+        case 4:
+        case 5:
+        case 6:
+        case 7:
+        case 8:
+            return 1;
+        default:
+            return 0;
+    }
+}
+
+// Copy a direct byte buffer in the given format.  RGBA gets converted to the layer's format as usual.
+// Anything else has to be in the layer's format already.  Returns an empty ref if it won't work.
+static RawDataRef RawDataForBuffer(JNIEnv *env,QuadImageLayerAdapter *adapter,jobject bufferObj,int width,int height,int imageFormat,bool &converted)
+{
+    int bytesPerPixel = BytesPerPixelForImageFormat(imageFormat);
+    if (bytesPerPixel == 0)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Can't take image format %d directly in QuadImageTileLayer",imageFormat);
+        return RawDataRef();
+    }
+    if (bytesPerPixel != 4 && imageFormat != adapter->imageFormat)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Tile image format %d doesn't match layer format %d in QuadImageTileLayer",imageFormat,adapter->imageFormat);
+        return RawDataRef();
+    }
+
+    void *data = env->GetDirectBufferAddress(bufferObj);
+    jlong capacity = env->GetDirectBufferCapacity(bufferObj);
+    long size = (long)width * height * bytesPerPixel;
+    if (!data || size <= 0 || capacity < size)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Bad image buffer in QuadImageTileLayer");
+        return RawDataRef();
+    }
+
+    converted = bytesPerPixel != 4;
+    return RawDataRef(new MutableRawData(data,(unsigned int)size));
+}
+
+// Hand a single raw image buffer over to the adapter
+static void TileDidLoadBuffer(JNIEnv *env,QuadImageLayerAdapter *adapter,int x,int y,int level,int frame,jobject bufferObj,int width,int height,int imageFormat,ChangeSet &changes)
+{
+    bool converted = false;
+    RawDataRef rawData = RawDataForBuffer(env,adapter,bufferObj,width,height,imageFormat,converted);
+    // An empty one means it didn't load
+    adapter->tileLoaded(level,x,y,frame,rawData,rawData ? width : 1,rawData ? height : 1,changes,converted);
+}
+
+// Hand raw image buffers for all the frames over to the adapter
+static void TileDidLoadBuffers(JNIEnv *env,QuadImageLayerAdapter *adapter,int x,int y,int level,int frame,jobjectArray buffersObj,int width,int height,int imageFormat,ChangeSet &changes)
+{
+    int numImages = env->GetArrayLength(buffersObj);
+    bool converted = false;
+    std::vector<RawDataRef> images;
+    images.reserve(numImages);
+    for (int ii=0;ii<numImages;ii++)
+    {
+        jobject bufferObj = env->GetObjectArrayElement(buffersObj,ii);
+        RawDataRef rawData = RawDataForBuffer(env,adapter,bufferObj,width,height,imageFormat,converted);
+        env->DeleteLocalRef(bufferObj);
+        if (!rawData)
+        {
+            adapter->tileLoaded(level,x,y,frame,RawDataRef(),1,1,changes);
+            return;
+        }
+        images.push_back(rawData);
+    }
+
+    adapter->tileLoaded(level,x,y,frame,images,width,height,changes,converted);
+}
+
 JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTileDidLoad__IIIILandroid_graphics_Bitmap_2Lcom_mousebird_maply_ChangeSet_2
   (JNIEnv *env, jobject obj, jint x, jint y, jint level, jint frame, jobject bitmapObj, jobject changesObj)
 {
@@ -1381,34 +1543,8 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTileDid
 		  {
 			return;
 		  }
-//        adapter->env = env;
-
-		AndroidBitmapInfo info;
-		if (AndroidBitmap_getInfo(env, bitmapObj, &info) < 0)
-		{
-		    return;
-	    }
-		if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888)
-		{
-			__android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Only dealing with 8888 bitmaps in QuadImageTileLayer");
-		    return;
-	    }
-		// Copy the raw data over to the texture
-		void* bitmapPixels;
-		if (AndroidBitmap_lockPixels(env, bitmapObj, &bitmapPixels) < 0)
-	    {
-		    return;
-	    }
-        
-        if (info.height > 0 && info.width > 0)
-        {
-            uint32_t* src = (uint32_t*) bitmapPixels;
-            RawDataRef rawDataRef(new MutableRawData(bitmapPixels,info.height*info.width*4));
 
-            adapter->tileLoaded(level,x,y,frame,rawDataRef,info.width,info.height,*changes);
-        }
-        
-		AndroidBitmap_unlockPixels(env, bitmapObj);
+		TileDidLoadBitmap(env,adapter,x,y,level,frame,bitmapObj,*changes);
 //		__android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Tile did load: %d: (%d,%d) %d",level,x,y,frame);
     }
 	catch (...)
@@ -1428,47 +1564,8 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTileDid
         {
             return;
         }
-//        adapter->env = env;
-        
-        int numImages = env->GetArrayLength(bitmapsObj);
-        int width,height;
-        std::vector<RawDataRef> images;
-        images.reserve(numImages);
-        for (int ii=0;ii<numImages;ii++)
-        {
-            jobject bitmapObj = env->GetObjectArrayElement(bitmapsObj,ii);
-
-            AndroidBitmapInfo info;
-            if (AndroidBitmap_getInfo(env, bitmapObj, &info) < 0)
-            {
-                return;
-            }
-            if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888)
-            {
-                __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Only dealing with 8888 bitmaps in QuadImageTileLayer");
-                return;
-            }
-            // Copy the raw data over to the texture
-            void* bitmapPixels;
-            if (AndroidBitmap_lockPixels(env, bitmapObj, &bitmapPixels) < 0)
-            {
-                return;
-            }
-            
-            if (info.height > 0 && info.width > 0)
-            {
-                uint32_t* src = (uint32_t*) bitmapPixels;
-                RawDataRef rawData(new MutableRawData(bitmapPixels,info.height*info.width*4));
-                images.push_back(rawData);
-                width = info.width;  height = info.height;
-            } else
-                __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Bad image in QuadImageTileLayer::nativeTileDidLoad2()");
-            
-            AndroidBitmap_unlockPixels(env, bitmapObj);
-        }
-
-        adapter->tileLoaded(level,x,y,frame,images,width,height,*changes);
 
+        TileDidLoadBitmaps(env,adapter,x,y,level,frame,bitmapsObj,*changes);
         //		__android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Tile did load: %d: (%d,%d) %d",level,x,y,frame);
     }
     catch (...)
@@ -1477,6 +1574,57 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTileDid
     }
 }
 
+JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTilesDidLoad
+  (JNIEnv *env, jobject obj, jintArray tileInfoObj, jobjectArray imagesObj, jobject changesObj)
+{
+    try
+    {
+        QuadImageLayerAdapter *adapter = QILAdapterClassInfo::getClassInfo()->getObject(env,obj);
+        ChangeSet *changes = ChangeSetClassInfo::getClassInfo()->getObject(env,changesObj);
+        if (!adapter || !changes || !tileInfoObj || !imagesObj)
+            return;
+
+        // Seven ints per tile: x, y, level, frame, width, height and image format.
+        // The last three are only used for raw buffers, which have a format of 0 or more.
+        int numTiles = env->GetArrayLength(imagesObj);
+        if (numTiles == 0 || env->GetArrayLength(tileInfoObj) < 7*numTiles)
+            return;
+        std::vector<jint> tileInfo(7*numTiles);
+        env->GetIntArrayRegion(tileInfoObj, 0, 7*numTiles, &tileInfo[0]);
+
+        jclass bitmapClass = env->FindClass("android/graphics/Bitmap");
+        jclass bufferClass = env->FindClass("java/nio/ByteBuffer");
+        for (int ii=0;ii<numTiles;ii++)
+        {
+            const jint *info = &tileInfo[7*ii];
+            int x = info[0], y = info[1], level = info[2], frame = info[3];
+            int width = info[4], height = info[5], imageFormat = info[6];
+            jobject imageObj = env->GetObjectArrayElement(imagesObj,ii);
+            if (!imageObj)
+                // Didn't load
+                adapter->tileLoaded(level,x,y,frame,RawDataRef(),1,1,*changes);
+            else if (imageFormat >= 0)
+            {
+                if (env->IsInstanceOf(imageObj, bufferClass))
+                    TileDidLoadBuffer(env,adapter,x,y,level,frame,imageObj,width,height,imageFormat,*changes);
+                else
+                    TileDidLoadBuffers(env,adapter,x,y,level,frame,(jobjectArray)imageObj,width,height,imageFormat,*changes);
+            } else if (env->IsInstanceOf(imageObj, bitmapClass))
+                TileDidLoadBitmap(env,adapter,x,y,level,frame,imageObj,*changes);
+            else
+                TileDidLoadBitmaps(env,adapter,x,y,level,frame,(jobjectArray)imageObj,*changes);
+            if (imageObj)
+                env->DeleteLocalRef(imageObj);
+        }
+        env->DeleteLocalRef(bitmapClass);
+        env->DeleteLocalRef(bufferClass);
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in QuadImageTileLayer::nativeTilesDidLoad()");
+    }
+}
+
 JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTileDidNotLoad
   (JNIEnv *env, jobject obj, jint x, jint y, jint level, jint frame, jobject changesObj)
 {
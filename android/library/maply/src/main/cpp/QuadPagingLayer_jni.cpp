@@ -592,6 +592,63 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_boundsForTileNat
     }
 }
 
+JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_geoBoundsForTileArrayNative
+(JNIEnv *env, jobject obj, jint x, jint y, jint level, jdoubleArray boundsArray)
+{
+    try
+    {
+        QPLAdapterClassInfo *classInfo = QPLAdapterClassInfo::getClassInfo();
+        QuadPagingLayerAdapter *adapter = classInfo->getObject(env,obj);
+        if (!adapter || !boundsArray || env->GetArrayLength(boundsArray) < 4)
+            return;
+
+        Mbr mbr = adapter->getController()->getQuadtree()->generateMbrForNode(WhirlyKit::Quadtree::Identifier(x,y,level));
+
+        GeoMbr geoMbr;
+        CoordSystem *wkCoordSys = adapter->getController()->getCoordSys();
+        geoMbr.addGeoCoord(wkCoordSys->localToGeographic(Point3f(mbr.ll().x(),mbr.ll().y(),0.0)));
+        geoMbr.addGeoCoord(wkCoordSys->localToGeographic(Point3f(mbr.ur().x(),mbr.ll().y(),0.0)));
+        geoMbr.addGeoCoord(wkCoordSys->localToGeographic(Point3f(mbr.ur().x(),mbr.ur().y(),0.0)));
+        geoMbr.addGeoCoord(wkCoordSys->localToGeographic(Point3f(mbr.ll().x(),mbr.ur().y(),0.0)));
+
+        jdouble bounds[4];
+        bounds[0] = geoMbr.ll().x();
+        bounds[1] = geoMbr.ll().y();
+        bounds[2] = geoMbr.ur().x();
+        bounds[3] = geoMbr.ur().y();
+        env->SetDoubleArrayRegion(boundsArray, 0, 4, bounds);
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in QuadPagingLayer::geoBoundsForTileArrayNative()");
+    }
+}
+
+JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_boundsForTileArrayNative
+(JNIEnv *env, jobject obj, jint x, jint y, jint level, jdoubleArray boundsArray)
+{
+    try
+    {
+        QPLAdapterClassInfo *classInfo = QPLAdapterClassInfo::getClassInfo();
+        QuadPagingLayerAdapter *adapter = classInfo->getObject(env,obj);
+        if (!adapter || !boundsArray || env->GetArrayLength(boundsArray) < 4)
+            return;
+
+        Mbr mbr = adapter->getController()->getQuadtree()->generateMbrForNode(WhirlyKit::Quadtree::Identifier(x,y,level));
+
+        jdouble bounds[4];
+        bounds[0] = mbr.ll().x();
+        bounds[1] = mbr.ll().y();
+        bounds[2] = mbr.ur().x();
+        bounds[3] = mbr.ur().y();
+        env->SetDoubleArrayRegion(boundsArray, 0, 4, bounds);
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in QuadPagingLayer::boundsForTileArrayNative()");
+    }
+}
+
 JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_setMaxTiles
 (JNIEnv *env, jobject obj, jint maxTiles)
 {
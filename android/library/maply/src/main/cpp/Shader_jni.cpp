@@ -288,3 +288,60 @@ JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_Shader_setUniformNative__Lja
     
     return false;
 }
+
+JNIEXPORT jint JNICALL Java_com_mousebird_maply_Shader_getUniformHandle
+  (JNIEnv *env, jobject obj, jstring nameStr)
+{
+    try
+    {
+        OpenGLES2ProgramClassInfo *classInfo = OpenGLES2ProgramClassInfo::getClassInfo();
+        OpenGLES2Program *inst = classInfo->getObject(env,obj);
+        if (!inst || !nameStr)
+            return -1;
+        
+        JavaString name(env,nameStr);
+        return inst->findUniformHandle(name.cStr);
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in Shader::getUniformHandle()");
+    }
+    
+    return -1;
+}
+
+JNIEXPORT jint JNICALL Java_com_mousebird_maply_Shader_setUniformsNative
+  (JNIEnv *env, jobject obj, jintArray handleArray, jfloatArray valueArray)
+{
+    try
+    {
+        OpenGLES2ProgramClassInfo *classInfo = OpenGLES2ProgramClassInfo::getClassInfo();
+        OpenGLES2Program *inst = classInfo->getObject(env,obj);
+        if (!inst || !handleArray || !valueArray)
+            return 0;
+        
+        // Four values per uniform, whatever its type
+        int numHandles = env->GetArrayLength(handleArray);
+        if (env->GetArrayLength(valueArray) < 4*numHandles)
+            return 0;
+        
+        glUseProgram(inst->getProgram());
+        
+        jint *handles = env->GetIntArrayElements(handleArray, NULL);
+        jfloat *vals = env->GetFloatArrayElements(valueArray, NULL);
+        int numSet = 0;
+        for (int ii=0;ii<numHandles;ii++)
+            if (handles[ii] >= 0 && inst->setUniformValues(handles[ii],&vals[4*ii]))
+                numSet++;
+        env->ReleaseIntArrayElements(handleArray, handles, JNI_ABORT);
+        env->ReleaseFloatArrayElements(valueArray, vals, JNI_ABORT);
+        
+        return numSet;
+    }
+    catch (...)
+    {
+        __android_log_print(ANDROID_LOG_VERBOSE, "Maply", "Crash in Shader::setUniformsNative()");
+    }
+    
+    return 0;
+}
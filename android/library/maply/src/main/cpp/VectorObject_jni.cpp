@@ -702,6 +702,7 @@ JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_VectorObject_clipToMbrNative
 	                VectorLinearRef newLinear = VectorLinear::createLinear();
 	                newLinear->setAttrDict(*(linear->getAttrDict()));
 	                newLinear->pts = *it;
+	                newLinear->initGeoMbr();
 	                retVecObj->shapes.insert(newLinear);
 	            }
             }
@@ -713,20 +714,46 @@ JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_VectorObject_clipToMbrNative
             else if(std::dynamic_pointer_cast<VectorAreal>(*it) != NULL)
             {
 	            VectorArealRef ar = std::dynamic_pointer_cast<VectorAreal>(*it);
-	            if (ar)
+	            if (ar && !ar->loops.empty())
 	            {
-	                for (int ii=0;ii<ar->loops.size();ii++)
+	                // The first loop is the outside, the rest are holes
+	                std::vector<VectorRing> outerLoops;
+	                ClipLoopToMbr(ar->loops[0], mbr, true, outerLoops);
+	                std::vector<VectorArealRef> newArs;
+	                for (unsigned int jj=0;jj<outerLoops.size();jj++)
 	                {
-	                    std::vector<VectorRing> newLoops;
-	                    ClipLoopToMbr(ar->loops[ii], mbr, true, newLoops);
-	                    for (unsigned int jj=0;jj<newLoops.size();jj++)
+	                    VectorArealRef newAr = VectorAreal::createAreal();
+	                    newAr->setAttrDict(*(ar->getAttrDict()));
+	                    newAr->loops.push_back(outerLoops[jj]);
+	                    newArs.push_back(newAr);
+	                }
+
+	                // Holes go with whichever piece of the outside they're in
+	                for (int ii=1;ii<ar->loops.size() && !newArs.empty();ii++)
+	                {
+	                    std::vector<VectorRing> holeLoops;
+	                    ClipLoopToMbr(ar->loops[ii], mbr, true, holeLoops);
+	                    for (unsigned int jj=0;jj<holeLoops.size();jj++)
 	                    {
-	                        VectorArealRef newAr = VectorAreal::createAreal();
-	                        newAr->setAttrDict(*(ar->getAttrDict()));
-	                        newAr->loops.push_back(newLoops[jj]);
-	                        retVecObj->shapes.insert(newAr);
+	                        if (holeLoops[jj].empty())
+	                            continue;
+	                        VectorArealRef owner = newArs[0];
+	                        if (newArs.size() > 1)
+	                            for (unsigned int kk=0;kk<newArs.size();kk++)
+	                                if (PointInPolygon(holeLoops[jj][0], newArs[kk]->loops[0]))
+	                                {
+	                                    owner = newArs[kk];
+	                                    break;
+	                                }
+	                        owner->loops.push_back(holeLoops[jj]);
 	                    }
 	                }
+
+	                for (unsigned int jj=0;jj<newArs.size();jj++)
+	                {
+	                    newArs[jj]->initGeoMbr();
+	                    retVecObj->shapes.insert(newArs[jj]);
+	                }
 	            }
             }
             else if(std::dynamic_pointer_cast<VectorPoints>(*it) != NULL)
@@ -742,6 +769,12 @@ JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_VectorObject_clipToMbrNative
 	                    newPoints->pts.push_back(pt);
 	                }
 	            }
+	            if (!newPoints->pts.empty())
+	            {
+	                newPoints->setAttrDict(*(points->getAttrDict()));
+	                newPoints->initGeoMbr();
+	                retVecObj->shapes.insert(newPoints);
+	            }
             }
         }
 
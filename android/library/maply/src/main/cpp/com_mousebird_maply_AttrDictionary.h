@@ -41,26 +41,26 @@ JNIEXPORT jobject JNICALL Java_com_mousebird_maply_AttrDictionary_get
 
 /*
  * Class:     com_mousebird_maply_AttrDictionary
- * Method:    setString
+ * Method:    setStringNative
  * Signature: (Ljava/lang/String;Ljava/lang/String;)V
  */
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setString
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setStringNative
   (JNIEnv *, jobject, jstring, jstring);
 
 /*
  * Class:     com_mousebird_maply_AttrDictionary
- * Method:    setInt
+ * Method:    setIntNative
  * Signature: (Ljava/lang/String;I)V
  */
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setInt
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setIntNative
   (JNIEnv *, jobject, jstring, jint);
 
 /*
  * Class:     com_mousebird_maply_AttrDictionary
- * Method:    setDouble
+ * Method:    setDoubleNative
  * Signature: (Ljava/lang/String;D)V
  */
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setDouble
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_setDoubleNative
   (JNIEnv *, jobject, jstring, jdouble);
 
 /*
@@ -73,10 +73,10 @@ JNIEXPORT jstring JNICALL Java_com_mousebird_maply_AttrDictionary_toString
 
 /*
  * Class:     com_mousebird_maply_AttrDictionary
- * Method:    addEntries
+ * Method:    addEntriesNative
  * Signature: (Lcom/mousebird/maply/AttrDictionary;)V
  */
-JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_addEntries
+JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_addEntriesNative
   (JNIEnv *, jobject, jobject);
 
 /*
@@ -111,6 +111,14 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_AttrDictionary_dispose
 JNIEXPORT jobjectArray JNICALL Java_com_mousebird_maply_AttrDictionary_getKeySet
   (JNIEnv *, jobject);
 
+/*
+ * Class:     com_mousebird_maply_AttrDictionary
+ * Method:    getEntries
+ * Signature: ()[Ljava/lang/Object;
+ */
+JNIEXPORT jobjectArray JNICALL Java_com_mousebird_maply_AttrDictionary_getEntries
+  (JNIEnv *, jobject);
+
 
 #ifdef __cplusplus
 }
@@ -31,6 +31,30 @@ JNIEXPORT jobject JNICALL Java_com_mousebird_maply_CoordSystem_localToGeographic
 JNIEXPORT jobject JNICALL Java_com_mousebird_maply_CoordSystem_CoordSystemConvert3d
   (JNIEnv *, jclass, jobject, jobject, jobject);
 
+/*
+ * Class:     com_mousebird_maply_CoordSystem
+ * Method:    geographicToLocalBatch
+ * Signature: ([D[D[D[D[D[D)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_CoordSystem_geographicToLocalBatch
+  (JNIEnv *, jobject, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray);
+
+/*
+ * Class:     com_mousebird_maply_CoordSystem
+ * Method:    localToGeographicBatch
+ * Signature: ([D[D[D[D[D[D)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_CoordSystem_localToGeographicBatch
+  (JNIEnv *, jobject, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray);
+
+/*
+ * Class:     com_mousebird_maply_CoordSystem
+ * Method:    CoordSystemConvert3dBatch
+ * Signature: (Lcom/mousebird/maply/CoordSystem;Lcom/mousebird/maply/CoordSystem;[D[D[D[D[D[D)Z
+ */
+JNIEXPORT jboolean JNICALL Java_com_mousebird_maply_CoordSystem_CoordSystemConvert3dBatch
+  (JNIEnv *, jclass, jobject, jobject, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray, jdoubleArray);
+
 /*
  * Class:     com_mousebird_maply_CoordSystem
  * Method:    nativeInit
@@ -39,6 +39,22 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_ParticleSystemManager_enablePart
 JNIEXPORT void JNICALL Java_com_mousebird_maply_ParticleSystemManager_removeParticleSystem
   (JNIEnv *, jobject, jlong, jobject);
 
+/*
+ * Class:     com_mousebird_maply_ParticleSystemManager
+ * Method:    enableParticleSystems
+ * Signature: ([JZLcom/mousebird/maply/ChangeSet;)V
+ */
+JNIEXPORT void JNICALL Java_com_mousebird_maply_ParticleSystemManager_enableParticleSystems
+  (JNIEnv *, jobject, jlongArray, jboolean, jobject);
+
+/*
+ * Class:     com_mousebird_maply_ParticleSystemManager
+ * Method:    removeParticleSystems
+ * Signature: ([JLcom/mousebird/maply/ChangeSet;)V
+ */
+JNIEXPORT void JNICALL Java_com_mousebird_maply_ParticleSystemManager_removeParticleSystems
+  (JNIEnv *, jobject, jlongArray, jobject);
+
 /*
  * Class:     com_mousebird_maply_ParticleSystemManager
  * Method:    nativeInit
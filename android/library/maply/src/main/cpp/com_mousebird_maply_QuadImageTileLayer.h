@@ -319,6 +319,14 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTileDid
 JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTileDidLoad__IIII_3Landroid_graphics_Bitmap_2Lcom_mousebird_maply_ChangeSet_2
   (JNIEnv *, jobject, jint, jint, jint, jint, jobjectArray, jobject);
 
+/*
+ * Class:     com_mousebird_maply_QuadImageTileLayer
+ * Method:    nativeTilesDidLoad
+ * Signature: ([I[Ljava/lang/Object;Lcom/mousebird/maply/ChangeSet;)V
+ */
+JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadImageTileLayer_nativeTilesDidLoad
+  (JNIEnv *, jobject, jintArray, jobjectArray, jobject);
+
 /*
  * Class:     com_mousebird_maply_QuadImageTileLayer
  * Method:    nativeTileDidNotLoad
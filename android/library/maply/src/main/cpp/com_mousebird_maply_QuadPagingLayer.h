@@ -23,6 +23,22 @@ JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_boundsForTileNat
 JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_geoBoundsForTileNative
   (JNIEnv *, jobject, jint, jint, jint, jobject, jobject);
 
+/*
+ * Class:     com_mousebird_maply_QuadPagingLayer
+ * Method:    boundsForTileArrayNative
+ * Signature: (III[D)V
+ */
+JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_boundsForTileArrayNative
+  (JNIEnv *, jobject, jint, jint, jint, jdoubleArray);
+
+/*
+ * Class:     com_mousebird_maply_QuadPagingLayer
+ * Method:    geoBoundsForTileArrayNative
+ * Signature: (III[D)V
+ */
+JNIEXPORT void JNICALL Java_com_mousebird_maply_QuadPagingLayer_geoBoundsForTileArrayNative
+  (JNIEnv *, jobject, jint, jint, jint, jdoubleArray);
+
 /*
  * Class:     com_mousebird_maply_QuadPagingLayer
  * Method:    nativeShutdown
@@ -31,6 +31,22 @@ JNIEXPORT jstring JNICALL Java_com_mousebird_maply_Shader_getName
 JNIEXPORT void JNICALL Java_com_mousebird_maply_Shader_addTextureNative
   (JNIEnv *, jobject, jobject, jstring, jlong);
 
+/*
+ * Class:     com_mousebird_maply_Shader
+ * Method:    getUniformHandle
+ * Signature: (Ljava/lang/String;)I
+ */
+JNIEXPORT jint JNICALL Java_com_mousebird_maply_Shader_getUniformHandle
+  (JNIEnv *, jobject, jstring);
+
+/*
+ * Class:     com_mousebird_maply_Shader
+ * Method:    setUniformsNative
+ * Signature: ([I[F)I
+ */
+JNIEXPORT jint JNICALL Java_com_mousebird_maply_Shader_setUniformsNative
+  (JNIEnv *, jobject, jintArray, jfloatArray);
+
 /*
  * Class:     com_mousebird_maply_Shader
  * Method:    setUniformNative
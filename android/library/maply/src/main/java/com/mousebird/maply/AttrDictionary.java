@@ -74,27 +74,77 @@ public class AttrDictionary
 	 * @param attrName Name of the attribute to set.
 	 * @param attrVal String value to set.
      */
-	public native void setString(String attrName,String attrVal);
+	public void setString(String attrName,String attrVal)
+	{
+		snapshot = null;
+		setStringNative(attrName,attrVal);
+	}
+
+	private native void setStringNative(String attrName,String attrVal);
 
 	/**
 	 * Set an int value.
 	 * @param attrName Name of the attribute to set.
 	 * @param attrVal Int value to set.
      */
-	public native void setInt(String attrName,int attrVal);
+	public void setInt(String attrName,int attrVal)
+	{
+		snapshot = null;
+		setIntNative(attrName,attrVal);
+	}
+
+	private native void setIntNative(String attrName,int attrVal);
 
 	/**
 	 * Set a double value.
 	 * @param attrName Name of the attribute to set.
 	 * @param attrVal Double value to set.
      */
-	public native void setDouble(String attrName,double attrVal);
+	public void setDouble(String attrName,double attrVal)
+	{
+		snapshot = null;
+		setDoubleNative(attrName,attrVal);
+	}
+
+	private native void setDoubleNative(String attrName,double attrVal);
+
+	// Java side copy of the attributes, if we've made one
+	private volatile AttrSnapshot snapshot = null;
+
+	/**
+	 * Copy all the attributes over to the Java side in one go.  Lookups on the
+	 * snapshot don't cross into native code, which makes it much faster when
+	 * you're going to look at a lot of attributes, like when evaluating styles.
+	 * <p>
+	 * We keep the snapshot around, so calling this again is cheap.  Changes made
+	 * through this object's setters replace it, but changes made some other way
+	 * (through another AttrDictionary wrapping the same attributes, say) won't
+	 * show up.
+	 */
+	public AttrSnapshot snapshot()
+	{
+		AttrSnapshot theSnapshot = snapshot;
+		if (theSnapshot == null)
+		{
+			theSnapshot = new AttrSnapshot(getEntries());
+			snapshot = theSnapshot;
+		}
+		return theSnapshot;
+	}
+
+	// Returns alternating keys and values
+	private native Object[] getEntries();
 
 	// Convert to a string for debugging
 	public native String toString();
 
     // Merge in key-value pairs from another dictionary
-    public native void addEntries(AttrDictionary other);
+    public void addEntries(AttrDictionary other) {
+        snapshot = null;
+        addEntriesNative(other);
+    }
+
+	private native void addEntriesNative(AttrDictionary other);
 
     // Return the full list of keys
 	public Set<String> keySet() {
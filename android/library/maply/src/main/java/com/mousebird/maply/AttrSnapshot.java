@@ -0,0 +1,260 @@
+/*
+ *  AttrSnapshot.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebird.maply;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An attribute snapshot is a read only, Java side copy of an AttrDictionary.
+ * We pull all the attributes across in one native call and after that
+ * lookups never leave Java.  That's a big win when evaluating styles, which
+ * look at the same few attributes over and over for every feature.
+ * <p>
+ * Keys are interned in a shared pool, so if you look things up with a key
+ * you got from internKey() the comparison is a single reference check.
+ * Values are String, Integer or Double, just like AttrDictionary.get().
+ * <p>
+ * You get one of these from AttrDictionary.snapshot().
+ */
+public class AttrSnapshot
+{
+    // Once the pool is this big we stop adding to it.  Lookups still work.
+    private static final int MaxPoolSize = 8192;
+    private static final ConcurrentHashMap<String,String> keyPool = new ConcurrentHashMap<String,String>();
+
+    /**
+     * Return the shared copy of the given attribute name.  Use this for
+     * names you'll be looking up a lot, like the ones in style filters.
+     */
+    public static String internKey(String key)
+    {
+        if (key == null)
+            return null;
+        String pooled = keyPool.get(key);
+        if (pooled != null)
+            return pooled;
+        if (keyPool.size() >= MaxPoolSize)
+            return key;
+        pooled = keyPool.putIfAbsent(key,key);
+        return pooled != null ? pooled : key;
+    }
+
+    final String[] keys;
+    final Object[] values;
+
+    /**
+     * Construct from alternating keys and values, which is what we get from the native side.
+     */
+    AttrSnapshot(Object[] entries)
+    {
+        int numEntries = entries != null ? entries.length / 2 : 0;
+        keys = new String[numEntries];
+        values = new Object[numEntries];
+        for (int ii=0;ii<numEntries;ii++)
+        {
+            keys[ii] = internKey((String)entries[2*ii]);
+            values[ii] = entries[2*ii+1];
+        }
+    }
+
+    /**
+     * Number of attributes.
+     */
+    public int size()
+    {
+        return keys.length;
+    }
+
+    /**
+     * Name of the attribute at the given index.
+     */
+    public String getKey(int which)
+    {
+        return keys[which];
+    }
+
+    /**
+     * Value of the attribute at the given index.
+     */
+    public Object getValue(int which)
+    {
+        return values[which];
+    }
+
+    /**
+     * Index of the given attribute or -1 if it's not there.
+     */
+    public int indexOf(String attrName)
+    {
+        if (attrName == null)
+            return -1;
+
+        // Interned keys will match here
+        for (int ii=0;ii<keys.length;ii++)
+            if (keys[ii] == attrName)
+                return ii;
+        for (int ii=0;ii<keys.length;ii++)
+            if (attrName.equals(keys[ii]))
+                return ii;
+
+        return -1;
+    }
+
+    /**
+     * True if we've got a value for the given attribute.
+     */
+    public boolean hasKey(String attrName)
+    {
+        return indexOf(attrName) >= 0;
+    }
+
+    /**
+     * Return the full list of attribute names.
+     */
+    public Set<String> keySet()
+    {
+        Set<String> keySet = new HashSet<String>();
+        for (String key : keys)
+            keySet.add(key);
+        return keySet;
+    }
+
+    /**
+     * Fetch the value for the given attribute.  This will be a String, Integer or Double.
+     * @return Returns the value or null if there was none.
+     */
+    public Object get(String attrName)
+    {
+        int which = indexOf(attrName);
+        return which >= 0 ? values[which] : null;
+    }
+
+    /**
+     * Return the given attribute as a string, converting numbers as AttrDictionary.getString() would.
+     * @return Returns a string or null if there was none.
+     */
+    public String getString(String attrName)
+    {
+        Object val = get(attrName);
+        if (val == null)
+            return null;
+        if (val instanceof String)
+            return (String)val;
+        if (val instanceof Double)
+            return formatDouble((Double)val);
+        return val.toString();
+    }
+
+    /**
+     * Return the given attribute as an Integer, converting as AttrDictionary.getInt() would.
+     * @return Returns an Integer or null if there was none.
+     */
+    public Integer getInt(String attrName)
+    {
+        int which = indexOf(attrName);
+        if (which < 0)
+            return null;
+        Object val = values[which];
+        if (val instanceof Integer)
+            return (Integer)val;
+        if (val instanceof Number)
+            return ((Number)val).intValue();
+        if (val instanceof String)
+            return (int)parseLeadingNumber((String)val,true);
+        return 0;
+    }
+
+    /**
+     * Return the given attribute as a Double, converting as AttrDictionary.getDouble() would.
+     * @return Returns a Double or null if there was none.
+     */
+    public Double getDouble(String attrName)
+    {
+        int which = indexOf(attrName);
+        if (which < 0)
+            return null;
+        Object val = values[which];
+        if (val instanceof Double)
+            return (Double)val;
+        if (val instanceof Number)
+            return ((Number)val).doubleValue();
+        if (val instanceof String)
+            return parseLeadingNumber((String)val,false);
+        return 0.0;
+    }
+
+    // Mimic the native side's number formatting (%g, without trailing zeros)
+    static String formatDouble(double val)
+    {
+        String str = String.format(Locale.US,"%g",val);
+        int expIdx = str.indexOf('e');
+        String mantissa = expIdx >= 0 ? str.substring(0,expIdx) : str;
+        String exponent = expIdx >= 0 ? str.substring(expIdx) : "";
+        if (mantissa.indexOf('.') >= 0)
+        {
+            int end = mantissa.length();
+            while (end > 0 && mantissa.charAt(end-1) == '0')
+                end--;
+            if (end > 0 && mantissa.charAt(end-1) == '.')
+                end--;
+            mantissa = mantissa.substring(0,end);
+        }
+        return mantissa + exponent;
+    }
+
+    // Parse a number off the front of the string, like a C++ stream does.  0 if there isn't one.
+    static double parseLeadingNumber(String str,boolean intOnly)
+    {
+        String trimmed = str.trim();
+        int end = 0;
+        int len = trimmed.length();
+        if (end < len && (trimmed.charAt(end) == '-' || trimmed.charAt(end) == '+'))
+            end++;
+        boolean seenDigit = false, seenDot = false, seenExp = false;
+        while (end < len)
+        {
+            char c = trimmed.charAt(end);
+            if (c >= '0' && c <= '9')
+                seenDigit = true;
+            else if (c == '.' && !intOnly && !seenDot && !seenExp)
+                seenDot = true;
+            else if ((c == 'e' || c == 'E') && !intOnly && seenDigit && !seenExp && end+1 < len)
+            {
+                seenExp = true;
+                if (trimmed.charAt(end+1) == '-' || trimmed.charAt(end+1) == '+')
+                    end++;
+            }
+            else
+                break;
+            end++;
+        }
+        if (!seenDigit)
+            return 0;
+
+        try {
+            return Double.parseDouble(trimmed.substring(0,end));
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -28,12 +28,16 @@ import android.graphics.Rect;
 import android.text.TextPaint;
 
 import java.awt.font.TextAttribute;
-import java.util.HashMap;
+import java.util.List;
 
 /**
  * The basic cluster generator installed by default.
  * <p>
  * This cluster generator will make images for grouped clusters of markers/labels.
+ * <p>
+ * The images are kept in a ClusterImageCache between layout passes, so we only
+ * draw and upload the ones we haven't seen recently.  Counts of 1000 and up are
+ * abbreviated, which keeps the number of distinct images down.
  *
  */
 public class BasicClusterGenerator extends ClusterGenerator {
@@ -75,7 +79,9 @@ public class BasicClusterGenerator extends ClusterGenerator {
     private TextAttribute font;
     private float scale;
     private float textSize = 0.f;
-    private HashMap<Integer, MaplyTexture> texByNumber;
+    private ClusterImageCache imageCache = new ClusterImageCache(ClusterImageCache.DefaultMaxImages);
+    private boolean ownsImageCache = true;
+    private Object styleKey;
     private MaplyBaseController viewC;
     private boolean correct = false;
     private Activity activity;
@@ -100,6 +106,7 @@ public class BasicClusterGenerator extends ClusterGenerator {
         this.selectable = true;
         this.markerAnimationTime = 0.2;
         this.viewC = viewC;
+        this.styleKey = new StyleKey(colors[0], null, markerSize, textSize);
     }
 
     public BasicClusterGenerator(Bitmap bitmap,int clusterNumber, Point2d markerSize,float textSize, MaplyBaseController viewC, Activity activity)
@@ -115,18 +122,142 @@ public class BasicClusterGenerator extends ClusterGenerator {
         this.selectable = true;
         this.markerAnimationTime = 0.2;
         this.viewC = viewC;
+        this.styleKey = new StyleKey(0, bitmap, markerSize, textSize);
+    }
+
+    // What a cluster image looks like, minus the label
+    static class StyleKey
+    {
+        final int color;
+        final Bitmap bitmap;
+        final double sizeX,sizeY;
+        final float textSize;
+
+        StyleKey(int color,Bitmap bitmap,Point2d size,float textSize)
+        {
+            this.color = color;
+            this.bitmap = bitmap;
+            this.sizeX = size.getX();
+            this.sizeY = size.getY();
+            this.textSize = textSize;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof StyleKey))
+                return false;
+            StyleKey other = (StyleKey)obj;
+            return color == other.color && bitmap == other.bitmap && sizeX == other.sizeX &&
+                    sizeY == other.sizeY && textSize == other.textSize;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = color;
+            hash = 31*hash + (bitmap != null ? bitmap.hashCode() : 0);
+            long bits = Double.doubleToLongBits(sizeX) ^ Double.doubleToLongBits(sizeY);
+            hash = 31*hash + (int)(bits ^ (bits >>> 32));
+            hash = 31*hash + Float.floatToIntBits(textSize);
+            return hash;
+        }
+    }
+
+    // A single cluster image: the label and the style
+    static class ImageKey
+    {
+        final String label;
+        final Object style;
+
+        ImageKey(String label,Object style)
+        {
+            this.label = label;
+            this.style = style;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof ImageKey))
+                return false;
+            ImageKey other = (ImageKey)obj;
+            return label.equals(other.label) && style.equals(other.style);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31*style.hashCode() + label.hashCode();
+        }
+    }
+
+    /**
+     * Use the given cache for the cluster images.  You can share one between
+     * generators on the same controller.  Set this before clustering starts.
+     */
+    public void setImageCache(ClusterImageCache cache)
+    {
+        if (cache == null || cache == imageCache)
+            return;
+        if (ownsImageCache)
+            releaseTextures(imageCache.clear());
+        imageCache = cache;
+        ownsImageCache = false;
+    }
+
+    /**
+     * The cache we're keeping cluster images in.  Check this for the hit rate.
+     */
+    public ClusterImageCache getImageCache()
+    {
+        return imageCache;
     }
 
     public void shutdown()
     {
+        // Let go of what's on screen, then whatever our own cache is holding.
+        // Shared caches belong to someone else.
+        flushTextures();
+        if (ownsImageCache && baseController != null)
+            baseController.removeTextures(imageCache.clear(), MaplyBaseController.ThreadMode.ThreadAny);
         viewC = null;
         activity = null;
     }
 
+    /**
+     * The text we'll put on a cluster of the given size.  Counts under 1000
+     * are shown as is.  Larger ones are abbreviated, like 1.2k+ or 15k+.
+     */
+    protected String labelForCount(int numObjects)
+    {
+        if (numObjects < 1000)
+            return Integer.toString(numObjects);
+        if (numObjects < 10000)
+            return (numObjects / 1000) + "." + ((numObjects / 100) % 10) + "k+";
+        return (numObjects / 1000) + "k+";
+    }
+
     @Override
-    public void startClusterGroup() {
-        super.startClusterGroup();
-        this.texByNumber = new HashMap<Integer, MaplyTexture>();
+    protected void textureInUse(long texID)
+    {
+        imageCache.hold(texID);
+    }
+
+    @Override
+    protected List<Long> texturesNotInUse(List<Long> texIDs)
+    {
+        return imageCache.release(texIDs);
+    }
+
+    private void releaseTextures(List<MaplyTexture> texs)
+    {
+        for (MaplyTexture tex : texs)
+            releaseTexture(tex);
     }
 
     MaplyBaseController.TextureSettings texSettings = new MaplyBaseController.TextureSettings();
@@ -137,7 +268,9 @@ public class BasicClusterGenerator extends ClusterGenerator {
             return null;
 
         ClusterGroup group = new ClusterGroup();
-        MaplyTexture tex = this.texByNumber.get(clusterInfo.numObjects);
+        String label = labelForCount(clusterInfo.numObjects);
+        ImageKey key = new ImageKey(label, styleKey);
+        MaplyTexture tex = imageCache.get(key);
         if (tex == null) {
             //Note: Pick the color based on number of markers
             //Create the Bitmap
@@ -183,11 +316,11 @@ public class BasicClusterGenerator extends ClusterGenerator {
             int yPos = (int) ((c.getHeight() / 2) - ((text.descent() + text.ascent()) / 2));
 
             //Draw Text
-            c.drawText(Integer.toString(clusterInfo.numObjects), xPos, yPos, text);
+            c.drawText(label, xPos, yPos, text);
 
             tex = baseController.addTexture(image, texSettings, MaplyBaseController.ThreadMode.ThreadCurrent);
 
-            texByNumber.put(clusterInfo.numObjects, tex);
+            releaseTextures(imageCache.put(key, tex));
         }
         group.tex = tex;
         group.size = this.size;
@@ -195,14 +328,6 @@ public class BasicClusterGenerator extends ClusterGenerator {
         return group;
     }
 
-    @Override
-    public void endClusterGroup() {
-        super.endClusterGroup();
-
-        this.texByNumber.clear();
-        this.texByNumber = null;
-    }
-
     @Override
     public int clusterNumber() {
         return this.clusterNumber;
@@ -24,6 +24,7 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Fill in this protocol to provide images when individual markers/labels are clustered.
@@ -43,7 +44,14 @@ public class ClusterGenerator
     public void startClusterGroup()
     {
         if (oldTextures != null) {
-            baseController.removeTexturesByID(new ArrayList<Long>(oldTextures), MaplyBaseController.ThreadMode.ThreadCurrent);
+            // Textures the new pass is still using stay put
+            ArrayList<Long> unused = new ArrayList<Long>();
+            for (Long texID : oldTextures)
+                if (currentTextures == null || !currentTextures.contains(texID))
+                    unused.add(texID);
+            List<Long> toRemove = texturesNotInUse(unused);
+            if (!toRemove.isEmpty())
+                baseController.removeTexturesByID(toRemove, MaplyBaseController.ThreadMode.ThreadCurrent);
             oldTextures = null;
         }
 
@@ -51,6 +59,51 @@ public class ClusterGenerator
         currentTextures = new HashSet<Long>();
     }
 
+    /**
+     * Called when a pass puts a texture on screen that the pass before it didn't.
+     */
+    protected void textureInUse(long texID)
+    {
+    }
+
+    /**
+     * Called with the textures that have gone off screen.  Return the ones
+     * that can be removed.  By default that's all of them.
+     */
+    protected List<Long> texturesNotInUse(List<Long> texIDs)
+    {
+        return texIDs;
+    }
+
+    /**
+     * Let go of the textures from the last couple of passes.  Call this on shutdown.
+     */
+    protected void flushTextures()
+    {
+        HashSet<Long> allTextures = new HashSet<Long>();
+        if (oldTextures != null)
+            allTextures.addAll(oldTextures);
+        if (currentTextures != null)
+            allTextures.addAll(currentTextures);
+        oldTextures = null;
+        currentTextures = new HashSet<Long>();
+
+        List<Long> toRemove = texturesNotInUse(new ArrayList<Long>(allTextures));
+        if (!toRemove.isEmpty() && baseController != null)
+            baseController.removeTexturesByID(toRemove, MaplyBaseController.ThreadMode.ThreadAny);
+    }
+
+    /**
+     * Hand back a texture you were keeping around.  It'll be removed once
+     * it's no longer on screen.
+     */
+    protected void releaseTexture(MaplyTexture tex)
+    {
+        if (currentTextures == null)
+            currentTextures = new HashSet<Long>();
+        currentTextures.add(tex.texID);
+    }
+
     /**
      * Generate a cluster group for a given collection of markers.
      * <p>
@@ -69,9 +122,11 @@ public class ClusterGenerator
         ClusterInfo clusterInfo = new ClusterInfo(num);
         ClusterGroup newGroup = makeClusterGroup(clusterInfo);
 
-        currentTextures.add(newGroup.tex.texID);
+        long texID = newGroup.tex.texID;
+        if (currentTextures.add(texID) && (oldTextures == null || !oldTextures.contains(texID)))
+            textureInUse(texID);
 
-        return newGroup.tex.texID;
+        return texID;
     }
 
     /**
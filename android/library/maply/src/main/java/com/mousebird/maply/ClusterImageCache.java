@@ -0,0 +1,205 @@
+/*
+ *  ClusterImageCache.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.mousebird.maply;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps cluster images around from one layout pass to the next.
+ * <p>
+ * Cluster generators draw an image for each cluster label and style.  The same
+ * handful of images come up over and over as the user moves around, so we hold
+ * on to the textures rather than drawing and uploading them again.  The cache
+ * holds a fixed number of textures and throws out the least recently used.
+ * <p>
+ * You can share one of these between cluster generators on the same controller.
+ * Each generator holds the textures it has on screen, and an evicted texture is
+ * only handed back for removal once nobody holds it.
+ */
+public class ClusterImageCache
+{
+	/// Default number of cluster images we'll hold on to
+	public static final int DefaultMaxImages = 64;
+
+	// Access ordered, so the eldest entry is the least recently used
+	private final LinkedHashMap<Object,MaplyTexture> textures = new LinkedHashMap<Object,MaplyTexture>(32,0.75f,true);
+	private final HashSet<Long> texIDs = new HashSet<Long>();
+	// Number of generators using each texture we know about
+	private final HashMap<Long,Integer> holds = new HashMap<Long,Integer>();
+	// Thrown out of the cache, but still on screen somewhere
+	private final HashMap<Long,MaplyTexture> evicted = new HashMap<Long,MaplyTexture>();
+	private int maxImages;
+	private long numRequests = 0;
+	private long numHits = 0;
+	private long numEvicted = 0;
+
+	/**
+	 * Construct with the number of images we'll keep.
+	 */
+	public ClusterImageCache(int maxImages)
+	{
+		this.maxImages = Math.max(1,maxImages);
+	}
+
+	/**
+	 * What the cache is holding and how well it's working.
+	 */
+	public static class Stats
+	{
+		/// Images in the cache
+		public int numImages;
+		/// Images we've been asked for
+		public long numRequests;
+		/// Images that were already in the cache
+		public long numHits;
+		/// Images we've thrown out to make room
+		public long numEvicted;
+
+		/**
+		 * Fraction of the requests we didn't have to draw.
+		 */
+		public double getHitRate()
+		{
+			return numRequests > 0 ? (double)numHits / numRequests : 0.0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "images: " + numImages + ", requests: " + numRequests + ", evicted: " + numEvicted +
+					", hit rate: " + String.format("%.2f", getHitRate());
+		}
+	}
+
+	/**
+	 * Return the number of images, evictions and hit rate.
+	 */
+	public synchronized Stats getStats()
+	{
+		Stats stats = new Stats();
+		stats.numImages = textures.size();
+		stats.numRequests = numRequests;
+		stats.numHits = numHits;
+		stats.numEvicted = numEvicted;
+		return stats;
+	}
+
+	/**
+	 * Most images we'll keep.
+	 */
+	public synchronized int getMaxImages()
+	{
+		return maxImages;
+	}
+
+	// Look for the texture for a given label and style
+	synchronized MaplyTexture get(Object key)
+	{
+		numRequests++;
+		MaplyTexture tex = textures.get(key);
+		if (tex != null)
+			numHits++;
+		return tex;
+	}
+
+	// Add a texture.  Returns the textures we threw out that nobody's holding.
+	// The caller has to release those, since it may have just put them on screen.
+	// Evicted textures somebody is holding are removed by the last one to let go.
+	synchronized List<MaplyTexture> put(Object key,MaplyTexture tex)
+	{
+		ArrayList<MaplyTexture> toRelease = new ArrayList<MaplyTexture>();
+		MaplyTexture oldTex = textures.put(key,tex);
+		if (oldTex != null && oldTex != tex)
+			evict(oldTex,toRelease);
+		texIDs.add(tex.texID);
+
+		Iterator<Map.Entry<Object,MaplyTexture>> it = textures.entrySet().iterator();
+		while (textures.size() > maxImages && it.hasNext())
+		{
+			MaplyTexture evictTex = it.next().getValue();
+			it.remove();
+			evict(evictTex,toRelease);
+			numEvicted++;
+		}
+
+		return toRelease;
+	}
+
+	// Drop a texture from the cache, waiting on any generators still using it
+	private void evict(MaplyTexture tex,List<MaplyTexture> toRelease)
+	{
+		texIDs.remove(tex.texID);
+		evicted.put(tex.texID,tex);
+		if (!holds.containsKey(tex.texID))
+			toRelease.add(tex);
+	}
+
+	// A generator has put this texture on screen.  We'll keep it around until it lets go.
+	synchronized void hold(long texID)
+	{
+		if (!texIDs.contains(texID) && !evicted.containsKey(texID))
+			return;
+		Integer count = holds.get(texID);
+		holds.put(texID,count == null ? 1 : count+1);
+	}
+
+	// A generator is done with these textures.  Returns the ones that can be removed,
+	// which are those nobody's using that we aren't keeping, plus any we've never heard of.
+	synchronized List<Long> release(List<Long> releaseIDs)
+	{
+		ArrayList<Long> toRemove = new ArrayList<Long>();
+		for (Long texID : releaseIDs)
+		{
+			Integer count = holds.get(texID);
+			if (count != null)
+			{
+				if (count > 1)
+				{
+					holds.put(texID,count-1);
+					continue;
+				}
+				holds.remove(texID);
+			}
+			if (texIDs.contains(texID))
+				continue;
+			evicted.remove(texID);
+			toRemove.add(texID);
+		}
+		return toRemove;
+	}
+
+	// Empty the cache.  Returns all the textures, which the caller has to release.
+	synchronized List<MaplyTexture> clear()
+	{
+		ArrayList<MaplyTexture> all = new ArrayList<MaplyTexture>(textures.values());
+		all.addAll(evicted.values());
+		textures.clear();
+		texIDs.clear();
+		evicted.clear();
+		holds.clear();
+		return all;
+	}
+}
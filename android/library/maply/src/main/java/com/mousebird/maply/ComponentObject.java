@@ -21,6 +21,7 @@
 package com.mousebird.maply;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * The Component Object tracks the various geometry, textures, and outlines
@@ -34,78 +35,153 @@ import java.util.ArrayList;
  */
 public class ComponentObject 
 {
-	// Convert from Long to long array
-	long[] convertIDs(ArrayList<Long> inIDs)
+	/**
+	 * A growable list of IDs.  We keep these as plain longs so adding and
+	 * handing them to the native side doesn't box or copy them every time.
+	 */
+	static class IDList
 	{
-		int which = 0;
-		long[] ids = new long[inIDs.size()];
-		for (Long id : inIDs)
+		private long[] ids = new long[4];
+		private int size = 0;
+		// Exact size copy we can hand to the native side, if nothing's changed
+		private long[] exact = null;
+
+		void add(long id)
 		{
-			ids[which] = id;
-			which++;
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+			exact = null;
+		}
+
+		long get(int which)
+		{
+			return ids[which];
+		}
+
+		int size()
+		{
+			return size;
+		}
+
+		void clear()
+		{
+			size = 0;
+			exact = null;
+		}
+
+		// Copy into the given array at the given offset
+		void copyTo(long[] dest,int offset)
+		{
+			System.arraycopy(ids, 0, dest, offset, size);
+		}
+
+		// Return the IDs as an exact size array.  Don't modify it.
+		long[] toArray()
+		{
+			if (exact == null)
+				exact = (ids.length == size) ? ids : Arrays.copyOf(ids, size);
+			return exact;
 		}
-		
-		return ids;
 	}
-	
+
+	// The kinds of render-side objects we track
+	static final int MarkerIDs = 0;
+	static final int StickerIDs = 1;
+	static final int VectorIDs = 2;
+	static final int WideVectorIDs = 3;
+	static final int LabelIDs = 4;
+	static final int ParticleSystemIDs = 5;
+	static final int GeometryIDs = 6;
+	static final int ShapeIDs = 7;
+	static final int BillboardIDs = 8;
+	static final int TextureIDs = 9;
+	static final int NumIDTypes = 10;
+	static final String[] IDTypeNames = {"markers", "stickers", "vectors", "wideVectors", "labels",
+			"particleSystems", "geometry", "shapes", "billboards", "textures"};
+
+	// Various render-side object IDs, by type
+	private final IDList[] idLists = new IDList[NumIDTypes];
+
+	// Selection IDs associated with this object
+	protected IDList selectIDs = null;
+
+	// The controller's registry, if we're in one
+	ComponentObjectRegistry registry = null;
+
+	private void addID(int type,long id)
+	{
+		IDList idList = idLists[type];
+		if (idList == null)
+		{
+			idList = new IDList();
+			idLists[type] = idList;
+		}
+		idList.add(id);
+		if (registry != null)
+			registry.idsChanged(type, 1);
+	}
+
+	/**
+	 * True if we're not holding on to anything render-side.  Once an object's
+	 * been removed, this should be true.
+	 */
+	public boolean isEmpty()
+	{
+		for (IDList idList : idLists)
+			if (idList != null && idList.size() > 0)
+				return false;
+		return true;
+	}
+
+	private long[] getIDs(int type)
+	{
+		IDList idList = idLists[type];
+		if (idList == null || idList.size() == 0)
+			return null;
+		return idList.toArray();
+	}
+
 	// Track selection IDs associated with this object
 	void addSelectID(long id)
 	{
 		if (selectIDs == null)
-			selectIDs = new ArrayList<Long>();
+			selectIDs = new IDList();
 		selectIDs.add(id);
 	}
 	
 	// Track the given texture ID as belonging to us
 	void addTexID(long id)
 	{
-		if (texIDs == null)
-			texIDs = new ArrayList<Long>();
-		texIDs.add(id);
+		addID(TextureIDs, id);
 	}
 
 	// Track the given marker ID as associated with us
 	void addMarkerID(long id)
 	{
-		if (markerIDs == null)
-			markerIDs = new ArrayList<Long>();
-		markerIDs.add(id);
+		addID(MarkerIDs, id);
 	}
 
 	// Track the given sticker ID as associated with us
 	void addStickerID(long id)
 	{
-		if (stickerIDs == null)
-			stickerIDs = new ArrayList<Long>();
-		stickerIDs.add(id);
+		addID(StickerIDs, id);
 	}
 
 	long[] getStickerIDs()
 	{
-		if (stickerIDs == null)
-			return null;
-		long[] retIDs = new long[stickerIDs.size()];
-		int which = 0;
-		for (Long id : stickerIDs) {
-			retIDs[which++] = id;
-		}
-
-		return retIDs;
+		return getIDs(StickerIDs);
 	}
 
 	// Track the given vector ID as associated with us
 	void addVectorID(long id)
 	{
-		if (vectorIDs == null)
-			vectorIDs = new ArrayList<Long>();
-		vectorIDs.add(id);
+		addID(VectorIDs, id);
 	}
 
 	void addWideVectorID(long id)
 	{
-		if (wideVectorIDs == null)
-			wideVectorIDs = new ArrayList<Long>();
-		wideVectorIDs.add(id);
+		addID(WideVectorIDs, id);
 	}
 
 	ArrayList<VectorObject> vecObjs = null;
@@ -121,189 +197,165 @@ public class ComponentObject
 
 	long[] getVectorIDs()
 	{
-		if (vectorIDs == null)
-			return null;
-		long[] retIDs = new long[vectorIDs.size()];
-		int which = 0;
-		for (Long id : vectorIDs) {
-			retIDs[which++] = id;
-		}
-
-		return retIDs;
+		return getIDs(VectorIDs);
 	}
 
 	long[] getWideVectorIDs()
 	{
-		if (wideVectorIDs == null)
-			return null;
-		long[] retIDs = new long[wideVectorIDs.size()];
-		int which = 0;
-		for (Long id : wideVectorIDs) {
-			retIDs[which++] = id;
-		}
-
-		return retIDs;
+		return getIDs(WideVectorIDs);
 	}
 
 	// Track the given label ID as associated with us
 	void addLabelID(long id)
 	{
-		if (labelIDs == null)
-			labelIDs = new ArrayList<Long>();
-		labelIDs.add(id);
+		addID(LabelIDs, id);
 	}
 
 	public void addShapeID(long shapeId) {
-		if (shapeID == null)
-			shapeID = new ArrayList<>();
-		shapeID.add(shapeId);
+		addID(ShapeIDs, shapeId);
 	}
 
 	public void addBillboardID(long billId) {
-		if (this.billIDs == null)
-			this.billIDs = new ArrayList<>();
-		billIDs.add(billId);
+		addID(BillboardIDs, billId);
 	}
 
 	void addParticleSystemID(long id) {
-		if (particleSystemIDs == null)
-			particleSystemIDs = new ArrayList<Long>();
-		particleSystemIDs.add(id);
+		addID(ParticleSystemIDs, id);
 	}
 
 	long[] getParticleSystemIDs()
 	{
-		if (particleSystemIDs == null)
-			return null;
-		long[] retIDs = new long[particleSystemIDs.size()];
-		int which = 0;
-		for (Long id : particleSystemIDs) {
-			retIDs[which++] = id;
-		}
-
-		return retIDs;
+		return getIDs(ParticleSystemIDs);
 	}
 
 	void addGeometryID(long id)
 	{
-		if (geometryIDs == null)
-			geometryIDs = new ArrayList<Long>();
-		geometryIDs.add(id);
+		addID(GeometryIDs, id);
 	}
 
 	long[] getGeometryIDs()
 	{
-		if (geometryIDs == null)
-			return null;
-		long[] retIDs = new long[geometryIDs.size()];
-		int which = 0;
-		for (Long id : geometryIDs) {
-			retIDs[which++] = id;
-		}
-
-		return retIDs;
+		return getIDs(GeometryIDs);
 	}
 
-	// Enable/disable anything the component object is holding
-	void enable(MaplyBaseController control,boolean enable,ChangeSet changes)
+	// Gather up the IDs of the given type from all the objects.  Returns null if there are none.
+	private static long[] gatherIDs(ComponentObject[] compObjs,int type)
 	{
-		if (vectorIDs != null && vectorIDs.size() > 0)
-			control.vecManager.enableVectors(convertIDs(vectorIDs), enable, changes);
-		if (wideVectorIDs != null && wideVectorIDs.size() > 0)
-			control.wideVecManager.enableVectors(convertIDs(wideVectorIDs), enable, changes);
-		if (markerIDs != null && markerIDs.size() > 0)
-			control.markerManager.enableMarkers(convertIDs(markerIDs), enable, changes);
-		if (stickerIDs != null && stickerIDs.size() > 0)
-			control.stickerManager.enableStickers(convertIDs(stickerIDs), enable, changes);
-		if (labelIDs != null && labelIDs.size() > 0)
-			control.labelManager.enableLabels(convertIDs(labelIDs), enable, changes);
-		if (particleSystemIDs != null && particleSystemIDs.size() >0) {
-			for (Long id : particleSystemIDs) {
-				control.particleSystemManager.enableParticleSystem(id, enable, changes);
+		int total = 0;
+		ComponentObject onlyObj = null;
+		for (ComponentObject compObj : compObjs)
+		{
+			if (compObj == null)
+				continue;
+			IDList idList = compObj.idLists[type];
+			if (idList != null && idList.size() > 0)
+			{
+				onlyObj = (total == 0) ? compObj : null;
+				total += idList.size();
 			}
 		}
-		if (geometryIDs != null && geometryIDs.size() > 0)
-			control.geomManager.enableGeometry(convertIDs(geometryIDs), enable, changes);
-		if (shapeID != null && shapeID.size() > 0) {
-			control.shapeManager.enableShapes(convertIDs(shapeID), enable, changes);
-		}
-		if (billIDs != null && billIDs.size() > 0) {
-			control.billboardManager.enableBillboards(convertIDs(billIDs), enable, changes);
+		if (total == 0)
+			return null;
+		// Just the one, so we can use its array directly
+		if (onlyObj != null)
+			return onlyObj.idLists[type].toArray();
+
+		long[] ids = new long[total];
+		int offset = 0;
+		for (ComponentObject compObj : compObjs)
+		{
+			if (compObj == null)
+				continue;
+			IDList idList = compObj.idLists[type];
+			if (idList != null && idList.size() > 0)
+			{
+				idList.copyTo(ids, offset);
+				offset += idList.size();
+			}
 		}
+		return ids;
+	}
 
+	/**
+	 * Enable or disable everything the given objects are holding.
+	 * We make one call per manager for the whole lot.
+	 */
+	static void enable(MaplyBaseController control,ComponentObject[] compObjs,boolean enable,ChangeSet changes)
+	{
+		long[] ids;
+		if ((ids = gatherIDs(compObjs, VectorIDs)) != null)
+			control.vecManager.enableVectors(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, WideVectorIDs)) != null)
+			control.wideVecManager.enableVectors(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, MarkerIDs)) != null)
+			control.markerManager.enableMarkers(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, StickerIDs)) != null)
+			control.stickerManager.enableStickers(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, LabelIDs)) != null)
+			control.labelManager.enableLabels(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, ParticleSystemIDs)) != null)
+			control.particleSystemManager.enableParticleSystems(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, GeometryIDs)) != null)
+			control.geomManager.enableGeometry(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, ShapeIDs)) != null)
+			control.shapeManager.enableShapes(ids, enable, changes);
+		if ((ids = gatherIDs(compObjs, BillboardIDs)) != null)
+			control.billboardManager.enableBillboards(ids, enable, changes);
 	}
-	
-	// Clear out anything the component object is holding
-	void clear(MaplyBaseController control,ChangeSet changes)
+
+	/**
+	 * Clear out everything the given objects are holding.
+	 * We make one call per manager for the whole lot.
+	 */
+	static void clear(MaplyBaseController control,ComponentObject[] compObjs,ChangeSet changes)
 	{
-		if (vectorIDs != null && vectorIDs.size() > 0)
-		{
-			control.vecManager.removeVectors(convertIDs(vectorIDs), changes);
-			vectorIDs.clear();
-		}
-		if (wideVectorIDs != null && wideVectorIDs.size() > 0)
-		{
-			control.wideVecManager.removeVectors(convertIDs(wideVectorIDs), changes);
-			wideVectorIDs.clear();
-		}
-		if (markerIDs != null && markerIDs.size() > 0)
-		{
-			control.markerManager.removeMarkers(convertIDs(markerIDs), changes);
-			markerIDs.clear();
-		}
-		if (stickerIDs != null && stickerIDs.size() > 0)
-		{
-			control.stickerManager.removeStickers(convertIDs(stickerIDs), changes);
-			stickerIDs.clear();
-		}
-		if (labelIDs != null && labelIDs.size() > 0)
+		long[] ids;
+		if ((ids = gatherIDs(compObjs, VectorIDs)) != null)
+			control.vecManager.removeVectors(ids, changes);
+		if ((ids = gatherIDs(compObjs, WideVectorIDs)) != null)
+			control.wideVecManager.removeVectors(ids, changes);
+		if ((ids = gatherIDs(compObjs, MarkerIDs)) != null)
+			control.markerManager.removeMarkers(ids, changes);
+		if ((ids = gatherIDs(compObjs, StickerIDs)) != null)
+			control.stickerManager.removeStickers(ids, changes);
+		if ((ids = gatherIDs(compObjs, LabelIDs)) != null)
+			control.labelManager.removeLabels(ids, changes);
+		if ((ids = gatherIDs(compObjs, ParticleSystemIDs)) != null)
+			control.particleSystemManager.removeParticleSystems(ids, changes);
+		if ((ids = gatherIDs(compObjs, GeometryIDs)) != null)
+			control.geomManager.removeGeometry(ids, changes);
+		if ((ids = gatherIDs(compObjs, TextureIDs)) != null)
+			control.texManager.removeTextures(ids, changes);
+		if ((ids = gatherIDs(compObjs, ShapeIDs)) != null)
+			control.shapeManager.removeShapes(ids, changes);
+		if ((ids = gatherIDs(compObjs, BillboardIDs)) != null)
+			control.billboardManager.removeBillboards(ids, changes);
+
+		for (ComponentObject compObj : compObjs)
 		{
-			control.labelManager.removeLabels(convertIDs(labelIDs), changes);
-			labelIDs.clear();
-		}
-		if (particleSystemIDs != null && particleSystemIDs.size() >0){
-			for (Long id : particleSystemIDs){
-				control.particleSystemManager.removeParticleSystem(id, changes);
+			if (compObj == null)
+				continue;
+			for (int type=0;type<NumIDTypes;type++)
+			{
+				IDList idList = compObj.idLists[type];
+				if (idList == null || idList.size() == 0)
+					continue;
+				if (compObj.registry != null)
+					compObj.registry.idsChanged(type, -idList.size());
+				idList.clear();
 			}
-			particleSystemIDs.clear();
-		}
-		if (geometryIDs != null && geometryIDs.size() > 0)
-		{
-			control.geomManager.removeGeometry(convertIDs(labelIDs), changes);
-			labelIDs.clear();
-		}
-		if (texIDs != null && texIDs.size() > 0) {
-			for (long texID : texIDs)
-				control.texManager.removeTexture(texID, changes);
-			texIDs.clear();
-		}
-
-		if (shapeID != null && shapeID.size()>0) {
-			control.shapeManager.removeShapes(convertIDs(shapeID), changes);
-			shapeID.clear();
 		}
+	}
 
-		if (billIDs != null && billIDs.size() >0){
-			control.billboardManager.removeBillboards(convertIDs(billIDs), changes);
-			billIDs.clear();
-		}
+	// Enable/disable anything the component object is holding
+	void enable(MaplyBaseController control,boolean enable,ChangeSet changes)
+	{
+		enable(control, new ComponentObject[]{this}, enable, changes);
 	}
 	
-	// Selection IDs associated with this object
-	protected ArrayList<Long> selectIDs = null;
-	
-	// Textures in use by this object
-	private ArrayList<Long> texIDs = null;
-
-	// Various render-side object types we're representing
-	private ArrayList<Long> markerIDs = null;
-	private ArrayList<Long> stickerIDs = null;
-	private ArrayList<Long> vectorIDs = null;
-	private ArrayList<Long> wideVectorIDs = null;
-	private ArrayList<Long> labelIDs = null;
-	private ArrayList<Long> particleSystemIDs = null;
-	private ArrayList<Long> geometryIDs = null;
-	private ArrayList<Long> shapeID = null;
-	private ArrayList<Long> billIDs = null;
-
+	// Clear out anything the component object is holding
+	void clear(MaplyBaseController control,ChangeSet changes)
+	{
+		clear(control, new ComponentObject[]{this}, changes);
+	}
 }
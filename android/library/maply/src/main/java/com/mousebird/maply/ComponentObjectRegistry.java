@@ -0,0 +1,136 @@
+/*
+ *  ComponentObjectRegistry.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.mousebird.maply;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the live component objects for a controller.
+ * <p>
+ * Adds and removes are constant time and don't block each other, so paging
+ * layers can throw lots of objects in and out.  We also keep counts of the
+ * render-side IDs the live objects are holding, by type, which is handy
+ * for spotting leaks.
+ */
+public class ComponentObjectRegistry
+{
+	private final Set<ComponentObject> liveObjects = Collections.newSetFromMap(new ConcurrentHashMap<ComponentObject,Boolean>());
+	private final AtomicLong numAdded = new AtomicLong(0);
+	private final AtomicLong numRemoved = new AtomicLong(0);
+	private final AtomicLongArray liveIDs = new AtomicLongArray(ComponentObject.NumIDTypes);
+
+	/**
+	 * A snapshot of what the registry is tracking.
+	 */
+	public static class Stats
+	{
+		/// Component objects currently registered
+		public int numLiveObjects;
+		/// Total component objects ever added
+		public long numAdded;
+		/// Total component objects ever removed
+		public long numRemoved;
+		/// Live component objects that aren't holding anything
+		public int numEmptyObjects;
+		/// Render-side IDs held by live objects, by type
+		public Map<String,Long> liveIDs = new LinkedHashMap<String,Long>();
+
+		@Override
+		public String toString()
+		{
+			return "live objects: " + numLiveObjects + ", added: " + numAdded + ", removed: " + numRemoved +
+					", empty: " + numEmptyObjects + ", live IDs: " + liveIDs;
+		}
+	}
+
+	// Start tracking an object
+	void add(ComponentObject compObj)
+	{
+		if (liveObjects.add(compObj))
+		{
+			compObj.registry = this;
+			numAdded.incrementAndGet();
+		}
+	}
+
+	// Stop tracking an object.  Returns false if we weren't.
+	boolean remove(ComponentObject compObj)
+	{
+		if (!liveObjects.remove(compObj))
+			return false;
+		numRemoved.incrementAndGet();
+		return true;
+	}
+
+	// Called by the component objects as they pick up or let go of IDs
+	void idsChanged(int type,long delta)
+	{
+		liveIDs.addAndGet(type, delta);
+	}
+
+	// Current objects.  This is weakly consistent with adds and removes going on at the same time.
+	ComponentObject[] toArray()
+	{
+		return liveObjects.toArray(new ComponentObject[0]);
+	}
+
+	/**
+	 * True if we're tracking the given object.
+	 */
+	public boolean contains(ComponentObject compObj)
+	{
+		return liveObjects.contains(compObj);
+	}
+
+	/**
+	 * Number of live component objects.
+	 */
+	public int getNumLiveObjects()
+	{
+		return liveObjects.size();
+	}
+
+	/**
+	 * Return a snapshot of the live object and ID counts.
+	 * This walks the live objects, so don't call it every frame.
+	 */
+	public Stats getStats()
+	{
+		Stats stats = new Stats();
+		stats.numAdded = numAdded.get();
+		stats.numRemoved = numRemoved.get();
+		for (ComponentObject compObj : liveObjects)
+		{
+			stats.numLiveObjects++;
+			if (compObj.isEmpty())
+				stats.numEmptyObjects++;
+		}
+		for (int ii=0;ii<ComponentObject.NumIDTypes;ii++)
+			stats.liveIDs.put(ComponentObject.IDTypeNames[ii], liveIDs.get(ii));
+
+		return stats;
+	}
+}
@@ -100,6 +100,51 @@ public class CoordSystem
      * @return Returns the coordinate in the outSystem.
      */
 	public static native Point3d CoordSystemConvert3d (CoordSystem inSystem, CoordSystem outSystem, Point3d inCoord);
+
+	/**
+	 * Batch version of geographicToLocal.  Converts a whole group of coordinates
+	 * in one call, which is a lot faster than doing them one at a time from Java.
+	 * The output arrays can be the same as the input arrays.
+	 *
+	 * @param inX Longitude in radians.
+	 * @param inY Latitude in radians.
+	 * @param inZ Z value.  Can be null, in which case we use zero.
+	 * @param outX X in the local coordinate system.
+	 * @param outY Y in the local coordinate system.
+	 * @param outZ Z in the local coordinate system.  Can be null if you don't want it.
+	 * @return False if the arrays weren't the same size.
+	 */
+	public native boolean geographicToLocalBatch(double[] inX,double[] inY,double[] inZ,double[] outX,double[] outY,double[] outZ);
+
+	/**
+	 * Batch version of localToGeographic.  Converts a whole group of coordinates
+	 * in one call.  The output arrays can be the same as the input arrays.
+	 *
+	 * @param inX X in the local coordinate system.
+	 * @param inY Y in the local coordinate system.
+	 * @param inZ Z in the local coordinate system.  Can be null, in which case we use zero.
+	 * @param outX Longitude in radians.
+	 * @param outY Latitude in radians.
+	 * @param outZ Z value.  Can be null if you don't want it.
+	 * @return False if the arrays weren't the same size.
+	 */
+	public native boolean localToGeographicBatch(double[] inX,double[] inY,double[] inZ,double[] outX,double[] outY,double[] outZ);
+
+	/**
+	 * Batch version of CoordSystemConvert3d.  Converts a whole group of coordinates
+	 * between systems in one call.  The output arrays can be the same as the input arrays.
+	 *
+	 * @param inSystem The system the coordinates are in.
+	 * @param outSystem The system you want them in.
+	 * @param inX X values in inSystem.
+	 * @param inY Y values in inSystem.
+	 * @param inZ Z values in inSystem.  Can be null, in which case we use zero.
+	 * @param outX X values in outSystem.
+	 * @param outY Y values in outSystem.
+	 * @param outZ Z values in outSystem.  Can be null if you don't want them.
+	 * @return False if the arrays weren't the same size.
+	 */
+	public static native boolean CoordSystemConvert3dBatch(CoordSystem inSystem,CoordSystem outSystem,double[] inX,double[] inY,double[] inZ,double[] outX,double[] outY,double[] outZ);
 	
 	static
 	{
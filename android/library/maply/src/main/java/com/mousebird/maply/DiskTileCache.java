@@ -0,0 +1,363 @@
+/*
+ *  DiskTileCache.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebird.maply;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The disk tile cache keeps one file per tile in a directory, limited by total
+ * size and, optionally, by age.  When it gets too big we throw out the least
+ * recently used tiles.
+ * <p>
+ * We keep an index of what's on disk in memory, so lookups for tiles we don't
+ * have never touch the file system.  Writes go to a temporary file first and
+ * are then renamed into place, so a crash can't leave a partial tile behind.
+ * Renames and deletes happen under our lock so a write and an eviction of the
+ * same tile can't trip over each other.
+ * <p>
+ * Share one of these between tile sources rather than making several for the
+ * same directory.  They won't know about each other.
+ */
+public class DiskTileCache implements TileCache
+{
+    private static String TAG = DiskTileCache.class.getSimpleName();
+    private static String TMP_EXT = ".tmp";
+    // Escaped key names never start with this, since '%' is always followed by hex
+    private static String TMP_PREFIX = "%tmp";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Size limit we'll use if you don't give us one.
+     */
+    public static final long DefaultMaxBytes = 256 * 1024 * 1024;
+
+    // What we know about a single cached tile
+    private static class Entry
+    {
+        long size;
+        long writeTime;
+
+        Entry(long inSize,long inWriteTime)
+        {
+            size = inSize;
+            writeTime = inWriteTime;
+        }
+    }
+
+    File cacheDir;
+    long maxBytes;
+    long maxAge;
+
+    // Index of what's on disk, in least recently used order
+    final LinkedHashMap<String,Entry> index = new LinkedHashMap<String,Entry>(256,0.75f,true);
+    boolean indexLoaded = false;
+    long totalBytes = 0;
+
+    long numHits = 0, numMisses = 0, numEvictions = 0;
+
+    /**
+     * Construct with a directory and the default size limit and no age limit.
+     */
+    public DiskTileCache(File inCacheDir)
+    {
+        this(inCacheDir,DefaultMaxBytes,0);
+    }
+
+    /**
+     * Construct with a directory and limits.
+     *
+     * @param inCacheDir Directory to keep tiles in.  We'll create it if it's not there.
+     * @param inMaxBytes Total size we'll let the cache grow to.  0 means no limit.
+     * @param inMaxAge Age in milliseconds after which we'll consider a tile stale.  0 means no limit.
+     */
+    public DiskTileCache(File inCacheDir,long inMaxBytes,long inMaxAge)
+    {
+        cacheDir = inCacheDir;
+        maxBytes = inMaxBytes;
+        maxAge = inMaxAge;
+    }
+
+    /**
+     * The directory we're keeping tiles in.
+     */
+    public File getCacheDir()
+    {
+        return cacheDir;
+    }
+
+    /**
+     * Total size of the tiles we're holding.
+     */
+    public synchronized long getSize()
+    {
+        loadIndex();
+        return totalBytes;
+    }
+
+    /**
+     * Number of tiles we're holding.
+     */
+    public synchronized int getCount()
+    {
+        loadIndex();
+        return index.size();
+    }
+
+    @Override
+    public synchronized long getNumHits()
+    {
+        return numHits;
+    }
+
+    @Override
+    public synchronized long getNumMisses()
+    {
+        return numMisses;
+    }
+
+    @Override
+    public synchronized long getNumEvictions()
+    {
+        return numEvictions;
+    }
+
+    // Keys often look like paths, but we keep everything in one directory.
+    // Leading separators are dropped, so "/3_1_2.png" is still stored as "3_1_2.png"
+    // like it always was.  After that, anything but letters, digits, '-', '_' and
+    // a non-leading '.' is escaped as %XX, so keys that differ past that can't share a file.
+    String fileNameForKey(String key)
+    {
+        int start = 0;
+        while (start < key.length() && (key.charAt(start) == '/' || key.charAt(start) == File.separatorChar))
+            start++;
+        byte[] bytes = key.substring(start).getBytes(UTF8);
+        if (bytes.length == 0)
+            return "%";
+
+        StringBuilder name = new StringBuilder(bytes.length);
+        for (int ii=0;ii<bytes.length;ii++) {
+            int b = bytes[ii] & 0xff;
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') ||
+                    b == '-' || b == '_' || (b == '.' && ii > 0))
+                name.append((char)b);
+            else
+                name.append('%').append(HEX[b >> 4]).append(HEX[b & 0xf]);
+        }
+        return name.toString();
+    }
+
+    // Read what's in the directory the first time we need it
+    private void loadIndex()
+    {
+        if (indexLoaded)
+            return;
+        indexLoaded = true;
+
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+
+        File[] files = cacheDir.listFiles();
+        if (files == null)
+            return;
+
+        // Oldest first so they're first to go
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lTime = lhs.lastModified(), rTime = rhs.lastModified();
+                return lTime < rTime ? -1 : (lTime == rTime ? 0 : 1);
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (!file.isFile())
+                continue;
+            // Leftovers from an interrupted write
+            if (file.getName().startsWith(TMP_PREFIX) || (maxAge > 0 && now - file.lastModified() > maxAge)) {
+                file.delete();
+                continue;
+            }
+            Entry entry = new Entry(file.length(), file.lastModified());
+            index.put(file.getName(), entry);
+            totalBytes += entry.size;
+        }
+
+        evict();
+    }
+
+    // Throw out the least recently used entries until we fit.  Call with the lock held.
+    private void evict()
+    {
+        if (maxBytes <= 0)
+            return;
+
+        Iterator<Map.Entry<String,Entry>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String,Entry> oldest = it.next();
+            totalBytes -= oldest.getValue().size;
+            new File(cacheDir, oldest.getKey()).delete();
+            it.remove();
+            numEvictions++;
+        }
+    }
+
+    @Override
+    public byte[] get(String key)
+    {
+        String name = fileNameForKey(key);
+        File file = new File(cacheDir, name);
+
+        // Read with the lock held so a put or evict can't swap or delete the file mid-read
+        synchronized (this) {
+            loadIndex();
+            Entry entry = index.get(name);
+            if (entry == null) {
+                numMisses++;
+                return null;
+            }
+            if (maxAge > 0 && System.currentTimeMillis() - entry.writeTime > maxAge) {
+                index.remove(name);
+                totalBytes -= entry.size;
+                numMisses++;
+                numEvictions++;
+                file.delete();
+                return null;
+            }
+
+            DataInputStream in = null;
+            try {
+                byte[] data = new byte[(int)file.length()];
+                in = new DataInputStream(new FileInputStream(file));
+                in.readFully(data);
+                numHits++;
+                return data;
+            }
+            catch (IOException e) {
+                // Somebody deleted it out from under us
+                Log.w(TAG, "Failed to read cached tile " + name + ": " + e.toString());
+                index.remove(name);
+                totalBytes -= entry.size;
+                numMisses++;
+                return null;
+            }
+            finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    }
+                    catch (IOException e) {
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void put(String key,byte[] data)
+    {
+        if (data == null)
+            return;
+
+        String name = fileNameForKey(key);
+        File file = new File(cacheDir, name);
+
+        synchronized (this) {
+            loadIndex();
+        }
+
+        // Write somewhere else first, then move it into place in one step
+        File tmpFile = null;
+        FileOutputStream out = null;
+        try {
+            tmpFile = File.createTempFile(TMP_PREFIX, TMP_EXT, cacheDir);
+            out = new FileOutputStream(tmpFile);
+            out.write(data);
+            out.getFD().sync();
+            out.close();
+            out = null;
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Failed to write cached tile " + name + ": " + e.toString());
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e2) {
+                }
+            }
+            if (tmpFile != null)
+                tmpFile.delete();
+            return;
+        }
+
+        // The rename and the index update go together so an eviction can't land in between
+        synchronized (this) {
+            if (!tmpFile.renameTo(file)) {
+                Log.w(TAG, "Failed to move cached tile " + name + " into place");
+                tmpFile.delete();
+                return;
+            }
+            Entry oldEntry = index.put(name, new Entry(data.length, System.currentTimeMillis()));
+            if (oldEntry != null)
+                totalBytes -= oldEntry.size;
+            totalBytes += data.length;
+            evict();
+        }
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        String name = fileNameForKey(key);
+        synchronized (this) {
+            loadIndex();
+            Entry entry = index.remove(name);
+            if (entry == null)
+                return;
+            totalBytes -= entry.size;
+            new File(cacheDir, name).delete();
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        synchronized (this) {
+            loadIndex();
+            for (String name : index.keySet())
+                new File(cacheDir, name).delete();
+            index.clear();
+            totalBytes = 0;
+        }
+    }
+}
@@ -3,10 +3,14 @@ package com.mousebird.maply;
 import com.mousebird.maply.MaplyBaseController;
 import com.mousebird.maply.sld.sldstyleset.SLDStyleSet;
 
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.FileInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Reader;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -23,6 +27,10 @@ import android.util.Log;
  * baseController, and finally call startParse() to parse the JSON features, apply the styles,
  * and add them to the globe or map.
  *
+ * For big documents use startStreamingParse() instead.  It reads features off the stream
+ * a batch at a time and adds each batch as it goes, so memory use depends on the batch
+ * size rather than the size of the file.
+ *
  */
 public class GeoJSONSource {
 
@@ -33,6 +41,39 @@ public class GeoJSONSource {
     private MaplyBaseController baseController;
     ArrayList<ComponentObject> componentObjects = new ArrayList<ComponentObject>();
 
+    /**
+     * Features per batch when streaming, by default.
+     */
+    public static final int DefaultBatchSize = 1000;
+
+    private int batchSize = DefaultBatchSize;
+    private volatile boolean canceled = false;
+
+    /**
+     * Fill this in to hear about a streaming parse as it goes.
+     * The calls come in on whatever thread is doing the parsing.
+     */
+    public interface ParseDelegate
+    {
+        /**
+         * Called after each batch of features has been added.
+         * @param numFeatures Total number of features read so far.
+         * @param bytesRead Total number of bytes read from the stream so far.
+         */
+        public void parseProgress(GeoJSONSource source,int numFeatures,long bytesRead);
+
+        /**
+         * Called when we're done, one way or another.
+         * @param canceled True if cancelParse() stopped us.  The features added up to then are left in.
+         */
+        public void parseFinished(GeoJSONSource source,boolean canceled);
+
+        /**
+         * Called if reading or parsing fails.  The features added up to then are left in.
+         */
+        public void parseFailed(GeoJSONSource source,Exception exception);
+    }
+
     public boolean isLoaded() {
         return loaded;
     }
@@ -75,6 +116,21 @@ public class GeoJSONSource {
         this.baseController = baseController;
     }
 
+    /**
+     * Set the number of features to style and add at once when streaming.
+     * Memory use goes up with this, but so does efficiency.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1,batchSize);
+    }
+
+    /**
+     * Stop a streaming parse after the current batch.
+     */
+    public void cancelParse() {
+        canceled = true;
+    }
+
     public GeoJSONSource() {
 
         initialise();
@@ -110,7 +166,6 @@ public class GeoJSONSource {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
         int nRead;
         byte[] data = new byte[16384];
-        HashMap<String, ArrayList<VectorObject>> featureStyles = new HashMap<String, ArrayList<VectorObject>>();
         ArrayList<ComponentObject> componentObjects = new ArrayList<ComponentObject>();
 
         try {
@@ -122,44 +177,326 @@ public class GeoJSONSource {
 
             VectorObject[] vecs = parseData(buffer.toString());
 
-            if (vecs != null) {
-                MaplyTileID nullTileID = new MaplyTileID(0,0,0);
-                for (VectorObject vecObj : vecs) {
-                    VectorStyle[] styles = styleSet.stylesForFeature(vecObj.getAttributes(), nullTileID, "", baseController);
-                    if (styles == null || styles.length == 0)
-                        continue;;
-                    for (VectorStyle style : styles) {
-                        ArrayList<VectorObject> featuresForStyle = featureStyles.get(style.getUuid());
-                        if (featuresForStyle == null) {
-                            featuresForStyle = new ArrayList<VectorObject>();
-                            featureStyles.put(style.getUuid(), featuresForStyle);
-                        }
-                        featuresForStyle.add(vecObj);
-                    }
+            buildObjects(vecs, componentObjects);
+            baseController.enableObjects(componentObjects, MaplyBaseController.ThreadMode.ThreadAny);
+
+            this.componentObjects = componentObjects;
+            loaded = true;
+            enabled = true;
+            completionBlock.run();
+
+        } catch (Exception exception) {
+            Log.e("ParseTask", "exception", exception);
+        }
+    }
+
+    // Style the features and build the component objects for them
+    private void buildObjects(VectorObject[] vecs, ArrayList<ComponentObject> componentObjects) {
+        if (vecs == null)
+            return;
+
+        HashMap<String, ArrayList<VectorObject>> featureStyles = new HashMap<String, ArrayList<VectorObject>>();
+        MaplyTileID nullTileID = new MaplyTileID(0,0,0);
+        for (VectorObject vecObj : vecs) {
+            VectorStyle[] styles = styleSet.stylesForFeature(vecObj.getAttributes(), nullTileID, "", baseController);
+            if (styles == null || styles.length == 0)
+                continue;
+            for (VectorStyle style : styles) {
+                ArrayList<VectorObject> featuresForStyle = featureStyles.get(style.getUuid());
+                if (featuresForStyle == null) {
+                    featuresForStyle = new ArrayList<VectorObject>();
+                    featureStyles.put(style.getUuid(), featuresForStyle);
                 }
+                featuresForStyle.add(vecObj);
             }
+        }
+
+        for (String uuid : featureStyles.keySet()) {
+            VectorStyle style = styleSet.styleForUUID(uuid, baseController);
+            ArrayList<VectorObject> featuresForStyle = featureStyles.get(uuid);
+
+            ComponentObject[] newCompObjs = style.buildObjects(featuresForStyle, nullTileID, baseController);
+            if (newCompObjs != null && newCompObjs.length > 0)
+                componentObjects.addAll(Arrays.asList(newCompObjs));
+        }
+    }
 
-            if (vecs != null) {
-                MaplyTileID nullTileID = new MaplyTileID(0, 0, 0);
-                for (String uuid : featureStyles.keySet()) {
-                    VectorStyle style = styleSet.styleForUUID(uuid, baseController);
-                    ArrayList<VectorObject> featuresForStyle = featureStyles.get(uuid);
+    /**
+     * Parse the GeoJSON a batch of features at a time, adding each batch to the globe or
+     * map as we go.  This runs on the calling thread, so call it from a background thread.
+     *
+     * Only the features in the current batch are held in memory, along with whatever else
+     * is in the top level object (crs and the like).  Documents that aren't a FeatureCollection
+     * are read in one go.
+     *
+     * @param delegate Hears about progress, completion and failure.  Can be null.
+     */
+    public void startStreamingParse(ParseDelegate delegate) {
+        canceled = false;
+        componentObjects = new ArrayList<ComponentObject>();
+        loaded = false;
+        enabled = true;
+
+        CountingInputStream countStream = new CountingInputStream(jsonStream);
+        FeatureStreamReader featureReader = null;
+        int numFeatures = 0;
+        try {
+            featureReader = new FeatureStreamReader(new BufferedReader(new InputStreamReader(countStream, "UTF-8")));
 
-                    //List<VectorObject> objects, MaplyTileID tileID, MaplyBaseController controller)
-                    ComponentObject[] newCompObjs = style.buildObjects(featuresForStyle, nullTileID, baseController);
-                    if (newCompObjs != null && newCompObjs.length > 0)
-                       componentObjects.addAll(Arrays.asList(newCompObjs));
+            StringBuilder batch = new StringBuilder();
+            boolean moreFeatures = true;
+            while (moreFeatures && !canceled) {
+                // Gather up the next batch as a FeatureCollection
+                batch.setLength(0);
+                int numInBatch = 0;
+                while (numInBatch < batchSize && !canceled) {
+                    int mark = batch.length();
+                    batch.append(numInBatch == 0 ? "" : ",");
+                    if (!featureReader.nextFeature(batch)) {
+                        batch.setLength(mark);
+                        moreFeatures = false;
+                        break;
+                    }
+                    numInBatch++;
+                }
+                if (canceled)
+                    break;
+
+                String json;
+                if (numInBatch > 0)
+                    json = featureReader.wrapFeatures(batch);
+                else if (numFeatures == 0 && !featureReader.sawFeatures())
+                    json = featureReader.wholeDocument();
+                else
+                    break;
+
+                // Build and turn on this batch
+                ArrayList<ComponentObject> batchObjects = new ArrayList<ComponentObject>();
+                buildObjects(parseData(json), batchObjects);
+                if (!batchObjects.isEmpty()) {
+                    componentObjects.addAll(batchObjects);
+                    baseController.enableObjects(batchObjects, MaplyBaseController.ThreadMode.ThreadAny);
                 }
+                numFeatures += numInBatch;
+
+                if (delegate != null)
+                    delegate.parseProgress(this, numFeatures, countStream.getCount());
             }
-            baseController.enableObjects(componentObjects, MaplyBaseController.ThreadMode.ThreadAny);
 
-            this.componentObjects = componentObjects;
             loaded = true;
-            enabled = true;
-            completionBlock.run();
-
+            if (delegate != null)
+                delegate.parseFinished(this, canceled);
         } catch (Exception exception) {
             Log.e("ParseTask", "exception", exception);
+            loaded = true;
+            if (delegate != null)
+                delegate.parseFailed(this, exception);
+        }
+    }
+
+    // Keeps track of how much we've read
+    private static class CountingInputStream extends FilterInputStream
+    {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c >= 0)
+                count++;
+            return c;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int num = super.read(b, off, len);
+            if (num > 0)
+                count += num;
+            return num;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long num = super.skip(n);
+            count += num;
+            return num;
+        }
+    }
+
+    /**
+     * Pulls the members of the features array out of a GeoJSON document one at a time.
+     * This doesn't parse the features, it just finds where they start and end.
+     * Everything else in the top level object is kept so we can wrap each batch in it.
+     */
+    private static class FeatureStreamReader
+    {
+        private final Reader reader;
+        private int peeked = -2;
+        // Top level members other than features, as JSON
+        private final StringBuilder header = new StringBuilder();
+        private boolean started = false, inFeatures = false, done = false, sawFeatures = false, sawType = false;
+
+        FeatureStreamReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        // True if the document had a features array at all
+        boolean sawFeatures() {
+            return sawFeatures;
+        }
+
+        // Wrap a batch of comma separated features in the top level object
+        String wrapFeatures(StringBuilder features) {
+            StringBuilder json = new StringBuilder(header.length() + features.length() + 64);
+            json.append('{');
+            if (!sawType)
+                json.append("\"type\":\"FeatureCollection\",");
+            json.append(header);
+            if (header.length() > 0)
+                json.append(',');
+            json.append("\"features\":[").append(features).append("]}");
+            return json.toString();
+        }
+
+        // For a document that's just one feature or geometry
+        String wholeDocument() {
+            return "{" + header + "}";
+        }
+
+        /**
+         * Append the next feature to the builder.
+         * @return false if there are no more.
+         */
+        boolean nextFeature(StringBuilder out) throws IOException {
+            if (!started) {
+                started = true;
+                if (nextNonSpace() != '{')
+                    throw new IOException("GeoJSON document isn't an object");
+            }
+
+            while (!done) {
+                if (inFeatures) {
+                    int c = nextNonSpace();
+                    if (c == ',')
+                        c = nextNonSpace();
+                    if (c == ']') {
+                        inFeatures = false;
+                        continue;
+                    }
+                    if (c < 0)
+                        throw new IOException("GeoJSON ended in the features array");
+                    peeked = c;
+                    copyValue(out);
+                    return true;
+                }
+
+                // Next top level member
+                int c = nextNonSpace();
+                if (c == ',')
+                    c = nextNonSpace();
+                if (c == '}' || c < 0) {
+                    done = true;
+                    break;
+                }
+                if (c != '"')
+                    throw new IOException("Bad member name in GeoJSON");
+                StringBuilder name = new StringBuilder();
+                name.append('"');
+                copyString(name);
+                if (nextNonSpace() != ':')
+                    throw new IOException("Missing ':' in GeoJSON");
+
+                int valStart = nextNonSpace();
+                if (name.toString().equals("\"features\"") && valStart == '[') {
+                    inFeatures = true;
+                    sawFeatures = true;
+                    continue;
+                }
+                if (name.toString().equals("\"type\""))
+                    sawType = true;
+                peeked = valStart;
+                if (header.length() > 0)
+                    header.append(',');
+                header.append(name).append(':');
+                copyValue(header);
+            }
+
+            return false;
+        }
+
+        private int read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return reader.read();
+        }
+
+        private int nextNonSpace() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+            return c;
+        }
+
+        // Copy the rest of a string, after the opening quote, including the closing quote
+        private void copyString(StringBuilder out) throws IOException {
+            int c;
+            while ((c = read()) >= 0) {
+                out.append((char)c);
+                if (c == '\\') {
+                    c = read();
+                    if (c < 0)
+                        break;
+                    out.append((char)c);
+                } else if (c == '"')
+                    return;
+            }
+            throw new IOException("GeoJSON ended in a string");
+        }
+
+        // Copy one JSON value of any kind
+        private void copyValue(StringBuilder out) throws IOException {
+            int c = nextNonSpace();
+            if (c < 0)
+                throw new IOException("GeoJSON ended unexpectedly");
+            out.append((char)c);
+            if (c == '"') {
+                copyString(out);
+            } else if (c == '{' || c == '[') {
+                int depth = 1;
+                while (depth > 0) {
+                    c = read();
+                    if (c < 0)
+                        throw new IOException("GeoJSON ended in an object");
+                    out.append((char)c);
+                    if (c == '"')
+                        copyString(out);
+                    else if (c == '{' || c == '[')
+                        depth++;
+                    else if (c == '}' || c == ']')
+                        depth--;
+                }
+            } else {
+                // Number, true, false or null
+                while ((c = read()) >= 0) {
+                    if (c == ',' || c == '}' || c == ']' || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                        peeked = c;
+                        break;
+                    }
+                    out.append((char)c);
+                }
+            }
         }
     }
 
@@ -0,0 +1,374 @@
+/*
+ *  GlyphCache.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.mousebird.maply;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps rendered glyphs around so we don't draw the same character over and over.
+ * <p>
+ * Glyphs are keyed by code point, typeface, font size, text color and outline.
+ * The cache is bounded by the memory the glyph bitmaps take up and throws out
+ * the least recently used ones when it fills up.  It's safe to use from any
+ * number of threads and there's one shared instance for all the controllers.
+ * <p>
+ * If you know what characters you'll be labeling with, you can prewarm the
+ * cache for a given label style before you start adding labels.
+ */
+public class GlyphCache
+{
+	/// Default memory limit for the glyph bitmaps
+	public static final long DefaultMaxBytes = 4*1024*1024;
+
+	static int fontPadX = 2,fontPadY = 2;
+
+	private static final GlyphCache sharedCache = new GlyphCache(DefaultMaxBytes);
+
+	/**
+	 * The glyph cache shared by all the controllers.
+	 */
+	public static GlyphCache getShared()
+	{
+		return sharedCache;
+	}
+
+	// What a glyph looks like, minus the character
+	static class StyleKey
+	{
+		final Typeface typeface;
+		final float fontSize;
+		final int textColor;
+		final float outlineSize;
+		final int outlineColor;
+
+		StyleKey(Typeface typeface,float fontSize,int textColor,float outlineSize,int outlineColor)
+		{
+			this.typeface = typeface;
+			this.fontSize = fontSize;
+			this.textColor = textColor;
+			this.outlineSize = outlineSize > 0 ? outlineSize : 0;
+			// Outline color doesn't matter if there's no outline
+			this.outlineColor = outlineSize > 0 ? outlineColor : 0;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof StyleKey))
+				return false;
+			StyleKey other = (StyleKey)obj;
+			return fontSize == other.fontSize && textColor == other.textColor &&
+					outlineSize == other.outlineSize && outlineColor == other.outlineColor &&
+					(typeface == null ? other.typeface == null : typeface.equals(other.typeface));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = typeface != null ? typeface.hashCode() : 0;
+			hash = 31*hash + Float.floatToIntBits(fontSize);
+			hash = 31*hash + textColor;
+			hash = 31*hash + Float.floatToIntBits(outlineSize);
+			hash = 31*hash + outlineColor;
+			return hash;
+		}
+	}
+
+	// A single character in a given style
+	static class GlyphKey
+	{
+		final int codePoint;
+		final StyleKey style;
+
+		GlyphKey(int codePoint,StyleKey style)
+		{
+			this.codePoint = codePoint;
+			this.style = style;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof GlyphKey))
+				return false;
+			GlyphKey other = (GlyphKey)obj;
+			return codePoint == other.codePoint && style.equals(other.style);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31*style.hashCode() + codePoint;
+		}
+	}
+
+	// Paints and metrics for a style.  Paint isn't thread safe, so we lock on this while drawing.
+	static class StyleRenderer
+	{
+		final Paint fillPaint;
+		final Paint outlinePaint;
+		final float fontHeight;
+		final float fontDescent;
+		final float[] widths = new float[2];
+
+		StyleRenderer(StyleKey style)
+		{
+			fillPaint = new Paint();
+			fillPaint.setTextSize(style.fontSize);
+			fillPaint.setColor(style.textColor);
+			fillPaint.setAntiAlias(true);
+			if (style.typeface != null)
+				fillPaint.setTypeface(style.typeface);
+			Paint.FontMetrics fm = fillPaint.getFontMetrics();
+			fontHeight = (float)Math.ceil( Math.abs( fm.bottom ) + Math.abs( fm.top ) );
+			fontDescent = (float)Math.ceil( Math.abs( fm.descent ) );
+
+			if (style.outlineSize > 0)
+			{
+				outlinePaint = new Paint(fillPaint);
+				outlinePaint.setStyle(Paint.Style.STROKE);
+				outlinePaint.setStrokeWidth(style.outlineSize);
+				outlinePaint.setColor(style.outlineColor);
+			} else
+				outlinePaint = null;
+		}
+
+		synchronized CharRenderer.Glyph render(int codePoint)
+		{
+			String str = new String(Character.toChars(codePoint));
+			fillPaint.getTextWidths(str, widths);
+
+			int width = (int) (widths[0] + fontPadX*2);
+			int height = (int) (fontHeight + fontPadY*2);
+
+			Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+			Canvas canvas = new Canvas(bitmap);
+
+			//draw char outline
+			if (outlinePaint != null)
+				canvas.drawText(str, 0, str.length(), fontPadX, height - fontDescent - fontPadY, outlinePaint);
+
+			//draw char fill
+			canvas.drawText(str, 0, str.length(), fontPadX, height - fontDescent - fontPadY, fillPaint);
+
+			// Send back some useful info
+			CharRenderer.Glyph glyph = new CharRenderer.Glyph();
+			glyph.bitmap = bitmap;
+			glyph.sizeX = width;  glyph.sizeY = height;
+			glyph.textureOffsetX = 1;  glyph.textureOffsetY = 1;
+			// Note: Porting. Probably not right
+			glyph.offsetX = 0;  glyph.offsetY = 0;
+			glyph.glyphSizeX = widths[0];  glyph.glyphSizeY = fontHeight;
+
+			return glyph;
+		}
+	}
+
+	private final ConcurrentHashMap<StyleKey,StyleRenderer> renderers = new ConcurrentHashMap<StyleKey,StyleRenderer>();
+	// Access ordered, so the eldest entry is the least recently used
+	private final LinkedHashMap<GlyphKey,CharRenderer.Glyph> glyphs = new LinkedHashMap<GlyphKey,CharRenderer.Glyph>(256,0.75f,true);
+	private long maxBytes;
+	private long numBytes = 0;
+	private long numRequests = 0;
+	private long numHits = 0;
+
+	/**
+	 * Construct a glyph cache that'll hold at most the given bytes of glyph bitmaps.
+	 * Most folks should just use the shared one.
+	 */
+	public GlyphCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * What the glyph cache is holding and how well it's working.
+	 */
+	public static class Stats
+	{
+		/// Glyphs in the cache
+		public int numGlyphs;
+		/// Memory the glyph bitmaps take up
+		public long numBytes;
+		/// Glyphs we've been asked for
+		public long numRequests;
+		/// Glyphs that were already in the cache
+		public long numHits;
+
+		/**
+		 * Fraction of the requests we didn't have to render.
+		 */
+		public double getHitRate()
+		{
+			return numRequests > 0 ? (double)numHits / numRequests : 0.0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "glyphs: " + numGlyphs + ", bytes: " + numBytes + ", requests: " + numRequests +
+					", hit rate: " + String.format("%.2f", getHitRate());
+		}
+	}
+
+	/**
+	 * Set the memory limit for the glyph bitmaps.  We'll throw out glyphs right away if we're over.
+	 */
+	public synchronized void setMaxBytes(long newMaxBytes)
+	{
+		maxBytes = newMaxBytes;
+		trim();
+	}
+
+	/**
+	 * Memory limit for the glyph bitmaps.
+	 */
+	public synchronized long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Return the number of glyphs, memory use and hit rate.
+	 */
+	public synchronized Stats getStats()
+	{
+		Stats stats = new Stats();
+		stats.numGlyphs = glyphs.size();
+		stats.numBytes = numBytes;
+		stats.numRequests = numRequests;
+		stats.numHits = numHits;
+		return stats;
+	}
+
+	/**
+	 * Throw out all the glyphs.
+	 */
+	public synchronized void clear()
+	{
+		glyphs.clear();
+		renderers.clear();
+		numBytes = 0;
+	}
+
+	/**
+	 * Render all the characters in the given string ahead of time, in the style
+	 * of the given label info.  Call this off the main thread.
+	 *
+	 * @param chars Characters we're going to need.  Duplicates are fine.
+	 * @param labelInfo Label style we'll be using them with.
+	 */
+	public void prewarm(String chars,LabelInfo labelInfo)
+	{
+		if (chars == null || labelInfo == null)
+			return;
+
+		StyleKey style = styleFor(labelInfo,labelInfo.getFontSize());
+		for (int ii=0;ii<chars.length();)
+		{
+			int codePoint = chars.codePointAt(ii);
+			getGlyph(codePoint,style,false);
+			ii += Character.charCount(codePoint);
+		}
+	}
+
+	// Look up the style once per string, rather than per character
+	static StyleKey styleFor(LabelInfo labelInfo,float fontSize)
+	{
+		return new StyleKey(labelInfo.getTypeface(),fontSize,labelInfo.getTextColor(),
+				labelInfo.getOutlineSize(),labelInfo.getOutlineColor());
+	}
+
+	/**
+	 * Return the glyph for the given character and style, rendering it if need be.
+	 */
+	CharRenderer.Glyph getGlyph(int codePoint,StyleKey style)
+	{
+		return getGlyph(codePoint,style,true);
+	}
+
+	private CharRenderer.Glyph getGlyph(int codePoint,StyleKey style,boolean countRequest)
+	{
+		GlyphKey key = new GlyphKey(codePoint,style);
+		synchronized (this)
+		{
+			if (countRequest)
+				numRequests++;
+			CharRenderer.Glyph glyph = glyphs.get(key);
+			if (glyph != null)
+			{
+				if (countRequest)
+					numHits++;
+				return glyph;
+			}
+		}
+
+		// Render outside the lock so other styles aren't held up
+		StyleRenderer renderer = renderers.get(style);
+		if (renderer == null)
+		{
+			StyleRenderer newRenderer = new StyleRenderer(style);
+			renderer = renderers.putIfAbsent(style,newRenderer);
+			if (renderer == null)
+				renderer = newRenderer;
+		}
+		CharRenderer.Glyph glyph = renderer.render(codePoint);
+
+		synchronized (this)
+		{
+			// Somebody may have beaten us to it
+			CharRenderer.Glyph existing = glyphs.get(key);
+			if (existing != null)
+				return existing;
+			glyphs.put(key,glyph);
+			numBytes += glyph.bitmap.getByteCount();
+			trim();
+		}
+
+		return glyph;
+	}
+
+	// Throw out the least recently used glyphs until we're under the limit.
+	// We don't recycle the bitmaps since the native side may still be copying one.
+	private void trim()
+	{
+		Iterator<Map.Entry<GlyphKey,CharRenderer.Glyph>> it = glyphs.entrySet().iterator();
+		while (numBytes > maxBytes && it.hasNext())
+		{
+			Map.Entry<GlyphKey,CharRenderer.Glyph> entry = it.next();
+			numBytes -= entry.getValue().bitmap.getByteCount();
+			it.remove();
+		}
+		if (glyphs.isEmpty())
+			renderers.clear();
+	}
+}
@@ -25,7 +25,10 @@ import android.os.HandlerThread;
 import android.os.Looper;
 import android.util.Log;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
@@ -40,6 +43,15 @@ import javax.microedition.khronos.egl.EGLSurface;
  * ChangeSets and similar objects.
  * <p>
  * When you call addTask on the MaplyController, the Runnable probably ends up here.
+ * <p>
+ * Tasks added with a TaskPriority go into a set of queues that are drained
+ * highest priority first, so a pile of removes won't hold up the next view update.
+ * Tasks added without one run in the order they were added, interleaved with those.
+ * <p>
+ * A prioritized task never runs ahead of an earlier prioritized task of the same or
+ * higher priority, even when a long wait lets it jump the line.  There's no such
+ * promise between prioritized and plain tasks, so work that has to stay in order,
+ * like adding and then removing the same object, should all go through the priority queues.
  * 
  * @author sjg
  *
@@ -206,6 +218,12 @@ public class LayerThread extends HandlerThread implements View.ViewWatcher
 				egl.eglMakeCurrent(renderer.display, egl.EGL_NO_SURFACE, egl.EGL_NO_SURFACE, egl.EGL_NO_CONTEXT);
 
 				layers.clear();
+				synchronized (taskQueues) {
+					for (int ii=0;ii<NumPriorities;ii++) {
+						taskQueues[ii].clear();
+						taskKeys.get(ii).clear();
+					}
+				}
 				endLock.release();
 
 				try {
@@ -338,8 +356,9 @@ public class LayerThread extends HandlerThread implements View.ViewWatcher
 	 */
 	public Handler addDelayedTask(Runnable run,long time)
 	{
-		Handler handler = new Handler(getLooper());
-		handler.postDelayed(run, time);
+		Handler handler = getTaskHandler();
+		if (handler != null)
+			handler.postDelayed(run, time);
 		return handler;
 	}
 
@@ -361,27 +380,394 @@ public class LayerThread extends HandlerThread implements View.ViewWatcher
 		if (!wait && Looper.myLooper() == getLooper())
 			run.run();
 		else {
-			Handler handler = new Handler(getLooper());
-			handler.post(run);
-			return handler;		
+			Handler handler = getTaskHandler();
+			if (handler != null)
+				handler.post(run);
+			return handler;
 		}
 		
 		return null;
 	}
 
+	/**
+	 * Priority classes for tasks on the layer thread.  Higher priority
+	 * tasks run first, in the order they were added within a class.
+	 */
+	public enum TaskPriority {
+		/// Telling the layers where the view is
+		ViewUpdate,
+		/// Handing loaded tile data over to a layer
+		TileDelivery,
+		/// Anything else, including the plain addTask() calls
+		Normal,
+		/// Large amounts of new geometry
+		BulkAdd,
+		/// Removing things we don't need any more
+		Cleanup
+	};
+
+	/// If a task has been waiting this long it runs next, whatever its priority
+	public static long MaxTaskWait = 2000;
+	/// We'll run prioritized tasks for this long before letting plain tasks have a go
+	public static long TaskTimeSlice = 10;
+
+	// A task sitting in one of the priority queues
+	static class QueuedTask
+	{
+		Runnable run;
+		final Object key;
+		final long addTime;
+
+		QueuedTask(Runnable run,Object key,long addTime)
+		{
+			this.run = run;
+			this.key = key;
+			this.addTime = addTime;
+		}
+	}
+
+	/**
+	 * Depth and wait time for one of the task queues.
+	 */
+	public static class QueueStats
+	{
+		/// Priority class this queue is for
+		public TaskPriority priority;
+		/// Tasks waiting to run right now
+		public int depth;
+		/// How long the oldest waiting task has been there (ms)
+		public long oldestWait;
+		/// Tasks added over the life of the thread
+		public long numAdded;
+		/// Tasks that have run
+		public long numRun;
+		/// Tasks that replaced an earlier one with the same key
+		public long numCoalesced;
+		/// Tasks cancelled before they ran
+		public long numCancelled;
+		/// Longest time a task waited before running (ms)
+		public long maxWait;
+		/// Total time the tasks that have run spent waiting (ms)
+		public long totalWait;
+
+		/**
+		 * Average time a task waited before it ran (ms).
+		 */
+		public double getAverageWait()
+		{
+			return numRun > 0 ? (double)totalWait / numRun : 0.0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return priority + ": depth " + depth + ", oldest " + oldestWait + "ms, added " + numAdded +
+					", run " + numRun + ", coalesced " + numCoalesced + ", cancelled " + numCancelled +
+					", avg wait " + String.format("%.1f", getAverageWait()) + "ms, max wait " + maxWait + "ms";
+		}
+	}
+
+	// One queue per priority, plus the coalescing keys for each
+	static final int NumPriorities = TaskPriority.values().length;
+	private final ArrayDeque<QueuedTask>[] taskQueues = newTaskQueues();
+	private final ArrayList<HashMap<Object,QueuedTask>> taskKeys = new ArrayList<HashMap<Object,QueuedTask>>();
+	private final QueueStats[] queueStats = new QueueStats[NumPriorities];
+	{
+		for (TaskPriority priority : TaskPriority.values()) {
+			taskKeys.add(new HashMap<Object,QueuedTask>());
+			queueStats[priority.ordinal()] = new QueueStats();
+			queueStats[priority.ordinal()].priority = priority;
+		}
+	}
+	// Set if there's a pump in the handler queue
+	private boolean pumpPosted = false;
+	private boolean frontPumpPosted = false;
+	private Handler taskHandler = null;
+
+	@SuppressWarnings("unchecked")
+	private static ArrayDeque<QueuedTask>[] newTaskQueues()
+	{
+		ArrayDeque<QueuedTask>[] queues = new ArrayDeque[NumPriorities];
+		for (int ii=0;ii<NumPriorities;ii++)
+			queues[ii] = new ArrayDeque<QueuedTask>();
+		return queues;
+	}
+
+	/**
+	 * Add a Runnable to the queue for the given priority.  It always goes in the
+	 * queue, even if we're on the layer thread.
+	 *
+	 * @param run Runnable to run
+	 * @param priority Which priority class it belongs to.
+	 */
+	public void addTask(Runnable run,TaskPriority priority)
+	{
+		addTask(run,priority,null);
+	}
+
+	/**
+	 * Add a Runnable to the queue for the given priority, replacing any task
+	 * with the same key that hasn't run yet.  The new Runnable keeps the place
+	 * in line of the one it replaces.  Use this for work where only the latest
+	 * request matters, like view updates.
+	 *
+	 * @param run Runnable to run
+	 * @param priority Which priority class it belongs to.
+	 * @param key Tasks with equal keys in the same priority class supersede each other.  Can be null.
+	 */
+	public void addTask(Runnable run,TaskPriority priority,Object key)
+	{
+		if (!valid || run == null)
+			return;
+
+		int which = priority.ordinal();
+		boolean postFront = false,postBack = false;
+		synchronized (taskQueues)
+		{
+			QueueStats stats = queueStats[which];
+			stats.numAdded++;
+			if (key != null)
+			{
+				QueuedTask existing = taskKeys.get(which).get(key);
+				if (existing != null)
+				{
+					existing.run = run;
+					stats.numCoalesced++;
+					return;
+				}
+			}
+
+			QueuedTask task = new QueuedTask(run,key,System.currentTimeMillis());
+			taskQueues[which].add(task);
+			if (key != null)
+				taskKeys.get(which).put(key,task);
+
+			// View updates cut in line ahead of everything else in the handler
+			if (priority == TaskPriority.ViewUpdate && !frontPumpPosted)
+				postFront = frontPumpPosted = true;
+			else if (!pumpPosted)
+				postBack = pumpPosted = true;
+		}
+
+		postPump(postFront,postBack);
+	}
+
+	/**
+	 * Cancel a task that hasn't run yet.  This works for tasks added with or without a priority.
+	 *
+	 * @param run The Runnable that was passed to addTask.
+	 */
+	public void cancelTask(Runnable run)
+	{
+		if (run == null)
+			return;
+
+		synchronized (taskQueues)
+		{
+			for (int ii=0;ii<NumPriorities;ii++)
+			{
+				Iterator<QueuedTask> it = taskQueues[ii].iterator();
+				while (it.hasNext())
+				{
+					QueuedTask task = it.next();
+					if (task.run == run)
+					{
+						it.remove();
+						if (task.key != null)
+							taskKeys.get(ii).remove(task.key);
+						queueStats[ii].numCancelled++;
+					}
+				}
+			}
+		}
+
+		Handler handler = getTaskHandler();
+		if (handler != null)
+			handler.removeCallbacks(run);
+	}
+
+	/**
+	 * Return the depth and wait times for each of the task queues, highest priority first.
+	 * This is a copy, so it's safe to hang on to.
+	 */
+	public QueueStats[] getQueueStats()
+	{
+		QueueStats[] allStats = new QueueStats[NumPriorities];
+		long now = System.currentTimeMillis();
+		synchronized (taskQueues)
+		{
+			for (int ii=0;ii<NumPriorities;ii++)
+			{
+				QueueStats src = queueStats[ii];
+				QueueStats stats = new QueueStats();
+				stats.priority = src.priority;
+				stats.depth = taskQueues[ii].size();
+				QueuedTask oldest = taskQueues[ii].peek();
+				stats.oldestWait = oldest != null ? now - oldest.addTime : 0;
+				stats.numAdded = src.numAdded;
+				stats.numRun = src.numRun;
+				stats.numCoalesced = src.numCoalesced;
+				stats.numCancelled = src.numCancelled;
+				stats.maxWait = src.maxWait;
+				stats.totalWait = src.totalWait;
+				allStats[ii] = stats;
+			}
+		}
+		return allStats;
+	}
+
+	// All our tasks go through the one Handler, so any of them can be cancelled
+	private synchronized Handler getTaskHandler()
+	{
+		if (taskHandler == null)
+		{
+			Looper looper = getLooper();
+			if (looper != null)
+				taskHandler = new Handler(looper);
+		}
+		return taskHandler;
+	}
+
+	private void postPump(boolean front,boolean back)
+	{
+		if (!front && !back)
+			return;
+		Handler taskHandler = getTaskHandler();
+		if (taskHandler == null)
+			return;
+
+		if (front)
+			taskHandler.postAtFrontOfQueue(frontPumpRun);
+		if (back)
+			taskHandler.post(pumpRun);
+	}
+
+	private final Runnable frontPumpRun = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (taskQueues) {
+				frontPumpPosted = false;
+			}
+			runQueuedTasks();
+		}
+	};
+
+	private final Runnable pumpRun = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (taskQueues) {
+				pumpPosted = false;
+			}
+			runQueuedTasks();
+		}
+	};
+
+	// Pick the next task to run.  Highest priority first, unless something's been waiting too long.
+	private QueuedTask nextTask(long now)
+	{
+		int which = -1;
+		long oldestTime = now - MaxTaskWait;
+		for (int ii=0;ii<NumPriorities;ii++)
+		{
+			QueuedTask head = taskQueues[ii].peek();
+			if (head == null)
+				continue;
+			if (which < 0)
+				which = ii;
+			if (head.addTime < oldestTime)
+			{
+				which = ii;
+				oldestTime = head.addTime;
+			}
+		}
+		if (which < 0)
+			return null;
+
+		QueuedTask task = taskQueues[which].poll();
+		if (task.key != null)
+			taskKeys.get(which).remove(task.key);
+		QueueStats stats = queueStats[which];
+		long wait = now - task.addTime;
+		stats.numRun++;
+		stats.totalWait += wait;
+		if (wait > stats.maxWait)
+			stats.maxWait = wait;
+
+		return task;
+	}
+
+	// Run queued tasks for a time slice, then give the plain tasks a turn
+	private void runQueuedTasks()
+	{
+		long startTime = System.currentTimeMillis();
+		while (true)
+		{
+			QueuedTask task;
+			long now = System.currentTimeMillis();
+			boolean postFront = false,postBack = false;
+			synchronized (taskQueues)
+			{
+				if (now - startTime > TaskTimeSlice)
+				{
+					// Come back later for the rest
+					if (!taskQueues[TaskPriority.ViewUpdate.ordinal()].isEmpty())
+					{
+						if (!frontPumpPosted)
+							postFront = frontPumpPosted = true;
+					} else {
+						for (int ii=0;ii<NumPriorities;ii++)
+							if (!taskQueues[ii].isEmpty() && !pumpPosted)
+								postBack = pumpPosted = true;
+					}
+					task = null;
+				} else
+					task = nextTask(now);
+			}
+			if (task == null)
+			{
+				postPump(postFront,postBack);
+				return;
+			}
+
+			task.run.run();
+		}
+	}
+
 	// Used to track a view watcher
 	class ViewWatcher
 	{
 		public ViewWatcherInterface watcher = null;
 		public float minTime = 0.1f;
 		public float maxLagTime = 10.f;
-		
+		// When we last called the watcher and with what
+		long lastUpdate = 0;
+		ViewState lastViewState = null;
+		// How long its viewUpdated() usually takes (ms)
+		double avgDuration = -1.0;
+
 		ViewWatcher(ViewWatcherInterface inWatcher)
 		{
 			watcher = inWatcher;
 			minTime = watcher.getMinTime();
 			maxLagTime = watcher.getMaxLagTime();
 		}
+
+		// How long to wait between updates.  When the view is moving fast we also
+		// hold back slow watchers so they don't pile up, but never past their max lag.
+		long updateInterval(boolean moving)
+		{
+			long interval = (long)(minTime * 1000);
+			if (moving && avgDuration > 0.0)
+				interval = Math.max(interval, (long)(WatcherCostFactor * avgDuration));
+			return Math.min(interval, (long)(maxLagTime * 1000));
+		}
+
+		// Keep a running average of how long the updates take
+		void updateDone(long startTime,long endTime)
+		{
+			double duration = endTime - startTime;
+			avgDuration = avgDuration < 0.0 ? duration : 0.7 * avgDuration + 0.3 * duration;
+		}
 	}
 	
 	ArrayList<ViewWatcher> watchers = new ArrayList<ViewWatcher>();
@@ -401,20 +787,12 @@ public class LayerThread extends HandlerThread implements View.ViewWatcher
 			@Override
 			public void run()
 			{
-				watchers.add(new ViewWatcher(watcher));	
-				
-				// Make sure an update gets through the system for this layer
-				// Note: Fix this
-				addTask(new Runnable()
-				{
-					@Override
-					public void run()
-					{
-						// Make sure the watcher gets a callback
-						if (currentViewState != null)
-							updateWatchers(currentViewState,System.currentTimeMillis());						
-					}
-				},true);
+				ViewWatcher viewWatcher = new ViewWatcher(watcher);
+				watchers.add(viewWatcher);
+
+				// Make sure the watcher gets a callback
+				if (currentViewState != null)
+					scheduleWatcherUpdate(viewWatcher,currentViewState);
 			}
 		});
 	}
@@ -443,96 +821,126 @@ public class LayerThread extends HandlerThread implements View.ViewWatcher
 			}
 		});
 	}
-	
+
+	/// Watchers get at most this fraction of the layer thread's time while the view is moving
+	/// (expressed as the multiple of their update time we wait between updates)
+	public static double WatcherCostFactor = 2.0;
+	/// View changes closer together than this (ms) mean the view is in motion, like a fling
+	public static long MovingViewGap = 50;
+
 	ViewState currentViewState = null;
-	boolean viewUpdateScheduled = false;
-	long viewUpdateLastCalled = 0;
-	
-	// Update the watchers themselves
-	void updateWatchers(final ViewState viewState,long now)
+
+	// Track how often the view is changing.  Set on whatever thread the view changes on.
+	private long lastViewChange = 0;
+	private double avgViewChangeGap = Double.MAX_VALUE;
+
+	// Called when the view updates its information
+	public void viewUpdated(View view)
 	{
-		viewUpdateLastCalled = now;
-		// Kick off a view update to the watchers on the layer thread
-		final LayerThread theLayerThread = this;
-		synchronized(this)
+		if (view == null || renderer == null)
+			return;
+
+		long now = System.currentTimeMillis();
+		synchronized (this)
 		{
-			if (!viewUpdateScheduled)
+			if (lastViewChange > 0)
 			{
-				viewUpdateScheduled = true;
-				addTask(new Runnable()
-				{
-					@Override
-					public void run()
-					{
-						synchronized(theLayerThread)
-						{
-							viewUpdateScheduled = false;
-						}
-						currentViewState = viewState;
-						for (ViewWatcher watcher : watchers)
-						{
-							watcher.watcher.viewUpdated(currentViewState);
-						}
-					}
-				},true);
+				long gap = now - lastViewChange;
+				avgViewChangeGap = avgViewChangeGap == Double.MAX_VALUE ? gap : 0.5 * avgViewChangeGap + 0.5 * gap;
 			}
-		}		
-	}
-	
-	Handler trailingHandle = null;
-	Runnable trailingRun = null;
-	// Schedule a lagging update (e.g. not too often, but no less than 100ms
-	void scheduleLateUpdate(long delay)
-	{
-		synchronized(this)
+			lastViewChange = now;
+		}
+
+		// Work out the view state over on the layer thread.
+		// If several changes come in before it gets there, we only do the last one.
+		addTask(new Runnable()
 		{
-			if (trailingHandle != null)
+			@Override
+			public void run()
 			{
-				trailingHandle.removeCallbacks(trailingRun);
-				trailingHandle = null;
-				trailingRun = null;
+				if (LayerThread.this.view == null || renderer == null)
+					return;
+				currentViewState = LayerThread.this.view.makeViewState(renderer);
+				checkWatchers();
 			}
+		},TaskPriority.ViewUpdate,this);
+	}
 
-			trailingRun = new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					final ViewState viewState = view.makeViewState(renderer);
-					long now = System.currentTimeMillis();
-					updateWatchers(viewState,now);
-
-					synchronized (this) {
-						trailingHandle = null;
-						trailingRun = null;
-					}
-				}				
-			};
-			
-			trailingHandle = addDelayedTask(trailingRun,delay);
-		}
+	// True if the view has been changing continuously
+	synchronized boolean isViewMoving(long now)
+	{
+		return avgViewChangeGap < MovingViewGap && now - lastViewChange < 2*MovingViewGap;
 	}
-	
-	static long UpdatePeriod = 100;
-	
-	// Called when the view updates its information
-	public void viewUpdated(View view)
+
+	// Send the current view out to any watchers that are due for it and
+	// come back later for the ones that aren't.  Runs on the layer thread.
+	void checkWatchers()
 	{
-		if (view == null || renderer == null)
+		if (currentViewState == null || watchers == null)
 			return;
 
-		final ViewState viewState = view.makeViewState(renderer);
-
 		long now = System.currentTimeMillis();
+		boolean moving = isViewMoving(now);
+		long nextCheck = Long.MAX_VALUE;
+		for (ViewWatcher watcher : watchers)
+		{
+			if (watcher.lastViewState == currentViewState)
+				continue;
+			long due = watcher.lastUpdate + watcher.updateInterval(moving);
+			if (due <= now)
+				scheduleWatcherUpdate(watcher,currentViewState);
+			else
+				nextCheck = Math.min(nextCheck,due);
+		}
+
+		if (nextCheck != Long.MAX_VALUE)
+			scheduleCheck(nextCheck);
+	}
 
-		// Note: Hardwired to 1/10 second.  Lame.
-		long timeUntil = now - viewUpdateLastCalled;
-		if (timeUntil > UpdatePeriod)
+	// Tell a single watcher about the view.  Only the latest one goes out if they pile up.
+	void scheduleWatcherUpdate(final ViewWatcher watcher,final ViewState viewState)
+	{
+		addTask(new Runnable()
 		{
-			updateWatchers(viewState,now);
-		} else {
-			// Note: Technically, should do the difference here
-			scheduleLateUpdate(UpdatePeriod);
+			@Override
+			public void run()
+			{
+				// Might have been removed in the mean time
+				if (watchers == null || !watchers.contains(watcher))
+					return;
+
+				long startTime = System.currentTimeMillis();
+				watcher.lastUpdate = startTime;
+				watcher.lastViewState = viewState;
+				watcher.watcher.viewUpdated(viewState);
+				watcher.updateDone(startTime,System.currentTimeMillis());
+			}
+		},TaskPriority.ViewUpdate,watcher);
+	}
+
+	Runnable checkRun = null;
+	long checkTime = Long.MAX_VALUE;
+	// Come back and look at the watchers at the given time, unless we're already going to sooner
+	void scheduleCheck(long when)
+	{
+		if (checkRun != null)
+		{
+			if (checkTime <= when)
+				return;
+			cancelTask(checkRun);
 		}
+
+		checkTime = when;
+		checkRun = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				checkRun = null;
+				checkTime = Long.MAX_VALUE;
+				checkWatchers();
+			}
+		};
+		addDelayedTask(checkRun,Math.max(0,when - System.currentTimeMillis()));
 	}
 }
@@ -24,6 +24,11 @@ import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The MBTiles Source reads Mapbox style MBTiles files.
@@ -35,6 +40,17 @@ public class MBTiles implements MapboxTileSource
     //                           Inner classes                               //
     //***********************************************************************//
 
+    // A single read-only connection to the database, used by one thread at a time
+    private static class Reader
+    {
+        SQLiteDatabase db;
+        String[] params = new String[3];
+
+        Reader(SQLiteDatabase inDb)
+        {
+            db = inDb;
+        }
+    }
 
     //***********************************************************************//
     //                          Class variables                              //
@@ -55,8 +71,21 @@ public class MBTiles implements MapboxTileSource
     private static String JPG = "jpg";
 
     private static String GET_TILE_SQL = "SELECT tile_data from tiles where zoom_level = ? AND tile_column = ? AND tile_row= ?;";
+    private static String GET_TILES_SQL = "SELECT zoom_level, tile_column, tile_row, tile_data from tiles where ";
+    private static String GET_TILES_TERM = "(zoom_level = ? AND tile_column = ? AND tile_row = ?)";
     private static String TILE_DATA = "tile_data";
 
+    // SQLite won't take more than 999 parameters in a single statement
+    private static int MAX_TILES_PER_QUERY = 333;
+
+    /**
+     * Number of read-only connections we'll open if you don't say otherwise.
+     */
+    public static final int DefaultNumConnections = 4;
+
+    // How often a read waiting on a connection checks for close(), in milliseconds
+    private static final int CloseCheckInterval = 100;
+
 
 
 
@@ -70,6 +99,12 @@ public class MBTiles implements MapboxTileSource
     private int minZoom = -1, maxZoom = -1;
 
     private SQLiteDatabase mbTileDb;
+    private String dbPath;
+
+    // Connections that aren't in use and how many we're allowed to open
+    private final LinkedBlockingQueue<Reader> idleReaders = new LinkedBlockingQueue<Reader>();
+    private int numReaders, maxReaders = DefaultNumConnections;
+    private boolean closed;
 
     private boolean initialized;    // Have we been correctly initialized
     private boolean oldStyleDB;     // Are we managing an old style database
@@ -95,6 +130,20 @@ public class MBTiles implements MapboxTileSource
 //    }
 
     public MBTiles(File mbTileFile) {
+        this(mbTileFile,DefaultNumConnections);
+    }
+
+    /**
+     * Open an MBTiles file with up to the given number of read-only connections.
+     * Concurrent tile reads each get their own connection, so they don't wait
+     * on each other until we run out.
+     *
+     * @param mbTileFile An <b>existing</b> MBTiles file.
+     * @param numConnections Maximum number of connections we'll open to read tiles.
+     */
+    public MBTiles(File mbTileFile,int numConnections) {
+
+        maxReaders = Math.max(1,numConnections);
 
         if (mbTileFile == null || !mbTileFile.exists() || !mbTileFile.canRead()) {
             String message = String.format("MBTileSource must be initialized with an existing file. \"%s\" does not exists or is null...",
@@ -152,7 +201,8 @@ public class MBTiles implements MapboxTileSource
      */
     private void init(File sqliteDb)
     {
-        mbTileDb = SQLiteDatabase.openDatabase(sqliteDb.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        dbPath = sqliteDb.getAbsolutePath();
+        mbTileDb = SQLiteDatabase.openDatabase(dbPath, null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
 
         // We read metadata
         String sql = "SELECT name, value FROM metadata;";
@@ -223,32 +273,183 @@ public class MBTiles implements MapboxTileSource
         Log.v(TAG, String.format("  > Zoom %d -> %d", minZoom, maxZoom));
         Log.v(TAG, String.format("  > Type \"%s\"", type));
         Log.v(TAG, String.format("  > Format \"%s\"", (isJpg ? "jpg" : "png")));
+
+        // The metadata connection is the first tile reader
+        numReaders = 1;
+        idleReaders.add(new Reader(mbTileDb));
     }
 
-    /**
-     * Fetch the data blog for a given tile.  This blocks.
-     */
-    public byte[] getDataTile(MaplyTileID tileID)
+    // Get a connection to read with, opening a new one if we're allowed to
+    private Reader takeReader()
     {
-        String[] params = new String[3];
-        params[0] = Integer.toString(tileID.level);
-        params[1] = Integer.toString(tileID.x);
-        params[2] = Integer.toString(tileID.y);
+        Reader reader = idleReaders.poll();
+        if (reader != null)
+            return reader;
+
+        synchronized (this) {
+            if (closed)
+                return null;
+            if (numReaders < maxReaders) {
+                numReaders++;
+                try {
+                    return new Reader(SQLiteDatabase.openDatabase(dbPath, null, SQLiteDatabase.OPEN_READONLY | SQLiteDatabase.NO_LOCALIZED_COLLATORS));
+                }
+                catch (Exception e) {
+                    numReaders--;
+                    Log.w(TAG, "Failed to open extra MBTiles connection: " + e.toString());
+                }
+            }
+        }
 
-        Cursor c = mbTileDb.rawQuery(GET_TILE_SQL, params);
+        // Wait for someone else to finish, checking now and then that we haven't been closed
+        try {
+            while (true) {
+                reader = idleReaders.poll(CloseCheckInterval, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    if (closed) {
+                        if (reader != null)
+                            reader.db.close();
+                        return null;
+                    }
+                }
+                if (reader != null)
+                    return reader;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
 
-        int tileDataIdx = c.getColumnIndex(TILE_DATA);
+    // Hand a connection back for someone else to use
+    private void returnReader(Reader reader)
+    {
+        // Queue it under the lock so close() can't drain the queue in between
+        synchronized (this) {
+            if (closed) {
+                reader.db.close();
+                return;
+            }
+            idleReaders.add(reader);
+        }
+    }
 
-        if (c.getCount() > 0) {
-            c.moveToFirst();
+    /**
+     * Close all the connections to the database.  Reads after this will return null,
+     * as will any reads waiting on a connection.
+     */
+    public void close()
+    {
+        synchronized (this) {
+            closed = true;
 
-            byte[] data = c.getBlob(tileDataIdx);
-            return data;
-//                    Log.v(TAG, String.format("Returned tile for Z=%s, X=%d, Y=%d", tileID.level, tileID.x, tileID.y));
+            Reader reader;
+            while ((reader = idleReaders.poll()) != null)
+                reader.db.close();
         }
+    }
 
-        c.close();
+    /**
+     * Fetch the data blob for a given tile.  This blocks.
+     * <p>
+     * Each calling thread gets its own connection (up to the limit), and the
+     * query is compiled once per connection and reused from its statement cache.
+     */
+    public byte[] getDataTile(MaplyTileID tileID)
+    {
+        Reader reader = takeReader();
+        if (reader == null)
+            return null;
+
+        Cursor c = null;
+        try {
+            reader.params[0] = Integer.toString(tileID.level);
+            reader.params[1] = Integer.toString(tileID.x);
+            reader.params[2] = Integer.toString(tileID.y);
+
+            c = reader.db.rawQuery(GET_TILE_SQL, reader.params);
+            if (c.moveToFirst())
+                return c.getBlob(0);
+        }
+        catch (Exception e) {
+            Log.w(TAG, String.format("Failed to read tile %s: %s", tileID.toString(), e.toString()));
+        }
+        finally {
+            if (c != null)
+                c.close();
+            returnReader(reader);
+        }
 
         return null;
     }
+
+    /**
+     * Fetch the data blobs for a whole group of tiles, such as everything
+     * in view, with as few queries as we can manage.  This blocks.
+     *
+     * @param tileIDs The tiles to fetch.
+     * @return The data for each tile in the same order.  Entries are null for missing tiles.
+     */
+    public List<byte[]> getDataTiles(List<MaplyTileID> tileIDs)
+    {
+        ArrayList<byte[]> tiles = new ArrayList<byte[]>(tileIDs.size());
+        for (int ii=0;ii<tileIDs.size();ii++)
+            tiles.add(null);
+        if (tileIDs.isEmpty())
+            return tiles;
+
+        // Where each tile goes in the result
+        HashMap<MaplyTileID,Integer> tileIndex = new HashMap<MaplyTileID,Integer>();
+        for (int ii=0;ii<tileIDs.size();ii++)
+            tileIndex.put(tileIDs.get(ii),ii);
+
+        Reader reader = takeReader();
+        if (reader == null)
+            return tiles;
+
+        try {
+            MaplyTileID resultID = new MaplyTileID();
+            for (int start=0;start<tileIDs.size();start+=MAX_TILES_PER_QUERY) {
+                int end = Math.min(tileIDs.size(),start+MAX_TILES_PER_QUERY);
+
+                StringBuilder sql = new StringBuilder(GET_TILES_SQL);
+                String[] params = new String[3*(end-start)];
+                for (int ii=start;ii<end;ii++) {
+                    MaplyTileID tileID = tileIDs.get(ii);
+                    if (ii > start)
+                        sql.append(" OR ");
+                    sql.append(GET_TILES_TERM);
+                    int which = 3*(ii-start);
+                    params[which] = Integer.toString(tileID.level);
+                    params[which+1] = Integer.toString(tileID.x);
+                    params[which+2] = Integer.toString(tileID.y);
+                }
+                sql.append(";");
+
+                Cursor c = reader.db.rawQuery(sql.toString(), params);
+                try {
+                    while (c.moveToNext()) {
+                        resultID.level = c.getInt(0);
+                        resultID.x = c.getInt(1);
+                        resultID.y = c.getInt(2);
+                        Integer where = tileIndex.get(resultID);
+                        if (where != null)
+                            tiles.set(where,c.getBlob(3));
+                    }
+                }
+                finally {
+                    c.close();
+                }
+            }
+        }
+        catch (Exception e) {
+            Log.w(TAG, "Failed to read tile batch: " + e.toString());
+        }
+        finally {
+            returnReader(reader);
+        }
+
+        return tiles;
+    }
 }
@@ -3,17 +3,59 @@ package com.mousebird.maply;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
+ * The MBTiles image source reads image tiles out of an MBTiles file.
+ * <p>
+ * By default tiles are read and decoded by a small pool of reader threads
+ * and handed back to the layer on its own thread.  If the quad layer drops
+ * a tile before we get to it, we won't bother reading it.
+ * <p>
  * Created by sjg on 5/25/16.
  */
-public class MBTilesImageSource implements QuadImageTileLayer.TileSource
+public class MBTilesImageSource implements QuadImageTileLayer.CancelableTileSource, MemoryCacheTileSource.DecodingTileSource
 {
     MBTiles mbTileDb;
 
+    // Set if a memory cache is wrapping us.  We decode into its spare bitmaps.
+    MemoryCacheTileSource memCache = null;
+
+    /**
+     * Number of reader threads we'll use if you don't say otherwise.
+     */
+    public static final int DefaultReaderThreads = 4;
+
+    int numThreads = DefaultReaderThreads;
+    ThreadPoolExecutor executor = null;
+
+    // Fetches we've queued up or are working on, by layer and tile
+    final HashMap<QuadImageTileLayerInterface,HashMap<MaplyTileID,FetchTask>> fetches = new HashMap<QuadImageTileLayerInterface,HashMap<MaplyTileID,FetchTask>>();
+
     public MBTilesImageSource(MBTiles tileDB)
+    {
+        this(tileDB,DefaultReaderThreads);
+    }
+
+    /**
+     * Construct with the MBTiles file and the number of threads to read with.
+     *
+     * @param tileDB The MBTiles file to read from.
+     * @param inNumThreads Number of reader threads.  If this is 0, we'll read
+     *                     and decode tiles on whatever thread asks for them,
+     *                     which will be the layer thread.
+     */
+    public MBTilesImageSource(MBTiles tileDB,int inNumThreads)
     {
         mbTileDb = tileDB;
         coordSys = mbTileDb.coordSys;
+        numThreads = inNumThreads;
     }
 
     public CoordSystem coordSys = null;
@@ -49,6 +91,135 @@ public class MBTilesImageSource implements QuadImageTileLayer.TileSource
         return true;
     }
 
+    @Override
+    public void setMemoryCache(MemoryCacheTileSource inMemCache)
+    {
+        memCache = inMemCache;
+    }
+
+    /**
+     * Number of tile reads we've got queued up or in progress.
+     */
+    public int getNumPendingFetches()
+    {
+        int count = 0;
+        synchronized (fetches)
+        {
+            for (HashMap<MaplyTileID,FetchTask> layerFetches : fetches.values())
+                count += layerFetches.size();
+        }
+        return count;
+    }
+
+    // Reads and decodes a single tile on one of the reader threads
+    private class FetchTask implements Runnable
+    {
+        QuadImageTileLayerInterface layer;
+        MaplyTileID tileID;
+        int frame;
+        Future<?> future = null;
+        volatile boolean isCanceled = false;
+
+        FetchTask(QuadImageTileLayerInterface inLayer,MaplyTileID inTileID,int inFrame)
+        {
+            layer = inLayer;
+            tileID = inTileID;
+            frame = inFrame;
+        }
+
+        @Override
+        public void run()
+        {
+            Bitmap bm = null;
+            if (!isCanceled)
+                bm = readTile(tileID);
+
+            if (!finishFetch(this))
+            {
+                // The layer dropped this tile while we were reading it
+                if (bm != null)
+                    bm.recycle();
+                return;
+            }
+
+            reportTile(layer,tileID,frame,bm);
+        }
+
+        void cancel()
+        {
+            isCanceled = true;
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+
+    // Read the raw data for a tile and decode it
+    Bitmap readTile(MaplyTileID tileID)
+    {
+        byte[] image = mbTileDb.getDataTile(tileID);
+        if (image == null)
+            return null;
+
+        MemoryCacheTileSource theMemCache = memCache;
+        if (theMemCache != null)
+            return theMemCache.decodeTile(image, null);
+
+        return BitmapFactory.decodeByteArray(image, 0, image.length);
+    }
+
+    // Hand a tile back to the layer on its own thread
+    void reportTile(final QuadImageTileLayerInterface layer,final MaplyTileID tileID,final int frame,final Bitmap bm)
+    {
+        LayerThread layerThread = layer.getLayerThread();
+        if (layerThread == null)
+            return;
+
+        layerThread.addTask(new Runnable() {
+            @Override
+            public void run() {
+                layer.loadedTile(tileID, frame, bm != null ? new MaplyImageTile(bm) : null);
+            }
+        }, true);
+    }
+
+    // Set up the reader threads if we haven't already
+    synchronized ThreadPoolExecutor getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = new ThreadPoolExecutor(numThreads, numThreads, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "MBTiles Reader");
+                            thread.setPriority(Thread.MIN_PRIORITY);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        return executor;
+    }
+
+    // Remove a fetch from the list.  Returns false if it had been canceled
+    boolean finishFetch(FetchTask task)
+    {
+        synchronized (fetches)
+        {
+            HashMap<MaplyTileID,FetchTask> layerFetches = fetches.get(task.layer);
+            if (layerFetches != null && layerFetches.get(task.tileID) == task)
+            {
+                layerFetches.remove(task.tileID);
+                if (layerFetches.isEmpty())
+                    fetches.remove(task.layer);
+            }
+        }
+
+        return !task.isCanceled;
+    }
+
     /**
      * This tells you when to start fetching a given tile. When you've fetched
      * the image you'll want to call loadedTile().  If you fail to fetch an image
@@ -60,31 +231,76 @@ public class MBTilesImageSource implements QuadImageTileLayer.TileSource
      */
     public void startFetchForTile(final QuadImageTileLayerInterface layer, final MaplyTileID tileID, final int frame)
     {
-        // Note: Start the fetch for a single tile, ideally on another thread.
-        //       When the tile data is in, call the layer loadedTile() method.
-
-        Thread thread = new Thread() {
-            @Override
-            public void run() {
-
-                byte[] image = mbTileDb.getDataTile(tileID);
+        // No threads means the caller wants us to do it right here
+        if (numThreads <= 0)
+        {
+            Bitmap bm = readTile(tileID);
+            layer.loadedTile(tileID, frame, bm != null ? new MaplyImageTile(bm) : null);
+            return;
+        }
 
-                if (image != null) {
-                    Bitmap bm = BitmapFactory.decodeByteArray(image, 0, image.length);
-                    MaplyImageTile tile = new MaplyImageTile(bm);
-
-                    layer.loadedTile(tileID, frame, tile);
-                } else
-                    layer.loadedTile(tileID, frame, null);
+        FetchTask task = new FetchTask(layer,tileID,frame);
+        synchronized (fetches)
+        {
+            HashMap<MaplyTileID,FetchTask> layerFetches = fetches.get(layer);
+            if (layerFetches == null)
+            {
+                layerFetches = new HashMap<MaplyTileID,FetchTask>();
+                fetches.put(layer,layerFetches);
             }
-        };
+            FetchTask oldTask = layerFetches.put(tileID,task);
+            if (oldTask != null)
+                oldTask.cancel();
+            task.future = getExecutor().submit(task);
+        }
+    }
 
-        thread.run();
+    /**
+     * Called by the layer when it drops a tile.  If we haven't read it yet, we won't.
+     */
+    @Override
+    public void tileUnloaded(QuadImageTileLayerInterface layer, MaplyTileID tileID)
+    {
+        synchronized (fetches)
+        {
+            HashMap<MaplyTileID,FetchTask> layerFetches = fetches.get(layer);
+            if (layerFetches == null)
+                return;
+            FetchTask task = layerFetches.remove(tileID);
+            if (task != null)
+                task.cancel();
+            if (layerFetches.isEmpty())
+                fetches.remove(layer);
+        }
     }
 
     @Override
     public void clear(final QuadImageTileLayerInterface layer)
     {
-        // Note: Not keeping track of read threads
+        ArrayList<FetchTask> toCancel = new ArrayList<FetchTask>();
+        synchronized (fetches)
+        {
+            HashMap<MaplyTileID,FetchTask> layerFetches = fetches.remove(layer);
+            if (layerFetches != null)
+                toCancel.addAll(layerFetches.values());
+        }
+        for (FetchTask task : toCancel)
+            task.cancel();
+
+        // Let the reader threads go if nobody else is using us
+        synchronized (fetches)
+        {
+            if (fetches.isEmpty())
+            {
+                synchronized (this)
+                {
+                    if (executor != null)
+                    {
+                        executor.shutdown();
+                        executor = null;
+                    }
+                }
+            }
+        }
     }
 }
@@ -62,6 +62,18 @@ public class MapboxVectorTileParser
         return dataReturn;
     }
 
+    /**
+     * Parse the data from a single tile.  This version takes the bounding box
+     * as plain values, which saves making an Mbr on the hot path.
+     */
+    public DataReturn parseData(byte[] data,double minX,double minY,double maxX,double maxY)
+    {
+        DataReturn dataReturn = new DataReturn();
+        dataReturn.vectorObjects = parseDataNative(data,minX,minY,maxX,maxY);
+
+        return dataReturn;
+    }
+
     native VectorObject[] parseDataNative(byte[] data,double minX,double minY,double maxX,double maxY);
 
     public void finalize()
@@ -0,0 +1,536 @@
+/*
+ *  MapboxVectorTilePipeline.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package com.mousebird.maply;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Turns raw Mapbox vector tile data into visual objects in four stages:
+ * inflate, parse, style match and build.
+ * <p>
+ * Each stage has its own small pool of threads and a bounded queue, so one
+ * tile can be parsing while another is being styled and a third is being built.
+ * If a stage's queue fills up, the stage feeding it does the work itself,
+ * which slows the fetches down rather than piling up tiles in memory.
+ * <p>
+ * Tiles can be cancelled at any point.  They're dropped at the start of the
+ * next stage.  You get one of these from a MapboxVectorTileSource.
+ * <p>
+ * Overzoomed tiles skip the inflate and do their clipping in the parse stage.
+ */
+public class MapboxVectorTilePipeline
+{
+	/**
+	 * The stages a tile goes through, in order.
+	 */
+	public enum Stage {Inflate,Parse,StyleMatch,Build};
+
+	static final int NumStages = Stage.values().length;
+
+	/// Tiles that can wait for each stage before the feeding stage runs them itself
+	public static int StageQueueSize = 16;
+
+	/**
+	 * Timing and queue depth for one stage.
+	 */
+	public static class StageStats
+	{
+		/// Which stage this is
+		public Stage stage;
+		/// Tiles waiting for this stage
+		public int queueDepth;
+		/// Tiles this stage is working on right now
+		public int active;
+		/// Tiles that made it through this stage
+		public long numRun;
+		/// Tiles dropped at this stage because they were cancelled
+		public long numCanceled;
+		/// Total time spent in this stage (ms)
+		public double totalTime;
+		/// Longest a tile has spent in this stage (ms)
+		public double maxTime;
+
+		/**
+		 * Average time a tile spends in this stage (ms).
+		 */
+		public double getAverageTime()
+		{
+			return numRun > 0 ? totalTime / numRun : 0.0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return stage + ": queued " + queueDepth + ", active " + active + ", run " + numRun +
+					", canceled " + numCanceled + ", avg " + String.format("%.2f", getAverageTime()) +
+					"ms, max " + String.format("%.2f", maxTime) + "ms";
+		}
+	}
+
+	// Counters for a stage.  Updated from the stage's threads.
+	static class StageCounters
+	{
+		final AtomicLong numRun = new AtomicLong(0);
+		final AtomicLong numCanceled = new AtomicLong(0);
+		final AtomicLong totalNanos = new AtomicLong(0);
+		final AtomicLong maxNanos = new AtomicLong(0);
+
+		void ran(long nanos)
+		{
+			numRun.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max,nanos))
+				max = maxNanos.get();
+		}
+	}
+
+	// The vector objects for one style in a tile
+	static class StyleGroup
+	{
+		final VectorStyle style;
+		final ArrayList<VectorObject> vecObjs = new ArrayList<VectorObject>();
+
+		StyleGroup(VectorStyle style)
+		{
+			this.style = style;
+		}
+	}
+
+	/**
+	 * Wants to know when a tile has been parsed.  Called on the parse thread.
+	 */
+	interface ParseListener
+	{
+		void tileParsed(MaplyTileID tileID,MapboxVectorTileParser.DataReturn dataObjs);
+		void tileFailed(MaplyTileID tileID);
+	}
+
+	// A tile on its way through the pipeline
+	class TileJob
+	{
+		final QuadPagingLayer layer;
+		final MaplyTileID tileID;
+		final TileCache cache;
+		final String cacheKey;
+		final byte[] rawData;
+		byte[] tileData;
+		MapboxVectorTileParser.DataReturn dataObjs;
+		ArrayList<StyleGroup> styleGroups;
+		// For overzoomed tiles, the parent's objects we clip down
+		VectorObject[] parentObjs;
+		// Told when the parse is done.  If parseOnly is set, that's as far as we go.
+		ParseListener listener;
+		boolean parseOnly = false;
+		volatile boolean canceled = false;
+
+		TileJob(QuadPagingLayer layer,MaplyTileID tileID,byte[] rawData,TileCache cache,String cacheKey)
+		{
+			this.layer = layer;
+			this.tileID = tileID;
+			this.rawData = rawData;
+			this.tileData = rawData;
+			this.cache = cache;
+			this.cacheKey = cacheKey;
+		}
+	}
+
+	final MapboxVectorTileSource tileSource;
+	private final ThreadPoolExecutor[] executors = new ThreadPoolExecutor[NumStages];
+	private final StageCounters[] counters = new StageCounters[NumStages];
+	private final AtomicInteger[] active = new AtomicInteger[NumStages];
+	// Tiles in the pipeline, so we can cancel them
+	private final ConcurrentHashMap<MaplyTileID,TileJob> jobs = new ConcurrentHashMap<MaplyTileID,TileJob>();
+
+	MapboxVectorTilePipeline(MapboxVectorTileSource inTileSource)
+	{
+		tileSource = inTileSource;
+
+		int numCores = Math.max(1,Runtime.getRuntime().availableProcessors());
+		for (final Stage stage : Stage.values())
+		{
+			// Inflating is quick, the rest get a thread per core
+			int numThreads = stage == Stage.Inflate ? 1 : numCores;
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 10, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(StageQueueSize),
+					new ThreadFactory() {
+						final AtomicInteger count = new AtomicInteger(0);
+						@Override
+						public Thread newThread(Runnable run) {
+							Thread thread = new Thread(run, "Maply Vector Tile " + stage + " " + count.incrementAndGet());
+							thread.setPriority(Thread.NORM_PRIORITY - 1);
+							return thread;
+						}
+					},
+					new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			executors[stage.ordinal()] = executor;
+			counters[stage.ordinal()] = new StageCounters();
+			active[stage.ordinal()] = new AtomicInteger(0);
+		}
+	}
+
+	/**
+	 * Send raw tile data through the pipeline.  The layer hears about it when it's done.
+	 * Null data means the tile was empty.
+	 */
+	void addTile(QuadPagingLayer layer,MaplyTileID tileID,byte[] rawData,TileCache cache,String cacheKey)
+	{
+		addTile(layer,tileID,rawData,cache,cacheKey,null);
+	}
+
+	/**
+	 * Send raw tile data through the pipeline and tell the listener once it's parsed.
+	 */
+	void addTile(QuadPagingLayer layer,MaplyTileID tileID,byte[] rawData,TileCache cache,String cacheKey,ParseListener listener)
+	{
+		if (rawData == null)
+		{
+			if (listener != null)
+				listener.tileFailed(tileID);
+			layer.tileDidLoad(tileID);
+			return;
+		}
+
+		TileJob job = new TileJob(layer,tileID,rawData,cache,cacheKey);
+		job.listener = listener;
+		startJob(job,Stage.Inflate);
+	}
+
+	/**
+	 * Parse the raw data for a tile, but don't build anything.  Just tell the listener.
+	 * These can't be cancelled.
+	 */
+	void parseTile(QuadPagingLayer layer,MaplyTileID tileID,byte[] rawData,TileCache cache,String cacheKey,ParseListener listener)
+	{
+		if (rawData == null)
+		{
+			listener.tileFailed(tileID);
+			return;
+		}
+
+		TileJob job = new TileJob(layer,tileID,rawData,cache,cacheKey);
+		job.listener = listener;
+		job.parseOnly = true;
+		runStage(Stage.Inflate,job);
+	}
+
+	/**
+	 * Make a tile by clipping the objects from a parent tile that's already been parsed.
+	 */
+	void addClippedTile(QuadPagingLayer layer,MaplyTileID tileID,VectorObject[] parentObjs)
+	{
+		TileJob job = new TileJob(layer,tileID,null,null,null);
+		job.parentObjs = parentObjs;
+		startJob(job,Stage.Parse);
+	}
+
+	private void startJob(TileJob job,Stage stage)
+	{
+		TileJob oldJob = jobs.put(job.tileID,job);
+		if (oldJob != null)
+			oldJob.canceled = true;
+		runStage(stage,job);
+	}
+
+	/**
+	 * Stop working on the given tile, wherever it is in the pipeline.
+	 */
+	void cancel(MaplyTileID tileID)
+	{
+		TileJob job = jobs.remove(tileID);
+		if (job != null)
+			job.canceled = true;
+	}
+
+	/**
+	 * Cancel everything and stop the threads.
+	 */
+	void shutdown()
+	{
+		for (TileJob job : jobs.values())
+			job.canceled = true;
+		jobs.clear();
+		for (ThreadPoolExecutor executor : executors)
+			executor.shutdownNow();
+	}
+
+	/**
+	 * Return the timing and queue depth for each stage, in pipeline order.
+	 */
+	public StageStats[] getStats()
+	{
+		StageStats[] allStats = new StageStats[NumStages];
+		for (Stage stage : Stage.values())
+		{
+			int which = stage.ordinal();
+			StageStats stats = new StageStats();
+			stats.stage = stage;
+			stats.queueDepth = executors[which].getQueue().size();
+			stats.active = active[which].get();
+			stats.numRun = counters[which].numRun.get();
+			stats.numCanceled = counters[which].numCanceled.get();
+			stats.totalTime = counters[which].totalNanos.get() / 1e6;
+			stats.maxTime = counters[which].maxNanos.get() / 1e6;
+			allStats[which] = stats;
+		}
+		return allStats;
+	}
+
+	// Queue up the given stage for the tile
+	private void runStage(final Stage stage,final TileJob job)
+	{
+		ThreadPoolExecutor executor = executors[stage.ordinal()];
+		if (executor.isShutdown())
+			return;
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				int which = stage.ordinal();
+				if (job.canceled)
+				{
+					counters[which].numCanceled.incrementAndGet();
+					dropTile(job);
+					return;
+				}
+
+				active[which].incrementAndGet();
+				long startTime = System.nanoTime();
+				boolean keepGoing = false;
+				try {
+					keepGoing = doStage(stage,job);
+				}
+				catch (Exception e)
+				{
+					Log.e("Maply","Failed to " + stage + " vector tile " + job.tileID.toString() + " because: " + e.toString());
+				}
+				counters[which].ran(System.nanoTime() - startTime);
+				active[which].decrementAndGet();
+
+				if (!keepGoing)
+				{
+					if (job.listener != null)
+						job.listener.tileFailed(job.tileID);
+					if (!job.parseOnly)
+						finishTile(job,false);
+					return;
+				}
+				if (stage == Stage.Parse && job.parseOnly)
+					return;
+				if (stage == Stage.Build)
+					finishTile(job,true);
+				else
+					runStage(Stage.values()[which+1],job);
+			}
+		});
+	}
+
+	// Do the work for one stage.  Returns false if the tile failed.
+	private boolean doStage(Stage stage,TileJob job) throws Exception
+	{
+		switch (stage)
+		{
+			case Inflate:
+				job.tileData = inflate(job.rawData);
+				return true;
+			case Parse:
+				return parse(job);
+			case StyleMatch:
+				return styleMatch(job);
+			case Build:
+				build(job);
+				return true;
+		}
+		return false;
+	}
+
+	// Unzip if it's compressed.  We check the magic number rather than trying and failing.
+	static byte[] inflate(byte[] data)
+	{
+		if (data.length < 2 || (data[0] & 0xff) != 0x1f || (data[1] & 0xff) != 0x8b)
+			return data;
+
+		try {
+			GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data), 16384);
+			ByteArrayOutputStream bout = new ByteArrayOutputStream(data.length * 4);
+			byte[] buffer = new byte[16384];
+			int count;
+			while ((count = in.read(buffer)) != -1)
+				bout.write(buffer, 0, count);
+			in.close();
+			return bout.toByteArray();
+		}
+		catch (Exception ex)
+		{
+			// We'll try the raw data if we can't decompress it
+			return data;
+		}
+	}
+
+	private boolean parse(TileJob job)
+	{
+		if (job.parentObjs != null)
+			return clip(job);
+
+		MapboxVectorTileParser tileParser = tileSource.tileParser;
+		if (tileParser == null)
+			return false;
+
+		double[] bounds = new double[4];
+		job.layer.geoBoundsForTile(job.tileID,bounds);
+		job.dataObjs = tileParser.parseData(job.tileData,
+				MapboxVectorTileSource.toMercX(bounds[0]), MapboxVectorTileSource.toMercY(bounds[1]),
+				MapboxVectorTileSource.toMercX(bounds[2]), MapboxVectorTileSource.toMercY(bounds[3]));
+		job.tileData = null;
+		if (job.dataObjs == null)
+			return false;
+
+		// It parsed, so it's worth keeping
+		if (job.cache != null && job.cacheKey != null)
+			job.cache.put(job.cacheKey, job.rawData);
+
+		if (job.listener != null)
+			job.listener.tileParsed(job.tileID,job.dataObjs);
+
+		return true;
+	}
+
+	// Cut the parent's objects down to this tile
+	private boolean clip(TileJob job)
+	{
+		double[] bounds = new double[4];
+		job.layer.geoBoundsForTile(job.tileID,bounds);
+		Mbr mbr = new Mbr(bounds);
+
+		ArrayList<VectorObject> clipped = new ArrayList<VectorObject>();
+		for (VectorObject vecObj : job.parentObjs)
+		{
+			if (job.canceled)
+				break;
+			VectorObject clipObj = vecObj.clipToMbr(mbr);
+			if (clipObj != null && clipObj.countPoints() > 0)
+				clipped.add(clipObj);
+		}
+		job.parentObjs = null;
+
+		job.dataObjs = new MapboxVectorTileParser.DataReturn();
+		job.dataObjs.vectorObjects = clipped.toArray(new VectorObject[clipped.size()]);
+
+		return true;
+	}
+
+	// Sort the vector objects into bins based on their styles
+	private boolean styleMatch(TileJob job)
+	{
+		VectorStyleInterface vecStyleFactory = tileSource.vecStyleFactory;
+		job.styleGroups = new ArrayList<StyleGroup>();
+		if (vecStyleFactory == null || job.dataObjs.vectorObjects == null)
+			return true;
+
+		MaplyBaseController control = job.layer.maplyControl;
+		HashMap<String,StyleGroup> groups = new HashMap<String,StyleGroup>();
+		for (VectorObject vecObj : job.dataObjs.vectorObjects)
+		{
+			if (job.canceled)
+				return true;
+
+			AttrDictionary attrs = vecObj.getAttributes();
+			// Pull the attributes over once for all the style lookups
+			VectorStyle[] styles = vecStyleFactory.stylesForFeature(attrs, job.tileID, attrs.snapshot().getString("layer_name"), control);
+			for (VectorStyle style : styles)
+			{
+				StyleGroup group = groups.get(style.getUuid());
+				if (group == null)
+				{
+					group = new StyleGroup(style);
+					groups.put(style.getUuid(), group);
+					job.styleGroups.add(group);
+				}
+				group.vecObjs.add(vecObj);
+			}
+		}
+
+		return true;
+	}
+
+	// This makes the objects
+	private void build(TileJob job)
+	{
+		MaplyBaseController control = job.layer.maplyControl;
+		ArrayList<ComponentObject> tileCompObjs = new ArrayList<ComponentObject>();
+		for (StyleGroup group : job.styleGroups)
+		{
+			if (job.canceled)
+				break;
+			ComponentObject[] compObjs = group.style.buildObjects(group.vecObjs, job.tileID, control);
+			if (compObjs != null)
+				for (ComponentObject compObj : compObjs)
+					tileCompObjs.add(compObj);
+		}
+
+		// The layer cleans these up if it's lost interest in the tile
+		if (tileCompObjs.size() > 0)
+			job.layer.addData(tileCompObjs, job.tileID);
+	}
+
+	// Tell the layer how it went and clean up
+	private void finishTile(TileJob job,boolean success)
+	{
+		jobs.remove(job.tileID,job);
+
+		if (!job.canceled)
+		{
+			if (success)
+				job.layer.tileDidLoad(job.tileID);
+			else
+				job.layer.tileFailedToLoad(job.tileID);
+		}
+
+		dropTile(job);
+	}
+
+	// Let go of whatever the tile was holding
+	private void dropTile(TileJob job)
+	{
+		jobs.remove(job.tileID,job);
+
+		// Explicitly dispose of vector objects for efficiency.  Parse only tiles are being kept.
+		if (tileSource.disposeAfterRemoval && !job.parseOnly && job.dataObjs != null && job.dataObjs.vectorObjects != null)
+			for (VectorObject vecObj : job.dataObjs.vectorObjects)
+				vecObj.dispose();
+		job.dataObjs = null;
+		job.styleGroups = null;
+		job.tileData = null;
+	}
+}
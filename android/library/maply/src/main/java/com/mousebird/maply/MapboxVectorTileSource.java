@@ -7,23 +7,17 @@ import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
-import okio.Okio;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipEntry;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static com.mousebird.maply.utils.OkHttpUtils.cancel;
 
@@ -31,6 +25,13 @@ import static com.mousebird.maply.utils.OkHttpUtils.cancel;
  * The MapboxVectorTiles class is used to load Mapbox format vector tiles
  * on demand over a certain area.  You'll need to use this in combination with
  * a QuadPagingLayer.
+ * <p>
+ * Tile data goes through a MapboxVectorTilePipeline, which inflates, parses,
+ * styles and builds tiles in parallel.
+ * <p>
+ * With overzoom turned on, tiles past the data's max zoom are made by clipping
+ * the parsed parent tile at the max zoom.  Parsed parents are kept around for a
+ * bit so we don't fetch or parse them again for each child.
  */
 public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
 {
@@ -84,9 +85,15 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
     }
 
     /**
-     * Maximum zoom level supported.
+     * Maximum zoom level supported.  If overzoom is on, this is the overzoom level.
      */
     public int maxZoom()
+    {
+        return Math.max(dataMaxZoom(), overzoomMaxZoom);
+    }
+
+    // Maximum zoom level the data actually has
+    int dataMaxZoom()
     {
         if (mbTiles != null)
             return mbTiles.getMaxZoom();
@@ -94,111 +101,212 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
             return tileInfo.maxZoom;
     }
 
-    static double MAX_EXTENT = 20037508.342789244;
+    int overzoomMaxZoom = 0;
 
-    // Convert to spherical mercator directly
-    Point2d toMerc(Point2d pt)
+    /**
+     * Number of parsed tiles at the data's max zoom we'll keep around for overzooming.
+     */
+    public static int OverzoomCacheSize = 16;
+
+    /**
+     * Turn on overzoom and set the level we'll go to.
+     * <p>
+     * Tiles past the data's max zoom are made by clipping the parent tile at the
+     * max zoom down to the child.  That way we only fetch and parse the parent once.
+     * Set this before the layer starts.  Zero, the default, turns it off.
+     * <p>
+     * Overzoomed tiles don't get cached parents if disposeAfterRemoval is set,
+     * since the parents would be disposed out from under us.
+     *
+     * @param maxZoom The highest level we'll make tiles for.
+     */
+    public void setOverzoomMaxZoom(int maxZoom)
+    {
+        overzoomMaxZoom = maxZoom;
+    }
+
+    /**
+     * The level we'll overzoom to, or zero if overzoom is off.
+     */
+    public int getOverzoomMaxZoom()
+    {
+        return overzoomMaxZoom;
+    }
+
+    // Children waiting on a parent tile to be fetched and parsed
+    static class PendingParent
     {
-        Point2d newPt = new Point2d();
-        newPt.setValue(Math.toDegrees(pt.getX()) * MAX_EXTENT / 180.0,
-                3189068.5 * Math.log((1.0 + Math.sin(pt.getY())) / (1.0 - Math.sin(pt.getY()))));
+        final QuadPagingLayer layer;
+        final ArrayList<MaplyTileID> children = new ArrayList<MaplyTileID>();
 
-        return newPt;
+        PendingParent(QuadPagingLayer layer)
+        {
+            this.layer = layer;
+        }
     }
 
-    // Process data returned from an MBTiles file or network request
-    boolean processData(final QuadPagingLayer layer,final MaplyTileID tileID,byte[] tileData)
+    // Protects the parsed parents and the children waiting on them
+    final Object overzoomLock = new Object();
+    // Parsed parents, least recently used first
+    final LinkedHashMap<MaplyTileID,VectorObject[]> parsedParents = new LinkedHashMap<MaplyTileID,VectorObject[]>(16,0.75f,true)
     {
-        ArrayList<ComponentObject> tileCompObjs = new ArrayList<ComponentObject>();
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MaplyTileID,VectorObject[]> eldest)
+        {
+            return size() > OverzoomCacheSize;
+        }
+    };
+    final HashMap<MaplyTileID,PendingParent> pendingParents = new HashMap<MaplyTileID,PendingParent>();
 
-        if (tileData != null) {
-            try {
-                // Unzip if it's compressed
-                ByteArrayInputStream bin = new ByteArrayInputStream(tileData);
-                GZIPInputStream in = new GZIPInputStream(bin);
-                ByteArrayOutputStream bout = new ByteArrayOutputStream(tileData.length * 2);
-
-                ZipEntry ze;
-                byte[] buffer = new byte[1024];
-                int count;
-                while ((count = in.read(buffer)) != -1)
-                    bout.write(buffer, 0, count);
-
-                tileData = bout.toByteArray();
-            } catch (Exception ex) {
-                // We'll try the raw data if we can't decompress it
+    // Hears about parents being parsed and hands them off to the children
+    final MapboxVectorTilePipeline.ParseListener parentListener = new MapboxVectorTilePipeline.ParseListener()
+    {
+        @Override
+        public void tileParsed(MaplyTileID tileID, MapboxVectorTileParser.DataReturn dataObjs)
+        {
+            VectorObject[] vecObjs = dataObjs.vectorObjects != null ? dataObjs.vectorObjects : new VectorObject[0];
+            PendingParent pending;
+            synchronized (overzoomLock) {
+                parsedParents.put(tileID, vecObjs);
+                pending = pendingParents.remove(tileID);
             }
+            if (pending != null)
+                for (MaplyTileID childID : pending.children)
+                    pipeline.addClippedTile(pending.layer, childID, vecObjs);
+        }
 
-            // Parse the data
-            // Note: Eventually short circuit parsing with layer test and UUID test
-            Mbr mbr = layer.geoBoundsForTile(tileID);
-            mbr.ll = toMerc(mbr.ll);
-            mbr.ur = toMerc(mbr.ur);
-
-            MapboxVectorTileParser ourTileParser = tileParser;
-            if (ourTileParser == null)
-                return false;
-
-            MapboxVectorTileParser.DataReturn dataObjs = ourTileParser.parseData(tileData, mbr);
-
-            if (dataObjs == null)
-                return false;
-
-            VectorStyleInterface ourVecStyleFactory = vecStyleFactory;
-
-            // Work through the vector objects
-            if (ourVecStyleFactory != null) {
-                HashMap<String, ArrayList<VectorObject>> vecObjsPerStyle = new HashMap<String, ArrayList<VectorObject>>();
-
-                // Sort the vector objects into bins based on their styles
-                if (dataObjs != null && dataObjs.vectorObjects != null)
-                    for (VectorObject vecObj : dataObjs.vectorObjects) {
-                        AttrDictionary attrs = vecObj.getAttributes();
-                        VectorStyle[] styles = ourVecStyleFactory.stylesForFeature(attrs, tileID, attrs.getString("layer_name"), layer.maplyControl);
-                        for (VectorStyle style : styles) {
-                            ArrayList<VectorObject> vecObjsForStyle = vecObjsPerStyle.get(style.getUuid());
-                            if (vecObjsForStyle == null) {
-                                vecObjsForStyle = new ArrayList<VectorObject>();
-                                vecObjsPerStyle.put(style.getUuid(), vecObjsForStyle);
-                            }
-                            vecObjsForStyle.add(vecObj);
-                        }
-                    }
+        @Override
+        public void tileFailed(MaplyTileID tileID)
+        {
+            parentFailed(tileID);
+        }
+    };
 
-                // Work through the various styles
-                for (String uuid : vecObjsPerStyle.keySet()) {
-                    ArrayList<VectorObject> vecObjs = vecObjsPerStyle.get(uuid);
-                    VectorStyle style = ourVecStyleFactory.styleForUUID(uuid, layer.maplyControl);
-
-                    // This makes the objects
-                    if (style != null) {
-                        ComponentObject[] compObjs = style.buildObjects(vecObjs, tileID, layer.maplyControl);
-                        if (compObjs != null)
-                            for (int ii = 0; ii < compObjs.length; ii++)
-                                tileCompObjs.add(compObjs[ii]);
-                    }
+    // Tiles the layer loads at the max zoom are parents too, but if they fail the children can keep waiting
+    final MapboxVectorTilePipeline.ParseListener maxZoomListener = new MapboxVectorTilePipeline.ParseListener()
+    {
+        @Override
+        public void tileParsed(MaplyTileID tileID, MapboxVectorTileParser.DataReturn dataObjs)
+        {
+            parentListener.tileParsed(tileID, dataObjs);
+        }
+
+        @Override
+        public void tileFailed(MaplyTileID tileID)
+        {
+        }
+    };
+
+    // Couldn't get the parent, so none of the children are going to load
+    void parentFailed(MaplyTileID parentID)
+    {
+        PendingParent pending;
+        synchronized (overzoomLock) {
+            pending = pendingParents.remove(parentID);
+        }
+        if (pending != null)
+            for (MaplyTileID childID : pending.children)
+                pending.layer.tileFailedToLoad(childID);
+    }
+
+    // Make a tile past the data's max zoom out of its parent
+    void startOverzoomTile(final QuadPagingLayer layer,final MaplyTileID tileID,int dataMaxZoom)
+    {
+        int shift = tileID.level - dataMaxZoom;
+        final MaplyTileID parentID = new MaplyTileID(tileID.x >> shift, tileID.y >> shift, dataMaxZoom);
+
+        VectorObject[] parentObjs;
+        boolean fetchParent = false;
+        synchronized (overzoomLock) {
+            parentObjs = parsedParents.get(parentID);
+            if (parentObjs == null) {
+                PendingParent pending = pendingParents.get(parentID);
+                if (pending == null) {
+                    pending = new PendingParent(layer);
+                    pendingParents.put(parentID, pending);
+                    fetchParent = true;
                 }
+                pending.children.add(tileID);
             }
+        }
 
-            // Add all the component objects we created
-            if (tileCompObjs.size() > 0)
-                layer.addData(tileCompObjs, tileID);
+        if (parentObjs != null) {
+            pipeline.addClippedTile(layer, tileID, parentObjs);
+            return;
+        }
+        if (!fetchParent)
+            return;
 
-            //                    Log.d("Maply","Loaded vector tile: " + tileID.toString());
+        if (debugOutput)
+            Log.d("Maply","Fetching parent " + parentID.level + ": (" + parentID.x + "," + parentID.y + ") for overzoom");
 
-            layer.tileDidLoad(tileID);
+        if (mbTiles != null) {
+            LayerThread thread = layer.maplyControl.getWorkingThread();
+            thread.addTask(new Runnable() {
+                @Override
+                public void run() {
+                    MapboxTileSource thisMbTiles = mbTiles;
+                    if (thisMbTiles == null)
+                        return;
+                    pipeline.parseTile(layer, parentID, thisMbTiles.getDataTile(parentID), null, null, parentListener);
+                }
+            }, true);
+        } else {
+            ConnectionTask task = makeConnectionTask(layer, parentID);
+            task.parentOnly = true;
+            task.fetchTile();
+        }
+    }
 
-            // Explicitly dispose of vector objects for efficiency
-            if (disposeAfterRemoval)
-            {
-                for (VectorObject vecObj : dataObjs.vectorObjects)
-                    vecObj.dispose();
-            }
-        } else
-            // This just means the tile was empty
-            layer.tileDidLoad(tileID);
+    static double MAX_EXTENT = 20037508.342789244;
+
+    // Convert to spherical mercator directly
+    static double toMercX(double lon)
+    {
+        return Math.toDegrees(lon) * MAX_EXTENT / 180.0;
+    }
+
+    static double toMercY(double lat)
+    {
+        double sinLat = Math.sin(lat);
+        return 3189068.5 * Math.log((1.0 + sinLat) / (1.0 - sinLat));
+    }
+
+    // Decodes, styles and builds the tiles
+    final MapboxVectorTilePipeline pipeline = new MapboxVectorTilePipeline(this);
+
+    /**
+     * Return timing and queue depth for each stage of the tile pipeline.
+     */
+    public MapboxVectorTilePipeline.StageStats[] getPipelineStats()
+    {
+        return pipeline.getStats();
+    }
+
+    // Send data returned from an MBTiles file or network request through the pipeline.
+    // The layer hears about the tile when it comes out the other end.
+    void processData(final QuadPagingLayer layer,final MaplyTileID tileID,byte[] tileData,String cacheKey)
+    {
+        // Tiles at the max zoom can be parents for overzooming, so hang on to what they parse into
+        MapboxVectorTilePipeline.ParseListener listener = null;
+        if (overzoomMaxZoom > 0 && !disposeAfterRemoval && tileID.level == dataMaxZoom())
+            listener = maxZoomListener;
+
+        pipeline.addTile(layer,tileID,tileData,cacheKey != null ? tileCache : null,cacheKey,listener);
+    }
 
-        return true;
+    // Build a connection task for the given tile
+    ConnectionTask makeConnectionTask(QuadPagingLayer layer,MaplyTileID tileID)
+    {
+        // Form the tile URL
+        int maxY = 1<<tileID.level;
+        int remoteY = maxY - tileID.y - 1;
+        URL tileURL = tileInfo.buildURL(tileID.x,remoteY,tileID.level);
+
+        String cacheKey = null;
+        if (tileCache != null)
+            cacheKey = tileInfo.buildCacheName(tileID.x, tileID.y, tileID.level);
+        return new ConnectionTask(layer,this,tileID,tileURL,cacheKey);
     }
 
     /**
@@ -208,38 +316,72 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
      */
     public void startFetchForTile(final QuadPagingLayer layer,final MaplyTileID tileID)
     {
+        // Past the data, so we'll clip it out of the parent
+        int dataMaxZoom = dataMaxZoom();
+        if (overzoomMaxZoom > 0 && tileID.level > dataMaxZoom) {
+            startOverzoomTile(layer, tileID, dataMaxZoom);
+            return;
+        }
+
         // It's a local MBTiles file
         if (mbTiles != null) {
+            // Requests tend to come in bunches, so we read them together
+            synchronized (pendingLocalTiles) {
+                ArrayList<MaplyTileID> tileIDs = pendingLocalTiles.get(layer);
+                if (tileIDs == null) {
+                    tileIDs = new ArrayList<MaplyTileID>();
+                    pendingLocalTiles.put(layer, tileIDs);
+                }
+                tileIDs.add(tileID);
+                if (tileIDs.size() > 1)
+                    return;
+            }
+
             LayerThread thread = layer.maplyControl.getWorkingThread();
             thread.addTask(new Runnable() {
                 @Override
                 public void run() {
-                    // Load the data, if it's there
-                    MapboxTileSource thisMbTiles = mbTiles;
-                    if (thisMbTiles != null) {
-                        byte[] tileData = thisMbTiles.getDataTile(tileID);
-
-                        processData(layer, tileID, tileData);
+                    ArrayList<MaplyTileID> tileIDs;
+                    synchronized (pendingLocalTiles) {
+                        tileIDs = pendingLocalTiles.remove(layer);
                     }
+                    if (tileIDs != null)
+                        fetchLocalTiles(layer, tileIDs);
                 }
-            });
+            }, true);
         } else {
             if (debugOutput)
                 Log.d("Maply","Starting fetch for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")");
 
-            // Form the tile URL
-            int maxY = 1<<tileID.level;
-            int remoteY = maxY - tileID.y - 1;
-            final URL tileURL = tileInfo.buildURL(tileID.x,remoteY,tileID.level);
-
-            String cacheFile = null;
-            if (cacheDir != null)
-                cacheFile = cacheDir.getAbsolutePath() + tileInfo.buildCacheName(tileID.x, tileID.y, tileID.level);
-            ConnectionTask task = new ConnectionTask(layer,this,tileID,tileURL,cacheFile);
+            ConnectionTask task = makeConnectionTask(layer,tileID);
             task.fetchTile();
         }
     }
 
+    // Local tiles we've been asked for, but haven't read yet
+    HashMap<QuadPagingLayer,ArrayList<MaplyTileID>> pendingLocalTiles = new HashMap<QuadPagingLayer,ArrayList<MaplyTileID>>();
+
+    // Read a group of tiles from the local database and process them
+    void fetchLocalTiles(QuadPagingLayer layer,ArrayList<MaplyTileID> tileIDs)
+    {
+        MapboxTileSource thisMbTiles = mbTiles;
+        if (thisMbTiles == null)
+            return;
+
+        // MBTiles files can do the whole batch in one go
+        List<byte[]> tileDatas;
+        if (thisMbTiles instanceof MBTiles) {
+            tileDatas = ((MBTiles) thisMbTiles).getDataTiles(tileIDs);
+        } else {
+            tileDatas = new ArrayList<byte[]>(tileIDs.size());
+            for (MaplyTileID tileID : tileIDs)
+                tileDatas.add(thisMbTiles.getDataTile(tileID));
+        }
+
+        for (int ii=0;ii<tileIDs.size();ii++)
+            processData(layer, tileIDs.get(ii), tileDatas.get(ii), null);
+    }
+
     HashMap<MaplyTileID,ConnectionTask> tasks = new HashMap<MaplyTileID,ConnectionTask>();
 
     ConnectionTask getTask(MaplyTileID tileID)
@@ -271,12 +413,25 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
      */
     public void tileDidUnload(MaplyTileID tileID)
     {
+        // Don't bother reading it if we haven't yet
+        synchronized (pendingLocalTiles) {
+            for (ArrayList<MaplyTileID> tileIDs : pendingLocalTiles.values())
+                tileIDs.remove(tileID);
+        }
+        synchronized (overzoomLock) {
+            for (PendingParent pending : pendingParents.values())
+                pending.children.remove(tileID);
+        }
+
         ConnectionTask task = getTask(tileID);
 
         if (task != null) {
             task.cancel();
             task.clear();
         }
+
+        // Stop working on it if it's already in the pipeline
+        pipeline.cancel(tileID);
     }
 
     // Called when the layer shuts down
@@ -293,6 +448,11 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
                 for (ConnectionTask task : theTasks.values())
                     task.clear();
             }
+            pipeline.shutdown();
+            synchronized (overzoomLock) {
+                parsedParents.clear();
+                pendingParents.clear();
+            }
 
             controller = null;
             client = null;
@@ -304,13 +464,13 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
     }
 
 
-    File cacheDir = null;
+    TileCache tileCache = null;
     Object NET_TAG = new Object();
 
     /**
      * Set the cache directory for fetched vector tiles.  We'll look there first.
-     * There is no limiting or pruning going on, that directory will just get
-     * bigger and bigger.
+     * This sets up a DiskTileCache with its default limits.  If you want
+     * different limits or want to share the cache, use setTileCache().
      * <p>
      * By default that directory is null.
      *
@@ -318,7 +478,27 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
      */
     public void setCacheDir(File inCacheDir)
     {
-        cacheDir = inCacheDir;
+        tileCache = (inCacheDir != null) ? new DiskTileCache(inCacheDir) : null;
+    }
+
+    /**
+     * Set the cache for fetched vector tiles.  We'll look there first.
+     * <p>
+     * By default there is no cache.
+     *
+     * @param inTileCache Cache for vector tiles.
+     */
+    public void setTileCache(TileCache inTileCache)
+    {
+        tileCache = inTileCache;
+    }
+
+    /**
+     * Return the cache for fetched vector tiles, if there is one.
+     */
+    public TileCache getTileCache()
+    {
+        return tileCache;
     }
 
     // Connection task fetches the image
@@ -328,18 +508,19 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
         QuadPagingLayer layer = null;
         MaplyTileID tileID = null;
         URL url = null;
-        String locFile = null;
+        String cacheKey = null;
         public Call call;
         byte[] tileData = null;
-        File cacheFile = null;
         boolean isCanceled = false;
+        // Fetching a parent for overzoomed tiles.  Nobody cancels these.
+        boolean parentOnly = false;
 
-        ConnectionTask(QuadPagingLayer inLayer,MapboxVectorTileSource inTileSource, MaplyTileID inTileID,URL inURL,String inFile)
+        ConnectionTask(QuadPagingLayer inLayer,MapboxVectorTileSource inTileSource, MaplyTileID inTileID,URL inURL,String inCacheKey)
         {
             layer = inLayer;
             tileSource = inTileSource;
             tileID = inTileID;
-            locFile = inFile;
+            cacheKey = inCacheKey;
             url = inURL;
         }
 
@@ -348,11 +529,10 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
             try {
                 synchronized (this) {
                     // See if it's here locally
-                    if (locFile != null) {
-                        cacheFile = new File(locFile);
-                        if (cacheFile.exists()) {
-                            InputStream stream = new FileInputStream(cacheFile);
-                            tileData = Okio.buffer(Okio.source(stream)).readByteArray();
+                    TileCache cache = tileCache;
+                    if (cacheKey != null && cache != null) {
+                        tileData = cache.get(cacheKey);
+                        if (tileData != null) {
                             if (debugOutput) {
                                 if (tileData != null)
                                     Log.d("Maply", "Read cached file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")");
@@ -364,7 +544,7 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
                 }
 
                 if (tileData != null) {
-                    reportTile();
+                    reportTile(null);
                     return;
                 }
 
@@ -373,7 +553,8 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
 
                 synchronized (this) {
                     call = client.newCall(request);
-                    addTask(tileID, this);
+                    if (!parentOnly)
+                        addTask(tileID, this);
                     call.enqueue(this);
                 }
             } catch (Exception e) {
@@ -394,6 +575,8 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
                 Log.e("Maply", "Failed to fetch remote tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")");
 
             clear();
+            if (parentOnly)
+                parentFailed(tileID);
         }
 
         // Callback from OK HTTP on success
@@ -403,18 +586,11 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
             if (isCanceled)
                 return;
 
+            String newCacheKey = null;
             try {
                 tileData = response.body().bytes();
-
-                if (processData(layer,tileID,tileData)) {
-                    // Save to cache
-                    if (cacheFile != null && tileData != null) {
-                        OutputStream fOut;
-                        fOut = new FileOutputStream(cacheFile);
-                        fOut.write(tileData);
-                        fOut.close();
-                    }
-                }
+                // It goes in the cache once it parses
+                newCacheKey = cacheKey;
 
                 if (debugOutput) {
                     if (tileData != null)
@@ -430,23 +606,30 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
                 Log.e("Maply", "Fetched remote file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " because: " + e.toString());
             }
 
-            reportTile();
+            reportTile(newCacheKey);
         }
 
-        // Let the system know we've got a tile
-        protected void reportTile() {
+        // Hand the tile data off to the pipeline, which will let the layer know
+        protected void reportTile(String newCacheKey) {
+            QuadPagingLayer theLayer;
+            byte[] theTileData;
             synchronized (this) {
-                if (layer != null) {
-                    // Let the layer and delegate know what happened with it
-                    if (tileData == null) {
-                        layer.tileFailedToLoad(tileID);
-                    } else {
-                        layer.tileDidLoad(tileID);
-                    }
-                }
+                theLayer = layer;
+                theTileData = tileData;
             }
-
             clear();
+
+            if (parentOnly) {
+                if (theLayer != null)
+                    pipeline.parseTile(theLayer, tileID, theTileData, newCacheKey != null ? tileCache : null, newCacheKey, parentListener);
+                else
+                    parentFailed(tileID);
+            } else if (theLayer != null) {
+                if (theTileData == null)
+                    theLayer.tileFailedToLoad(tileID);
+                else
+                    processData(theLayer, tileID, theTileData, newCacheKey);
+            }
         }
 
         // Cancel an outstanding request
@@ -462,16 +645,16 @@ public class MapboxVectorTileSource implements QuadPagingLayer.PagingInterface
 
         void clear()
         {
-            removeTask(tileID);
+            if (!parentOnly)
+                removeTask(tileID);
 
             synchronized (this)
             {
                 tileSource = null;
                 layer = null;
                 url = null;
-                locFile = null;
+                cacheKey = null;
                 call = null;
-                cacheFile = null;
             }
         }
     }
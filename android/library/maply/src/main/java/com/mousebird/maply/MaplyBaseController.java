@@ -932,11 +932,15 @@ public class MaplyBaseController
 			return;
 		CoordSystem coordSys = coordAdapter.getCoordSystem();
 
+		// Convert all four corners at once
+		double[] x = new double[]{ll.getX(),ur.getX(),ur.getX(),ll.getX()};
+		double[] y = new double[]{ll.getY(),ll.getY(),ur.getY(),ur.getY()};
+		double[] z = new double[4];
+		coordSys.geographicToLocalBatch(x,y,null,x,y,z);
+
 		viewBounds = new Point2d[4];
-		viewBounds[0] = coordAdapter.localToDisplay(coordSys.geographicToLocal(new Point3d(ll.getX(),ll.getY(),0.0))).toPoint2d();
-		viewBounds[1] = coordAdapter.localToDisplay(coordSys.geographicToLocal(new Point3d(ur.getX(),ll.getY(),0.0))).toPoint2d();
-		viewBounds[2] = coordAdapter.localToDisplay(coordSys.geographicToLocal(new Point3d(ur.getX(),ur.getY(),0.0))).toPoint2d();
-		viewBounds[3] = coordAdapter.localToDisplay(coordSys.geographicToLocal(new Point3d(ll.getX(),ur.getY(),0.0))).toPoint2d();
+		for (int ii=0;ii<4;ii++)
+			viewBounds[ii] = coordAdapter.localToDisplay(new Point3d(x[ii],y[ii],z[ii])).toPoint2d();
 	}
 
 	/**
@@ -1103,11 +1107,27 @@ public class MaplyBaseController
 	/**
 	 * Add a task according to the thread mode.  If it's ThreadAny, we'll put it on the layer thread.
 	 * If it's ThreadCurrent, we'll do it immediately.
+	 * <p>
+	 * Adds, enables and the like go in the Normal queue.  Removes go in the Cleanup queue,
+	 * which never runs ahead of an earlier Normal task, so a remove can't beat the add it undoes.
 	 *
 	 * @param run Runnable to execute.
 	 * @param mode Where to execute it.
 	 */
 	private void addTask(final Runnable run,final ThreadMode mode)
+	{
+		addTask(run,mode,LayerThread.TaskPriority.Normal);
+	}
+
+	/**
+	 * Add a task according to the thread mode.  If it's ThreadAny, it goes in the
+	 * layer thread's queue for the given priority.
+	 *
+	 * @param run Runnable to execute.
+	 * @param mode Where to execute it.
+	 * @param priority Priority class on the layer thread.
+	 */
+	private void addTask(final Runnable run,final ThreadMode mode,final LayerThread.TaskPriority priority)
 	{
 		if (!running)
 			return;
@@ -1116,7 +1136,7 @@ public class MaplyBaseController
 			addPostSurfaceRunnable(new Runnable() {
 				@Override
 				public void run() {
-					addTask(run,mode);
+					addTask(run,mode,priority);
 				}
 			});
 			return;
@@ -1148,30 +1168,54 @@ public class MaplyBaseController
 					}
 			}
         } else
-			baseLayerThread.addTask(run,true);
+			baseLayerThread.addTask(run,priority);
 	}
 
-	protected ArrayList<ComponentObject> componentObjects = new ArrayList<ComponentObject>();
+	protected ComponentObjectRegistry componentObjects = new ComponentObjectRegistry();
 
 	// Add and track a new component object
 	protected ComponentObject addComponentObj()
 	{
-		synchronized (componentObjects)
-		{
-			ComponentObject compObj = new ComponentObject();
-			componentObjects.add(compObj);
+		ComponentObject compObj = new ComponentObject();
+		componentObjects.add(compObj);
 
-			return compObj;
-		}
+		return compObj;
 	}
 
 	// Remove an existing component object
 	protected void removeComponentObj(ComponentObject compObj)
 	{
-		synchronized (componentObjects)
-		{
-			componentObjects.remove(compObj);
-		}
+		componentObjects.remove(compObj);
+	}
+
+	/**
+	 * Return the texture count, memory use and reuse rate for the textures
+	 * made for markers, stickers and such.
+	 */
+	public TextureManager.Stats getTextureStats()
+	{
+		TextureManager theTexManager = texManager;
+		if (theTexManager == null)
+			return null;
+		return theTexManager.getStats();
+	}
+
+	/**
+	 * Return counts of the live component objects and what they're holding.
+	 * Useful for tracking down objects that were never removed.
+	 */
+	public ComponentObjectRegistry.Stats getComponentObjectStats()
+	{
+		return componentObjects.getStats();
+	}
+
+	/**
+	 * True if the given component object is still being tracked, that is, it's been
+	 * added and not yet removed.
+	 */
+	public boolean hasComponentObject(ComponentObject compObj)
+	{
+		return componentObjects.contains(compObj);
 	}
 
 	/**
@@ -1745,7 +1789,8 @@ public class MaplyBaseController
 		{
 			synchronized(selectionMap)
 			{
-				for (long selectID : compObj.selectIDs) {
+				for (int ii=0;ii<compObj.selectIDs.size();ii++) {
+					long selectID = compObj.selectIDs.get(ii);
 					Object selObj = selectionMap.get(selectID);
 					if (selObj != null)
 					{
@@ -1815,12 +1860,8 @@ public class MaplyBaseController
 			return null;
 
 		// Also check any vectors that were selectable
-		ComponentObject[] theCompObjs;
+		ComponentObject[] theCompObjs = componentObjects.toArray();
 		ArrayList<SelectedObject> vecSelObjs = new ArrayList<SelectedObject>();
-		synchronized (componentObjects)
-		{
-			theCompObjs = componentObjects.toArray(new ComponentObject[componentObjects.size()]);
-		}
 		for (ComponentObject compObj: theCompObjs)
 		{
 			if (compObj.vecObjs != null)
@@ -1926,13 +1967,8 @@ public class MaplyBaseController
 					}
 				}
 
-				long labelId = EmptyIdentity;
-				// Note: We can't run multiple of these at once.  The problem is that
-				//  we need to pass the JNIEnv deep inside the toolkit and we're setting
-				//  on JNIEnv at a time for the CharRenderer callback.
-				synchronized (labelManager) {
-					labelId = labelManager.addLabels(intLabels, labelInfo, changes);
-				}
+				// Several threads can build labels at once.  The glyphs come out of a shared cache.
+				long labelId = labelManager.addLabels(intLabels, labelInfo, changes);
 				if (labelId != EmptyIdentity)
 					compObj.addLabelID(labelId);
 
@@ -2117,7 +2153,7 @@ public class MaplyBaseController
 					}
 				};
 
-		addTask(run, mode);
+		addTask(run, mode, LayerThread.TaskPriority.Cleanup);
 	}
 
 	/**
@@ -2145,7 +2181,7 @@ public class MaplyBaseController
 					}
 				};
 
-		addTask(run, mode);
+		addTask(run, mode, LayerThread.TaskPriority.Cleanup);
 	}
 
 	/**
@@ -2175,7 +2211,7 @@ public class MaplyBaseController
 					}
 				};
 
-		addTask(run, mode);
+		addTask(run, mode, LayerThread.TaskPriority.Cleanup);
 	}
 
 	/** Add a render target to the system
@@ -2280,9 +2316,7 @@ public class MaplyBaseController
 			public void run()
 			{
 				ChangeSet changes = new ChangeSet();
-				for (ComponentObject compObj : localCompObjs)
-					if (compObj != null)
-						compObj.enable(control, false, changes);
+				ComponentObject.enable(control, localCompObjs, false, changes);
 				if (scene != null)
 					changes.process(scene);
 			}
@@ -2333,9 +2367,7 @@ public class MaplyBaseController
 			public void run()
 			{
 				ChangeSet changes = new ChangeSet();
-				for (ComponentObject compObj : localCompObjs)
-					if (compObj != null)
-						compObj.enable(control, true, changes);
+				ComponentObject.enable(control, localCompObjs, true, changes);
 				if (scene != null)
 					changes.process(scene);
 			}
@@ -2392,6 +2424,8 @@ public class MaplyBaseController
 		if (compObjs == null || compObjs.size() == 0)
 			return;
 
+		final ComponentObject[] localCompObjs = compObjs.toArray(new ComponentObject[compObjs.size()]);
+
 		final MaplyBaseController control = this;
 		Runnable run = new Runnable()
 		{
@@ -2399,9 +2433,11 @@ public class MaplyBaseController
 			public void run()
 			{
 				ChangeSet changes = new ChangeSet();
-				for (ComponentObject compObj : compObjs)
+				ComponentObject.clear(control, localCompObjs, changes);
+				for (ComponentObject compObj : localCompObjs)
 				{
-					compObj.clear(control, changes);
+					if (compObj == null)
+						continue;
 					removeSelectableObjects(compObj);
 
 					removeComponentObj(compObj);
@@ -2411,7 +2447,7 @@ public class MaplyBaseController
 			}
 		};
 
-		addTask(run, mode);
+		addTask(run, mode, LayerThread.TaskPriority.Cleanup);
 	}
 
     private boolean isProbablyEmulator() {
@@ -22,18 +22,33 @@ package com.mousebird.maply;
 
 import android.graphics.Bitmap;
 
+import java.nio.ByteBuffer;
+
 
 /**
  * The Maply Image Tile represents the image(s) passed back to a QuadImagePagingLayer.
  * Normally, you shouldn't be creating these.  However, if you have an object that
  * implements the QuadImageTileLayer.TileSource, you'll need to fill these in and
  * return them on demand.
+ * <p>
+ * If your source already has the pixels in the layer's image format, you can hand
+ * them over as direct ByteBuffers rather than Bitmaps.  That skips the decode and
+ * any conversion on the native side.  Raw RGBA buffers work for any layer and are
+ * converted like Bitmaps.  The compressed ETC2 and EAC formats aren't supported yet.
  *
  */
 public class MaplyImageTile 
 {
 	public Bitmap[] bitmaps = null;
 	public Bitmap bitmap = null;
+
+	/// Raw image data, if we're not using bitmaps
+	public ByteBuffer[] buffers = null;
+	public ByteBuffer buffer = null;
+	/// Format of the raw image data
+	public QuadImageTileLayer.ImageFormat format = QuadImageTileLayer.ImageFormat.MaplyImageIntRGBA;
+	/// Size of the raw image data in pixels
+	public int width = 0,height = 0;
 	
 	/**
 	 * Construct with a bitmap.
@@ -48,4 +63,41 @@ public class MaplyImageTile
 	{
 		bitmaps = inBitmaps;
 	}
+
+	/**
+	 * Construct with raw image data.  The buffer has to be direct.
+	 * Unless it's RGBA, it has to be in the same format as the layer.
+	 *
+	 * @param inBuffer Direct buffer with width*height pixels in the given format.
+	 * @param inWidth Width of the image in pixels.
+	 * @param inHeight Height of the image in pixels.
+	 * @param inFormat Format of the pixels.
+	 */
+	public MaplyImageTile(ByteBuffer inBuffer,int inWidth,int inHeight,QuadImageTileLayer.ImageFormat inFormat)
+	{
+		buffer = inBuffer;
+		width = inWidth;
+		height = inHeight;
+		format = inFormat;
+	}
+
+	/**
+	 * Construct with raw image data for each frame of an animated layer.
+	 * The buffers have to be direct and all the same size and format.
+	 */
+	public MaplyImageTile(ByteBuffer[] inBuffers,int inWidth,int inHeight,QuadImageTileLayer.ImageFormat inFormat)
+	{
+		buffers = inBuffers;
+		width = inWidth;
+		height = inHeight;
+		format = inFormat;
+	}
+
+	/**
+	 * True if this tile holds raw image data rather than bitmaps.
+	 */
+	public boolean isRaw()
+	{
+		return buffer != null || buffers != null;
+	}
 }
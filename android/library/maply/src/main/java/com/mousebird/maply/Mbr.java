@@ -59,6 +59,23 @@ public class Mbr
 		ur = new Point2d(inUR);
 	}
 
+	/**
+	 * Construct with the lower left and upper right coordinates.
+	 */
+	public Mbr(double llX,double llY,double urX,double urY)
+	{
+		ll = new Point2d(llX,llY);
+		ur = new Point2d(urX,urY);
+	}
+
+	/**
+	 * Construct from an array of {minX,minY,maxX,maxY}.
+	 */
+	public Mbr(double[] bounds)
+	{
+		this(bounds[0],bounds[1],bounds[2],bounds[3]);
+	}
+
 	public String toString()
 	{
 		return "ll: " + ll + " ur: " + ur;
@@ -86,22 +103,31 @@ public class Mbr
 	 * @param pt Point to expand the bounding box with.
 	 */
 	public void addPoint(Point2d pt)
+	{
+		addPoint(pt.getX(),pt.getY());
+	}
+
+	/**
+	 * Add a point to the bounding box, expanding the extents.
+	 * This one doesn't need a Point2d, which is handy in loops.
+	 */
+	public void addPoint(double x,double y)
 	{
 		if (ll == null)
-			ll = new Point2d(pt);
+			ll = new Point2d(x,y);
 		else
 		{
-			double ll_x = Math.min(pt.getX(),ll.getX());
-			double ll_y = Math.min(pt.getY(),ll.getY());
-			ll.setValue(ll_x, ll_y);
+			double llX = ll.getX(), llY = ll.getY();
+			if (x < llX || y < llY)
+				ll.setValue(Math.min(x,llX), Math.min(y,llY));
 		}
 		if (ur == null)
-			ur = new Point2d(pt);
+			ur = new Point2d(x,y);
 		else 
 		{
-			double ur_x = Math.max(pt.getX(),ur.getX());
-			double ur_y = Math.max(pt.getY(),ur.getY());
-			ur.setValue(ur_x, ur_y);			
+			double urX = ur.getX(), urY = ur.getY();
+			if (x > urX || y > urY)
+				ur.setValue(Math.max(x,urX), Math.max(y,urY));
 		}
 	}
 	
@@ -123,9 +149,10 @@ public class Mbr
 	
 	public void expandByFraction(double bufferZone)
 	{
-		Point2d spanViewMbr = span();
-		ll.setValue(ll.getX()-spanViewMbr.getX()*bufferZone, ll.getY()-spanViewMbr.getY()*bufferZone);
-		ur.setValue(ur.getX()+spanViewMbr.getX()*bufferZone, ur.getY()+spanViewMbr.getY()*bufferZone);		
+		double llX = ll.getX(), llY = ll.getY(), urX = ur.getX(), urY = ur.getY();
+		double spanX = urX - llX, spanY = urY - llY;
+		ll.setValue(llX-spanX*bufferZone, llY-spanY*bufferZone);
+		ur.setValue(urX+spanX*bufferZone, urY+spanY*bufferZone);
 	}
 
 	/**
@@ -133,32 +160,42 @@ public class Mbr
      */
 	public boolean insideOrOnEdge(Point2d pt)
 	{
-		return ((ll.getX() <= pt.getX()) && (ll.getY() <= pt.getY()) && (pt.getX() <= ur.getX()) && (pt.getY() <= ur.getY()));
+		return insideOrOnEdge(pt.getX(),pt.getY());
+	}
+
+	/**
+	 * Check if the given point lies inside the bounding box or one of the edges.
+	 */
+	public boolean insideOrOnEdge(double x,double y)
+	{
+		return ((ll.getX() <= x) && (ll.getY() <= y) && (x <= ur.getX()) && (y <= ur.getY()));
 	}
 
 	/**
 	 * Check if the given bounding boxes overlap.
+	 * Touching edges count as overlapping.
      */
 	public boolean overlaps(Mbr that)
 	{
-		// Basic inclusion cases
-		if ((that.insideOrOnEdge(ll) || that.insideOrOnEdge(ur) || that.insideOrOnEdge(new Point2d(ll.getX(),ur.getY())) || that.insideOrOnEdge(new Point2d(ur.getX(),ll.getY()))) ||
-				(insideOrOnEdge(that.ll) || insideOrOnEdge(that.ur) || insideOrOnEdge(new Point2d(that.ll.getX(),that.ur.getY())) || insideOrOnEdge(new Point2d(that.ur.getX(),that.ll.getY()))))
-			return true;
+		return overlaps(that.ll.getX(),that.ll.getY(),that.ur.getX(),that.ur.getY());
+	}
 
-		// Now for the skinny overlap cases
-		if ((that.ll.getX() <= ll.getX() && ur.getX() <= that.ur.getX() &&
-				ll.getY() <= that.ll.getY() && that.ur.getY() <= ur.getY()) ||
-				(ll.getX() <= that.ll.getX() && that.ur.getX() <= ur.getX() &&
-						that.ll.getY() <= ll.getY() && ur.getY() <= that.ur.getY()))
-			return true;
-		if ((ll.getX() <= that.ll.getX() && that.ur.getX() <= ur.getX() &&
-				that.ll.getY() <= ll.getY() && ur.getY() <= that.ur.getY()) ||
-				(that.ll.getX() <= ll.getX() && ur.getX() <= that.ur.getX() &&
-						ll.getY() <= that.ll.getY() && that.ur.getY() <= ur.getY()))
-			return true;
+	/**
+	 * Check if the given bounding box, as {minX,minY,maxX,maxY}, overlaps this one.
+	 * Touching edges count as overlapping.
+	 */
+	public boolean overlaps(double minX,double minY,double maxX,double maxY)
+	{
+		return ll.getX() <= maxX && minX <= ur.getX() &&
+				ll.getY() <= maxY && minY <= ur.getY();
+	}
 
-		return false;
+	/**
+	 * Copy the extents out into an array of {minX,minY,maxX,maxY}.
+	 */
+	public double[] toArray()
+	{
+		return new double[]{ll.getX(),ll.getY(),ur.getX(),ur.getY()};
 	}
 	
 	/**
@@ -0,0 +1,547 @@
+/*
+ *  MemoryCacheTileSource.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebird.maply;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The memory cache tile source sits in front of another tile source and keeps
+ * the most recently loaded tiles around, already decoded.  When the quad layer
+ * asks for a tile again, as it does constantly while zooming in and out, we
+ * hand it back without fetching or decoding.
+ * <p>
+ * The cache is limited by the size of the bitmaps in bytes.  Bitmaps we throw
+ * out are kept in a small pool and reused for later decodes by sources that
+ * implement DecodingTileSource, such as the RemoteTileSource.
+ * <p>
+ * Tiles are cached per layer, so clearing one layer leaves the others alone.
+ */
+public class MemoryCacheTileSource implements QuadImageTileLayer.CancelableTileSource
+{
+    /**
+     * Tile sources that decode their own images can implement this.  When we wrap one,
+     * we hand it ourselves and it should decode with decodeTile(), which reuses the
+     * bitmaps we've thrown out.
+     */
+    public interface DecodingTileSource
+    {
+        /**
+         * Called with the memory cache wrapping this tile source.
+         */
+        void setMemoryCache(MemoryCacheTileSource memCache);
+    }
+
+    QuadImageTileLayer.TileSource tileSource = null;
+    long maxBytes;
+    int maxPoolSize = 16;
+
+    // Tiles are cached per layer and frame
+    private static class Key
+    {
+        QuadImageTileLayerInterface layer;
+        MaplyTileID tileID;
+        int frame;
+
+        Key(QuadImageTileLayerInterface inLayer,MaplyTileID inTileID,int inFrame)
+        {
+            layer = inLayer;
+            tileID = inTileID;
+            frame = inFrame;
+        }
+
+        @Override
+        public boolean equals(Object that)
+        {
+            if (!(that instanceof Key))
+                return false;
+            Key lhs = (Key)that;
+            return layer == lhs.layer && frame == lhs.frame && tileID.equals(lhs.tileID);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (31 * System.identityHashCode(layer) + tileID.hashCode()) + frame;
+        }
+    }
+
+    // A decoded tile and whether it's being handed to the layer right now
+    private static class Entry
+    {
+        MaplyImageTile imageTile;
+        long size;
+        int pinned = 0;
+        boolean evicted = false;
+
+        Entry(MaplyImageTile inImageTile,long inSize)
+        {
+            imageTile = inImageTile;
+            size = inSize;
+        }
+    }
+
+    final LinkedHashMap<Key,Entry> entries = new LinkedHashMap<Key,Entry>(64,0.75f,true);
+    final ArrayList<Bitmap> bitmapPool = new ArrayList<Bitmap>();
+    // Bitmaps we decoded ourselves and how many cached tiles use each.  Only these are safe to reuse.
+    // A source can hand the same bitmap over twice, say as a frame and as part of a whole tile.
+    final WeakHashMap<Bitmap,Integer> ownBitmaps = new WeakHashMap<Bitmap,Integer>();
+    long totalBytes = 0;
+    long numHits = 0, numMisses = 0, numEvictions = 0, numReused = 0;
+
+    // The layer we hand the wrapped source, per layer that asks us
+    final HashMap<QuadImageTileLayerInterface,CachingLayer> cachingLayers = new HashMap<QuadImageTileLayerInterface,CachingLayer>();
+
+    /**
+     * Construct with the tile source to wrap and the number of bytes of decoded
+     * images to keep around.
+     *
+     * @param inTileSource Tile source that does the real fetching.
+     * @param inMaxBytes Maximum size of the decoded images we'll hold.
+     */
+    public MemoryCacheTileSource(QuadImageTileLayer.TileSource inTileSource,long inMaxBytes)
+    {
+        tileSource = inTileSource;
+        maxBytes = inMaxBytes;
+
+        if (tileSource instanceof DecodingTileSource)
+            ((DecodingTileSource)tileSource).setMemoryCache(this);
+    }
+
+    /**
+     * The tile source we're wrapping.
+     */
+    public QuadImageTileLayer.TileSource getTileSource()
+    {
+        return tileSource;
+    }
+
+    /**
+     * Set the number of discarded bitmaps we'll hold on to for reuse.  16 by default.
+     */
+    public synchronized void setMaxPoolSize(int poolSize)
+    {
+        maxPoolSize = poolSize;
+        while (bitmapPool.size() > maxPoolSize)
+            bitmapPool.remove(bitmapPool.size()-1);
+    }
+
+    /**
+     * Number of tile requests we answered from memory.
+     */
+    public synchronized long getNumHits()
+    {
+        return numHits;
+    }
+
+    /**
+     * Number of tile requests we passed on to the wrapped source.
+     */
+    public synchronized long getNumMisses()
+    {
+        return numMisses;
+    }
+
+    /**
+     * Fraction of tile requests we answered from memory.
+     */
+    public synchronized double getHitRate()
+    {
+        long total = numHits + numMisses;
+        return total > 0 ? (double)numHits / total : 0.0;
+    }
+
+    /**
+     * Number of tiles we've thrown out to stay under the size limit.
+     */
+    public synchronized long getNumEvictions()
+    {
+        return numEvictions;
+    }
+
+    /**
+     * Number of decodes that reused one of our discarded bitmaps.
+     */
+    public synchronized long getNumReused()
+    {
+        return numReused;
+    }
+
+    /**
+     * Size in bytes of the decoded tiles we're holding.
+     */
+    public synchronized long getSize()
+    {
+        return totalBytes;
+    }
+
+    @Override
+    public int minZoom()
+    {
+        return tileSource.minZoom();
+    }
+
+    @Override
+    public int maxZoom()
+    {
+        return tileSource.maxZoom();
+    }
+
+    @Override
+    public int pixelsPerSide()
+    {
+        return tileSource.pixelsPerSide();
+    }
+
+    @Override
+    public boolean validTile(MaplyTileID tileID, Mbr tileBounds)
+    {
+        return tileSource.validTile(tileID, tileBounds);
+    }
+
+    /**
+     * Decode image data, reusing one of our discarded bitmaps if we can.
+     * Tile sources call this in place of BitmapFactory.decodeByteArray().
+     */
+    public Bitmap decodeTile(byte[] rawImage,BitmapFactory.Options options)
+    {
+        if (options == null)
+            options = new BitmapFactory.Options();
+
+        // Find out how big it is so we can pick a bitmap to decode into
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, options);
+        options.inJustDecodeBounds = false;
+
+        options.inMutable = true;
+
+        Bitmap reuse = null;
+        if (options.outWidth > 0 && options.outHeight > 0)
+            reuse = takeReusableBitmap(options.outWidth, options.outHeight);
+        if (reuse != null)
+        {
+            options.inBitmap = reuse;
+            try {
+                Bitmap bm = BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, options);
+                if (bm != null)
+                {
+                    synchronized (this) {
+                        numReused++;
+                        ownBitmaps.put(bm, 0);
+                    }
+                    return bm;
+                }
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Not a format we can decode into an existing bitmap
+            }
+            options.inBitmap = null;
+
+            // Didn't take, but somebody else might be able to use it
+            synchronized (this) {
+                if (bitmapPool.size() < maxPoolSize)
+                    bitmapPool.add(reuse);
+            }
+        }
+
+        Bitmap bm = BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, options);
+        if (bm != null)
+        {
+            synchronized (this) {
+                ownBitmaps.put(bm, 0);
+            }
+        }
+        return bm;
+    }
+
+    // Find a discarded bitmap we can decode the given size into
+    synchronized Bitmap takeReusableBitmap(int width,int height)
+    {
+        for (int ii=0;ii<bitmapPool.size();ii++)
+        {
+            Bitmap bm = bitmapPool.get(ii);
+            boolean fits;
+            // Before KitKat the sizes had to match exactly
+            if (Build.VERSION.SDK_INT >= 19)
+                fits = bm.getAllocationByteCount() >= width * height * 4;
+            else
+                fits = bm.getWidth() == width && bm.getHeight() == height;
+            if (fits)
+            {
+                bitmapPool.remove(ii);
+                return bm;
+            }
+        }
+
+        return null;
+    }
+
+    // Keep a bitmap around for reuse, if it's one of ours, no other tile is using it,
+    // and it's a kind we can decode into
+    private void poolBitmap(Bitmap bm)
+    {
+        if (bm == null)
+            return;
+        Integer count = ownBitmaps.get(bm);
+        if (count == null)
+            return;
+        if (count > 1)
+        {
+            ownBitmaps.put(bm, count-1);
+            return;
+        }
+        ownBitmaps.remove(bm);
+        if (bm.isRecycled() || !bm.isMutable() || bm.getConfig() != Bitmap.Config.ARGB_8888)
+            return;
+        if (bitmapPool.size() < maxPoolSize)
+            bitmapPool.add(bm);
+    }
+
+    // Note that a newly cached tile is using its bitmaps
+    private void claimBitmap(Bitmap bm)
+    {
+        if (bm == null)
+            return;
+        Integer count = ownBitmaps.get(bm);
+        if (count != null)
+            ownBitmaps.put(bm, count+1);
+    }
+
+    private void claimEntry(Entry entry)
+    {
+        claimBitmap(entry.imageTile.bitmap);
+        if (entry.imageTile.bitmaps != null)
+            for (Bitmap bm : entry.imageTile.bitmaps)
+                claimBitmap(bm);
+    }
+
+    // Send an evicted tile's bitmaps to the pool
+    private void poolEntry(Entry entry)
+    {
+        if (entry.imageTile.bitmap != null)
+            poolBitmap(entry.imageTile.bitmap);
+        if (entry.imageTile.bitmaps != null)
+            for (Bitmap bm : entry.imageTile.bitmaps)
+                poolBitmap(bm);
+    }
+
+    // Size in bytes of a loaded tile
+    private static long sizeOf(MaplyImageTile imageTile)
+    {
+        long size = 0;
+        if (imageTile.bitmap != null)
+            size += imageTile.bitmap.getByteCount();
+        if (imageTile.bitmaps != null)
+            for (Bitmap bm : imageTile.bitmaps)
+                if (bm != null)
+                    size += bm.getByteCount();
+        if (imageTile.buffer != null)
+            size += imageTile.buffer.capacity();
+        if (imageTile.buffers != null)
+            for (ByteBuffer buf : imageTile.buffers)
+                if (buf != null)
+                    size += buf.capacity();
+        return size;
+    }
+
+    // Throw out the least recently used tiles until we fit.  Call with the lock held.
+    private void evict()
+    {
+        Iterator<Map.Entry<Key,Entry>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext())
+        {
+            Entry entry = it.next().getValue();
+            it.remove();
+            totalBytes -= entry.size;
+            numEvictions++;
+            entry.evicted = true;
+            // Tiles on their way to the layer get pooled when they arrive
+            if (entry.pinned == 0)
+                poolEntry(entry);
+        }
+    }
+
+    // Let go of a tile we pinned for delivery.  Evicted tiles get pooled once nobody's using them.
+    private void unpin(Entry entry)
+    {
+        synchronized (this) {
+            entry.pinned--;
+            if (entry.evicted && entry.pinned == 0)
+                poolEntry(entry);
+        }
+    }
+
+    // Hand a tile to the layer on its thread.  The quad image layer batches deliveries, so the
+    // tile stays pinned until it tells us the pixels have been copied.  Other layers are done
+    // with it when loadedTile returns.
+    private void deliver(final QuadImageTileLayerInterface layer,final MaplyTileID tileID,final int frame,final Entry entry)
+    {
+        LayerThread layerThread = layer.getLayerThread();
+        if (layerThread == null)
+        {
+            unpin(entry);
+            return;
+        }
+
+        layerThread.addTask(new Runnable() {
+            @Override
+            public void run() {
+                if (layer instanceof QuadImageTileLayer)
+                {
+                    ((QuadImageTileLayer)layer).loadedTile(tileID, frame, entry.imageTile, new Runnable() {
+                        @Override
+                        public void run() {
+                            unpin(entry);
+                        }
+                    });
+                } else {
+                    layer.loadedTile(tileID, frame, entry.imageTile);
+                    unpin(entry);
+                }
+            }
+        }, true);
+    }
+
+    // The wrapped source hands its tiles to this, which caches them on the way through
+    private class CachingLayer implements QuadImageTileLayerInterface
+    {
+        QuadImageTileLayerInterface layer;
+
+        CachingLayer(QuadImageTileLayerInterface inLayer)
+        {
+            layer = inLayer;
+        }
+
+        @Override
+        public void loadedTile(MaplyTileID tileID, int frame, MaplyImageTile imageTile)
+        {
+            if (imageTile == null)
+            {
+                layer.loadedTile(tileID, frame, null);
+                return;
+            }
+
+            Entry entry = new Entry(imageTile,sizeOf(imageTile));
+            synchronized (MemoryCacheTileSource.this)
+            {
+                entry.pinned++;
+                claimEntry(entry);
+                Entry oldEntry = entries.put(new Key(layer,tileID,frame),entry);
+                if (oldEntry != null)
+                {
+                    totalBytes -= oldEntry.size;
+                    oldEntry.evicted = true;
+                    if (oldEntry.pinned == 0)
+                        poolEntry(oldEntry);
+                }
+                totalBytes += entry.size;
+                evict();
+            }
+
+            deliver(layer, tileID, frame, entry);
+        }
+
+        @Override
+        public LayerThread getLayerThread()
+        {
+            return layer.getLayerThread();
+        }
+    }
+
+    CachingLayer getCachingLayer(QuadImageTileLayerInterface layer)
+    {
+        synchronized (cachingLayers)
+        {
+            CachingLayer cachingLayer = cachingLayers.get(layer);
+            if (cachingLayer == null)
+            {
+                cachingLayer = new CachingLayer(layer);
+                cachingLayers.put(layer,cachingLayer);
+            }
+            return cachingLayer;
+        }
+    }
+
+    @Override
+    public void startFetchForTile(QuadImageTileLayerInterface layer, MaplyTileID tileID, int frame)
+    {
+        Entry entry;
+        synchronized (this)
+        {
+            entry = entries.get(new Key(layer,tileID,frame));
+            if (entry != null)
+            {
+                numHits++;
+                entry.pinned++;
+            } else
+                numMisses++;
+        }
+
+        if (entry != null)
+            deliver(layer, tileID, frame, entry);
+        else
+            tileSource.startFetchForTile(getCachingLayer(layer), tileID, frame);
+    }
+
+    @Override
+    public void tileUnloaded(QuadImageTileLayerInterface layer, MaplyTileID tileID)
+    {
+        if (tileSource instanceof QuadImageTileLayer.CancelableTileSource)
+            ((QuadImageTileLayer.CancelableTileSource)tileSource).tileUnloaded(getCachingLayer(layer), tileID);
+    }
+
+    @Override
+    public void clear(QuadImageTileLayerInterface layer)
+    {
+        CachingLayer cachingLayer;
+        synchronized (cachingLayers)
+        {
+            cachingLayer = cachingLayers.remove(layer);
+        }
+        tileSource.clear(cachingLayer != null ? cachingLayer : layer);
+
+        // Only this layer's tiles go.  Their bitmaps can still be reused.
+        synchronized (this)
+        {
+            Iterator<Map.Entry<Key,Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext())
+            {
+                Map.Entry<Key,Entry> mapEntry = it.next();
+                if (mapEntry.getKey().layer != layer)
+                    continue;
+                Entry entry = mapEntry.getValue();
+                it.remove();
+                totalBytes -= entry.size;
+                entry.evicted = true;
+                if (entry.pinned == 0)
+                    poolEntry(entry);
+            }
+        }
+    }
+}
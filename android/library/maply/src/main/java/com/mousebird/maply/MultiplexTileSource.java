@@ -32,16 +32,14 @@ import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.mousebird.maply.utils.OkHttpUtils.cancel;
 
@@ -49,8 +47,12 @@ import static com.mousebird.maply.utils.OkHttpUtils.cancel;
  * The multiplex tile source takes a list of remote tile info objects for the
  * purpose of fetching multiple frames per tile.  These are used by quad image
  * layers that need to animate between frames.
+ * <p>
+ * If the layer is loading frames individually, each frame goes back as soon
+ * as it arrives.  Otherwise the tile goes back once all its frames are in,
+ * or fails if any of them did.  Unloading a tile cancels all its frames.
  */
-public class MultiplexTileSource implements QuadImageTileLayer.TileSource
+public class MultiplexTileSource implements QuadImageTileLayer.CancelableTileSource, MemoryCacheTileSource.DecodingTileSource
 {
     MaplyBaseController controller = null;
 	CoordSystem coordSys = null;
@@ -65,6 +67,9 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 	// Set if we can use the premultiply option
 	boolean hasPremultiplyOption = false;
 
+	// Set if a memory cache is wrapping us.  We decode into its spare bitmaps.
+	MemoryCacheTileSource memCache = null;
+
 	/**
 	 * Set this if you'd like full debugging output while loading
 	 */
@@ -84,6 +89,12 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 	 */
 	public RemoteTileSource.TileSourceDelegate delegate = null;
 	
+	@Override
+	public void setMemoryCache(MemoryCacheTileSource inMemCache)
+	{
+		memCache = inMemCache;
+	}
+
 	/**
 	 * Convert the raw image data into a bitmap.  You can override this if you have your own way of doing it.
 	 */
@@ -99,7 +110,11 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 		options.inPreferredConfig = Bitmap.Config.ARGB_8888;
 		if (hasPremultiplyOption)
 			options.inPremultiplied = false;
-		bitmap = BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, options);
+		MemoryCacheTileSource theMemCache = memCache;
+		if (theMemCache != null)
+			bitmap = theMemCache.decodeTile(rawImage, options);
+		else
+			bitmap = BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, options);
 
 		// Let's try it with the default options
 		if (bitmap == null)
@@ -117,21 +132,21 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 	private class ConnectionTask implements Callback {
         MultiplexTileSource tileSource = null;
         QuadImageTileLayerInterface layer = null;
+        TileFrames tile = null;
         MaplyTileID tileID = null;
         int frame = -1;
         URL url = null;
-        String locFile = null;
-        Call call;
-        Bitmap bm = null;
-        public File cacheFile = null;
-        boolean isCanceled = false;
+        String cacheKey = null;
+        volatile Call call;
+        volatile boolean isCanceled = false;
 		public boolean singleFetch = false;
 
-        ConnectionTask(QuadImageTileLayerInterface inLayer, MultiplexTileSource inTileSource, MaplyTileID inTileID, int inFrame, URL inURL, String inFile) {
+        ConnectionTask(QuadImageTileLayerInterface inLayer, MultiplexTileSource inTileSource, TileFrames inTile, int inFrame, URL inURL, String inCacheKey) {
             tileSource = inTileSource;
             layer = inLayer;
-            tileID = inTileID;
-            locFile = inFile;
+            tile = inTile;
+            tileID = inTile.ident;
+            cacheKey = inCacheKey;
             frame = inFrame;
 			url = inURL;
         }
@@ -140,50 +155,35 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
         protected void fetchTile() {
             try {
                 // See if it's here locally
-                if (locFile != null) {
-                    cacheFile = new File(locFile);
-                    if (cacheFile.exists()) {
-                        BufferedInputStream aBufferedInputStream = new BufferedInputStream(new FileInputStream(cacheFile));
-                        final byte[] rawImage = new byte[(int)cacheFile.length()];
-						aBufferedInputStream.read(rawImage, 0, rawImage.length);
-						aBufferedInputStream.close();
-
-						bm = bitmapFromRaw(rawImage);
-
-						if (debugOutput)
-							Log.d("Maply", "Read cached file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")");
-                	    }
-                }
-
-                if (bm != null) {
-					boolean reportThisTile = false;
-
-					// Fetched a frame.  So see if we need to report this tile.
-					if (frame != -1) {
-						SortedTile tile = null;
-						synchronized (tileSource.tiles) {
-							tile = tileSource.tiles.get(tileID);
+                TileCache cache = tileCache;
+                if (cacheKey != null && cache != null) {
+                    final byte[] rawImage = cache.get(cacheKey);
+                    if (rawImage != null) {
+						Bitmap bm = bitmapFromRaw(rawImage);
+						if (bm != null) {
+							if (debugOutput)
+								Log.d("Maply", "Read cached file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")");
+							frameFinished(this, bm);
+							return;
 						}
-						if (tile != null) {
-							tile.tileData[frame] = bm;
-							if (singleFetch || tile.isDone())
-								reportThisTile = true;
-						}
-					} else {
-						reportThisTile = true;
-					}
+                	}
+                }
 
-					if (reportThisTile)
-						reportTile(true);
+                if (isCanceled)
                     return;
-                }
 
                 // Load the data from that URL
                 Request request = new Request.Builder().url(url).tag(NET_TAG).build();
 
                 call = client.newCall(request);
+                // Might have been canceled while we were setting up
+                if (isCanceled) {
+                    call.cancel();
+                    return;
+                }
                 call.enqueue(this);
             } catch (Exception e) {
+                frameFinished(this, null);
             }
         }
 
@@ -191,18 +191,22 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 		@Override
 		public void onFailure(@NotNull Call call, @NotNull IOException e) {
 			// Ignore cancels
-			if (e != null && e.getLocalizedMessage().contains("Canceled"))
+			if (isCanceled || call.isCanceled())
 				return;
 			if (tileID != null)
 	            Log.e("Maply", "Failed to fetch remote tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " " + frame);
+			frameFinished(this, null);
         }
 
         // Callback from OK HTTP on success
 		@Override
 		public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
-			if (isCanceled)
+			if (isCanceled) {
+				response.close();
                 return;
+			}
 
+			Bitmap bm = null;
 			if (response.code() != 404) {
 				byte[] rawImage = null;
 				try {
@@ -213,19 +217,16 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 					// Last chance.  If we've got a blank image, use that
 					if (bm == null && blankImage != null) {
 						bm = blankImage;
-						cacheFile = null;
+						cacheKey = null;
 					}
 
 					if (bm == null)
 						throw new Exception("Failed to decode image");
 
 					// Save to cache
-					if (cacheFile != null && rawImage != null && bm != null) {
-						OutputStream fOut;
-						fOut = new FileOutputStream(cacheFile);
-						fOut.write(rawImage);
-						fOut.close();
-					}
+					TileCache cache = tileCache;
+					if (cacheKey != null && cache != null && rawImage != null)
+						cache.put(cacheKey, rawImage);
 					if (debugOutput)
 						Log.d("Maply", "Fetched remote file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " " + frame);
 				} catch (Exception e) {
@@ -233,181 +234,167 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 						Log.e("Maply", "Failed to fetch remote tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " " + frame);
 				}
 			} else {
+				response.close();
 				if (debugOutput)
 					Log.d("Maply", "Fetch failed for remote tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " " + frame);
 			}
 
-			boolean reportThisTile = false;
-			boolean tileSuccess = bm != null;
-
-			// Fetched a frame.  So see if we need to report this tile.
-			if (frame != -1) {
-				SortedTile tile = null;
-				synchronized (tileSource.tiles) {
-					tile = tileSource.tiles.get(tileID);
-				}
-				if (tile != null) {
-					tile.tileData[frame] = bm;
-					if (singleFetch || tile.isDone())
-						reportThisTile = true;
-				}
-			} else {
-				reportThisTile = true;
-			}
-
-			if (reportThisTile)
-				reportTile(tileSuccess);
-        }
-
-        // Let the system know we've got a tile
-        protected void reportTile(final boolean tileSuccess) {
-            layer.getLayerThread().addTask(new Runnable() {
-                @Override
-                public void run() {
-					SortedTile tile = null;
-					synchronized (tileSource.tiles) {
-						tile = tileSource.tiles.get(tileID);
-					}
-
-					boolean removeTile = false;
-
-                    // Let the layer and delegate know what happened with it
-                    if (tileSuccess && (singleFetch || tile != null)) {
-						MaplyImageTile imageTile = null;
-						if (singleFetch) {
-							imageTile = new MaplyImageTile(bm);
-						} else {
-							imageTile = new MaplyImageTile(tile.tileData);
-						}
-						if (tileSource.delegate != null) {
-							RemoteTileInfo tileInfo = tileSource.sources[frame];
-							tileSource.delegate.tileDidLoad(tileInfo, tileID, frame);
-						}
-						layer.loadedTile(tileID, frame, imageTile);
-                    } else {
-                        if (tileSource.delegate != null) {
-				RemoteTileInfo tileInfo = tileSource.sources[frame];
-				tileSource.delegate.tileDidNotLoad(tileInfo, tileID, frame);
-			}
-                        layer.loadedTile(tileID, frame, null);
-                    }
-
-                    // Tile was fetched, clean up
-                    if (tile != null) {
-						synchronized (tileSource.tiles) {
-							tile.finish(frame);
-							if (singleFetch)
-								removeTile = tile.numActiveFetches() == 0;
-							else
-								removeTile = tile.isDone();
-							if (removeTile)
-								tileSource.tiles.remove(tile.ident);
-						}
-                    }
-                }
-            },true);
+			frameFinished(this, bm);
         }
 
         // Cancel an outstanding request
         protected void cancel() {
             isCanceled = true;
-            if (call != null)
-                call.cancel();
+            Call theCall = call;
+            if (theCall != null)
+                theCall.cancel();
         }
     }
 
-	// Used to track tiles we're in the process of loading
-	class SortedTile implements Comparable<SortedTile>
+	// Used to track a tile we're in the process of loading.
+	// Each frame moves along on its own, so none of this needs a lock.
+	// The one exception is taking it out of the map, which is done while holding
+	// the tile so nobody can add fetches to an entry that's on its way out.
+	static class TileFrames
 	{
-		MaplyTileID ident = null;
-		int depth;
-		Bitmap[] tileData = null;
-        ConnectionTask[] fetches = null;
-		
-		public SortedTile(MaplyTileID inTileID,int inDepth)
+		final MaplyTileID ident;
+		final int depth;
+		final AtomicReferenceArray<Bitmap> tileData;
+		final AtomicReferenceArray<ConnectionTask> fetches;
+		// Set while the whole tile has been asked for and not yet reported
+		final AtomicBoolean wholeTile = new AtomicBoolean(false);
+		volatile QuadImageTileLayerInterface wholeTileLayer = null;
+		volatile boolean canceled = false;
+
+		TileFrames(MaplyTileID inTileID,int inDepth)
 		{
-			depth = inDepth;
 			ident = inTileID;
-			tileData = new Bitmap[depth];
-			fetches = new ConnectionTask[depth];
-			for (int ii=0;ii<depth;ii++)
-			{
-				tileData[ii] = null;
-				fetches[ii] = null;
-			}
-		}
-		
-		@Override
-		public int compareTo(SortedTile that) 
-		{
-			return ident.compareTo(that.ident);
+			depth = inDepth;
+			tileData = new AtomicReferenceArray<Bitmap>(depth);
+			fetches = new AtomicReferenceArray<ConnectionTask>(depth);
 		}
-		
-	    // Kill any outstanding fetches
+
+		// Kill all the outstanding fetches at once
 		void cancelAll()
 		{
+			canceled = true;
 			for (int ii=0;ii<depth;ii++)
 			{
-				if (fetches[ii] != null)
-					fetches[ii].cancel();
-				fetches[ii] = null;
-				tileData[ii] = null;
+				ConnectionTask task = fetches.getAndSet(ii,null);
+				if (task != null)
+					task.cancel();
+				tileData.set(ii,null);
 			}
 		}
-		
-	    // Kill a specific outstanding fetch
-		void cancel(int frame)
-		{
-	        int which = (frame == -1 ? 0 : frame);
 
-	        clearFetch(frame);
-	        tileData[which] = null;
-		}
-		
-	    // Clear the fetch for a given frame
-		void clearFetch(int frame)
+		// Kill a specific outstanding fetch
+		void cancel(int frame)
 		{
-	        int which = (frame == -1 ? 0 : frame);
-			
-	        if (fetches[which] != null)
-	        {
-				fetches[which].cancel();
-				fetches[which] = null;
-	        }	        
+			int which = (frame == -1 ? 0 : frame);
+			ConnectionTask task = fetches.getAndSet(which,null);
+			if (task != null)
+				task.cancel();
+			tileData.set(which,null);
 		}
 
-		// Check if all the frames loaded
-		boolean isDone()
+		// Build the image tile for all the frames, or null if any failed
+		MaplyImageTile allFrames()
 		{
-			for (Bitmap bm : tileData)
-				if (bm == null)
-					return false;
-
-			return true;
+			Bitmap[] bitmaps = new Bitmap[depth];
+			for (int ii=0;ii<depth;ii++)
+			{
+				bitmaps[ii] = tileData.get(ii);
+				if (bitmaps[ii] == null)
+					return null;
+			}
+			return new MaplyImageTile(bitmaps);
 		}
 
-        // Clear out for a successful fetch
-        void finish(int frame)
-        {
-            int which = (frame == -1 ? 0 : frame);
-            if (fetches[which] != null)
-                fetches[which] = null;
-        }
-		
-	    // Number of active fetches
+		// Number of active fetches
 		int numActiveFetches()
 		{
 			int num = 0;
 			for (int ii=0;ii<depth;ii++)
-				if (fetches[ii] != null)
+				if (fetches.get(ii) != null)
 					num++;
-			
+
 			return num;
 		}
 	}
-	
+
 	// Tiles in the process of being loaded
-	HashMap<MaplyTileID,SortedTile> tiles = new HashMap<MaplyTileID,SortedTile>();
+	ConcurrentHashMap<MaplyTileID,TileFrames> tiles = new ConcurrentHashMap<MaplyTileID,TileFrames>();
+
+	// A frame came in (or didn't).  Called on whatever thread fetched it.
+	void frameFinished(ConnectionTask task,Bitmap bm)
+	{
+		TileFrames tile = task.tile;
+		int which = task.frame;
+		if (task.isCanceled || tile.canceled)
+			return;
+		// Only the task that owns the frame gets to finish it.
+		// The data goes in first so nobody sees the fetch done without it.
+		if (tile.fetches.get(which) != task)
+			return;
+		tile.tileData.set(which,bm);
+		if (!tile.fetches.compareAndSet(which,task,null))
+		{
+			tile.tileData.compareAndSet(which,bm,null);
+			return;
+		}
+
+		// Frames asked for one at a time go out as soon as they're here
+		if (task.singleFetch)
+			reportTile(task.layer,tile,which,bm != null ? new MaplyImageTile(bm) : null);
+
+		// The whole tile goes out when the last frame is in, whoever fetched it
+		finishWholeTile(tile);
+	}
+
+	// If the whole tile was asked for and nothing's outstanding, report it once
+	void finishWholeTile(TileFrames tile)
+	{
+		if (tile.numActiveFetches() > 0)
+			return;
+
+		QuadImageTileLayerInterface layer = tile.wholeTileLayer;
+		if (layer != null && tile.wholeTile.compareAndSet(true,false))
+			reportTile(layer,tile,-1,tile.allFrames());
+
+		synchronized (tile)
+		{
+			if (tile.numActiveFetches() == 0 && !tile.wholeTile.get())
+				tiles.remove(tile.ident,tile);
+		}
+	}
+
+	// Let the system know we've got a tile (or a frame)
+	void reportTile(final QuadImageTileLayerInterface layer,final TileFrames tile,final int frame,final MaplyImageTile imageTile)
+	{
+		final MultiplexTileSource tileSource = this;
+		layer.getLayerThread().addTask(new Runnable() {
+			@Override
+			public void run() {
+				// Might have been canceled while we were waiting
+				if (tile.canceled)
+					return;
+
+				// Let the layer and delegate know what happened with it
+				RemoteTileSource.TileSourceDelegate theDelegate = delegate;
+				RemoteTileInfo[] theSources = sources;
+				Object tileInfo = (frame >= 0 && theSources != null) ? theSources[frame] : tileSource;
+				if (imageTile != null) {
+					if (theDelegate != null)
+						theDelegate.tileDidLoad(tileInfo, tile.ident, frame);
+					layer.loadedTile(tile.ident, frame, imageTile);
+				} else {
+					if (theDelegate != null)
+						theDelegate.tileDidNotLoad(tileInfo, tile.ident, frame);
+					layer.loadedTile(tile.ident, frame, null);
+				}
+			}
+		},LayerThread.TaskPriority.TileDelivery);
+	}
 	
 	/**
 	 * Construct with a list of tile sources.  One source per frame and each source
@@ -459,10 +446,11 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 	public void addGeoBoundingBox(Mbr mbr)
 	{
 		Mbr locMbr = new Mbr();
-		Point3d pt0 = coordSys.geographicToLocal(new Point3d(mbr.ll.getX(),mbr.ll.getY(),0.0));
-		Point3d pt1 = coordSys.geographicToLocal(new Point3d(mbr.ur.getX(),mbr.ur.getY(),0.0));
-		locMbr.addPoint(pt0.toPoint2d());
-		locMbr.addPoint(pt1.toPoint2d());
+		double[] x = new double[]{mbr.ll.getX(),mbr.ur.getX()};
+		double[] y = new double[]{mbr.ll.getY(),mbr.ur.getY()};
+		coordSys.geographicToLocalBatch(x,y,null,x,y,null);
+		locMbr.addPoint(x[0],y[0]);
+		locMbr.addPoint(x[1],y[1]);
 		mbrs.add(locMbr);
 	}
 
@@ -479,11 +467,11 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 		return false;
 	}
 
-	File cacheDir = null;
+	TileCache tileCache = null;
 	/**
 	 * Set the cache directory for fetched images.  We'll look there first.
-	 * There is no limiting or pruning going on, that directory will just get
-	 * bigger and bigger.
+	 * This sets up a DiskTileCache with its default limits.  If you want
+	 * different limits or want to share the cache, use setTileCache().
 	 * <p>
 	 * By default that directory is null.
 	 * 
@@ -491,20 +479,56 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 	 */
 	public void setCacheDir(File inCacheDir)
 	{
-		cacheDir = inCacheDir;
+		tileCache = (inCacheDir != null) ? new DiskTileCache(inCacheDir) : null;
+	}
+
+	/**
+	 * Set the cache for fetched images.  We'll look there first.
+	 * <p>
+	 * By default there is no cache.
+	 *
+	 * @param inTileCache Cache for image tiles.
+	 */
+	public void setTileCache(TileCache inTileCache)
+	{
+		tileCache = inTileCache;
+	}
+
+	/**
+	 * Return the cache for fetched images, if there is one.
+	 */
+	public TileCache getTileCache()
+	{
+		return tileCache;
 	}
 	
 	// Clear fetches for a given tile/frame
 	void clearFetches(MaplyTileID tileID,int frame)
 	{
-		synchronized(this)
+		TileFrames tile = tiles.get(tileID);
+		if (tile != null)
 		{
-			SortedTile tile = tiles.get(tileID);
-			if (tile != null)
+			synchronized (tile)
 			{
 				tile.cancel(frame);
 				if (tile.numActiveFetches() == 0)
-					tiles.remove(tileID);
+					tiles.remove(tileID,tile);
+			}
+		}
+	}
+
+	/**
+	 * The layer doesn't want this tile any more.  We cancel all the frames at once.
+	 */
+	@Override
+	public void tileUnloaded(QuadImageTileLayerInterface layer, MaplyTileID tileID)
+	{
+		TileFrames tile = tiles.remove(tileID);
+		if (tile != null)
+		{
+			synchronized (tile)
+			{
+				tile.cancelAll();
 			}
 		}
 	}
@@ -540,48 +564,82 @@ public class MultiplexTileSource implements QuadImageTileLayer.TileSource
 		int maxY = 1<<tileID.level;
 		int remoteY = maxY - tileID.y - 1;
 
-		// Look for an existing tile
-		synchronized(tiles)
+		RemoteTileInfo[] theSources = sources;
+		if (theSources == null)
+			return;
+
+		int start,end;
+		boolean singleFetch = false;
+		if (frame == -1)
+		{
+			start = 0;
+			end = theSources.length-1;
+		} else {
+			start = frame;
+			end = frame;
+			singleFetch = true;
+		}
+
+		// Look for an existing tile.  It can be dropped from the map while we're looking,
+		// so we add our fetches under its lock and start over if it's gone.
+		TileFrames tile;
+		ArrayList<ConnectionTask> toStart = new ArrayList<ConnectionTask>();
+		while (true)
 		{
-			SortedTile tile = tiles.get(tileID);
+			tile = tiles.get(tileID);
 			if (tile == null)
 			{
-				tile = new SortedTile(tileID,sources.length);
-				tiles.put(tileID, tile);
-			}
-			
-			int start,end;
-			boolean singleFetch = false;
-			if (frame == -1)
-			{
-				start = 0;
-				end = sources.length-1;
-			} else {
-				start = frame;
-				end = frame;
-				singleFetch = true;
+				TileFrames newTile = new TileFrames(tileID,theSources.length);
+				tile = tiles.putIfAbsent(tileID,newTile);
+				if (tile == null)
+					tile = newTile;
 			}
-			for (int which=start;which<=end;which++)
+
+			synchronized (tile)
 			{
-				if (tile.fetches.length > which && tile.fetches[which] == null)
+				if (tiles.get(tileID) != tile)
+					continue;
+
+				// Flag the whole tile before we look at the frames, so the last one in reports it
+				if (!singleFetch)
 				{
-					String cacheFile = null;
-					RemoteTileInfo tileInfo = sources[which];
+					tile.wholeTileLayer = layer;
+					tile.wholeTile.set(true);
+				}
+
+				for (int which=start;which<=end && which<tile.depth;which++)
+				{
+					String cacheKey = null;
+					RemoteTileInfo tileInfo = theSources[which];
 					final URL tileURL = tileInfo.buildURL(tileID.x,remoteY,tileID.level);
-					if (cacheDir != null) {
-						cacheFile = cacheDir.getAbsolutePath() + tileInfo.buildCacheName(tileID.x, tileID.y, tileID.level, which);
+					if (tileCache != null) {
+						cacheKey = tileInfo.buildCacheName(tileID.x, tileID.y, tileID.level, which);
 					}
-					ConnectionTask task = new ConnectionTask(layer,this,tileID,which,tileURL,cacheFile);
+					ConnectionTask task = new ConnectionTask(layer,this,tile,which,tileURL,cacheKey);
 					task.singleFetch = singleFetch;
-					tile.fetches[which] = task;
-                    task.fetchTile();
+					// Somebody's already fetching this one
+					if (!tile.fetches.compareAndSet(which,null,task))
+						continue;
+					toStart.add(task);
 				}
 			}
+			break;
 		}
+		for (ConnectionTask task : toStart)
+			task.fetchTile();
+
+		// Every frame was already being fetched.  Whichever finishes last reports the tile,
+		// unless they all finished while we were setting up.
+		if (!singleFetch && toStart.isEmpty())
+			finishWholeTile(tile);
 	}
 
 	public void clear(QuadImageTileLayerInterface layer)
 	{
+		for (TileFrames tile : tiles.values())
+			tile.cancelAll();
+		tiles.clear();
+
 		synchronized (this) {
 			if (client != null)
 				cancel(client, NET_TAG);
@@ -21,20 +21,26 @@ package com.mousebird.maply;
 
 import android.graphics.Color;
 import android.graphics.Typeface;
-import android.os.AsyncTask;
 import android.util.Log;
 
+import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The OSM Vector Tile Pager reads vector tiles from a remote source,
@@ -43,6 +49,10 @@ import java.util.Map;
  * <p>
  * This is an example implementation of the QuadPagingLayer.PagingInterface
  * for OSM vector tiles.
+ * <p>
+ * Tiles are fetched and styled on a small pool of threads the pager owns,
+ * using the controller's HTTP client.  Tiles that unload before they're done
+ * are cancelled wherever they are: queued, fetching, parsing or styling.
  *
  * @author sjg
  *
@@ -54,7 +64,10 @@ public class OSMVectorTilePager implements QuadPagingLayer.PagingInterface
 	int minZoom = 0;
 	int maxZoom = 0;
 	File cacheDir = null;
-	OkHttpClient client = new OkHttpClient();
+	OkHttpClient client = null;
+	ThreadPoolExecutor executor = null;
+	// Tiles we're working on, so we can cancel them
+	ConcurrentHashMap<MaplyTileID,TileTask> tasks = new ConcurrentHashMap<MaplyTileID,TileTask>();
 
 	/**
 	 * Construct with the data we need to start.
@@ -71,6 +84,21 @@ public class OSMVectorTilePager implements QuadPagingLayer.PagingInterface
 		remotePath = inRemotePath;
 		minZoom = inMinZoom;
 		maxZoom = inMaxZoom;
+		client = maplyControl.getHttpClient();
+
+		int threads = Math.max(1,numThreads);
+		executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					final AtomicInteger count = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable run) {
+						Thread thread = new Thread(run, "Maply OSM Vector Tile " + count.incrementAndGet());
+						thread.setPriority(Thread.NORM_PRIORITY - 1);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
 	}
 
 	/**
@@ -98,61 +126,216 @@ public class OSMVectorTilePager implements QuadPagingLayer.PagingInterface
 		cacheDir = inDir;
 	}
 
-	// Connection task fetches the JSON as a string
-	private class ConnectionTask extends AsyncTask<String, Void, String>
+	/**
+	 * How long tiles are taking and how many we've dropped.
+	 * All times are in milliseconds.
+	 */
+	public static class Stats
+	{
+		/// Tiles that made it onto the screen
+		public long numLoaded;
+		/// Tiles that failed to fetch or parse
+		public long numFailed;
+		/// Tiles that unloaded before we finished them
+		public long numCanceled;
+		/// Tiles we read from the cache rather than the network
+		public long numCached;
+		/// Total time tiles waited for a thread
+		public double totalQueueTime;
+		/// Total time spent fetching
+		public double totalFetchTime;
+		/// Total time spent parsing
+		public double totalParseTime;
+		/// Total time spent styling and adding
+		public double totalStyleTime;
+		/// Total time from request to loaded
+		public double totalTime;
+		/// Longest any tile took from request to loaded
+		public double maxTime;
+
+		/**
+		 * Average time from request to loaded, for the tiles that loaded.
+		 */
+		public double getAverageTime()
+		{
+			return numLoaded > 0 ? totalTime / numLoaded : 0.0;
+		}
+
+		@Override
+		public String toString()
+		{
+			double num = Math.max(1,numLoaded);
+			return "loaded " + numLoaded + ", failed " + numFailed + ", canceled " + numCanceled + ", cached " + numCached +
+					", avg queue " + String.format("%.2f", totalQueueTime / num) +
+					"ms, avg fetch " + String.format("%.2f", totalFetchTime / num) +
+					"ms, avg parse " + String.format("%.2f", totalParseTime / num) +
+					"ms, avg style " + String.format("%.2f", totalStyleTime / num) +
+					"ms, avg total " + String.format("%.2f", getAverageTime()) +
+					"ms, max total " + String.format("%.2f", maxTime) + "ms";
+		}
+	}
+
+	private final Stats stats = new Stats();
+
+	/**
+	 * Return a copy of the per-tile timing and counts so far.
+	 */
+	public Stats getStats()
+	{
+		Stats copy = new Stats();
+		synchronized (stats)
+		{
+			copy.numLoaded = stats.numLoaded;
+			copy.numFailed = stats.numFailed;
+			copy.numCanceled = stats.numCanceled;
+			copy.numCached = stats.numCached;
+			copy.totalQueueTime = stats.totalQueueTime;
+			copy.totalFetchTime = stats.totalFetchTime;
+			copy.totalParseTime = stats.totalParseTime;
+			copy.totalStyleTime = stats.totalStyleTime;
+			copy.totalTime = stats.totalTime;
+			copy.maxTime = stats.maxTime;
+		}
+		return copy;
+	}
+
+	static double toMillis(long nanos)
 	{
-		QuadPagingLayer layer = null;
-		MaplyTileID tileID = null;
-		OSMVectorTilePager pager = null;
+		return nanos / 1000000.0;
+	}
 
-		ConnectionTask(OSMVectorTilePager inPager,QuadPagingLayer inLayer, MaplyTileID inTileID)
+	// Fetches, parses and styles a single tile on one of our threads
+	class TileTask implements Runnable
+	{
+		final QuadPagingLayer layer;
+		final MaplyTileID tileID;
+		final String url;
+		final long requestTime = System.nanoTime();
+		Future<?> future;
+		Call call;
+		volatile boolean canceled = false;
+
+		TileTask(QuadPagingLayer inLayer,MaplyTileID inTileID,String inURL)
 		{
 			layer = inLayer;
 			tileID = inTileID;
-			pager = inPager;
+			url = inURL;
+		}
+
+		// Stop whatever we're doing.  If we haven't started, we won't.
+		void cancel()
+		{
+			Call theCall;
+			Future<?> theFuture;
+			synchronized (this)
+			{
+				canceled = true;
+				theCall = call;
+				theFuture = future;
+			}
+			if (theCall != null)
+				theCall.cancel();
+			if (theFuture != null)
+				theFuture.cancel(false);
 		}
 
-	    @Override
-	    protected String doInBackground(String... urls) {
-	    	String aString = null;
-	    	try {
-		    	URL url = new URL(urls[0]);
+		@Override
+		public void run()
+		{
+			if (canceled)
+				return;
 
-				// Look for it in the cache
-				if (cacheDir != null)
-				{
-					Map<String,VectorObject> vecData = readFromCache(tileID);
-					if (vecData != null)
+			long startTime = System.nanoTime();
+			Map<String,VectorObject> vecData = null;
+			boolean wasCached = false;
+			long fetchTime = 0, parseTime = 0;
+
+			// Look for it in the cache
+			if (cacheDir != null)
+			{
+				vecData = readFromCache(tileID);
+				wasCached = vecData != null;
+			}
+
+			if (vecData == null)
+			{
+				// Load the JSON from that URL
+				String json = null;
+				try {
+					Request request = new Request.Builder().url(url).build();
+					synchronized (this)
 					{
-						showData(layer,vecData,tileID);
-						return null;
+						if (canceled)
+							return;
+						call = client.newCall(request);
 					}
+					Response response = call.execute();
+					json = response.body().string();
+				}
+				catch (IOException e) {
+//					Log.d("OSMVectorTilePager", e.toString());
 				}
+				fetchTime = System.nanoTime() - startTime;
 
-				// Load the JSON from that URL
-			    Request request = new Request.Builder().url(url).build();
+				if (canceled)
+				{
+					didCancel(this);
+					return;
+				}
+				if (json == null)
+				{
+					didNotLoad(this);
+					return;
+				}
+
+				// Parse the GeoJSON assembly into groups based on the type
+				long parseStart = System.nanoTime();
+				vecData = VectorObject.FromGeoJSONAssembly(json);
+				parseTime = System.nanoTime() - parseStart;
+				if (vecData == null)
+				{
+					didNotLoad(this);
+					return;
+				}
+			}
 
-			    Response response = client.newCall(request).execute();
-	    		aString = response.body().string();
-	    	}
-	    	catch (IOException e) {
-//	    		Log.d("OSMVectorTilePager", e.toString());
-	    		pager.didNotLoad(layer,tileID);
-	    	}
+			// Gone while we were parsing, so don't bother styling
+			if (canceled)
+			{
+				for (VectorObject vecObj : vecData.values())
+					vecObj.dispose();
+				didCancel(this);
+				return;
+			}
 
-	    	if (aString != null)
-	    		pager.didLoad(layer,tileID,aString,false);
-	    	else
-	    		pager.didNotLoad(layer,tileID);
+			// And display it
+			long styleStart = System.nanoTime();
+			showData(layer,vecData,tileID);
+			long endTime = System.nanoTime();
 
-	    	return null;
-	    }
+			// Write it out to the cache
+			if (!wasCached)
+				writeToCache(vecData,tileID);
 
-	    @Override
-	    protected void onPostExecute(String result)
-	    {
-	    }
+			tasks.remove(tileID,this);
 
+			double totalTime = toMillis(endTime - requestTime);
+			synchronized (stats)
+			{
+				stats.numLoaded++;
+				if (wasCached)
+					stats.numCached++;
+				stats.totalQueueTime += toMillis(startTime - requestTime);
+				stats.totalFetchTime += toMillis(fetchTime);
+				stats.totalParseTime += toMillis(parseTime);
+				stats.totalStyleTime += toMillis(endTime - styleStart);
+				stats.totalTime += totalTime;
+				stats.maxTime = Math.max(stats.maxTime,totalTime);
+			}
+
+			Log.i("OSMVectorTilePager","Loaded Tile : " + tileID.level + " (" + tileID.x + "," + tileID.y + ")" +
+					" in " + String.format("%.1f", totalTime) + "ms" + (wasCached ? " from cache" : ""));
+		}
 	}
 
 	// The paging layer calls us here to start paging a tile
@@ -167,15 +350,32 @@ public class OSMVectorTilePager implements QuadPagingLayer.PagingInterface
 		final String tileURL = remotePath + "/" + tileID.level + "/" + tileID.x + "/" + remoteY + ".json";
 
 		// Kick off the fetch in the background
-		ConnectionTask task = new ConnectionTask(this,layer,tileID);
-		String[] params = new String[1];
-		params[0] = tileURL;
-		task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,params);
+		TileTask task = new TileTask(layer,tileID,tileURL);
+		TileTask oldTask = tasks.put(tileID,task);
+		if (oldTask != null)
+			oldTask.cancel();
+		ThreadPoolExecutor theExecutor = executor;
+		if (theExecutor == null || theExecutor.isShutdown())
+			return;
+		Future<?> future = theExecutor.submit(task);
+		synchronized (task)
+		{
+			task.future = future;
+		}
 	}
 
 	@Override
 	public void tileDidUnload(MaplyTileID tileID)
 	{
+		TileTask task = tasks.remove(tileID);
+		if (task != null)
+		{
+			task.cancel();
+			synchronized (stats)
+			{
+				stats.numCanceled++;
+			}
+		}
 	}
 
 	// Group data together for efficiency
@@ -446,30 +646,28 @@ public class OSMVectorTilePager implements QuadPagingLayer.PagingInterface
 					{
 						layer.tileDidLoad(tileID);
 					}
-				});
+				}, LayerThread.TaskPriority.TileDelivery);
 	}
 
-	// The connection task loaded data.  Yay!
-	void didLoad(final QuadPagingLayer layer,final MaplyTileID tileID,final String json,final boolean wasCached)
+	// The tile went away while we were working on it.  The layer already knows.
+	void didCancel(TileTask task)
 	{
-		Log.i("OSMVectorTilePager","Loaded Tile : " + tileID.level + " (" + tileID.x + "," + tileID.y + ")");
-
-		// Parse the GeoJSON assembly into groups based on the type
-		Map<String,VectorObject> vecData = VectorObject.FromGeoJSONAssembly(json);
-
-		// And display it
-		showData(layer,vecData,tileID);
-
-		// Write it out to the cache
-		if (!wasCached)
-			writeToCache(vecData,tileID);
+		tasks.remove(task.tileID,task);
 	}
 
 	// The connection task failed to load data.  Boo!
-	void didNotLoad(final QuadPagingLayer layer,final MaplyTileID tileID)
+	void didNotLoad(TileTask task)
 	{
+		final QuadPagingLayer layer = task.layer;
+		final MaplyTileID tileID = task.tileID;
 		Log.i("OSMVectorTilePager","Failed Tile : " + tileID.level + " (" + tileID.x + "," + tileID.y + ")");
 
+		tasks.remove(tileID,task);
+		synchronized (stats)
+		{
+			stats.numFailed++;
+		}
+
 		layer.layerThread.addTask(
 				new Runnable()
 				{
@@ -478,7 +676,7 @@ public class OSMVectorTilePager implements QuadPagingLayer.PagingInterface
 					{
 						layer.tileFailedToLoad(tileID);
 					}
-				});
+				}, LayerThread.TaskPriority.TileDelivery);
 	}
 
 	// Filename for cache with type
@@ -527,5 +725,14 @@ public class OSMVectorTilePager implements QuadPagingLayer.PagingInterface
 
 	public void clear()
 	{
+		for (TileTask task : tasks.values())
+			task.cancel();
+		tasks.clear();
+
+		if (executor != null)
+		{
+			executor.shutdownNow();
+			executor = null;
+		}
 	}
 }
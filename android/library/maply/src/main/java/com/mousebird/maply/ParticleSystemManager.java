@@ -49,6 +49,12 @@ public class ParticleSystemManager {
     // Remove one particle system
     public native void removeParticleSystem(long sysID, ChangeSet changeSet);
 
+    /// Enable/disable a batch of particle systems
+    public native void enableParticleSystems(long[] sysIDs, boolean enable, ChangeSet changes);
+
+    // Remove a batch of particle systems
+    public native void removeParticleSystems(long[] sysIDs, ChangeSet changeSet);
+
     static {
         nativeInit();
     }
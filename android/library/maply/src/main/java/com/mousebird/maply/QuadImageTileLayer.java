@@ -95,6 +95,27 @@ public class QuadImageTileLayer extends Layer implements LayerThread.ViewWatcher
 		 */
 		public void clear(QuadImageTileLayerInterface layer);
 	}
+
+	/**
+	 * Tile sources that can abandon a fetch in progress should implement this
+	 * as well.  The layer will tell them when it no longer wants a tile it
+	 * asked for, or has unloaded one it already got.
+	 *
+	 * @author sjg
+	 *
+	 */
+	public interface CancelableTileSource extends TileSource
+	{
+		/**
+		 * The layer has unloaded the given tile or no longer wants it.
+		 * If you're still fetching it, you can stop.  This is called on
+		 * the layer thread, so be quick about it.
+		 *
+		 * @param layer The layer that asked for the tile.
+		 * @param tileID The tile that was unloaded.
+		 */
+		public void tileUnloaded(QuadImageTileLayerInterface layer,MaplyTileID tileID);
+	}
 	
 	public MaplyBaseController maplyControl = null;
 	public CoordSystem coordSys = null;
@@ -184,6 +205,15 @@ public class QuadImageTileLayer extends Layer implements LayerThread.ViewWatcher
 	public void shutdown()
 	{
 		valid = false;
+		ArrayList<TileDelivery> dropped;
+		synchronized (pendingDeliveries)
+		{
+			dropped = new ArrayList<TileDelivery>(pendingDeliveries);
+			pendingDeliveries.clear();
+		}
+		// Let the sources have their images back
+		for (TileDelivery delivery : dropped)
+			delivery.finished();
 		if (tileSource != null)
 			tileSource.clear(this);
 		if (layerThread != null)
@@ -338,49 +368,271 @@ public class QuadImageTileLayer extends Layer implements LayerThread.ViewWatcher
 			tileSource.startFetchForTile(this, tileID, frame);
 	}
 	
+	/* Called by the JNI side.  The given tile was unloaded
+	 * or dropped before it finished loading.
+	 */
+	void tileUnloaded(int level,int x,int y)
+	{
+		if (!valid || !(tileSource instanceof CancelableTileSource))
+			return;
+
+		// Same TMS flip as startFetch
+		if (!flipY)
+			y = (1<<level)-y-1;
+
+		((CancelableTileSource)tileSource).tileUnloaded(this,new MaplyTileID(x,y,level));
+	}
+
 	/*
 	 * Called by the JNI side.  We're being woken up 
 	 */
 	
+	/**
+	 * How the tiles coming in from the tile source have been batched up
+	 * on their way to the native side.
+	 */
+	public static class DeliveryStats
+	{
+		/// Number of batches delivered
+		public long numBatches;
+		/// Number of tiles delivered, loaded or not
+		public long numTiles;
+		/// Most tiles in a single batch
+		public int largestBatch;
+		/// Tiles in the most recent batch
+		public int lastBatch;
+
+		/**
+		 * Average number of tiles per batch.
+		 */
+		public double getAverageBatchSize()
+		{
+			return numBatches > 0 ? (double)numTiles / numBatches : 0.0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "batches: " + numBatches + ", tiles: " + numTiles + ", largest: " + largestBatch +
+					", last: " + lastBatch + ", average: " + String.format("%.2f", getAverageBatchSize());
+		}
+	}
+
+	// A tile that's come in and is waiting for the next batch
+	static class TileDelivery
+	{
+		final MaplyTileID tileID;
+		final int frame;
+		final MaplyImageTile imageTile;
+		final Runnable onCopied;
+
+		TileDelivery(MaplyTileID tileID,int frame,MaplyImageTile imageTile,Runnable onCopied)
+		{
+			this.tileID = tileID;
+			this.frame = frame;
+			this.imageTile = imageTile;
+			this.onCopied = onCopied;
+		}
+
+		// The image has been copied out (or dropped) so the source can reuse it
+		void finished()
+		{
+			if (onCopied != null)
+				onCopied.run();
+		}
+	}
+
+	final ArrayList<TileDelivery> pendingDeliveries = new ArrayList<TileDelivery>();
+	boolean deliveryScheduled = false;
+	float deliveryBatchWindow = 0.01f;
+	final DeliveryStats deliveryStats = new DeliveryStats();
+
+	/**
+	 * Tiles that come in close together are handed to the native side in one go.
+	 * After the first tile in a batch shows up, we'll wait this long for more.
+	 * Zero means we'll just take what's there the next time the layer thread gets to it.
+	 * The default is 10ms.
+	 *
+	 * @param window Time to wait for more tiles, in seconds.
+	 */
+	public void setDeliveryBatchWindow(float window)
+	{
+		deliveryBatchWindow = Math.max(0.f,window);
+	}
+
+	/**
+	 * Time we'll wait to batch up incoming tiles, in seconds.
+	 */
+	public float getDeliveryBatchWindow()
+	{
+		return deliveryBatchWindow;
+	}
+
+	/**
+	 * Return a copy of the tile delivery batching stats.
+	 */
+	public DeliveryStats getDeliveryStats()
+	{
+		DeliveryStats stats = new DeliveryStats();
+		synchronized (deliveryStats)
+		{
+			stats.numBatches = deliveryStats.numBatches;
+			stats.numTiles = deliveryStats.numTiles;
+			stats.largestBatch = deliveryStats.largestBatch;
+			stats.lastBatch = deliveryStats.lastBatch;
+		}
+		return stats;
+	}
+
 	/**
 	 * When a tile source finishes loading a given image tile,
 	 * it calls this method to let the quad image tile layer know
 	 * about it.  You can call this on any thread.
+	 * <p>
+	 * Tiles are queued up and handed over in batches on the layer thread, so
+	 * the image data is still in use after this returns.  If you're going to
+	 * reuse the bitmaps or buffers, use the version that tells you when we're done.
 	 * 
 	 * @param imageTile The image tile we've just loaded.  Pass in null on failure.
 	 */
 	public void loadedTile(final MaplyTileID tileID,final int frame,final MaplyImageTile imageTile)
 	{
+		loadedTile(tileID,frame,imageTile,null);
+	}
+
+	/**
+	 * Hand over a loaded tile and find out when we're done with its image data.
+	 * <p>
+	 * The onCopied callback runs once the image has been copied to the native side,
+	 * or once we've decided not to use it.  Until then the bitmaps or buffers in
+	 * the image tile must not be touched.  The callback may run on the layer thread
+	 * or on the caller's thread.
+	 *
+	 * @param imageTile The image tile we've just loaded.  Pass in null on failure.
+	 * @param onCopied Run when the image data can be reused.  Can be null.
+	 */
+	public void loadedTile(final MaplyTileID tileID,final int frame,final MaplyImageTile imageTile,final Runnable onCopied)
+	{
+		TileDelivery newDelivery = new TileDelivery(tileID,frame,imageTile,onCopied);
 		if (!valid)
+		{
+			newDelivery.finished();
 			return;
+		}
 
-        int y = tileID.y;
-	    if (!flipY)
-	    	y =  (1<<tileID.level)-tileID.y-1;
+		synchronized (pendingDeliveries)
+		{
+			pendingDeliveries.add(newDelivery);
+			if (deliveryScheduled)
+				return;
+			deliveryScheduled = true;
+		}
 
-		if (Looper.myLooper() != layerThread.getLooper())
+		final Runnable deliverRun = new Runnable()
 		{
-			layerThread.addTask(new Runnable()
+			@Override
+			public void run()
+			{
+				deliverTiles();
+			}
+		};
+		long delay = (long)(deliveryBatchWindow * 1000);
+		if (delay > 0)
+			layerThread.addDelayedTask(new Runnable()
 			{
 				@Override
 				public void run()
 				{
-					loadedTile(tileID,frame,imageTile);
-//					Log.d("Maply","Responding to load for tile: " + tileID.level + ": (" + tileID.x + "," + tileID.y);
+					layerThread.addTask(deliverRun,LayerThread.TaskPriority.TileDelivery);
 				}
-			});
+			},delay);
+		else
+			layerThread.addTask(deliverRun,LayerThread.TaskPriority.TileDelivery);
+	}
+
+	// Hand everything that's come in over to the native side in one call and one change set
+	void deliverTiles()
+	{
+		ArrayList<TileDelivery> batch;
+		synchronized (pendingDeliveries)
+		{
+			batch = new ArrayList<TileDelivery>(pendingDeliveries);
+			pendingDeliveries.clear();
+			deliveryScheduled = false;
+		}
+		if (batch.isEmpty())
+			return;
+		if (!valid)
+		{
+			for (TileDelivery delivery : batch)
+				delivery.finished();
 			return;
 		}
-		
+
+		// Seven ints per tile.  The last three are for raw images.
+		int numTiles = batch.size();
+		int[] tileInfo = new int[7*numTiles];
+		Object[] images = new Object[numTiles];
+		for (int ii=0;ii<numTiles;ii++)
+		{
+			TileDelivery delivery = batch.get(ii);
+			MaplyTileID tileID = delivery.tileID;
+			int y = tileID.y;
+			if (!flipY)
+				y = (1<<tileID.level)-tileID.y-1;
+
+			int frame = delivery.frame;
+			int imageFormat = -1;
+			MaplyImageTile imageTile = delivery.imageTile;
+			if (imageTile != null)
+			{
+				if (imageTile.isRaw())
+				{
+					if (imageTile.buffers != null)
+					{
+						images[ii] = imageTile.buffers;
+						frame = -1;
+					} else
+						images[ii] = imageTile.buffer;
+					imageFormat = imageTile.format.ordinal();
+				} else if (imageTile.bitmaps != null)
+				{
+					images[ii] = imageTile.bitmaps;
+					frame = -1;
+				} else
+					images[ii] = imageTile.bitmap;
+			}
+			int which = 7*ii;
+			tileInfo[which] = tileID.x;
+			tileInfo[which+1] = y;
+			tileInfo[which+2] = tileID.level;
+			tileInfo[which+3] = frame;
+			if (imageFormat >= 0)
+			{
+				tileInfo[which+4] = imageTile.width;
+				tileInfo[which+5] = imageTile.height;
+			}
+			tileInfo[which+6] = imageFormat;
+		}
+
 		ChangeSet changes = new ChangeSet();
-		if (imageTile != null) {
-			if (imageTile.bitmaps != null)
-				nativeTileDidLoad(tileID.x, y, tileID.level, -1, imageTile.bitmaps, changes);
-			else
-				nativeTileDidLoad(tileID.x, y, tileID.level, frame, imageTile.bitmap, changes);
-		} else
-			nativeTileDidNotLoad(tileID.x,y,tileID.level,frame,changes);
+		try {
+			nativeTilesDidLoad(tileInfo,images,changes);
+		}
+		finally {
+			// The native side has its own copies now
+			for (TileDelivery delivery : batch)
+				delivery.finished();
+		}
 		layerThread.addChanges(changes);
+
+		synchronized (deliveryStats)
+		{
+			deliveryStats.numBatches++;
+			deliveryStats.numTiles += numTiles;
+			deliveryStats.largestBatch = Math.max(deliveryStats.largestBatch,numTiles);
+			deliveryStats.lastBatch = numTiles;
+		}
 	}
 
 	public LayerThread getLayerThread()
@@ -841,4 +1093,5 @@ public class QuadImageTileLayer extends Layer implements LayerThread.ViewWatcher
 	native void nativeTileDidLoad(int x,int y,int level,int frame,Bitmap bitmap,ChangeSet changes);
 	native void nativeTileDidLoad(int x,int y,int level,int frame,Bitmap[] bitmaps,ChangeSet changes);
 	native void nativeTileDidNotLoad(int x,int y,int level,int frame,ChangeSet changes);
+	native void nativeTilesDidLoad(int[] tileInfo,Object[] images,ChangeSet changes);
 }
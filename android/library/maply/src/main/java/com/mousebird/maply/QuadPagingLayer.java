@@ -305,11 +305,22 @@ public class QuadPagingLayer extends Layer implements LayerThread.ViewWatcherInt
      */
 	public Mbr boundsForTile(MaplyTileID tileID)
 	{
-		Mbr mbr = new Mbr(new Point2d(0,0),new Point2d(0,0));
-		boundsForTileNative(tileID.x,tileID.y,tileID.level,mbr.ll,mbr.ur);
-		return mbr;
+		double[] bounds = new double[4];
+		boundsForTile(tileID,bounds);
+		return new Mbr(bounds);
+	}
+
+	/**
+	 * Calculate the bounding box in the local coordinate system and put
+	 * it in the array as {minX,minY,maxX,maxY}.  This one doesn't allocate
+	 * any native objects.
+	 */
+	public void boundsForTile(MaplyTileID tileID,double[] bounds)
+	{
+		boundsForTileArrayNative(tileID.x,tileID.y,tileID.level,bounds);
 	}
 	protected native void boundsForTileNative(int x,int y,int level,Point2d ll,Point2d ur);
+	protected native void boundsForTileArrayNative(int x,int y,int level,double[] bounds);
 
 	/**
 	 * Calculate the bounding box for a given tile in geographic, that is in 
@@ -317,11 +328,22 @@ public class QuadPagingLayer extends Layer implements LayerThread.ViewWatcherInt
 	 */
 	public Mbr geoBoundsForTile(MaplyTileID tileID)
 	{
-		Mbr mbr = new Mbr(new Point2d(0,0),new Point2d(0,0));
-		geoBoundsForTileNative(tileID.x,tileID.y,tileID.level,mbr.ll,mbr.ur);
-		return mbr;
+		double[] bounds = new double[4];
+		geoBoundsForTile(tileID,bounds);
+		return new Mbr(bounds);
+	}
+
+	/**
+	 * Calculate the bounding box for a given tile in WGS84 longitude/latitude
+	 * radians and put it in the array as {minX,minY,maxX,maxY}.  This one
+	 * doesn't allocate any native objects.
+	 */
+	public void geoBoundsForTile(MaplyTileID tileID,double[] bounds)
+	{
+		geoBoundsForTileArrayNative(tileID.x,tileID.y,tileID.level,bounds);
 	}
 	protected native void geoBoundsForTileNative(int x,int y,int level,Point2d ll,Point2d ur);
+	protected native void geoBoundsForTileArrayNative(int x,int y,int level,double[] bounds);
 	
 	// Called by the native side when it's time to load a tile
 	void loadTile(int x,int y,int level)
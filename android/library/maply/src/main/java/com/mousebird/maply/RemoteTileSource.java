@@ -23,24 +23,15 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.util.Log;
 
-import org.jetbrains.annotations.NotNull;
-
-import okhttp3.Call;
-import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
-import okhttp3.Response;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.URL;
-
-import static com.mousebird.maply.utils.OkHttpUtils.cancel;
+import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * The remote tile source fetches individual tiles from a remote image basemap
@@ -48,9 +39,13 @@ import static com.mousebird.maply.utils.OkHttpUtils.cancel;
  * such as base URL, file extension and min and max zoom level.
  * 
  * This object works on conjunction with a QuadImageTileLayer.
+ * <p>
+ * Network requests go through a TileFetchScheduler, which merges duplicate
+ * requests, sends the most important tiles first and drops requests for
+ * tiles the layer no longer wants.
  *
  */
-public class RemoteTileSource implements QuadImageTileLayer.TileSource
+public class RemoteTileSource implements QuadImageTileLayer.CancelableTileSource, MemoryCacheTileSource.DecodingTileSource
 {
 	MaplyBaseController controller = null;
 	RemoteTileInfo tileInfo = null;
@@ -61,6 +56,17 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
 	// Set if we can use the premultiply option
 	boolean hasPremultiplyOption = false;
 
+	// Set if a memory cache is wrapping us.  We decode into its spare bitmaps.
+	MemoryCacheTileSource memCache = null;
+
+	// Sends our network requests
+	TileFetchScheduler scheduler = null;
+	// Scheduler we've asked to follow the view, if any
+	TileFetchScheduler watchingScheduler = null;
+
+	// Fetches in progress, by layer and tile
+	final HashMap<QuadImageTileLayerInterface,HashMap<MaplyTileID,ConnectionTask>> tasks = new HashMap<QuadImageTileLayerInterface,HashMap<MaplyTileID,ConnectionTask>>();
+
 	/**
 	 * Set this if you'd like full debugging output while loading
 	 */
@@ -121,11 +127,11 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
 		tileInfo = inTileInfo;
 	}
 
-	File cacheDir = null;
+	TileCache tileCache = null;
 	/**
 	 * Set the cache directory for fetched images.  We'll look there first.
-	 * There is no limiting or pruning going on, that directory will just get
-	 * bigger and bigger.
+	 * This sets up a DiskTileCache with its default limits.  If you want
+	 * different limits or want to share the cache, use setTileCache().
 	 * <p>
 	 * By default that directory is null.
 	 * 
@@ -133,7 +139,48 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
 	 */
 	public void setCacheDir(File inCacheDir)
 	{
-		cacheDir = inCacheDir;
+		tileCache = (inCacheDir != null) ? new DiskTileCache(inCacheDir) : null;
+	}
+
+	/**
+	 * Set the cache for fetched images.  We'll look there first.
+	 * <p>
+	 * By default there is no cache.
+	 *
+	 * @param inTileCache Cache for image tiles.
+	 */
+	public void setTileCache(TileCache inTileCache)
+	{
+		tileCache = inTileCache;
+	}
+
+	/**
+	 * Return the cache for fetched images, if there is one.
+	 */
+	public TileCache getTileCache()
+	{
+		return tileCache;
+	}
+
+	/**
+	 * Set the scheduler that sends our network requests.  Share one between
+	 * tile sources that hit the same servers so they respect a common per-host limit.
+	 * <p>
+	 * By default we make our own the first time we need it.
+	 */
+	public synchronized void setFetchScheduler(TileFetchScheduler inScheduler)
+	{
+		scheduler = inScheduler;
+	}
+
+	/**
+	 * Return the scheduler that sends our network requests.
+	 */
+	public synchronized TileFetchScheduler getFetchScheduler()
+	{
+		if (scheduler == null)
+			scheduler = new TileFetchScheduler(client);
+		return scheduler;
 	}
 
 	@Override
@@ -156,25 +203,40 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
 		return true;
 	}
 
+	@Override
+	public void setMemoryCache(MemoryCacheTileSource inMemCache)
+	{
+		memCache = inMemCache;
+	}
+
+	// Decode the image, reusing bitmaps from the memory cache if there is one
+	Bitmap decodeImage(byte[] rawImage,BitmapFactory.Options options)
+	{
+		MemoryCacheTileSource theMemCache = memCache;
+		if (theMemCache != null)
+			return theMemCache.decodeTile(rawImage, options);
+
+		return BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, options);
+	}
+
 	// Connection task fetches the image
-	private class ConnectionTask implements Callback
+	private class ConnectionTask implements TileFetchScheduler.FetchListener
 	{
 		RemoteTileSource tileSource = null;
 		QuadImageTileLayerInterface layer = null;
 		MaplyTileID tileID = null;
 		URL url = null;
-		String locFile = null;
-        Call call;
+		String cacheKey = null;
+        TileFetchScheduler.Ticket ticket = null;
         Bitmap bm = null;
-        File cacheFile = null;
-        boolean isCanceled = false;
+        volatile boolean isCanceled = false;
 		
-		ConnectionTask(QuadImageTileLayerInterface inLayer,RemoteTileSource inTileSource, MaplyTileID inTileID,URL inURL,String inFile)
+		ConnectionTask(QuadImageTileLayerInterface inLayer,RemoteTileSource inTileSource, MaplyTileID inTileID,URL inURL,String inCacheKey)
 		{
 			tileSource = inTileSource;
 			layer = inLayer;
 			tileID = inTileID;
-			locFile = inFile;
+			cacheKey = inCacheKey;
 			url = inURL;
 		}
 
@@ -182,15 +244,15 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
         protected void fetchTile() {
             try {
                 // See if it's here locally
-                if (locFile != null) {
-                    cacheFile = new File(locFile);
-                    if (cacheFile.exists()) {
+                TileCache cache = tileCache;
+                if (cacheKey != null && cache != null) {
+                    byte[] rawImage = cache.get(cacheKey);
+                    if (rawImage != null) {
 						BitmapFactory.Options options = new BitmapFactory.Options();
 // 		                options.inScaled = false;
 						if (hasPremultiplyOption)
 							options.inPremultiplied = false;
-                        BufferedInputStream aBufferedInputStream = new BufferedInputStream(new FileInputStream(cacheFile));
-                        bm = BitmapFactory.decodeStream(aBufferedInputStream,null,options);
+                        bm = decodeImage(rawImage,options);
 						if (debugOutput) {
 							if (bm != null)
 								Log.d("Maply", "Read cached file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " Bitmap = (" + bm.getWidth() + "," + bm.getHeight() + ")");
@@ -201,6 +263,7 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
                 }
 
                 if (bm != null) {
+                    finishTask(this);
                     reportTile();
                     return;
                 }
@@ -208,65 +271,64 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
                 // Load the data from that URL
 				Request request = tileInfo.buildRequest(url,NET_TAG);
 
-                call = client.newCall(request);
-                call.enqueue(this);
+                TileFetchScheduler.Ticket newTicket = getFetchScheduler().fetch(request, tileID, this);
+                synchronized (this) {
+                    ticket = newTicket;
+                }
+                // Canceled while we were setting up
+                if (isCanceled)
+                    newTicket.cancel();
             } catch (Exception e) {
 				if (debugOutput)
 					Log.e("Maply","Exception while trying to fetch the tile: " + e.toString());
             }
         }
 
-        // Callback from OK HTTP on tile loading failure
+        // Callback from the scheduler on tile loading failure
 		@Override
-		public void onFailure(@NotNull Call call, @NotNull IOException e) {
-			// Ignore cancels
-			if (e != null) {
-				String mess = e.getLocalizedMessage();
-				if (mess != null && mess.contains("Canceled"))
-					return;
-			}
+		public void fetchDidFail(IOException e) {
+			if (isCanceled)
+				return;
+			finishTask(this);
 			if (tileID != null)
 	            Log.e("Maply", "Failed to fetch remote tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")");
         }
 
-        // Callback from OK HTTP on success
+        // Callback from the scheduler on success
 		@Override
-		public void onResponse(@NotNull Call call, @NotNull Response response) {
+		public void fetchDidSucceed(int responseCode, byte[] rawImage) {
 			if (isCanceled)
                 return;
 
-            byte[] rawImage = null;
             try {
-                rawImage = response.body().bytes();
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inScaled = false;
-				if (hasPremultiplyOption)
-					options.inPremultiplied = false;
-                bm = BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, options);
-
-				// Let's try it with the default options
-				if (bm == null)
-				{
-					bm = BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, null);
-					if (bm != null)
-						if (debugOutput)
-							Log.d("Maply","Image decode succeeded second time.");
-				}
+                if (rawImage != null) {
+	                BitmapFactory.Options options = new BitmapFactory.Options();
+	                options.inScaled = false;
+					if (hasPremultiplyOption)
+						options.inPremultiplied = false;
+	                bm = decodeImage(rawImage, options);
+
+					// Let's try it with the default options
+					if (bm == null)
+					{
+						bm = BitmapFactory.decodeByteArray(rawImage, 0, rawImage.length, null);
+						if (bm != null)
+							if (debugOutput)
+								Log.d("Maply","Image decode succeeded second time.");
+					}
+                }
 
                 // Save to cache
-                if (cacheFile != null && rawImage != null && bm != null) {
-                    OutputStream fOut;
-                    fOut = new FileOutputStream(cacheFile);
-                    fOut.write(rawImage);
-                    fOut.close();
-                }
+                TileCache cache = tileCache;
+                if (cacheKey != null && cache != null && rawImage != null && bm != null)
+                    cache.put(cacheKey, rawImage);
 
 				if (debugOutput) {
 					if (bm != null)
 						Log.d("Maply", "Fetched remote file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " Bitmap = (" + bm.getWidth() + "," + bm.getHeight() + ")");
 					else {
-						Log.d("Maply", "Fetched remote tile " +  + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " but did not decode. length = " + rawImage.length);
-						Log.e("Maply", "Response for failed image decode: " + response.toString());
+						Log.d("Maply", "Fetched remote tile " +  + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " but did not decode. length = " + (rawImage != null ? rawImage.length : 0));
+						Log.e("Maply", "Response code for failed image decode: " + responseCode);
 					}
 				}
             }
@@ -275,6 +337,7 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
 				Log.e("Maply", "Failed to fetch remote file for tile " + tileID.level + ": (" + tileID.x + "," + tileID.y + ")" + " because: " + e.toString());
             }
 
+            finishTask(this);
             reportTile();
         }
 
@@ -301,10 +364,47 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
         // Cancel an outstanding request
         protected void cancel() {
             isCanceled = true;
-            if (call != null)
-                call.cancel();
+            TileFetchScheduler.Ticket theTicket;
+            synchronized (this) {
+                theTicket = ticket;
+            }
+            if (theTicket != null)
+                theTicket.cancel();
         }
 	}
+
+	// Register with the scheduler to follow the view, once
+	void watchView()
+	{
+		TileFetchScheduler theScheduler = getFetchScheduler();
+		TileFetchScheduler oldScheduler;
+		synchronized (this)
+		{
+			if (watchingScheduler == theScheduler)
+				return;
+			oldScheduler = watchingScheduler;
+			watchingScheduler = theScheduler;
+		}
+		// The scheduler was swapped out from under us
+		if (oldScheduler != null)
+			oldScheduler.stopWatchingView(this);
+		theScheduler.watchView(this,controller,coordSys);
+	}
+
+	// Done with a fetch, one way or another
+	void finishTask(ConnectionTask task)
+	{
+		synchronized (tasks)
+		{
+			HashMap<MaplyTileID,ConnectionTask> layerTasks = tasks.get(task.layer);
+			if (layerTasks != null && layerTasks.get(task.tileID) == task)
+			{
+				layerTasks.remove(task.tileID);
+				if (layerTasks.isEmpty())
+					tasks.remove(task.layer);
+			}
+		}
+	}
 	
 	/**
 	 * This is called by the quad image tile layer.  Don't call this yourself.
@@ -320,21 +420,80 @@ public class RemoteTileSource implements QuadImageTileLayer.TileSource
 		int remoteY = maxY - tileID.y - 1;
 		final URL tileURL = tileInfo.buildURL(tileID.x,remoteY,tileID.level);
 		
-		String cacheFile = null;
-		if (cacheDir != null)
-			cacheFile = cacheDir.getAbsolutePath() + tileInfo.buildCacheName(tileID.x, tileID.y, tileID.level);
-		ConnectionTask task = new ConnectionTask(layer,this,tileID,tileURL,cacheFile);
+		String cacheKey = null;
+		if (tileCache != null)
+			cacheKey = tileInfo.buildCacheName(tileID.x, tileID.y, tileID.level);
+		ConnectionTask task = new ConnectionTask(layer,this,tileID,tileURL,cacheKey);
+		ConnectionTask oldTask;
+		synchronized (tasks)
+		{
+			HashMap<MaplyTileID,ConnectionTask> layerTasks = tasks.get(layer);
+			if (layerTasks == null)
+			{
+				layerTasks = new HashMap<MaplyTileID,ConnectionTask>();
+				tasks.put(layer,layerTasks);
+			}
+			oldTask = layerTasks.put(tileID,task);
+		}
+		if (oldTask != null)
+			oldTask.cancel();
+
+		// Keep the scheduler up to date on where the user is looking
+		watchView();
+
         task.fetchTile();
 	}
 
+	/**
+	 * Called by the layer when it drops a tile.  If the request hasn't gone
+	 * out yet, it won't.  If it has and nobody else wants it, we'll drop it.
+	 */
+	@Override
+	public void tileUnloaded(QuadImageTileLayerInterface layer, MaplyTileID tileID)
+	{
+		ConnectionTask task = null;
+		synchronized (tasks)
+		{
+			HashMap<MaplyTileID,ConnectionTask> layerTasks = tasks.get(layer);
+			if (layerTasks != null)
+			{
+				task = layerTasks.remove(tileID);
+				if (layerTasks.isEmpty())
+					tasks.remove(layer);
+			}
+		}
+		if (task != null)
+			task.cancel();
+	}
+
 	@Override
 	public void clear(QuadImageTileLayerInterface layer)
 	{
-		synchronized (this) {
-			if (client != null)
-				cancel(client, NET_TAG);
+		ArrayList<ConnectionTask> toCancel = new ArrayList<ConnectionTask>();
+		synchronized (tasks)
+		{
+			HashMap<MaplyTileID,ConnectionTask> layerTasks = tasks.remove(layer);
+			if (layerTasks != null)
+				toCancel.addAll(layerTasks.values());
+		}
+		for (ConnectionTask task : toCancel)
+			task.cancel();
 
-			client = null;
+		// Other layers may still be using us
+		synchronized (tasks)
+		{
+			if (!tasks.isEmpty())
+				return;
+		}
+
+		// Only drop our own watch.  The scheduler may be shared.
+		TileFetchScheduler theScheduler;
+		synchronized (this)
+		{
+			theScheduler = watchingScheduler;
+			watchingScheduler = null;
 		}
+		if (theScheduler != null)
+			theScheduler.stopWatchingView(this);
 	}
 }
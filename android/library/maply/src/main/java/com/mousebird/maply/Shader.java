@@ -191,6 +191,44 @@ public class Shader
 	native boolean setUniformNative(String name,double uniX,double uniY,double uniZ);
 	native boolean setUniformNative(String name,double uniX,double uniY,double uniZ,double uniW);
 
+	/**
+	 * Look up a uniform by name and return a handle for it.
+	 * <p>
+	 * Looking up uniforms by name every time you set them adds up.  Do it once
+	 * with this and pass the handles to setUniforms().  Handles are good for
+	 * the life of the shader.
+	 *
+	 * @param name Name of the uniform in the shader.
+	 * @return A handle for the uniform or -1 if the shader doesn't have one by that name.
+	 */
+	public native int getUniformHandle(String name);
+
+	/**
+	 * Set a whole block of uniforms in one go.
+	 * <p>
+	 * Each uniform gets four slots in the values array, whatever its type.
+	 * Floats and vectors use as many of those as they need.  Ints and bools
+	 * take the first one.  Handles of -1 are skipped, so you can share a block
+	 * of values between shaders that don't all have the same uniforms.
+	 *
+	 * @param handles Uniform handles from getUniformHandle().
+	 * @param values Four floats per handle.
+	 * @return The number of uniforms we set.
+	 */
+	public int setUniforms(int[] handles,float[] values)
+	{
+		MaplyBaseController.ContextInfo context = control.setupTempContext(MaplyBaseController.ThreadMode.ThreadCurrent);
+
+		control.requestRender();
+
+		int ret = setUniformsNative(handles,values);
+		control.clearTempContext(context);
+
+		return ret;
+	}
+
+	native int setUniformsNative(int[] handles,float[] values);
+
 	/**
 	 * Returns the internal Maply ID for the shader.
      */
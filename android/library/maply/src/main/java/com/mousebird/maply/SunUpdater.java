@@ -71,6 +71,44 @@ public class SunUpdater implements ActiveObject {
         return true;
     }
 
+    // Uniforms we set, in the order they appear in the values block
+    private static final String[] uniformNames = {
+            Atmosphere.k_v3CameraPos, Atmosphere.k_fCameraHeight, Atmosphere.k_fCameraHeight2, Atmosphere.k_v3LightPos,
+            Atmosphere.k_fInnerRadius, Atmosphere.k_fInnerRadius2, Atmosphere.k_fOuterRadius, Atmosphere.k_fOuterRadius2,
+            Atmosphere.k_fScale, Atmosphere.k_fScaleDepth, Atmosphere.k_fScaleOverScaleDepth,
+            Atmosphere.k_Kr, Atmosphere.k_Kr4PI, Atmosphere.k_Km, Atmosphere.k_Km4PI,
+            Atmosphere.k_ESun, Atmosphere.k_KmESun, Atmosphere.k_KrESun, Atmosphere.k_v3InvWavelength,
+            Atmosphere.k_fSamples, Atmosphere.k_nSamples, Atmosphere.k_g, Atmosphere.k_g2, Atmosphere.k_fExposure
+    };
+
+    // Handles for each shader, looked up the first time through
+    private int[] shaderHandles = null;
+    private int[] groundShaderHandles = null;
+    // Four floats per uniform, reused every frame
+    private final float[] values = new float[4*uniformNames.length];
+
+    private static int[] findHandles(Shader thisShader)
+    {
+        int[] handles = new int[uniformNames.length];
+        for (int ii = 0; ii < uniformNames.length; ii++)
+            handles[ii] = thisShader.getUniformHandle(uniformNames[ii]);
+        return handles;
+    }
+
+    private int setValue(int which, double val)
+    {
+        values[4*which] = (float)val;
+        return which+1;
+    }
+
+    private int setValue(int which, double x, double y, double z)
+    {
+        values[4*which] = (float)x;
+        values[4*which+1] = (float)y;
+        values[4*which+2] = (float)z;
+        return which+1;
+    }
+
     @Override
     public void activeUpdate() {
 
@@ -82,56 +120,60 @@ public class SunUpdater implements ActiveObject {
         if (sunPos == null)
             return;
 
-        Point4d sunDir4d = new Point4d(sunPos.getX(), sunPos.getY(), sunPos.getZ(), 1.0);
-        Point3d sunDir3d = new Point3d(sunDir4d.getX(), sunDir4d.getY(), sunDir4d.getZ());
+        if (shaderHandles == null)
+        {
+            shaderHandles = findHandles(shader);
+            groundShaderHandles = findHandles(groundShader);
+        }
 
+        double sunX = sunPos.getX(), sunY = sunPos.getY(), sunZ = sunPos.getZ();
         if (lockToCamera)
-            sunDir3d = new Point3d(cameraPos.getX(),cameraPos.getY(),cameraPos.getZ());
-
-        sunDir3d.normalize();
+        {
+            sunX = cameraPos.getX();  sunY = cameraPos.getY();  sunZ = cameraPos.getZ();
+        }
+        double sunLen = Math.sqrt(sunX*sunX + sunY*sunY + sunZ*sunZ);
+        if (sunLen > 0.0)
+        {
+            sunX /= sunLen;  sunY /= sunLen;  sunZ /= sunLen;
+        }
 
         double cameraHeight = cameraPos.norm();
 
-        float scale = 1.0f / (atm.getOuterRadius() - 1.f);
+        float outerRadius = atm.getOuterRadius();
+        float scale = 1.0f / (outerRadius - 1.f);
         float scaleDepth = 0.25f;
-
-        float[] wavelength = atm.getWaveLength();
-        for (int ii = 0; ii <3; ii++){
-            wavelength[ii] = (float)(1.0/ Math.pow(wavelength[ii], 4.0));
-        }
-
-        Shader[] shaders = {shader, groundShader};
-
-        for (int ii = 0; ii < 2; ii++){
-            Shader thisShader = shaders[ii];
-            thisShader.setUniform(Atmosphere.k_v3CameraPos, cameraPos);
-            thisShader.setUniform(Atmosphere.k_fCameraHeight, (float) cameraHeight);
-            thisShader.setUniform(Atmosphere.k_fCameraHeight2, (float)(cameraHeight*cameraHeight));
-            thisShader.setUniform(Atmosphere.k_v3LightPos, sunDir3d);
-
-            thisShader.setUniform(Atmosphere.k_fInnerRadius, 1.f);
-            thisShader.setUniform(Atmosphere.k_fInnerRadius2, 1.f);
-            thisShader.setUniform(Atmosphere.k_fOuterRadius, atm.getOuterRadius());
-            thisShader.setUniform(Atmosphere.k_fOuterRadius2, atm.getOuterRadius()*atm.getOuterRadius());
-            thisShader.setUniform(Atmosphere.k_fScale, scale);
-            thisShader.setUniform(Atmosphere.k_fScaleDepth, scaleDepth);
-            thisShader.setUniform(Atmosphere.k_fScaleOverScaleDepth, scale/scaleDepth);
-
-            thisShader.setUniform(Atmosphere.k_Kr, atm.getKr());
-            thisShader.setUniform(Atmosphere.k_Kr4PI, (float) (atm.getKr() * 4.0 * Math.PI ));
-            thisShader.setUniform(Atmosphere.k_Km, atm.getKm());
-            thisShader.setUniform(Atmosphere.k_Km4PI, (float) (atm.getKm() * 4.0 * Math.PI));
-            thisShader.setUniform(Atmosphere.k_ESun, atm.geteSun());
-            thisShader.setUniform(Atmosphere.k_KmESun, atm.getKm() * atm.geteSun());
-            thisShader.setUniform(Atmosphere.k_KrESun, atm.getKr() * atm.geteSun());
-            thisShader.setUniform(Atmosphere.k_v3InvWavelength, new Point3d(wavelength[0], wavelength[1], wavelength[2]));
-            thisShader.setUniform(Atmosphere.k_fSamples, (float) atm.getNumSamples());
-            thisShader.setUniform(Atmosphere.k_nSamples, atm.getNumSamples());
-
-            thisShader.setUniform(Atmosphere.k_g, atm.getG());
-            thisShader.setUniform(Atmosphere.k_g2, atm.getG() * atm.getG());
-            thisShader.setUniform(Atmosphere.k_fExposure, atm.getExposure());
-        }
+        float kr = atm.getKr(), km = atm.getKm(), eSun = atm.geteSun(), g = atm.getG();
+        float[] wavelength = atm.waveLength;
+
+        int which = 0;
+        which = setValue(which, cameraPos.getX(), cameraPos.getY(), cameraPos.getZ());
+        which = setValue(which, cameraHeight);
+        which = setValue(which, cameraHeight*cameraHeight);
+        which = setValue(which, sunX, sunY, sunZ);
+        which = setValue(which, 1.f);
+        which = setValue(which, 1.f);
+        which = setValue(which, outerRadius);
+        which = setValue(which, outerRadius*outerRadius);
+        which = setValue(which, scale);
+        which = setValue(which, scaleDepth);
+        which = setValue(which, scale/scaleDepth);
+        which = setValue(which, kr);
+        which = setValue(which, kr * 4.0 * Math.PI);
+        which = setValue(which, km);
+        which = setValue(which, km * 4.0 * Math.PI);
+        which = setValue(which, eSun);
+        which = setValue(which, km * eSun);
+        which = setValue(which, kr * eSun);
+        which = setValue(which, 1.0/Math.pow(wavelength[0], 4.0), 1.0/Math.pow(wavelength[1], 4.0), 1.0/Math.pow(wavelength[2], 4.0));
+        which = setValue(which, atm.getNumSamples());
+        which = setValue(which, atm.getNumSamples());
+        which = setValue(which, g);
+        which = setValue(which, g * g);
+        setValue(which, atm.getExposure());
+
+        // One native call per shader
+        shader.setUniforms(shaderHandles, values);
+        groundShader.setUniforms(groundShaderHandles, values);
 
         this.changed = false;
         this.started = true;
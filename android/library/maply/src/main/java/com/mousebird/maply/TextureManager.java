@@ -22,75 +22,161 @@ package com.mousebird.maply;
 
 import android.graphics.Bitmap;
 
-import java.util.TreeSet;
+import java.util.HashMap;
+import java.util.WeakHashMap;
 
 import static com.mousebird.maply.QuadImageTileLayer.ImageFormat.MaplyImage4Layer8Bit;
 
 /**
- * This class is used by the MaplyController to reference count textures.
- * It should be entirely invisible to toolkit users.
- *
+ * The texture manager keeps track of the textures we've made from bitmaps
+ * for markers, stickers and the like.
+ * <p>
+ * Textures are looked up by the contents of the bitmap, so two bitmaps with
+ * the same pixels share one texture even if they were decoded separately.
+ * We don't keep the bitmaps.  A match is the same size, format and two
+ * independent 64 bit hashes of the pixels.
+ * Each texture is reference counted and goes away when the last user is done with it.
  */
-class TextureManager 
+public class TextureManager 
 {
-	class TextureWrapper implements Comparable<TextureWrapper>
+	// The size, format and pixel hashes of a bitmap, which is what we match textures on
+	static class Signature
+	{
+		final int width,height;
+		final Bitmap.Config config;
+		final long hash,checksum;
+
+		Signature(int inWidth,int inHeight,Bitmap.Config inConfig,long inHash,long inChecksum)
+		{
+			width = inWidth;
+			height = inHeight;
+			config = inConfig;
+			hash = inHash;
+			checksum = inChecksum;
+		}
+
+		@Override
+		public boolean equals(Object that)
+		{
+			if (!(that instanceof Signature))
+				return false;
+			Signature other = (Signature)that;
+			return width == other.width && height == other.height && config == other.config &&
+					hash == other.hash && checksum == other.checksum;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (int)(hash ^ (hash >>> 32));
+		}
+	}
+
+	// One texture we're tracking
+	static class TextureEntry
 	{
-		TextureWrapper(Bitmap inBitmap)
+		TextureEntry(Signature inSignature)
 		{
-			bitmap = inBitmap;
+			signature = inSignature;
 		}
-				
-		// The bitmap
-		Bitmap bitmap = null;
+
+		// What the bitmap it was made from looked like
+		final Signature signature;
 		// Texture ID in the rendering engine
 		long texID = 0;
 		// Number of things using it
 		int refs = 0;
+		// Size in memory
+		long bytes = 0;
+	}
+
+	/**
+	 * Memory and reuse statistics for the texture manager.
+	 */
+	public static class Stats
+	{
+		/// Number of distinct textures
+		public int numTextures;
+		/// Size of the source bitmaps for those textures
+		public long numBytes;
+		/// Number of times a texture was asked for
+		public long numRequests;
+		/// Number of times we reused an existing texture
+		public long numHits;
+
+		/// Fraction of requests that reused a texture
+		public double getHitRate()
+		{
+			return numRequests > 0 ? (double)numHits / numRequests : 0.0;
+		}
 
 		@Override
-		public int compareTo(TextureWrapper that) 
+		public String toString()
 		{
-			int hash1 = bitmap.hashCode();  int hash2 = that.bitmap.hashCode();
-			if (hash1 == hash2)
-				return 0;
-			if (hash1 < hash2)
-				return -1;
-			return 1;
-		}		
-	};
-	
-	TreeSet<TextureWrapper> textures = new TreeSet<TextureWrapper>();
-	
+			return "textures: " + numTextures + ", bytes: " + numBytes + ", requests: " + numRequests +
+					", reused: " + numHits + String.format(" (%.1f%%)", 100.0 * getHitRate());
+		}
+	}
+
+	// Entries by content signature and by texture ID
+	private final HashMap<Signature,TextureEntry> textures = new HashMap<Signature,TextureEntry>();
+	private final HashMap<Long,TextureEntry> texturesByID = new HashMap<Long,TextureEntry>();
+	// Signatures for immutable bitmaps we've already seen, so reusing one bitmap is cheap
+	private final WeakHashMap<Bitmap,Signature> knownSignatures = new WeakHashMap<Bitmap,Signature>();
+	private long numBytes = 0;
+	private long numRequests = 0;
+	private long numHits = 0;
+
 	/**
-	 * Create a texture or find an existing one corresponding to the named
-	 * bitmap.  Returns the texture ID or EmptyIdentity on failure.
+	 * Create a texture or find an existing one with the same contents as
+	 * the bitmap.  Returns the texture ID or EmptyIdentity on failure.
 	 * @param theBitmap
 	 * @param changes
 	 * @return
 	 */
 	long addTexture(Bitmap theBitmap, Scene scene, ChangeSet changes)
 	{
+		// Mutable bitmaps can change under us, so we hash them every time.
+		// The hashing happens outside the lock since it reads every pixel.
+		boolean mutable = theBitmap.isMutable();
+		Signature signature = null;
+		if (!mutable) {
+			synchronized (this) {
+				signature = knownSignatures.get(theBitmap);
+			}
+		}
+		if (signature == null)
+			signature = signature(theBitmap);
+
 		synchronized (this) {
+			numRequests++;
+			if (!mutable)
+				knownSignatures.put(theBitmap, signature);
+
 			// Find an existing one
-			TextureWrapper testWrapper = new TextureWrapper(theBitmap);
-			if (textures.contains(testWrapper)) {
-				TextureWrapper existingBitmap = textures.floor(testWrapper);
-				existingBitmap.refs++;
-				return existingBitmap.texID;
+			TextureEntry entry = textures.get(signature);
+			if (entry != null) {
+				entry.refs++;
+				numHits++;
+				return entry.texID;
 			}
 
 			// Need to create it
 			Texture texture = new Texture();
 			if (!texture.setBitmap(theBitmap,MaplyImage4Layer8Bit.ordinal()))
 				return MaplyBaseController.EmptyIdentity;
-			testWrapper.refs = 1;
-			testWrapper.texID = texture.getID();
+			entry = new TextureEntry(signature);
+			entry.refs = 1;
+			entry.texID = texture.getID();
+			entry.bytes = theBitmap.getByteCount();
 
 			// After we call addTexture it's no longer ours to play with
 			changes.addTexture(texture, scene, 1);
-			textures.add(testWrapper);
+			textures.put(signature, entry);
+			texturesByID.put(entry.texID, entry);
+			numBytes += entry.bytes;
 
-			return testWrapper.texID;
+			return entry.texID;
 		}
 	}
 	
@@ -101,18 +187,66 @@ class TextureManager
 	void removeTexture(long texID, ChangeSet changes)
 	{
 		synchronized (this) {
-			for (TextureWrapper texWrap : textures) {
-				if (texWrap.texID == texID) {
-					texWrap.refs--;
-					// Remove the texture
-					if (texWrap.refs <= 0) {
-						changes.removeTexture(texWrap.texID);
-						textures.remove(texWrap);
-					}
-
-					return;
-				}
+			TextureEntry entry = texturesByID.get(texID);
+			if (entry == null)
+				return;
+
+			entry.refs--;
+			if (entry.refs > 0)
+				return;
+
+			// Remove the texture
+			changes.removeTexture(entry.texID);
+			texturesByID.remove(texID);
+			numBytes -= entry.bytes;
+			textures.remove(entry.signature);
+		}
+	}
+
+	/**
+	 * Remove a batch of textures at once, as removeTexture() would.
+	 */
+	void removeTextures(long[] texIDs, ChangeSet changes)
+	{
+		synchronized (this) {
+			for (long texID : texIDs)
+				removeTexture(texID, changes);
+		}
+	}
+
+	/**
+	 * Return the current texture count, memory use and reuse rate.
+	 */
+	public Stats getStats()
+	{
+		synchronized (this) {
+			Stats stats = new Stats();
+			stats.numTextures = texturesByID.size();
+			stats.numBytes = numBytes;
+			stats.numRequests = numRequests;
+			stats.numHits = numHits;
+			return stats;
+		}
+	}
+
+	// Hash the pixels of the bitmap a row at a time.  The hash is 64 bit FNV-1a and the
+	// checksum a separate polynomial hash, so a false match needs both to collide at once.
+	static Signature signature(Bitmap bitmap)
+	{
+		final long prime = 0x100000001b3L;
+		long hash = 0xcbf29ce484222325L;
+		long checksum = 17;
+		int width = bitmap.getWidth(), height = bitmap.getHeight();
+
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			bitmap.getPixels(row, 0, width, 0, y, width, 1);
+			for (int pixel : row) {
+				hash = (hash ^ pixel) * prime;
+				checksum = checksum * 1000003L + (pixel & 0xffffffffL);
 			}
 		}
+
+		return new Signature(width, height, bitmap.getConfig(), hash, checksum);
 	}
 }
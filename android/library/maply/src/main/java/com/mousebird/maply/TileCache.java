@@ -0,0 +1,65 @@
+/*
+ *  TileCache.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebird.maply;
+
+/**
+ * A tile cache holds the raw data for tiles we've fetched so we don't have
+ * to fetch them again.  The remote tile sources look here first and write
+ * here after a successful fetch.
+ * <p>
+ * Implementations must be safe to call from any thread.  A single cache can
+ * be shared by several tile sources as long as their keys don't collide.
+ */
+public interface TileCache
+{
+    /**
+     * Return the data for the given key or null if we don't have it.
+     */
+    public byte[] get(String key);
+
+    /**
+     * Store the data for the given key, replacing anything that was there.
+     */
+    public void put(String key,byte[] data);
+
+    /**
+     * Remove the data for the given key, if it's there.
+     */
+    public void remove(String key);
+
+    /**
+     * Remove everything from the cache.
+     */
+    public void clear();
+
+    /**
+     * Number of lookups that found their data.
+     */
+    public long getNumHits();
+
+    /**
+     * Number of lookups that didn't find their data.
+     */
+    public long getNumMisses();
+
+    /**
+     * Number of entries thrown out to stay under the size or age limits.
+     */
+    public long getNumEvictions();
+}
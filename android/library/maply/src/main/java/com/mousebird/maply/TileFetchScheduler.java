@@ -0,0 +1,494 @@
+/*
+ *  TileFetchScheduler.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2016 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebird.maply;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The tile fetch scheduler sits between the remote tile sources and OkHttp.
+ * <p>
+ * Requests for the same URL are merged into a single network call.  Requests
+ * wait here, rather than in OkHttp's queue, until their host has a free slot.
+ * When one opens up we send the most important request: lowest level first,
+ * then closest to the center of the view.  Canceled requests that haven't
+ * gone out yet are simply dropped.
+ * <p>
+ * Share one scheduler between tile sources that talk to the same servers so
+ * the per-host limit means something.
+ */
+public class TileFetchScheduler
+{
+    /**
+     * Number of simultaneous requests per host we'll allow if you don't say otherwise.
+     */
+    public static final int DefaultMaxRequestsPerHost = 4;
+
+    /**
+     * Called when a fetch finishes.  This comes back on one of OkHttp's threads.
+     */
+    public interface FetchListener
+    {
+        /**
+         * The server responded.  The data is null if we couldn't read the body.
+         * <p>
+         * Several listeners may get the same data array, so don't modify it.
+         */
+        public void fetchDidSucceed(int responseCode,byte[] data);
+
+        /**
+         * The fetch failed for some reason other than being canceled.
+         */
+        public void fetchDidFail(IOException e);
+    }
+
+    /**
+     * A single request for a single tile.  Cancel it if you no longer want the tile.
+     */
+    public class Ticket
+    {
+        FetchGroup group;
+        FetchListener listener;
+        int level;
+        double centerX,centerY;
+        boolean isCanceled = false;
+
+        /**
+         * Stop waiting on this fetch.  The listener won't be called and if nobody
+         * else wants the URL, the network request is dropped.
+         */
+        public void cancel()
+        {
+            cancelTicket(this);
+        }
+    }
+
+    // All the requests for one URL
+    private class FetchGroup implements Callback
+    {
+        String url;
+        String host;
+        Request request;
+        Call call = null;
+        final ArrayList<Ticket> tickets = new ArrayList<Ticket>();
+
+        @Override
+        public void onFailure(@NotNull Call call, @NotNull IOException e)
+        {
+            ArrayList<Ticket> toNotify = finishGroup(this);
+            if (call.isCanceled())
+                return;
+            for (Ticket ticket : toNotify)
+                ticket.listener.fetchDidFail(e);
+        }
+
+        @Override
+        public void onResponse(@NotNull Call call, @NotNull Response response)
+        {
+            byte[] data = null;
+            try {
+                data = response.body().bytes();
+            }
+            catch (Exception e) {
+            }
+            finally {
+                response.close();
+            }
+
+            ArrayList<Ticket> toNotify = finishGroup(this);
+            for (Ticket ticket : toNotify)
+                ticket.listener.fetchDidSucceed(response.code(), data);
+        }
+    }
+
+    OkHttpClient client;
+    int maxRequestsPerHost;
+
+    // Requests by URL, both waiting and running
+    final HashMap<String,FetchGroup> groups = new HashMap<String,FetchGroup>();
+    // Requests we haven't sent yet
+    final ArrayList<FetchGroup> pending = new ArrayList<FetchGroup>();
+    // Number of requests running for each host
+    final HashMap<String,Integer> runningPerHost = new HashMap<String,Integer>();
+
+    // Center of the view in normalized tile space [0,1]
+    double focusX = 0.5, focusY = 0.5;
+    boolean hasFocus = false;
+
+    long numRequests = 0, numMerged = 0, numCanceled = 0;
+
+    // Tracks the view for us, if we've been attached
+    ViewTracker viewTracker = null;
+    // Whoever asked us to watch the view.  We stop when the last one lets go.
+    final HashSet<Object> viewWatchers = new HashSet<Object>();
+
+    /**
+     * Construct with the HTTP client and the default per-host limit.
+     */
+    public TileFetchScheduler(OkHttpClient inClient)
+    {
+        this(inClient,DefaultMaxRequestsPerHost);
+    }
+
+    /**
+     * Construct with the HTTP client and the number of requests we'll run at once for each host.
+     */
+    public TileFetchScheduler(OkHttpClient inClient,int inMaxRequestsPerHost)
+    {
+        client = inClient;
+        maxRequestsPerHost = Math.max(1,inMaxRequestsPerHost);
+    }
+
+    /**
+     * Set the center of the view in normalized tile coordinates.  (0,0) is
+     * the lower left of the tile pyramid and (1,1) the upper right, with y
+     * running up like the tile IDs the quad layers use.
+     */
+    public synchronized void setFocus(double x,double y)
+    {
+        focusX = x;
+        focusY = y;
+        hasFocus = true;
+    }
+
+    // Updates our focus point when the view moves
+    private class ViewTracker implements LayerThread.ViewWatcherInterface
+    {
+        MaplyBaseController control;
+        CoordSystem coordSys;
+
+        ViewTracker(MaplyBaseController inControl,CoordSystem inCoordSys)
+        {
+            control = inControl;
+            coordSys = inCoordSys;
+        }
+
+        @Override
+        public void viewUpdated(ViewState viewState)
+        {
+            Point3d geoLoc = null;
+            if (control instanceof MapController)
+                geoLoc = ((MapController)control).getPositionGeo();
+            else if (control instanceof GlobeController)
+                geoLoc = ((GlobeController)control).getPositionGeo();
+            if (geoLoc == null || coordSys.ll == null || coordSys.ur == null)
+                return;
+
+            Point3d loc = coordSys.geographicToLocal(new Point3d(geoLoc.getX(),geoLoc.getY(),0.0));
+            if (loc == null)
+                return;
+            double spanX = coordSys.ur.getX() - coordSys.ll.getX();
+            double spanY = coordSys.ur.getY() - coordSys.ll.getY();
+            if (spanX <= 0.0 || spanY <= 0.0)
+                return;
+            setFocus((loc.getX() - coordSys.ll.getX()) / spanX, (loc.getY() - coordSys.ll.getY()) / spanY);
+        }
+
+        @Override
+        public float getMinTime()
+        {
+            return 0.1f;
+        }
+
+        @Override
+        public float getMaxLagTime()
+        {
+            return 1.0f;
+        }
+    }
+
+    /**
+     * Follow the view of the given controller so we know which tiles matter most.
+     * The coordinate system should be the one the tiles are in.
+     * <p>
+     * Each tile source sharing the scheduler passes itself as the owner.  We keep
+     * following the view until every owner has called stopWatchingView().  Calling
+     * this again for the same owner is harmless.
+     */
+    public void watchView(Object owner,MaplyBaseController control,CoordSystem coordSys)
+    {
+        LayerThread layerThread = control.getLayerThread();
+        if (owner == null || layerThread == null || coordSys == null)
+            return;
+
+        ViewTracker tracker = null;
+        synchronized (this)
+        {
+            viewWatchers.add(owner);
+            if (viewTracker != null)
+                return;
+            viewTracker = tracker = new ViewTracker(control,coordSys);
+        }
+        layerThread.addWatcher(tracker);
+    }
+
+    /**
+     * The given owner no longer needs the view followed.  Once nobody does, we stop.
+     */
+    public void stopWatchingView(Object owner)
+    {
+        ViewTracker tracker;
+        synchronized (this)
+        {
+            if (!viewWatchers.remove(owner) || !viewWatchers.isEmpty())
+                return;
+            tracker = viewTracker;
+            viewTracker = null;
+        }
+        if (tracker != null)
+        {
+            LayerThread layerThread = tracker.control.getLayerThread();
+            if (layerThread != null)
+                layerThread.removeWatcher(tracker);
+        }
+    }
+
+    /**
+     * Ask for the data at the given URL on behalf of a tile.
+     *
+     * @param request The request to send.  If another request for the same URL is
+     *                outstanding, we'll use that one instead.
+     * @param tileID The tile this is for.  Lower levels go first, then tiles closer
+     *               to the center of the view.
+     * @param listener Called when the data comes back.
+     * @return A ticket you can use to cancel the request.
+     */
+    public Ticket fetch(Request request,MaplyTileID tileID,FetchListener listener)
+    {
+        Ticket ticket = new Ticket();
+        ticket.listener = listener;
+        ticket.level = tileID.level;
+        double numTiles = 1<<tileID.level;
+        ticket.centerX = (tileID.x + 0.5) / numTiles;
+        ticket.centerY = (tileID.y + 0.5) / numTiles;
+
+        synchronized (this)
+        {
+            numRequests++;
+            String url = request.url().toString();
+            FetchGroup group = groups.get(url);
+            if (group != null)
+            {
+                numMerged++;
+            } else {
+                group = new FetchGroup();
+                group.url = url;
+                group.host = request.url().host();
+                group.request = request;
+                groups.put(url,group);
+                pending.add(group);
+            }
+            ticket.group = group;
+            group.tickets.add(ticket);
+        }
+
+        dispatch();
+
+        return ticket;
+    }
+
+    // Remove a ticket and drop its request if nobody else wants it
+    void cancelTicket(Ticket ticket)
+    {
+        Call toCancel = null;
+        synchronized (this)
+        {
+            if (ticket.isCanceled)
+                return;
+            ticket.isCanceled = true;
+            numCanceled++;
+
+            FetchGroup group = ticket.group;
+            if (!group.tickets.remove(ticket) || !group.tickets.isEmpty())
+                return;
+
+            // Later requests for this URL will need a new call
+            groups.remove(group.url);
+            if (group.call == null)
+                pending.remove(group);
+            else
+                toCancel = group.call;
+        }
+
+        // The failure callback cleans up the running count
+        if (toCancel != null)
+            toCancel.cancel();
+    }
+
+    /**
+     * Cancel everything, waiting or running.
+     */
+    public void cancelAll()
+    {
+        ArrayList<Call> toCancel = new ArrayList<Call>();
+        synchronized (this)
+        {
+            for (FetchGroup group : groups.values())
+            {
+                for (Ticket ticket : group.tickets)
+                    ticket.isCanceled = true;
+                numCanceled += group.tickets.size();
+                group.tickets.clear();
+                if (group.call != null)
+                    toCancel.add(group.call);
+            }
+            pending.clear();
+            groups.clear();
+        }
+
+        for (Call call : toCancel)
+            call.cancel();
+    }
+
+    // A request finished one way or another.  Returns the tickets to notify.
+    private ArrayList<Ticket> finishGroup(FetchGroup group)
+    {
+        ArrayList<Ticket> toNotify;
+        synchronized (this)
+        {
+            if (groups.get(group.url) == group)
+                groups.remove(group.url);
+            Integer running = runningPerHost.get(group.host);
+            if (running != null)
+            {
+                if (running <= 1)
+                    runningPerHost.remove(group.host);
+                else
+                    runningPerHost.put(group.host,running-1);
+            }
+            toNotify = new ArrayList<Ticket>(group.tickets);
+            group.tickets.clear();
+        }
+
+        dispatch();
+
+        return toNotify;
+    }
+
+    // Importance of a waiting request.  Smaller is more important.
+    private double importance(FetchGroup group)
+    {
+        double best = Double.MAX_VALUE;
+        for (Ticket ticket : group.tickets)
+        {
+            double dist = 0.0;
+            if (hasFocus)
+            {
+                double dx = ticket.centerX - focusX, dy = ticket.centerY - focusY;
+                dist = Math.sqrt(dx*dx + dy*dy);
+            }
+            // Level dominates, distance breaks ties within a level
+            double imp = ticket.level * 10.0 + Math.min(dist,2.0);
+            if (imp < best)
+                best = imp;
+        }
+
+        return best;
+    }
+
+    // Send as many requests as the hosts will take, most important first
+    void dispatch()
+    {
+        ArrayList<FetchGroup> toStart = new ArrayList<FetchGroup>();
+        synchronized (this)
+        {
+            while (!pending.isEmpty())
+            {
+                FetchGroup best = null;
+                double bestImp = Double.MAX_VALUE;
+                for (FetchGroup group : pending)
+                {
+                    Integer running = runningPerHost.get(group.host);
+                    if (running != null && running >= maxRequestsPerHost)
+                        continue;
+                    double imp = importance(group);
+                    if (best == null || imp < bestImp)
+                    {
+                        best = group;
+                        bestImp = imp;
+                    }
+                }
+                if (best == null)
+                    break;
+
+                pending.remove(best);
+                Integer running = runningPerHost.get(best.host);
+                runningPerHost.put(best.host,running == null ? 1 : running+1);
+                best.call = client.newCall(best.request);
+                toStart.add(best);
+            }
+        }
+
+        for (FetchGroup group : toStart)
+            group.call.enqueue(group);
+    }
+
+    /**
+     * Number of requests waiting for a free slot.
+     */
+    public synchronized int getNumPending()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Number of requests on the network right now.
+     */
+    public synchronized int getNumRunning()
+    {
+        int count = 0;
+        for (Integer running : runningPerHost.values())
+            count += running;
+        return count;
+    }
+
+    /**
+     * Total number of fetches asked for.
+     */
+    public synchronized long getNumRequests()
+    {
+        return numRequests;
+    }
+
+    /**
+     * Number of fetches that piggybacked on an outstanding request for the same URL.
+     */
+    public synchronized long getNumMerged()
+    {
+        return numMerged;
+    }
+
+    /**
+     * Number of fetches canceled before they came back.
+     */
+    public synchronized long getNumCanceled()
+    {
+        return numCanceled;
+    }
+}
@@ -179,8 +179,9 @@ public class VectorStyleSimpleGenerator implements VectorStyleInterface
         VectorStyleSimple style = stylesByLayerName.get(layerName);
         if (style == null)
         {
-            int layerOrder = attrs.getInt("layer_order");
-            int geomType = attrs.getInt("geometry_type");
+            AttrSnapshot attrSnap = attrs.snapshot();
+            int layerOrder = attrSnap.getInt("layer_order");
+            int geomType = attrSnap.getInt("geometry_type");
 
             // Each layer gets its own style
             switch (geomType)
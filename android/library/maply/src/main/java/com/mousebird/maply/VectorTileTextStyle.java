@@ -117,7 +117,7 @@ public class VectorTileTextStyle extends VectorTileStyle {
                 int end = matcher.end();
 
                 String matchedStr = formatString.substring(start+1, end-1);
-                Object replacement = attributes.get(matchedStr);
+                Object replacement = attributes.snapshot().get(matchedStr);
                 String replacementStr = "";
                 if (replacement instanceof String)
                     replacementStr = (String)replacement;
@@ -40,7 +40,7 @@ import android.util.Log;
  */
 public class SLDBinaryOperatorExpression extends SLDExpression {
 
-    private enum ExpressionType { ExpressionTypeAdd, ExpressionTypeSub, ExpressionTypeMul, ExpressionTypeDiv};
+    public enum ExpressionType { ExpressionTypeAdd, ExpressionTypeSub, ExpressionTypeMul, ExpressionTypeDiv};
 
     private ExpressionType expressionType;
     private SLDExpression leftExpression;
@@ -77,6 +77,17 @@ public class SLDBinaryOperatorExpression extends SLDExpression {
         }
     }
 
+    public ExpressionType getExpressionType() {
+        return expressionType;
+    }
+
+    public SLDExpression getLeftExpression() {
+        return leftExpression;
+    }
+
+    public SLDExpression getRightExpression() {
+        return rightExpression;
+    }
 
     public Object evaluateWithAttrs(AttrDictionary attrs) {
 
@@ -21,6 +21,7 @@ package com.mousebird.maply.sld.sldexpressions;
 
 
 import com.mousebird.maply.AttrDictionary;
+import com.mousebird.maply.AttrSnapshot;
 import com.mousebird.maply.sld.sldstyleset.SLDParseHelper;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -46,13 +47,16 @@ public class SLDPropertyNameExpression extends SLDExpression {
             if (xpp.getEventType() != XmlPullParser.TEXT) {
                 continue;
             }
-            propertyName = xpp.getText();
+            propertyName = AttrSnapshot.internKey(xpp.getText());
         }
     }
 
+    public String getPropertyName() {
+        return propertyName;
+    }
 
     public Object evaluateWithAttrs(AttrDictionary attrs) {
-        return attrs.get(propertyName);
+        return attrs.snapshot().get(propertyName);
     }
 
     public static boolean matchesElementNamed(String elementName) {
@@ -174,5 +174,22 @@ public class SLDBinaryComparisonOperator extends SLDOperator {
         return false;
     }
 
+    int compile(SLDFilterProgram program) {
+        if (leftExpression == null || rightExpression == null || comparisonType == null)
+            return program.addNode(SLDFilterProgram.OpFalse, 0, 0, 0, 0);
+
+        int comparison;
+        switch (comparisonType) {
+            case EqualTo: comparison = SLDFilterProgram.CompareEqualTo; break;
+            case NotEqualTo: comparison = SLDFilterProgram.CompareNotEqualTo; break;
+            case LessThan: comparison = SLDFilterProgram.CompareLessThan; break;
+            case GreaterThan: comparison = SLDFilterProgram.CompareGreaterThan; break;
+            case LessThanOrEqualTo: comparison = SLDFilterProgram.CompareLessThanOrEqualTo; break;
+            default: comparison = SLDFilterProgram.CompareGreaterThanOrEqualTo; break;
+        }
+        int left = program.compileExpression(leftExpression);
+        int right = program.compileExpression(rightExpression);
+        return program.addNode(SLDFilterProgram.OpCompare, left, right, comparison, matchCase ? 1 : 0);
+    }
 
 }
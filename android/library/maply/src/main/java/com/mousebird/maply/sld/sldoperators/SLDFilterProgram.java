@@ -0,0 +1,544 @@
+/*
+ *  SLDFilterProgram.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebird.maply.sld.sldoperators;
+
+import com.mousebird.maply.AttrSnapshot;
+import com.mousebird.maply.sld.sldexpressions.SLDBinaryOperatorExpression;
+import com.mousebird.maply.sld.sldexpressions.SLDExpression;
+import com.mousebird.maply.sld.sldexpressions.SLDLiteralExpression;
+import com.mousebird.maply.sld.sldexpressions.SLDPropertyNameExpression;
+import com.mousebird.maply.sld.sldstyleset.SLDParseHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * A set of SLD filters compiled down to flat arrays.
+ * @details The SLDOperator and SLDExpression trees are walked once, at load time.
+ * Literals are typed up front, property names become slots that get filled in once
+ * per feature and evaluation doesn't allocate.  The results match evaluateWithAttrs()
+ * on the original operators.
+ * <p>
+ * A program can be shared between threads, but each thread needs its own Context.
+ */
+public class SLDFilterProgram {
+
+    // Operators
+    static final int OpFalse = 0;
+    static final int OpAnd = 1;
+    static final int OpOr = 2;
+    static final int OpNot = 3;
+    static final int OpIsNull = 4;
+    static final int OpIsLike = 5;
+    static final int OpIsBetween = 6;
+    static final int OpCompare = 7;
+
+    // Expressions
+    static final int ExprNull = 10;
+    static final int ExprLiteral = 11;
+    static final int ExprProperty = 12;
+    static final int ExprArithmetic = 13;
+
+    // Comparisons
+    static final int CompareEqualTo = 0;
+    static final int CompareNotEqualTo = 1;
+    static final int CompareLessThan = 2;
+    static final int CompareGreaterThan = 3;
+    static final int CompareLessThanOrEqualTo = 4;
+    static final int CompareGreaterThanOrEqualTo = 5;
+
+    // Arithmetic
+    static final int ArithAdd = 0;
+    static final int ArithSub = 1;
+    static final int ArithMul = 2;
+    static final int ArithDiv = 3;
+
+    // What an expression evaluated to
+    static final int KindNull = 0;
+    static final int KindNumber = 1;
+    static final int KindString = 2;
+
+    // The nodes.  What the arguments mean depends on the op.
+    int numNodes = 0;
+    int[] ops = new int[16];
+    int[] argA = new int[16];
+    int[] argB = new int[16];
+    int[] argC = new int[16];
+    int[] argD = new int[16];
+
+    // Children of And and Or nodes
+    int[] children = new int[16];
+    int numChildren = 0;
+
+    // Literals, already typed
+    ArrayList<String> literalStrs = new ArrayList<String>();
+    double[] literalNums = new double[16];
+    boolean[] literalIsNum = new boolean[16];
+
+    // Patterns for IsLike
+    ArrayList<Pattern> patterns = new ArrayList<Pattern>();
+
+    // Property names and the slots they live in
+    ArrayList<String> slotNames = new ArrayList<String>();
+    HashMap<String,Integer> slotsByName = new HashMap<String,Integer>();
+
+    /**
+     * Per thread evaluation state.  Make one with newContext() and reuse it.
+     */
+    public static class Context {
+        Object[] slotValues;
+        // 0 for not checked yet, 1 for numeric, 2 for not numeric
+        byte[] slotNumState;
+        double[] slotNums;
+        String[] exprStrs;
+        double[] exprNums;
+        boolean[] exprHasNum;
+        Matcher[] matchers;
+        int numNodes = 0;
+    }
+
+    /**
+     * Make a context to evaluate with.  Don't share it between threads.
+     */
+    public Context newContext() {
+        Context ctx = new Context();
+        sizeContext(ctx);
+        return ctx;
+    }
+
+    // Make sure a context is big enough for what we've compiled
+    private void sizeContext(Context ctx) {
+        int numSlots = slotNames.size();
+        ctx.slotValues = new Object[numSlots];
+        ctx.slotNumState = new byte[numSlots];
+        ctx.slotNums = new double[numSlots];
+        ctx.exprStrs = new String[numNodes];
+        ctx.exprNums = new double[numNodes];
+        ctx.exprHasNum = new boolean[numNodes];
+        ctx.matchers = new Matcher[patterns.size()];
+        for (int ii=0;ii<patterns.size();ii++)
+            if (patterns.get(ii) != null)
+                ctx.matchers[ii] = patterns.get(ii).matcher("");
+        ctx.numNodes = numNodes;
+    }
+
+    /**
+     * Load the attributes for a feature into the context.  Call this once per
+     * feature and then evaluate as many filters as you like.
+     */
+    public void bind(Context ctx, AttrSnapshot attrs) {
+        if (ctx.numNodes != numNodes || ctx.slotValues.length != slotNames.size())
+            sizeContext(ctx);
+
+        int numSlots = ctx.slotValues.length;
+        for (int ii=0;ii<numSlots;ii++) {
+            ctx.slotValues[ii] = null;
+            ctx.slotNumState[ii] = 0;
+        }
+
+        if (attrs == null)
+            return;
+        int numAttrs = attrs.size();
+        if (numAttrs <= numSlots) {
+            for (int ii=0;ii<numAttrs;ii++) {
+                Integer slot = slotsByName.get(attrs.getKey(ii));
+                if (slot != null)
+                    ctx.slotValues[slot] = attrs.getValue(ii);
+            }
+        } else {
+            for (int ii=0;ii<numSlots;ii++)
+                ctx.slotValues[ii] = attrs.get(slotNames.get(ii));
+        }
+    }
+
+    /**
+     * Evaluate the filter that compiled to the given root.
+     */
+    public boolean evaluate(int root, Context ctx) {
+        return evalOp(root, ctx);
+    }
+
+    // Evaluate a node that returns true or false
+    private boolean evalOp(int node, Context ctx) {
+        switch (ops[node]) {
+            case OpAnd: {
+                int start = argA[node], end = start + argB[node];
+                for (int ii=start;ii<end;ii++)
+                    if (!evalOp(children[ii], ctx))
+                        return false;
+                return true;
+            }
+            case OpOr: {
+                int start = argA[node], end = start + argB[node];
+                for (int ii=start;ii<end;ii++)
+                    if (evalOp(children[ii], ctx))
+                        return true;
+                return false;
+            }
+            case OpNot:
+                return !evalOp(argA[node], ctx);
+            case OpIsNull:
+                return evalExpr(argA[node], ctx) == KindNull;
+            case OpIsLike: {
+                Matcher matcher = ctx.matchers[argB[node]];
+                if (matcher == null)
+                    return false;
+                int sub = argA[node];
+                if (evalExpr(sub, ctx) != KindString)
+                    return false;
+                return matcher.reset(ctx.exprStrs[sub]).matches();
+            }
+            case OpIsBetween:
+                return evalBetween(node, ctx);
+            case OpCompare:
+                return evalCompare(node, ctx);
+            default:
+                return false;
+        }
+    }
+
+    private boolean evalCompare(int node, Context ctx) {
+        int left = argA[node], right = argB[node];
+        int leftKind = evalExpr(left, ctx);
+        int rightKind = evalExpr(right, ctx);
+        int comparison = argC[node];
+
+        if (leftKind == KindNumber || rightKind == KindNumber) {
+            if (!(leftKind == KindNumber || (leftKind == KindString && ctx.exprHasNum[left])))
+                return false;
+            if (!(rightKind == KindNumber || (rightKind == KindString && ctx.exprHasNum[right])))
+                return false;
+            double leftNum = ctx.exprNums[left], rightNum = ctx.exprNums[right];
+            switch (comparison) {
+                case CompareEqualTo: return leftNum == rightNum;
+                case CompareNotEqualTo: return leftNum != rightNum;
+                case CompareLessThan: return leftNum < rightNum;
+                case CompareGreaterThan: return leftNum > rightNum;
+                case CompareLessThanOrEqualTo: return leftNum <= rightNum;
+                case CompareGreaterThanOrEqualTo: return leftNum >= rightNum;
+            }
+        } else if (leftKind == KindString && rightKind == KindString) {
+            String leftStr = ctx.exprStrs[left], rightStr = ctx.exprStrs[right];
+            int compareResult = (argD[node] != 0) ? leftStr.compareTo(rightStr) : leftStr.compareToIgnoreCase(rightStr);
+            switch (comparison) {
+                case CompareEqualTo: return compareResult == 0;
+                case CompareNotEqualTo: return compareResult != 0;
+                case CompareLessThan: return compareResult < 0;
+                case CompareGreaterThan: return compareResult > 0;
+                case CompareLessThanOrEqualTo: return compareResult <= 0;
+                case CompareGreaterThanOrEqualTo: return compareResult >= 0;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean evalBetween(int node, Context ctx) {
+        int sub = argA[node], lower = argB[node], upper = argC[node];
+        int subKind = evalExpr(sub, ctx);
+        int lowerKind = evalExpr(lower, ctx);
+        int upperKind = evalExpr(upper, ctx);
+
+        if (subKind == KindNumber) {
+            if (!(lowerKind == KindNumber || (lowerKind == KindString && ctx.exprHasNum[lower])))
+                return false;
+            if (!(upperKind == KindNumber || (upperKind == KindString && ctx.exprHasNum[upper])))
+                return false;
+            double subNum = ctx.exprNums[sub];
+            return ctx.exprNums[lower] <= subNum && subNum <= ctx.exprNums[upper];
+        } else if (subKind == KindString && lowerKind == KindString && upperKind == KindString) {
+            String subStr = ctx.exprStrs[sub];
+            return ctx.exprStrs[lower].compareTo(subStr) <= 0 && subStr.compareTo(ctx.exprStrs[upper]) <= 0;
+        }
+
+        return false;
+    }
+
+    // Evaluate an expression, leaving the value in the context.  Returns what kind of value it was.
+    private int evalExpr(int node, Context ctx) {
+        switch (ops[node]) {
+            case ExprLiteral: {
+                int which = argA[node];
+                String str = literalStrs.get(which);
+                if (str == null)
+                    return KindNull;
+                ctx.exprStrs[node] = str;
+                ctx.exprHasNum[node] = literalIsNum[which];
+                ctx.exprNums[node] = literalNums[which];
+                return KindString;
+            }
+            case ExprProperty: {
+                int slot = argA[node];
+                Object val = ctx.slotValues[slot];
+                if (val == null)
+                    return KindNull;
+                if (val instanceof Number) {
+                    ctx.exprNums[node] = ((Number)val).doubleValue();
+                    return KindNumber;
+                }
+                if (val instanceof String) {
+                    String str = (String)val;
+                    ctx.exprStrs[node] = str;
+                    // Only work out if it's a number once per feature
+                    if (ctx.slotNumState[slot] == 0) {
+                        if (SLDParseHelper.isStringNumeric(str)) {
+                            ctx.slotNums[slot] = Double.valueOf(str);
+                            ctx.slotNumState[slot] = 1;
+                        } else
+                            ctx.slotNumState[slot] = 2;
+                    }
+                    ctx.exprHasNum[node] = ctx.slotNumState[slot] == 1;
+                    ctx.exprNums[node] = ctx.slotNums[slot];
+                    return KindString;
+                }
+                return KindNull;
+            }
+            case ExprArithmetic: {
+                int left = argA[node], right = argB[node];
+                if (evalExpr(left, ctx) != KindNumber || evalExpr(right, ctx) != KindNumber)
+                    return KindNull;
+                double leftNum = ctx.exprNums[left], rightNum = ctx.exprNums[right];
+                double result;
+                switch (argC[node]) {
+                    case ArithAdd: result = leftNum + rightNum; break;
+                    case ArithSub: result = leftNum - rightNum; break;
+                    case ArithMul: result = leftNum * rightNum; break;
+                    case ArithDiv: result = leftNum / rightNum; break;
+                    default: return KindNull;
+                }
+                ctx.exprNums[node] = result;
+                return KindNumber;
+            }
+            default:
+                return KindNull;
+        }
+    }
+
+    /**
+     * Compile an operator tree into this program.
+     * @return The root to pass to evaluate() later.
+     */
+    public int compile(SLDOperator operator) {
+        if (operator == null)
+            return addNode(OpFalse, 0, 0, 0, 0);
+        return operator.compile(this);
+    }
+
+    // Add a node, growing the arrays as needed
+    int addNode(int op, int a, int b, int c, int d) {
+        if (numNodes == ops.length) {
+            int newSize = ops.length * 2;
+            ops = grow(ops, newSize);
+            argA = grow(argA, newSize);
+            argB = grow(argB, newSize);
+            argC = grow(argC, newSize);
+            argD = grow(argD, newSize);
+        }
+        ops[numNodes] = op;
+        argA[numNodes] = a;
+        argB[numNodes] = b;
+        argC[numNodes] = c;
+        argD[numNodes] = d;
+        return numNodes++;
+    }
+
+    // Add an And or Or over the given, already compiled, children
+    int addLogicalNode(int op, int[] childNodes) {
+        int start = numChildren;
+        for (int child : childNodes) {
+            if (numChildren == children.length)
+                children = grow(children, children.length * 2);
+            children[numChildren++] = child;
+        }
+        return addNode(op, start, childNodes.length, 0, 0);
+    }
+
+    // Add a regular expression for an IsLike
+    int addPattern(Pattern pattern) {
+        patterns.add(pattern);
+        return patterns.size()-1;
+    }
+
+    // Find or add the slot for a property name
+    int slotForProperty(String name) {
+        Integer slot = slotsByName.get(name);
+        if (slot == null) {
+            slot = slotNames.size();
+            slotNames.add(name);
+            slotsByName.put(name, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Compile an expression.
+     * @return The node it compiled to.
+     */
+    int compileExpression(SLDExpression expression) {
+        if (expression instanceof SLDPropertyNameExpression) {
+            String name = ((SLDPropertyNameExpression)expression).getPropertyName();
+            if (name == null)
+                return addNode(ExprNull, 0, 0, 0, 0);
+            return addNode(ExprProperty, slotForProperty(AttrSnapshot.internKey(name)), 0, 0, 0);
+        } else if (expression instanceof SLDLiteralExpression) {
+            Object literal = ((SLDLiteralExpression)expression).getLiteral();
+            String str = (literal != null) ? literal.toString() : null;
+            int which = literalStrs.size();
+            if (which == literalNums.length) {
+                literalNums = grow(literalNums, which * 2);
+                literalIsNum = grow(literalIsNum, which * 2);
+            }
+            literalStrs.add(str);
+            if (str != null && SLDParseHelper.isStringNumeric(str)) {
+                literalIsNum[which] = true;
+                literalNums[which] = Double.valueOf(str);
+            }
+            return addNode(ExprLiteral, which, 0, 0, 0);
+        } else if (expression instanceof SLDBinaryOperatorExpression) {
+            SLDBinaryOperatorExpression binExpr = (SLDBinaryOperatorExpression)expression;
+            if (binExpr.getLeftExpression() == null || binExpr.getRightExpression() == null || binExpr.getExpressionType() == null)
+                return addNode(ExprNull, 0, 0, 0, 0);
+            int left = compileExpression(binExpr.getLeftExpression());
+            int right = compileExpression(binExpr.getRightExpression());
+            int arith;
+            switch (binExpr.getExpressionType()) {
+                case ExpressionTypeAdd: arith = ArithAdd; break;
+                case ExpressionTypeSub: arith = ArithSub; break;
+                case ExpressionTypeMul: arith = ArithMul; break;
+                default: arith = ArithDiv; break;
+            }
+            return addNode(ExprArithmetic, left, right, arith, 0);
+        }
+
+        return addNode(ExprNull, 0, 0, 0, 0);
+    }
+
+    /**
+     * Work out which properties a filter needs to be equal to particular strings.
+     * @details For each property in the map, the filter can only be true if that property
+     * is a string equal (case sensitive) to one of the values.  We're conservative,
+     * so properties we can't be sure about are left out.  Numeric literals are left out too,
+     * since they'll match numbers in all sorts of formats.
+     * @return The required values, by property name.
+     */
+    public Map<String,Set<String>> requiredEqualities(int root) {
+        Map<String,Set<String>> equalities = new HashMap<String,Set<String>>();
+        collectEqualities(root, equalities);
+        return equalities;
+    }
+
+    private void collectEqualities(int node, Map<String,Set<String>> equalities) {
+        switch (ops[node]) {
+            case OpAnd: {
+                // Every child has to be true, so any of them can constrain
+                int start = argA[node], end = start + argB[node];
+                for (int ii=start;ii<end;ii++) {
+                    Map<String,Set<String>> childEqualities = new HashMap<String,Set<String>>();
+                    collectEqualities(children[ii], childEqualities);
+                    for (Map.Entry<String,Set<String>> entry : childEqualities.entrySet()) {
+                        Set<String> values = equalities.get(entry.getKey());
+                        if (values == null)
+                            equalities.put(entry.getKey(), entry.getValue());
+                        else
+                            values.retainAll(entry.getValue());
+                    }
+                }
+                break;
+            }
+            case OpOr: {
+                // Only constrained if every child constrains the same property
+                int start = argA[node], end = start + argB[node];
+                if (start == end)
+                    break;
+                Map<String,Set<String>> orEqualities = null;
+                for (int ii=start;ii<end;ii++) {
+                    Map<String,Set<String>> childEqualities = new HashMap<String,Set<String>>();
+                    collectEqualities(children[ii], childEqualities);
+                    if (orEqualities == null)
+                        orEqualities = childEqualities;
+                    else {
+                        orEqualities.keySet().retainAll(childEqualities.keySet());
+                        for (Map.Entry<String,Set<String>> entry : orEqualities.entrySet())
+                            entry.getValue().addAll(childEqualities.get(entry.getKey()));
+                    }
+                }
+                equalities.putAll(orEqualities);
+                break;
+            }
+            case OpCompare: {
+                if (argC[node] != CompareEqualTo || argD[node] == 0)
+                    break;
+                int prop = argA[node], lit = argB[node];
+                if (ops[prop] != ExprProperty) {
+                    prop = argB[node];
+                    lit = argA[node];
+                }
+                if (ops[prop] != ExprProperty || ops[lit] != ExprLiteral)
+                    break;
+                String value = literalStrs.get(argA[lit]);
+                if (value == null || literalIsNum[argA[lit]])
+                    break;
+                Set<String> values = new HashSet<String>();
+                values.add(value);
+                equalities.put(slotNames.get(argA[prop]), values);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Number of distinct properties the compiled filters look at.
+     */
+    public int getNumSlots() {
+        return slotNames.size();
+    }
+
+    /**
+     * Number of nodes in the compiled filters.
+     */
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    private static int[] grow(int[] arr, int newSize) {
+        int[] newArr = new int[newSize];
+        System.arraycopy(arr, 0, newArr, 0, arr.length);
+        return newArr;
+    }
+
+    private static double[] grow(double[] arr, int newSize) {
+        double[] newArr = new double[newSize];
+        System.arraycopy(arr, 0, newArr, 0, arr.length);
+        return newArr;
+    }
+
+    private static boolean[] grow(boolean[] arr, int newSize) {
+        boolean[] newArr = new boolean[newSize];
+        System.arraycopy(arr, 0, newArr, 0, arr.length);
+        return newArr;
+    }
+}
@@ -78,6 +78,15 @@ public class SLDIsBetweenOperator extends SLDOperator {
         return false;
     }
 
+    int compile(SLDFilterProgram program) {
+        if (subExpression == null || lowerBoundaryExpression == null || upperBoundaryExpression == null)
+            return program.addNode(SLDFilterProgram.OpFalse, 0, 0, 0, 0);
+        int sub = program.compileExpression(subExpression);
+        int lower = program.compileExpression(lowerBoundaryExpression);
+        int upper = program.compileExpression(upperBoundaryExpression);
+        return program.addNode(SLDFilterProgram.OpIsBetween, sub, lower, upper, 0);
+    }
+
     public boolean evaluateWithAttrs(AttrDictionary attrs) {
 
         Object subExpressionResult = subExpression.evaluateWithAttrs(attrs);
@@ -142,4 +142,11 @@ public class SLDIsLikeOperator extends SLDOperator {
         return m.matches();
     }
 
+    int compile(SLDFilterProgram program) {
+        if (propertyExpression == null || pattern == null)
+            return program.addNode(SLDFilterProgram.OpFalse, 0, 0, 0, 0);
+        int sub = program.compileExpression(propertyExpression);
+        return program.addNode(SLDFilterProgram.OpIsLike, sub, program.addPattern(pattern), 0, 0);
+    }
+
 }
@@ -64,6 +64,12 @@ public class SLDIsNullOperator extends SLDOperator {
         return false;
     }
 
+    int compile(SLDFilterProgram program) {
+        if (subExpression == null)
+            return program.addNode(SLDFilterProgram.OpFalse, 0, 0, 0, 0);
+        return program.addNode(SLDFilterProgram.OpIsNull, program.compileExpression(subExpression), 0, 0, 0);
+    }
+
 
     public boolean evaluateWithAttrs(AttrDictionary attrs) {
         if (subExpression != null)
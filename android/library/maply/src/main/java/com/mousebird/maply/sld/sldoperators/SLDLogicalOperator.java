@@ -91,4 +91,11 @@ public class SLDLogicalOperator extends SLDOperator {
         return result;
     }
 
+    int compile(SLDFilterProgram program) {
+        int[] children = new int[subOperators.size()];
+        for (int ii=0;ii<children.length;ii++)
+            children[ii] = subOperators.get(ii).compile(program);
+        return program.addLogicalNode(logicType == LogicType.LogicTypeAnd ? SLDFilterProgram.OpAnd : SLDFilterProgram.OpOr, children);
+    }
+
 }
@@ -62,6 +62,12 @@ public class SLDNotOperator extends SLDOperator {
         return false;
     }
 
+    int compile(SLDFilterProgram program) {
+        if (subOperator == null)
+            return program.addNode(SLDFilterProgram.OpFalse, 0, 0, 0, 0);
+        return program.addNode(SLDFilterProgram.OpNot, subOperator.compile(program), 0, 0, 0);
+    }
+
 
     public boolean evaluateWithAttrs(AttrDictionary attrs) {
         if (subOperator != null)
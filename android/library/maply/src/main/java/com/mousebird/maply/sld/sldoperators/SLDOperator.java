@@ -40,4 +40,10 @@ abstract public class SLDOperator
 {
     public abstract boolean evaluateWithAttrs(AttrDictionary attrs);
 
+    /**
+     * Add this operator to a compiled filter program.
+     * @return The node this operator compiled to.
+     */
+    abstract int compile(SLDFilterProgram program);
+
 }
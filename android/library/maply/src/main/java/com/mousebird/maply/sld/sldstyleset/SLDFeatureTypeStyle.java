@@ -61,6 +61,10 @@ public class SLDFeatureTypeStyle {
         }
     }
 
+    public List<SLDRule> getRules() {
+        return rules;
+    }
+
     public List<VectorTileStyle> getStyles() {
         List<VectorTileStyle> styles = new ArrayList<VectorTileStyle>();
         for (SLDRule rule : rules) {
@@ -71,6 +71,14 @@ public class SLDNamedLayer {
 
     }
 
+    public List<SLDRule> getRules() {
+        List<SLDRule> rules = new ArrayList<SLDRule>();
+        for (SLDUserStyle userStyle : userStyles) {
+            rules.addAll(userStyle.getRules());
+        }
+        return rules;
+    }
+
     public List<VectorTileStyle> getStyles() {
         List<VectorTileStyle> styles = new ArrayList<VectorTileStyle>();
         for (SLDUserStyle userStyle : userStyles) {
@@ -106,6 +106,13 @@ public class SLDParseHelper {
      * @return true if the string is numeric, else false.
      */
     public static boolean isStringNumeric(String s) {
+        return numericPattern.matcher(s).matches();
+    }
+
+    // Compiling this is expensive, so we only do it once
+    private static final Pattern numericPattern = Pattern.compile(numericRegex());
+
+    private static String numericRegex() {
         final String Digits     = "(\\p{Digit}+)";
         final String HexDigits  = "(\\p{XDigit}+)";
         // an exponent is 'e' or 'E' followed by an optionally
@@ -145,7 +152,7 @@ public class SLDParseHelper {
                         "[fFdD]?))" +
                         "[\\x00-\\x20]*");// Optional trailing "whitespace"
 
-        return (Pattern.matches(fpRegex, s));
+        return fpRegex;
     }
 
 }
@@ -25,10 +25,12 @@ import org.xmlpull.v1.XmlPullParserException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 
 import com.mousebird.maply.AttrDictionary;
+import com.mousebird.maply.sld.sldoperators.SLDFilterProgram;
 import com.mousebird.maply.sld.sldstyleset.SLDFilter;
 import com.mousebird.maply.sld.sldstyleset.SLDParseHelper;
 import com.mousebird.maply.sld.sldsymbolizers.SLDSymbolizer;
@@ -50,6 +52,7 @@ public class SLDRule {
 
     private List<SLDFilter> filters = new ArrayList<SLDFilter>();
     private List<SLDFilter> elseFilters = new ArrayList<SLDFilter>();
+    private int[] filterRoots, elseFilterRoots;
 
     public List<VectorTileStyle> getStyles() {
         return styles;
@@ -118,7 +121,45 @@ public class SLDRule {
         }
         if (matched)
             return styles;
-        return new ArrayList<VectorTileStyle>();
+        return Collections.<VectorTileStyle>emptyList();
+    }
+
+    /**
+     * Compile the filters for this rule into the given program.
+     */
+    public void compile(SLDFilterProgram program) {
+        filterRoots = new int[filters.size()];
+        for (int ii=0;ii<filterRoots.length;ii++)
+            filterRoots[ii] = program.compile(filters.get(ii).getOperator());
+        elseFilterRoots = new int[elseFilters.size()];
+        for (int ii=0;ii<elseFilterRoots.length;ii++)
+            elseFilterRoots[ii] = program.compile(elseFilters.get(ii).getOperator());
+    }
+
+    /**
+     * All the compiled filter roots, both regular and else.  Empty if the rule always matches.
+     */
+    int[] getCompiledRoots() {
+        int[] roots = new int[filterRoots.length + elseFilterRoots.length];
+        System.arraycopy(filterRoots, 0, roots, 0, filterRoots.length);
+        System.arraycopy(elseFilterRoots, 0, roots, filterRoots.length, elseFilterRoots.length);
+        return roots;
+    }
+
+    /**
+     * Check the compiled filters against a feature already bound to the context.
+     * Same answer as stylesForFeatureAttributes(), but you have to call compile() first.
+     */
+    public boolean matches(SLDFilterProgram program, SLDFilterProgram.Context ctx) {
+        if (filterRoots.length == 0 && elseFilterRoots.length == 0)
+            return true;
+        for (int root : filterRoots)
+            if (program.evaluate(root, ctx))
+                return true;
+        for (int root : elseFilterRoots)
+            if (program.evaluate(root, ctx))
+                return true;
+        return false;
     }
 
 }
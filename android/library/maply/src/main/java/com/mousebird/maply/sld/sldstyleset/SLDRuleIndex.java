@@ -0,0 +1,162 @@
+/*
+ *  SLDRuleIndex.java
+ *  WhirlyGlobeLib
+ *
+ *  Copyright 2011-2017 mousebird consulting
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.mousebird.maply.sld.sldstyleset;
+
+import com.mousebird.maply.AttrSnapshot;
+import com.mousebird.maply.VectorStyle;
+import com.mousebird.maply.sld.sldoperators.SLDFilterProgram;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ * Index over the compiled rules for one NamedLayer.
+ * @details Lots of SLDs have a long list of rules that each test one property
+ * for equality, something like class or kind.  We pick the property that splits up
+ * the most rules and keep a table from its values to the rules that could match.
+ * Rules that don't test it are always candidates.  The candidates come back in the
+ * original rule order, so the styles come out in the same order as a full scan.
+ */
+class SLDRuleIndex {
+
+    // A property has to narrow down at least this many rules to be worth it
+    private static final int MinIndexedRules = 2;
+
+    final SLDRule[] rules;
+    // Property we dispatch on, or null if there isn't a good one
+    final String property;
+    // Rule indices for each property value, in rule order
+    private final HashMap<String,int[]> rulesByValue = new HashMap<String,int[]>();
+    // Rules that don't depend on the property, in rule order
+    private final int[] unindexedRules;
+
+    SLDRuleIndex(List<SLDRule> ruleList, SLDFilterProgram program) {
+        rules = ruleList.toArray(new SLDRule[ruleList.size()]);
+
+        // Work out what each rule needs
+        ArrayList<Map<String,Set<String>>> ruleEqualities = new ArrayList<Map<String,Set<String>>>();
+        HashMap<String,Integer> propertyCounts = new HashMap<String,Integer>();
+        for (SLDRule rule : rules) {
+            Map<String,Set<String>> equalities = ruleEqualities(rule, program);
+            ruleEqualities.add(equalities);
+            for (String prop : equalities.keySet()) {
+                Integer count = propertyCounts.get(prop);
+                propertyCounts.put(prop, count == null ? 1 : count + 1);
+            }
+        }
+
+        // Pick the property that covers the most rules
+        String bestProp = null;
+        int bestCount = MinIndexedRules - 1;
+        for (Map.Entry<String,Integer> entry : propertyCounts.entrySet()) {
+            if (entry.getValue() > bestCount) {
+                bestProp = entry.getKey();
+                bestCount = entry.getValue();
+            }
+        }
+        property = bestProp;
+
+        // Sort the rules into the table
+        HashMap<String,ArrayList<Integer>> valueLists = new HashMap<String,ArrayList<Integer>>();
+        ArrayList<Integer> unindexed = new ArrayList<Integer>();
+        for (int ii=0;ii<rules.length;ii++) {
+            Set<String> values = (property != null) ? ruleEqualities.get(ii).get(property) : null;
+            if (values == null) {
+                unindexed.add(ii);
+                continue;
+            }
+            for (String value : values) {
+                ArrayList<Integer> valueList = valueLists.get(value);
+                if (valueList == null) {
+                    valueList = new ArrayList<Integer>();
+                    valueLists.put(value, valueList);
+                }
+                valueList.add(ii);
+            }
+        }
+        for (Map.Entry<String,ArrayList<Integer>> entry : valueLists.entrySet())
+            rulesByValue.put(entry.getKey(), toIntArray(entry.getValue()));
+        unindexedRules = toIntArray(unindexed);
+    }
+
+    // What a rule needs is what all its filters need, since any of them can match
+    private static Map<String,Set<String>> ruleEqualities(SLDRule rule, SLDFilterProgram program) {
+        int[] roots = rule.getCompiledRoots();
+        if (roots.length == 0)
+            return new HashMap<String,Set<String>>();
+
+        Map<String,Set<String>> equalities = program.requiredEqualities(roots[0]);
+        for (int ii=1;ii<roots.length;ii++) {
+            Map<String,Set<String>> rootEqualities = program.requiredEqualities(roots[ii]);
+            equalities.keySet().retainAll(rootEqualities.keySet());
+            for (Map.Entry<String,Set<String>> entry : equalities.entrySet())
+                entry.getValue().addAll(rootEqualities.get(entry.getKey()));
+        }
+        return equalities;
+    }
+
+    /**
+     * Add the styles for all the matching rules.  The feature has to be bound to the context already.
+     */
+    void addMatchingStyles(AttrSnapshot attrs, SLDFilterProgram program, SLDFilterProgram.Context ctx, List<VectorStyle> results) {
+        int[] indexed = indexedRules(attrs);
+        if (indexed == null) {
+            for (int which : unindexedRules)
+                addIfMatched(rules[which], program, ctx, results);
+            return;
+        }
+
+        // Merge the two lists to keep the rule order
+        int ii = 0, jj = 0;
+        while (ii < indexed.length || jj < unindexedRules.length) {
+            int which;
+            if (jj >= unindexedRules.length || (ii < indexed.length && indexed[ii] < unindexedRules[jj]))
+                which = indexed[ii++];
+            else
+                which = unindexedRules[jj++];
+            addIfMatched(rules[which], program, ctx, results);
+        }
+    }
+
+    private static void addIfMatched(SLDRule rule, SLDFilterProgram program, SLDFilterProgram.Context ctx, List<VectorStyle> results) {
+        if (rule.matches(program, ctx))
+            results.addAll(rule.getStyles());
+    }
+
+    // Rules that test the property for this feature's value
+    private int[] indexedRules(AttrSnapshot attrs) {
+        if (property == null || attrs == null)
+            return null;
+        Object value = attrs.get(property);
+        if (!(value instanceof String))
+            return null;
+        return rulesByValue.get(value);
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] arr = new int[list.size()];
+        for (int ii=0;ii<arr.length;ii++)
+            arr[ii] = list.get(ii);
+        return arr;
+    }
+}
@@ -35,6 +35,7 @@ import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 import com.mousebird.maply.AttrDictionary;
+import com.mousebird.maply.AttrSnapshot;
 import com.mousebird.maply.MaplyBaseController;
 import com.mousebird.maply.MaplyTileID;
 import com.mousebird.maply.VectorStyle;
@@ -44,6 +45,7 @@ import com.mousebird.maply.VectorStyleInterface;
 import com.mousebird.maply.MaplyBaseController;
 import com.mousebird.maply.VectorStyleSettings;
 import com.mousebird.maply.sld.sldsymbolizers.SLDSymbolizerParams;
+import com.mousebird.maply.sld.sldoperators.SLDFilterProgram;
 
 import android.app.Activity;
 
@@ -73,6 +75,23 @@ public class SLDStyleSet implements VectorStyleInterface {
 
     private InputStream inputStream;
 
+    // The filters for all the rules, compiled after loading, and indexed by layer name
+    private static class CompiledRules {
+        SLDFilterProgram program;
+        ArrayList<SLDRuleIndex> layers = new ArrayList<SLDRuleIndex>();
+        HashMap<String, SLDRuleIndex> layersByName = new HashMap<String, SLDRuleIndex>();
+    }
+    private boolean useCompiledFilters = true;
+    private volatile CompiledRules compiledRules;
+
+    // Evaluation state for one thread
+    private static class EvalState {
+        SLDFilterProgram program;
+        SLDFilterProgram.Context ctx;
+        ArrayList<VectorStyle> results = new ArrayList<VectorStyle>();
+    }
+    private ThreadLocal<EvalState> evalStates = new ThreadLocal<EvalState>();
+
     /**
      *
      * Constructs a SLDStyleSet object.  This does not load the data in the SLD file.  Use
@@ -136,6 +155,50 @@ public class SLDStyleSet implements VectorStyleInterface {
                 this.loadStyledLayerDescriptorNode(xpp);
             }
         }
+
+        compileFilters();
+    }
+
+    /**
+     *
+     * Turn compiled filter evaluation on or off.  It's on by default.
+     *
+     * @details With it off we walk the parsed filters for every feature instead.  The results are the same, it's just slower.
+     */
+    public void setUseCompiledFilters(boolean useCompiledFilters)
+    {
+        this.useCompiledFilters = useCompiledFilters;
+    }
+
+    /**
+     *
+     * Whether we're evaluating with the compiled filters.
+     */
+    public boolean getUseCompiledFilters()
+    {
+        return useCompiledFilters;
+    }
+
+    // Compile all the rule filters into one program and index them by layer, in the same order stylesForFeature() would visit them
+    private void compileFilters()
+    {
+        CompiledRules compiled = new CompiledRules();
+        compiled.program = new SLDFilterProgram();
+        for (SLDNamedLayer namedLayer : namedLayers.values()) {
+            ArrayList<SLDRule> rules = new ArrayList<SLDRule>();
+            for (SLDRule rule : namedLayer.getRules()) {
+                rule.compile(compiled.program);
+                // Rules without styles can't contribute anything
+                if (!rule.getStyles().isEmpty())
+                    rules.add(rule);
+            }
+
+            SLDRuleIndex layerIndex = new SLDRuleIndex(rules, compiled.program);
+            compiled.layers.add(layerIndex);
+            compiled.layersByName.put(namedLayer.getName(), layerIndex);
+        }
+
+        compiledRules = compiled;
     }
 
 
@@ -161,10 +224,45 @@ public class SLDStyleSet implements VectorStyleInterface {
     @Override
     public VectorStyle[] stylesForFeature(AttrDictionary attrs, MaplyTileID tileID, String layerName, MaplyBaseController controller)
     {
+        // The filters read from the snapshot, so get it over here in one go
+        AttrSnapshot snapshot = attrs.snapshot();
+
+        CompiledRules compiled = compiledRules;
+        if (useCompiledFilters && compiled != null) {
+            SLDFilterProgram program = compiled.program;
+            EvalState state = evalStates.get();
+            if (state == null || state.program != program) {
+                state = new EvalState();
+                state.program = program;
+                state.ctx = program.newContext();
+                evalStates.set(state);
+            }
+
+            program.bind(state.ctx, snapshot);
+            ArrayList<VectorStyle> results = state.results;
+            results.clear();
+            if (useLayerNames) {
+                SLDRuleIndex layerIndex = compiled.layersByName.get(layerName);
+                if (layerIndex != null)
+                    layerIndex.addMatchingStyles(snapshot, program, state.ctx, results);
+            } else {
+                for (SLDRuleIndex layerIndex : compiled.layers)
+                    layerIndex.addMatchingStyles(snapshot, program, state.ctx, results);
+            }
+            VectorStyle[] styles = results.toArray(new VectorStyle[results.size()]);
+            results.clear();
+            return styles;
+        }
+
         List<VectorTileStyle> vectorTileStyles = new ArrayList<VectorTileStyle>();
-        boolean matched;
-        for (SLDNamedLayer namedLayer : namedLayers.values()) {
-            vectorTileStyles.addAll(namedLayer.stylesForFeatureAttributes(attrs));
+        if (useLayerNames) {
+            SLDNamedLayer namedLayer = namedLayers.get(layerName);
+            if (namedLayer != null)
+                vectorTileStyles.addAll(namedLayer.stylesForFeatureAttributes(attrs));
+        } else {
+            for (SLDNamedLayer namedLayer : namedLayers.values()) {
+                vectorTileStyles.addAll(namedLayer.stylesForFeatureAttributes(attrs));
+            }
         }
         return vectorTileStyles.toArray(new VectorStyle[0]);
     }
@@ -172,7 +270,15 @@ public class SLDStyleSet implements VectorStyleInterface {
     @Override
     public boolean layerShouldDisplay(String layerName,MaplyTileID tileID)
     {
-        return true;
+        if (!useLayerNames)
+            return true;
+
+        // Skip layers we've got no rules for, or only rules with no styles
+        CompiledRules compiled = compiledRules;
+        if (compiled == null)
+            return namedLayers.containsKey(layerName);
+        SLDRuleIndex layerIndex = compiled.layersByName.get(layerName);
+        return layerIndex != null && layerIndex.rules.length > 0;
     }
 
     @Override
@@ -60,6 +60,14 @@ public class SLDUserStyle {
         }
     }
 
+    public List<SLDRule> getRules() {
+        List<SLDRule> rules = new ArrayList<SLDRule>();
+        for (SLDFeatureTypeStyle featureTypeStyle : featureTypeStyles) {
+            rules.addAll(featureTypeStyle.getRules());
+        }
+        return rules;
+    }
+
     public List<VectorTileStyle> getStyles() {
         List<VectorTileStyle> styles = new ArrayList<VectorTileStyle>();
         for (SLDFeatureTypeStyle featureTypeStyle : featureTypeStyles) {